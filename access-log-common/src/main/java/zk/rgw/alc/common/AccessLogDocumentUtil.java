@@ -120,6 +120,7 @@ public class AccessLogDocumentUtil {
         accessLogDocument.setResponseInfo(accessLog.getResponseInfo());
         accessLogDocument.setTags(accessLog.getTags());
         accessLogDocument.setExtraInfo(accessLog.getExtraInfo());
+        accessLogDocument.setSampleWeight(accessLog.getSampleWeight());
 
         accessLogDocument.setTimestampMillis(Instant.ofEpochMilli(accessLogDocument.getReqTimestamp()));
         return accessLogDocument;
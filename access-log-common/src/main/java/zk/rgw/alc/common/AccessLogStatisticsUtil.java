@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.common;
+
+import java.util.Objects;
+
+/**
+ * 访问日志统计集合的命名以及消费端与dashboard共用的字段名
+ */
+public class AccessLogStatisticsUtil {
+
+    private static final String BASE_COLLECTION_NAME = "AccessLogStatistics";
+
+    public static final String MINUTES_LEVEL = "MINUTES";
+
+    /**
+     * 分钟统计文档中按kafka分区保存的部分统计，各分区的统计之和即为文档顶层的统计值
+     */
+    public static final String PARTITIONS_FIELD = "partitions";
+
+    public static final String LATENCY_HISTOGRAM_FIELD = "latencyHistogram";
+
+    /**
+     * 分钟统计有变化、尚未累加到总量统计的标记，由写入分钟统计的一方设置，由dashboard累加后清除
+     */
+    public static final String TOTAL_DIRTY_FIELD = "totalDirty";
+
+    private AccessLogStatisticsUtil() {
+    }
+
+    public static String collectionName(String levelName, String envId) {
+        Objects.requireNonNull(levelName);
+        Objects.requireNonNull(envId);
+        return BASE_COLLECTION_NAME + "_" + levelName + "_" + envId;
+    }
+
+}
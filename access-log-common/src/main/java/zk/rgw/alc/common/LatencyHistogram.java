@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 请求耗时直方图，按近似对数增长的固定边界分桶（相邻边界相差约25%），第i个桶统计耗时在(BOUNDS_MILLIS[i-1], BOUNDS_MILLIS[i]]毫秒之间的请求个数，
+ * 最后一个桶统计超过最大边界的请求。
+ * <p>
+ * 直方图以长度固定的计数数组保存，合并只需按下标相加，因此可以直接在mongodb聚合管道中由分钟级合并到小时级、天级，分位数在桶内线性插值估算。
+ */
+public class LatencyHistogram {
+
+    private static final int[] BOUNDS_MILLIS = {
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10,
+            12, 15, 18, 22, 27, 33, 40, 50, 60, 75,
+            90, 110, 130, 160, 200, 250, 300, 400, 500, 600,
+            750, 900, 1100, 1300, 1600, 2000, 2500, 3000, 4000, 5000,
+            6000, 7500, 9000, 11000, 13000, 16000, 20000, 25000, 30000, 40000,
+            50000, 60000
+    };
+
+    public static final int BUCKET_COUNT = BOUNDS_MILLIS.length + 1;
+
+    private LatencyHistogram() {
+    }
+
+    public static int bucketOf(long millis) {
+        int index = Arrays.binarySearch(BOUNDS_MILLIS, (int) Math.min(millis, Integer.MAX_VALUE));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * 供mongodb聚合管道计算分桶下标：小于耗时的边界个数即为桶下标
+     */
+    public static List<Integer> bounds() {
+        return Arrays.stream(BOUNDS_MILLIS).boxed().toList();
+    }
+
+    /**
+     * 估算分位数
+     *
+     * @param histogram 各个桶的计数，长度不足BUCKET_COUNT时缺少的桶视为0
+     * @param quantile 0～1之间
+     * @return 毫秒数，没有数据时返回0，落在最后一个桶时返回最大边界
+     */
+    public static long percentile(List<? extends Number> histogram, double quantile) {
+        if (Objects.isNull(histogram) || histogram.isEmpty()) {
+            return 0;
+        }
+        long total = 0;
+        for (Number count : histogram) {
+            total += count.longValue();
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        double rank = Math.max(1, Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < histogram.size() && i < BUCKET_COUNT; i++) {
+            long count = histogram.get(i).longValue();
+            if (count > 0 && seen + count >= rank) {
+                if (i == BOUNDS_MILLIS.length) {
+                    return BOUNDS_MILLIS[BOUNDS_MILLIS.length - 1];
+                }
+                int lower = i == 0 ? 0 : BOUNDS_MILLIS[i - 1];
+                return Math.round(lower + (BOUNDS_MILLIS[i] - lower) * (rank - seen) / count);
+            }
+            seen += count;
+        }
+        return BOUNDS_MILLIS[BOUNDS_MILLIS.length - 1];
+    }
+
+}
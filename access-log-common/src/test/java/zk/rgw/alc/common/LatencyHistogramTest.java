@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketOf() {
+        Assertions.assertEquals(0, LatencyHistogram.bucketOf(0));
+        Assertions.assertEquals(0, LatencyHistogram.bucketOf(1));
+        Assertions.assertEquals(1, LatencyHistogram.bucketOf(2));
+        Assertions.assertEquals(10, LatencyHistogram.bucketOf(11));
+        Assertions.assertEquals(10, LatencyHistogram.bucketOf(12));
+        Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testBucketOfMatchesBoundsCounting() {
+        // mongodb聚合管道中用小于耗时的边界个数作为桶下标，两种算法必须一致
+        List<Integer> bounds = LatencyHistogram.bounds();
+        for (long millis = 0; millis <= 70000; millis++) {
+            final long value = millis;
+            long expected = bounds.stream().filter(bound -> bound < value).count();
+            Assertions.assertEquals(expected, LatencyHistogram.bucketOf(millis));
+        }
+    }
+
+    @Test
+    void testPercentile() {
+        Assertions.assertEquals(0, LatencyHistogram.percentile(null, 0.5));
+        Assertions.assertEquals(0, LatencyHistogram.percentile(List.of(), 0.5));
+
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+        long[] histogram = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextGaussian() + 4);
+            histogram[LatencyHistogram.bucketOf(values[i])]++;
+        }
+        Arrays.sort(values);
+        List<Long> histogramList = new ArrayList<>();
+        Arrays.stream(histogram).forEach(histogramList::add);
+
+        for (double quantile : new double[] { 0.5, 0.9, 0.99 }) {
+            long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            long estimated = LatencyHistogram.percentile(histogramList, quantile);
+            Assertions.assertTrue(Math.abs(estimated - exact) <= exact * 0.25, quantile + ": " + exact + " vs " + estimated);
+        }
+    }
+
+    @Test
+    void testPercentileOfShortHistogram() {
+        // 由聚合管道合并得到的直方图可能缺少尾部的桶
+        Assertions.assertEquals(1, LatencyHistogram.percentile(List.of(3, 0), 0.99));
+        Assertions.assertEquals(2, LatencyHistogram.percentile(List.of(1, 1), 0.99));
+    }
+
+}
@@ -46,11 +46,7 @@ public class AccessLogConsumerServer implements Server {
     @Override
     public void start() {
         initMongoClient();
-        accessLogMongodbWriters = new AccessLogMongodbWriters(
-                configuration.getKafkaBootstrapServers(),
-                mongoClient.getDatabase(configuration.getMongodbDatabaseName()),
-                configuration.getEnvironments()
-        );
+        accessLogMongodbWriters = new AccessLogMongodbWriters(configuration, mongoClient.getDatabase(configuration.getMongodbDatabaseName()));
         accessLogMongodbWriters.start();
 
         log.info("{} started.", this.getClass().getSimpleName());
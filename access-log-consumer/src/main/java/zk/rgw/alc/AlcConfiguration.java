@@ -66,4 +66,32 @@ public class AlcConfiguration extends CommonConfiguration {
     )
     private List<String> environments;
 
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--consumer.threads", description = "The number of kafka consumers for each environment, in the same consumer group.")
+    private int consumerThreads = 2;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--insert.batch.size", description = "The max number of access logs in one mongodb insertMany.")
+    private int insertBatchSize = 500;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--insert.max.in.flight", description = "The max number of concurrent insertMany of each kafka consumer.")
+    private int insertMaxInFlight = 4;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--metrics.log.interval.seconds", description = "The interval to log consumer lag and insert throughput, 0 to disable.")
+    private long metricsLogIntervalSeconds = 60;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--statistics.pre.aggregation.enabled",
+            description = "Whether to aggregate per-minute api statistics while consuming, dashboard should disable raw log archiving accordingly."
+    )
+    private boolean statisticsPreAggregationEnabled = true;
+
 }
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.persist;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoWriteConcernException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import zk.rgw.alc.common.AccessLogDocument;
+import zk.rgw.alc.common.AccessLogDocumentUtil;
+import zk.rgw.common.access.AccessLog;
+import zk.rgw.common.access.AccessLogCodec;
+import zk.rgw.common.util.JsonUtil;
+
+/**
+ * 独占一个KafkaConsumer的消费线程。
+ * <p>
+ * 每次poll到的消息按insertBatchSize切分，在线程池中并行解码后并发insertMany（ordered=false），每次poll最多maxInFlight批，
+ * 全部写入成功后才提交offset。
+ * <p>
+ * 写入失败时按错误分类处理：
+ * <ul>
+ *     <li>网络、超时、主节点切换等暂时性错误，回退到本次poll的起始offset并等待一段时间后重新消费，因此可能重复写入少量日志</li>
+ *     <li>批量写入中个别文档失败时只重试失败的文档，重复key视为已写入，其他与文档本身有关的错误不再重试</li>
+ *     <li>无法解码的消息、不再重试的文档连同原始字节写入死信集合后跳过，offset照常提交</li>
+ * </ul>
+ * 开启预聚合时，原始日志写入成功后再把本次poll的统计写入mongodb，统计按offset去重，不会因为重新消费而重复计数。
+ */
+@Slf4j
+class AccessLogConsumerLoop implements Runnable {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(1000);
+
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private static final InsertManyOptions INSERT_MANY_OPTIONS = new InsertManyOptions().ordered(false);
+
+    /**
+     * 批量写入中个别文档遇到暂时性错误时的最大写入次数，超过后按整批失败处理
+     */
+    private static final int MAX_INSERT_ATTEMPTS = 3;
+
+    /**
+     * 暂时性的服务端错误码：主节点切换、节点关闭或恢复中、操作超时
+     */
+    private static final Set<Integer> TRANSIENT_ERROR_CODES = Set.of(6, 7, 50, 89, 91, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436);
+
+    private final Consumer<String, byte[]> consumer;
+
+    private final String topicName;
+
+    private final MongoCollection<AccessLogDocument> collection;
+
+    private final Executor decodeExecutor;
+
+    private final int insertBatchSize;
+
+    private final AccessLogConsumerMetrics metrics;
+
+    private final MinuteStatisticsAggregator statisticsAggregator;
+
+    private final DeadLetterWriter deadLetterWriter;
+
+    private volatile boolean running = true;
+
+    private long backoffMillis = 0;
+
+    AccessLogConsumerLoop(
+            Properties consumerProperties,
+            String topicName,
+            MongoCollection<AccessLogDocument> collection,
+            Executor decodeExecutor,
+            int insertBatchSize,
+            int maxInFlight,
+            AccessLogConsumerMetrics metrics,
+            MinuteStatisticsAggregator statisticsAggregator,
+            DeadLetterWriter deadLetterWriter
+    ) {
+        Properties properties = new Properties();
+        properties.putAll(consumerProperties);
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, insertBatchSize * maxInFlight);
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        this.consumer = new KafkaConsumer<>(properties);
+        this.topicName = topicName;
+        this.collection = collection;
+        this.decodeExecutor = decodeExecutor;
+        this.insertBatchSize = insertBatchSize;
+        this.metrics = metrics;
+        this.statisticsAggregator = statisticsAggregator;
+        this.deadLetterWriter = deadLetterWriter;
+    }
+
+    @Override
+    public void run() {
+        consumer.subscribe(Collections.singleton(topicName), new LagCleaner());
+        try {
+            while (running) {
+                pollAndPersist();
+            }
+        } catch (WakeupException wakeupException) {
+            if (running) {
+                throw wakeupException;
+            }
+        } finally {
+            consumer.close();
+        }
+    }
+
+    void stop() {
+        running = false;
+        consumer.wakeup();
+    }
+
+    private void pollAndPersist() {
+        ConsumerRecords<String, byte[]> consumerRecords = consumer.poll(POLL_TIMEOUT);
+        updateLags();
+        if (consumerRecords.isEmpty()) {
+            return;
+        }
+        metrics.onConsumed(consumerRecords.count());
+
+        AccessLogDocument[] documents = new AccessLogDocument[consumerRecords.count()];
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        List<ConsumerRecord<String, byte[]>> chunk = new ArrayList<>(insertBatchSize);
+        int chunkStart = 0;
+        for (ConsumerRecord<String, byte[]> consumerRecord : consumerRecords) {
+            chunk.add(consumerRecord);
+            if (chunk.size() == insertBatchSize) {
+                futures.add(persist(chunk, documents, chunkStart));
+                chunkStart += chunk.size();
+                chunk = new ArrayList<>(insertBatchSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            futures.add(persist(chunk, documents, chunkStart));
+        }
+
+        boolean allSucceed = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                allSucceed &= future.join();
+            } catch (CompletionException completionException) {
+                log.error("Failed to persist access logs.", completionException.getCause());
+                allSucceed = false;
+            }
+        }
+
+        if (allSucceed && Objects.nonNull(statisticsAggregator)) {
+            allSucceed = statisticsAggregator.accumulate(consumerRecords, documents) && statisticsAggregator.flush();
+        }
+
+        if (allSucceed) {
+            backoffMillis = 0;
+            consumer.commitSync(nextOffsets(consumerRecords));
+        } else {
+            rewind(consumerRecords);
+            backoff();
+        }
+    }
+
+    private CompletableFuture<Boolean> persist(List<ConsumerRecord<String, byte[]>> chunk, AccessLogDocument[] decoded, int decodedOffset) {
+        return CompletableFuture.supplyAsync(() -> decode(chunk, decoded, decodedOffset), decodeExecutor).thenCompose(batch -> {
+            if (batch.documents.isEmpty() && batch.deadLetters.isEmpty()) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return insert(batch.documents, batch.records, batch.deadLetters, 1)
+                    .flatMap(inserted -> Boolean.TRUE.equals(inserted) ? deadLetterWriter.write(batch.deadLetters) : Mono.just(false))
+                    .doOnNext(succeed -> {
+                        if (Boolean.TRUE.equals(succeed)) {
+                            metrics.onDeadLettered(batch.deadLetters.size());
+                        }
+                    })
+                    .toFuture();
+        });
+    }
+
+    /**
+     * @param records 与documents一一对应的消息，用于写入死信
+     * @param deadLetters 不再重试的文档追加到这里
+     * @return 除了进入死信的文档外全部写入成功时为true
+     */
+    private Mono<Boolean> insert(
+            List<AccessLogDocument> documents,
+            List<ConsumerRecord<String, byte[]>> records,
+            List<Document> deadLetters,
+            int attempt
+    ) {
+        if (documents.isEmpty()) {
+            return Mono.just(true);
+        }
+        return Mono.from(collection.insertMany(documents, INSERT_MANY_OPTIONS))
+                .map(ignore -> {
+                    metrics.onInserted(documents.size());
+                    return true;
+                })
+                .onErrorResume(throwable -> onInsertFailed(throwable, documents, records, deadLetters, attempt))
+                .defaultIfEmpty(true);
+    }
+
+    private Mono<Boolean> onInsertFailed(
+            Throwable throwable,
+            List<AccessLogDocument> documents,
+            List<ConsumerRecord<String, byte[]>> records,
+            List<Document> deadLetters,
+            int attempt
+    ) {
+        if (throwable instanceof MongoBulkWriteException bulkWriteException && Objects.isNull(bulkWriteException.getWriteConcernError())) {
+            return onBulkWriteFailed(bulkWriteException, documents, records, deadLetters, attempt);
+        }
+        if (isTransient(throwable)) {
+            metrics.onInsertFailed(documents.size());
+            log.error("Failed to save {} access logs to mongodb.", documents.size(), throwable);
+            return Mono.just(false);
+        }
+        if (documents.size() == 1) {
+            metrics.onInsertFailed(1);
+            log.error("Failed to save access log to mongodb, it will be moved to dead letter collection.", throwable);
+            deadLetters.add(DeadLetterWriter.toDeadLetter(records.get(0), "insert", throwable));
+            return Mono.just(true);
+        }
+        // 客户端编码失败等错误会让整批写入失败，逐条写入以找出有问题的文档
+        log.warn("Failed to save {} access logs to mongodb, retry one by one.", documents.size(), throwable);
+        return Flux.range(0, documents.size())
+                .concatMap(i -> insert(List.of(documents.get(i)), List.of(records.get(i)), deadLetters, attempt))
+                .all(Boolean::booleanValue);
+    }
+
+    /**
+     * 无序批量写入时失败的文档之外的文档都已写入，只处理失败的文档
+     */
+    private Mono<Boolean> onBulkWriteFailed(
+            MongoBulkWriteException bulkWriteException,
+            List<AccessLogDocument> documents,
+            List<ConsumerRecord<String, byte[]>> records,
+            List<Document> deadLetters,
+            int attempt
+    ) {
+        List<AccessLogDocument> retryDocuments = new ArrayList<>();
+        List<ConsumerRecord<String, byte[]>> retryRecords = new ArrayList<>();
+        int failed = 0;
+        for (BulkWriteError writeError : bulkWriteException.getWriteErrors()) {
+            int index = writeError.getIndex();
+            if (writeError.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                // 重新消费时已经写入过
+                continue;
+            }
+            ++failed;
+            if (writeError.getCategory() == ErrorCategory.EXECUTION_TIMEOUT || TRANSIENT_ERROR_CODES.contains(writeError.getCode())) {
+                retryDocuments.add(documents.get(index));
+                retryRecords.add(records.get(index));
+            } else {
+                deadLetters.add(DeadLetterWriter.toDeadLetter(records.get(index), "insert", writeError.getMessage()));
+            }
+        }
+        metrics.onInserted(documents.size() - failed);
+        metrics.onInsertFailed(failed);
+        if (retryDocuments.isEmpty()) {
+            return Mono.just(true);
+        }
+        if (attempt >= MAX_INSERT_ATTEMPTS) {
+            log.error("Failed to save {} access logs to mongodb after {} attempts.", retryDocuments.size(), attempt, bulkWriteException);
+            return Mono.just(false);
+        }
+        return Mono.delay(Duration.ofMillis(100L * attempt)).then(insert(retryDocuments, retryRecords, deadLetters, attempt + 1));
+    }
+
+    /**
+     * 与具体文档无关、稍后重试可能成功的错误
+     */
+    private static boolean isTransient(Throwable throwable) {
+        if (throwable instanceof MongoSocketException
+                || throwable instanceof MongoClientException
+                || throwable instanceof MongoExecutionTimeoutException
+                || throwable instanceof MongoWriteConcernException
+                || throwable instanceof MongoNotPrimaryException
+                || throwable instanceof MongoNodeIsRecoveringException
+                || throwable instanceof MongoBulkWriteException) {
+            return true;
+        }
+        return throwable instanceof MongoException mongoException
+                && (mongoException.hasErrorLabel("RetryableWriteError") || TRANSIENT_ERROR_CODES.contains(mongoException.getCode()));
+    }
+
+    /**
+     * 解码结果同时按消息顺序写入decoded中，供预聚合统计使用，无法解码的消息放入死信
+     */
+    private DecodedChunk decode(List<ConsumerRecord<String, byte[]>> chunk, AccessLogDocument[] decoded, int decodedOffset) {
+        DecodedChunk batch = new DecodedChunk(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ConsumerRecord<String, byte[]> consumerRecord = chunk.get(i);
+            try {
+                AccessLogDocument document = AccessLogDocumentUtil.convertFromAccessLog(decode(consumerRecord.value()));
+                decoded[decodedOffset + i] = document;
+                batch.documents.add(document);
+                batch.records.add(consumerRecord);
+            } catch (Exception exception) {
+                metrics.onDecodeFailed();
+                log.error("Failed to deserialize bytes to AccessLog instance.", exception);
+                batch.deadLetters.add(DeadLetterWriter.toDeadLetter(consumerRecord, "decode", exception));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 兼容升级前网关以Json格式写入的消息
+     */
+    private static AccessLog decode(byte[] bytes) throws JsonProcessingException {
+        if (AccessLogCodec.isBinary(bytes)) {
+            return AccessLogCodec.decode(bytes);
+        }
+        return JsonUtil.readValue(new String(bytes, StandardCharsets.UTF_8), AccessLog.class);
+    }
+
+    private static Map<TopicPartition, OffsetAndMetadata> nextOffsets(ConsumerRecords<String, byte[]> consumerRecords) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition topicPartition : consumerRecords.partitions()) {
+            List<ConsumerRecord<String, byte[]>> partitionRecords = consumerRecords.records(topicPartition);
+            long lastOffset = partitionRecords.get(partitionRecords.size() - 1).offset();
+            offsets.put(topicPartition, new OffsetAndMetadata(lastOffset + 1));
+        }
+        return offsets;
+    }
+
+    private void rewind(ConsumerRecords<String, byte[]> consumerRecords) {
+        for (TopicPartition topicPartition : consumerRecords.partitions()) {
+            consumer.seek(topicPartition, consumerRecords.records(topicPartition).get(0).offset());
+        }
+    }
+
+    private void backoff() {
+        backoffMillis = backoffMillis == 0 ? 100 : Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoffMillis);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void updateLags() {
+        for (TopicPartition topicPartition : consumer.assignment()) {
+            OptionalLong lag = consumer.currentLag(topicPartition);
+            if (lag.isPresent()) {
+                metrics.updateLag(topicPartition, lag.getAsLong());
+            }
+        }
+    }
+
+    private static class DecodedChunk {
+
+        private final List<AccessLogDocument> documents;
+
+        private final List<ConsumerRecord<String, byte[]>> records;
+
+        private final List<Document> deadLetters = new ArrayList<>(0);
+
+        private DecodedChunk(int size) {
+            this.documents = new ArrayList<>(size);
+            this.records = new ArrayList<>(size);
+        }
+
+    }
+
+    private class LagCleaner implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            partitions.forEach(metrics::removeLag);
+            if (Objects.nonNull(statisticsAggregator)) {
+                statisticsAggregator.onPartitionsRevoked(partitions);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            // 分配到分区后在下一次poll时更新lag
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.persist;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * 某个环境的访问日志消费状态，计数均为启动以来的累计值
+ */
+public class AccessLogConsumerMetrics {
+
+    private final LongAdder consumed = new LongAdder();
+
+    private final LongAdder inserted = new LongAdder();
+
+    private final LongAdder insertFailed = new LongAdder();
+
+    private final LongAdder decodeFailed = new LongAdder();
+
+    private final LongAdder deadLettered = new LongAdder();
+
+    private final Map<TopicPartition, Long> lags = new ConcurrentHashMap<>();
+
+    void onConsumed(int count) {
+        consumed.add(count);
+    }
+
+    void onInserted(int count) {
+        inserted.add(count);
+    }
+
+    void onInsertFailed(int count) {
+        insertFailed.add(count);
+    }
+
+    void onDecodeFailed() {
+        decodeFailed.increment();
+    }
+
+    void onDeadLettered(int count) {
+        deadLettered.add(count);
+    }
+
+    void updateLag(TopicPartition topicPartition, long lag) {
+        lags.put(topicPartition, lag);
+    }
+
+    void removeLag(TopicPartition topicPartition) {
+        lags.remove(topicPartition);
+    }
+
+    public long getConsumed() {
+        return consumed.sum();
+    }
+
+    public long getInserted() {
+        return inserted.sum();
+    }
+
+    public long getInsertFailed() {
+        return insertFailed.sum();
+    }
+
+    public long getDecodeFailed() {
+        return decodeFailed.sum();
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    /**
+     * 当前消费者分配到的所有分区的lag之和，以最近一次poll时的值为准
+     */
+    public long getLag() {
+        long total = 0;
+        for (long lag : lags.values()) {
+            total += lag;
+        }
+        return total;
+    }
+
+}
@@ -16,9 +16,7 @@
 
 package zk.rgw.alc.persist;
 
-import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
@@ -26,146 +24,132 @@ import java.util.concurrent.ExecutorService;
 
 import com.mongodb.reactivestreams.client.MongoCollection;
 import com.mongodb.reactivestreams.client.MongoDatabase;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.common.serialization.StringDeserializer;
-import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
+import org.bson.Document;
 
 import zk.rgw.alc.common.AccessLogDocument;
 import zk.rgw.alc.common.AccessLogDocumentUtil;
-import zk.rgw.common.access.AccessLog;
+import zk.rgw.alc.common.AccessLogStatisticsUtil;
 import zk.rgw.common.bootstrap.LifeCycle;
 import zk.rgw.common.constant.Constants;
-import zk.rgw.common.util.JsonUtil;
 
+/**
+ * 消费某个环境的访问日志并写入mongodb，同一个消费组中启动多个消费线程，由Kafka在它们之间分配分区
+ */
 @Slf4j
 public class AccessLogMongodbWriter implements LifeCycle {
 
     private final String kafkaBootstrapServers;
 
-    private Consumer<String, String> accessLogConsumer;
-
-    private Thread consumerThread;
-
     private final ExecutorService executorService;
 
-    private Scheduler subscribeScheduler;
-
-    private volatile boolean running = false;
-
     private final String topicName;
 
     private final String envId;
 
     private final MongoDatabase mongoDatabase;
 
-    private MongoCollection<AccessLogDocument> accessLogCollection;
+    private final int consumerThreads;
+
+    private final int insertBatchSize;
+
+    private final int maxInFlight;
+
+    private final boolean preAggregation;
+
+    @Getter
+    private final AccessLogConsumerMetrics metrics = new AccessLogConsumerMetrics();
+
+    private final List<AccessLogConsumerLoop> consumerLoops = new ArrayList<>();
+
+    private final List<Thread> consumerThreadList = new ArrayList<>();
+
+    private long lastInserted = 0;
 
     public AccessLogMongodbWriter(
             String kafkaBootstrapServers,
             MongoDatabase mongoDatabase,
             String envId,
-            ExecutorService executorService
+            ExecutorService executorService,
+            int consumerThreads,
+            int insertBatchSize,
+            int maxInFlight,
+            boolean preAggregation
     ) {
         this.kafkaBootstrapServers = kafkaBootstrapServers;
         this.mongoDatabase = mongoDatabase;
         this.envId = envId;
         this.topicName = Constants.ACCESS_LOG_KAFKA_TOPIC_NAME_PREFIX + envId;
         this.executorService = executorService;
+        this.consumerThreads = consumerThreads;
+        this.insertBatchSize = insertBatchSize;
+        this.maxInFlight = maxInFlight;
+        this.preAggregation = preAggregation;
     }
 
     @Override
     public void start() {
-        accessLogCollection = AccessLogDocumentUtil.getAccessLogCollectionForEnv(mongoDatabase, envId).block();
+        MongoCollection<AccessLogDocument> accessLogCollection = AccessLogDocumentUtil.getAccessLogCollectionForEnv(mongoDatabase, envId).block();
         Objects.requireNonNull(accessLogCollection);
+        MongoCollection<Document> statisticsCollection = mongoDatabase.getCollection(
+                AccessLogStatisticsUtil.collectionName(AccessLogStatisticsUtil.MINUTES_LEVEL, envId)
+        );
 
-        subscribeScheduler = Schedulers.fromExecutor(executorService);
-        subscribeScheduler.init();
-
-        initAccessLogConsumer();
-        running = true;
-        accessLogConsumer.subscribe(Collections.singleton(topicName));
-        String threadName = this.getClass().getSimpleName();
-        consumerThread = new Thread(() -> {
-            log.info("{} start.", threadName);
-            while (running) {
-                pull();
-            }
-            log.info("{} stopped.", threadName);
-        }, threadName);
-        consumerThread.setDaemon(true);
-        consumerThread.start();
+        DeadLetterWriter deadLetterWriter = new DeadLetterWriter(mongoDatabase, envId);
+
+        String groupId = "rgw_kafka_consumer_group_" + this.getClass().getSimpleName() + "_" + envId;
+        for (int i = 0; i < consumerThreads; ++i) {
+            Properties properties = new Properties();
+            String clientId = "rgw_kafka_consumer_client_" + this.getClass().getSimpleName() + "_" + envId + "_" + i;
+            properties.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+            properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
+            properties.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+
+            // 每个消费线程独占一个聚合器，只统计分配给自己的分区
+            MinuteStatisticsAggregator statisticsAggregator = preAggregation ? new MinuteStatisticsAggregator(statisticsCollection) : null;
+            AccessLogConsumerLoop consumerLoop = new AccessLogConsumerLoop(
+                    properties, topicName, accessLogCollection, executorService, insertBatchSize, maxInFlight, metrics, statisticsAggregator,
+                    deadLetterWriter
+            );
+            String threadName = this.getClass().getSimpleName() + "-" + envId + "-" + i;
+            Thread consumerThread = new Thread(() -> {
+                log.info("{} start.", threadName);
+                consumerLoop.run();
+                log.info("{} stopped.", threadName);
+            }, threadName);
+            consumerThread.setDaemon(true);
+            consumerLoops.add(consumerLoop);
+            consumerThreadList.add(consumerThread);
+            consumerThread.start();
+        }
     }
 
     @Override
     public void stop() {
-        running = false;
-        if (Objects.nonNull(consumerThread)) {
+        consumerLoops.forEach(AccessLogConsumerLoop::stop);
+        for (Thread consumerThread : consumerThreadList) {
             try {
                 consumerThread.join();
             } catch (InterruptedException interruptedException) {
                 Thread.currentThread().interrupt();
             }
         }
-        if (Objects.nonNull(subscribeScheduler)) {
-            subscribeScheduler.dispose();
-        }
-    }
-
-    private void initAccessLogConsumer() {
-        Properties properties = new Properties();
-        String clientId = "rgw_kafka_consumer_client_" + this.getClass().getSimpleName() + "_" + envId;
-        String groupId = "rgw_kafka_consumer_group_" + this.getClass().getSimpleName() + "_" + envId;
-        properties.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
-        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
-        properties.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
-        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        accessLogConsumer = new KafkaConsumer<>(properties);
     }
 
-    private void pull() {
-        List<String> accessLogs;
-        try {
-            ConsumerRecords<String, String> consumerRecords = accessLogConsumer.poll(Duration.ofMillis(5000));
-            if (consumerRecords.isEmpty()) {
-                return;
-            }
-            accessLogs = new ArrayList<>(consumerRecords.count());
-            consumerRecords.forEach(consumerRecord -> accessLogs.add(consumerRecord.value()));
-        } catch (Exception exception) {
-            log.error("Pull AccessLog from kafka exception: ", exception);
-            return;
-        }
-
-        try {
-            saveAccessLogToMongodb(accessLogs);
-        } catch (Exception exception) {
-            log.error("Save AccessLog to mongodb exception: ", exception);
-        }
-    }
-
-    private void saveAccessLogToMongodb(List<String> accessLogs) {
-        List<AccessLogDocument> accessLogDocuments = new ArrayList<>();
-
-        for (String jsonStr : accessLogs) {
-            try {
-                AccessLog accessLog = JsonUtil.readValue(jsonStr, AccessLog.class);
-                accessLogDocuments.add(AccessLogDocumentUtil.convertFromAccessLog(accessLog));
-            } catch (Exception exception) {
-                log.error("Failed to deserialize json string to AccessLog instance.", exception);
-            }
-        }
-
-        Mono.from(accessLogCollection.insertMany(accessLogDocuments))
-                .doOnError(throwable -> log.error("Failed to save some access logs to mongodb.", throwable))
-                .subscribeOn(subscribeScheduler)
-                .subscribe();
+    /**
+     * 打印消费状态，写入速率按距离上次打印的时间计算
+     */
+    void logMetrics(long intervalSeconds) {
+        long inserted = metrics.getInserted();
+        long insertedPerSecond = (inserted - lastInserted) / Math.max(1, intervalSeconds);
+        lastInserted = inserted;
+        log.info(
+                "Access log consumer of env {}: lag {}, inserted {}/s, consumed {}, inserted {}, insert failed {}, decode failed {}, dead lettered {}.",
+                envId, metrics.getLag(), insertedPerSecond, metrics.getConsumed(), inserted, metrics.getInsertFailed(), metrics.getDecodeFailed(),
+                metrics.getDeadLettered()
+        );
     }
 
 }
@@ -21,44 +21,69 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.mongodb.reactivestreams.client.MongoDatabase;
 
+import zk.rgw.alc.AlcConfiguration;
 import zk.rgw.common.bootstrap.LifeCycle;
 import zk.rgw.common.constant.Constants;
 
 public class AccessLogMongodbWriters implements LifeCycle {
 
-    private final String kafkaBootstrapServers;
+    private final AlcConfiguration configuration;
 
     private ExecutorService executorService;
 
-    private final List<String> endIds;
+    private ScheduledExecutorService metricsReporter;
 
     private final MongoDatabase mongoDatabase;
 
     private final List<AccessLogMongodbWriter> writers;
 
-    public AccessLogMongodbWriters(String kafkaBootstrapServers, MongoDatabase mongoDatabase, List<String> envIds) {
-        this.kafkaBootstrapServers = kafkaBootstrapServers;
+    public AccessLogMongodbWriters(AlcConfiguration configuration, MongoDatabase mongoDatabase) {
+        this.configuration = configuration;
         this.mongoDatabase = mongoDatabase;
-        this.endIds = envIds;
-        this.writers = new ArrayList<>(envIds.size());
+        this.writers = new ArrayList<>(configuration.getEnvironments().size());
     }
 
     @Override
     public void start() {
+        // 用于解码访问日志
         executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        for (String envId : endIds) {
+        for (String envId : configuration.getEnvironments()) {
             String realEvnId = Constants.BUILT_IN_ENV_IDS.getOrDefault(envId, envId);
-            AccessLogMongodbWriter accessLogMongodbWriter = new AccessLogMongodbWriter(kafkaBootstrapServers, mongoDatabase, realEvnId, executorService);
+            AccessLogMongodbWriter accessLogMongodbWriter = new AccessLogMongodbWriter(
+                    configuration.getKafkaBootstrapServers(),
+                    mongoDatabase,
+                    realEvnId,
+                    executorService,
+                    configuration.getConsumerThreads(),
+                    configuration.getInsertBatchSize(),
+                    configuration.getInsertMaxInFlight(),
+                    configuration.isStatisticsPreAggregationEnabled()
+            );
             accessLogMongodbWriter.start();
             writers.add(accessLogMongodbWriter);
         }
+
+        long interval = configuration.getMetricsLogIntervalSeconds();
+        if (interval > 0) {
+            metricsReporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "AccessLogConsumerMetricsReporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            metricsReporter.scheduleAtFixedRate(() -> writers.forEach(writer -> writer.logMetrics(interval)), interval, interval, TimeUnit.SECONDS);
+        }
     }
 
     @Override
     public void stop() {
+        if (Objects.nonNull(metricsReporter)) {
+            metricsReporter.shutdown();
+        }
         for (AccessLogMongodbWriter accessLogMongodbWriter : writers) {
             accessLogMongodbWriter.stop();
         }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.persist;
+
+import java.util.Date;
+import java.util.List;
+
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.bson.Document;
+import org.bson.types.Binary;
+import reactor.core.publisher.Mono;
+
+/**
+ * 把无法解码或无法写入的消息连同原始字节写入死信集合AccessLogDeadLetter_{envId}，消费端跳过它们继续提交offset，
+ * 一条有问题的消息不会让整个分区停止消费
+ */
+@Slf4j
+class DeadLetterWriter {
+
+    private static final String COLLECTION_NAME_PREFIX = "AccessLogDeadLetter_";
+
+    private static final InsertManyOptions INSERT_MANY_OPTIONS = new InsertManyOptions().ordered(false);
+
+    private final MongoCollection<Document> collection;
+
+    DeadLetterWriter(MongoDatabase mongoDatabase, String envId) {
+        this.collection = mongoDatabase.getCollection(COLLECTION_NAME_PREFIX + envId);
+    }
+
+    static Document toDeadLetter(ConsumerRecord<String, byte[]> consumerRecord, String reason, Throwable throwable) {
+        return toDeadLetter(consumerRecord, reason, String.valueOf(throwable));
+    }
+
+    static Document toDeadLetter(ConsumerRecord<String, byte[]> consumerRecord, String reason, String error) {
+        return new Document("topic", consumerRecord.topic())
+                .append("partition", consumerRecord.partition())
+                .append("offset", consumerRecord.offset())
+                .append("timestamp", new Date(consumerRecord.timestamp()))
+                .append("reason", reason)
+                .append("error", error)
+                .append("payload", new Binary(consumerRecord.value()))
+                .append("createdAt", new Date());
+    }
+
+    /**
+     * @return 全部写入成功时为true，失败时需要重新消费，否则这些消息会丢失
+     */
+    Mono<Boolean> write(List<Document> deadLetters) {
+        if (deadLetters.isEmpty()) {
+            return Mono.just(true);
+        }
+        return Mono.from(collection.insertMany(deadLetters, INSERT_MANY_OPTIONS))
+                .map(ignore -> {
+                    log.warn("{} access logs are moved to dead letter collection {}.", deadLetters.size(), collection.getNamespace());
+                    return true;
+                })
+                .onErrorResume(throwable -> {
+                    log.error("Failed to save {} dead letters to mongodb.", deadLetters.size(), throwable);
+                    return Mono.just(false);
+                })
+                .defaultIfEmpty(true);
+    }
+
+}
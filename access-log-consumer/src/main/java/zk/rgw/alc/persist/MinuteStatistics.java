@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.bson.Document;
+
+import zk.rgw.alc.common.AccessLogDocument;
+import zk.rgw.alc.common.AccessLogStatisticsUtil;
+import zk.rgw.alc.common.LatencyHistogram;
+import zk.rgw.common.access.AccessLog;
+
+/**
+ * 某个api在某一分钟内、来自某个kafka分区的访问日志的部分统计，offset为已计入统计的最后一条消息的offset
+ */
+class MinuteStatistics {
+
+    private static final String OFFSET_FIELD = "offset";
+
+    private final long[] statusCounts = new long[5];
+
+    private long millisCost;
+
+    private long upFlow;
+
+    private long downFlow;
+
+    private final long[] latencyHistogram = new long[LatencyHistogram.BUCKET_COUNT];
+
+    private long offset = -1;
+
+    private boolean dirty;
+
+    static MinuteStatistics fromDocument(Document document) {
+        MinuteStatistics statistics = new MinuteStatistics();
+        if (Objects.isNull(document)) {
+            return statistics;
+        }
+        for (int i = 0; i < statistics.statusCounts.length; i++) {
+            statistics.statusCounts[i] = longValue(document.get(countField(i + 1)));
+        }
+        statistics.millisCost = longValue(document.get("millisCost"));
+        statistics.upFlow = longValue(document.get("upFlow"));
+        statistics.downFlow = longValue(document.get("downFlow"));
+        List<?> histogram = document.getList(AccessLogStatisticsUtil.LATENCY_HISTOGRAM_FIELD, Object.class);
+        if (Objects.nonNull(histogram)) {
+            for (int i = 0; i < Math.min(histogram.size(), statistics.latencyHistogram.length); i++) {
+                statistics.latencyHistogram[i] = longValue(histogram.get(i));
+            }
+        }
+        statistics.offset = longValue(document.get(OFFSET_FIELD), -1);
+        return statistics;
+    }
+
+    /**
+     * 同一分区的消息按offset递增处理，已计入的消息（重新消费或回退后再次poll到的）直接忽略
+     */
+    void accumulate(long recordOffset, AccessLogDocument document) {
+        if (recordOffset <= offset) {
+            return;
+        }
+        offset = recordOffset;
+        dirty = true;
+        // 被采样的日志代表sampleWeight个请求
+        long weight = Math.max(1, document.getSampleWeight());
+        AccessLog.ResponseInfo responseInfo = document.getResponseInfo();
+        if (Objects.nonNull(responseInfo)) {
+            int statusClass = responseInfo.getCode() / 100;
+            if (statusClass >= 1 && statusClass <= statusCounts.length) {
+                statusCounts[statusClass - 1] += weight;
+            }
+            downFlow += responseInfo.getBodySize() * weight;
+        }
+        if (Objects.nonNull(document.getRequestInfo())) {
+            upFlow += document.getRequestInfo().getBodySize() * weight;
+        }
+        millisCost += document.getMillisCost() * weight;
+        latencyHistogram[LatencyHistogram.bucketOf(document.getMillisCost())] += weight;
+    }
+
+    Document toDocument() {
+        Document document = new Document();
+        for (int i = 0; i < statusCounts.length; i++) {
+            document.append(countField(i + 1), statusCounts[i]);
+        }
+        List<Long> histogram = new ArrayList<>(latencyHistogram.length);
+        for (long count : latencyHistogram) {
+            histogram.add(count);
+        }
+        return document.append("millisCost", millisCost)
+                .append("upFlow", upFlow)
+                .append("downFlow", downFlow)
+                .append(AccessLogStatisticsUtil.LATENCY_HISTOGRAM_FIELD, histogram)
+                .append(OFFSET_FIELD, offset);
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void markFlushed() {
+        dirty = false;
+    }
+
+    static String countField(int statusClass) {
+        return "count" + statusClass + "xx";
+    }
+
+    private static long longValue(Object value) {
+        return longValue(value, 0);
+    }
+
+    private static long longValue(Object value, long defaultValue) {
+        return value instanceof Number number ? number.longValue() : defaultValue;
+    }
+
+}
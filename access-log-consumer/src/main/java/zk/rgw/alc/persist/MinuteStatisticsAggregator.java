@@ -0,0 +1,273 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.alc.persist;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import zk.rgw.alc.common.AccessLogDocument;
+import zk.rgw.alc.common.AccessLogStatisticsUtil;
+import zk.rgw.alc.common.LatencyHistogram;
+
+/**
+ * 消费时在内存中按(apiId, 分钟)预聚合访问日志，并写入AccessLogStatistics_MINUTES_{envId}，dashboard不必再扫描原始日志。
+ * <p>
+ * 每个统计文档在partitions字段下按kafka分区保存部分统计以及已计入的最后一个offset，写入时整体覆盖本分区的部分统计，
+ * 并在同一次单文档更新中重新计算顶层的汇总值，因此重复写入、回退重新消费、分区重新分配都不会重复计数。
+ * 只被所属的消费线程访问，非线程安全。
+ */
+@Slf4j
+class MinuteStatisticsAggregator {
+
+    private static final long MINUTE_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 比已消费到的最新分钟早这么久且已写入的统计从内存中移除，迟到的日志会从mongodb重新加载
+     */
+    private static final long RETAIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+    private static final BulkWriteOptions BULK_WRITE_OPTIONS = new BulkWriteOptions().ordered(false);
+
+    private static final Bson SUMMARY_STAGE = summaryStage();
+
+    private final MongoCollection<Document> collection;
+
+    private final Map<Key, MinuteStatistics> statisticsMap = new HashMap<>();
+
+    private long latestMinute = 0;
+
+    MinuteStatisticsAggregator(MongoCollection<Document> collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * @param documents 与consumerRecords的迭代顺序一一对应的解码结果，解码失败的位置为null
+     * @return 是否成功，从mongodb加载已有统计失败时返回false
+     */
+    boolean accumulate(ConsumerRecords<String, byte[]> consumerRecords, AccessLogDocument[] documents) {
+        Key[] keys = new Key[documents.length];
+        int index = 0;
+        for (ConsumerRecord<String, byte[]> consumerRecord : consumerRecords) {
+            AccessLogDocument document = documents[index];
+            if (Objects.nonNull(document)) {
+                long minute = document.getTimestampMillis().toEpochMilli() / MINUTE_IN_MILLIS * MINUTE_IN_MILLIS;
+                keys[index] = new Key(document.getApiId(), minute, consumerRecord.partition());
+                latestMinute = Math.max(latestMinute, minute);
+            }
+            index++;
+        }
+        try {
+            loadMissing(keys);
+        } catch (Exception exception) {
+            log.error("Failed to load access log statistics from mongodb.", exception);
+            return false;
+        }
+
+        index = 0;
+        for (ConsumerRecord<String, byte[]> consumerRecord : consumerRecords) {
+            if (Objects.nonNull(keys[index])) {
+                statisticsMap.get(keys[index]).accumulate(consumerRecord.offset(), documents[index]);
+            }
+            index++;
+        }
+        return true;
+    }
+
+    /**
+     * 把有变化的统计写入mongodb，必须在提交offset之前调用
+     *
+     * @return 是否全部写入成功，失败时统计保持待写入状态，由调用方回退offset后重试
+     */
+    boolean flush() {
+        List<WriteModel<Document>> writeModels = new ArrayList<>();
+        List<MinuteStatistics> flushing = new ArrayList<>();
+        statisticsMap.forEach((key, statistics) -> {
+            if (statistics.isDirty()) {
+                List<Bson> pipeline = List.of(
+                        new Document("$set", new Document(partitionField(key.partition()), new Document("$literal", statistics.toDocument()))),
+                        SUMMARY_STAGE
+                );
+                writeModels.add(new UpdateOneModel<>(Filters.eq("_id", key.toId()), pipeline, UPSERT));
+                flushing.add(statistics);
+            }
+        });
+        if (writeModels.isEmpty()) {
+            return true;
+        }
+
+        try {
+            Mono.from(collection.bulkWrite(writeModels, BULK_WRITE_OPTIONS)).block();
+        } catch (Exception exception) {
+            log.error("Failed to save {} access log statistics to mongodb.", writeModels.size(), exception);
+            return false;
+        }
+        flushing.forEach(MinuteStatistics::markFlushed);
+        evictExpired();
+        return true;
+    }
+
+    /**
+     * 被收回的分区可能由其他消费者继续统计，内存中的状态不再可信
+     */
+    void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        Set<Integer> revoked = new HashSet<>();
+        partitions.forEach(topicPartition -> revoked.add(topicPartition.partition()));
+        statisticsMap.keySet().removeIf(key -> revoked.contains(key.partition()));
+    }
+
+    private void loadMissing(Key[] keys) {
+        Set<Key> missing = new HashSet<>();
+        for (Key key : keys) {
+            if (Objects.nonNull(key) && !statisticsMap.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // 同一个统计文档的多个分区只查询一次
+        Map<Key, Set<Integer>> partitionsByMinute = new HashMap<>();
+        for (Key key : missing) {
+            partitionsByMinute.computeIfAbsent(new Key(key.apiId(), key.minute(), -1), ignore -> new HashSet<>()).add(key.partition());
+        }
+        List<Document> ids = new ArrayList<>(partitionsByMinute.size());
+        Set<String> fields = new HashSet<>();
+        partitionsByMinute.forEach((minuteKey, partitions) -> {
+            ids.add(minuteKey.toId());
+            partitions.forEach(partition -> fields.add(partitionField(partition)));
+        });
+
+        List<Document> existing = Flux.from(
+                collection.find(Filters.in("_id", ids)).projection(Projections.include(new ArrayList<>(fields)))
+        ).collectList().block();
+
+        if (Objects.nonNull(existing)) {
+            for (Document document : existing) {
+                Document id = document.get("_id", Document.class);
+                Document partitions = document.get(AccessLogStatisticsUtil.PARTITIONS_FIELD, Document.class);
+                if (Objects.isNull(id) || Objects.isNull(partitions)) {
+                    continue;
+                }
+                Key minuteKey = Key.fromId(id);
+                for (Integer partition : partitionsByMinute.getOrDefault(minuteKey, Set.of())) {
+                    Document partial = partitions.get(String.valueOf(partition), Document.class);
+                    if (Objects.nonNull(partial)) {
+                        statisticsMap.put(new Key(minuteKey.apiId(), minuteKey.minute(), partition), MinuteStatistics.fromDocument(partial));
+                    }
+                }
+            }
+        }
+        for (Key key : missing) {
+            statisticsMap.computeIfAbsent(key, ignore -> new MinuteStatistics());
+        }
+    }
+
+    private void evictExpired() {
+        long threshold = latestMinute - RETAIN_MILLIS;
+        Iterator<Map.Entry<Key, MinuteStatistics>> iterator = statisticsMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, MinuteStatistics> entry = iterator.next();
+            if (entry.getKey().minute() < threshold && !entry.getValue().isDirty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String partitionField(int partition) {
+        return AccessLogStatisticsUtil.PARTITIONS_FIELD + "." + partition;
+    }
+
+    /**
+     * 顶层的汇总值由各分区的部分统计求和得到，并标记需要重新累加到总量统计
+     */
+    private static Bson summaryStage() {
+        Document partitionsArray = new Document("$objectToArray", "$" + AccessLogStatisticsUtil.PARTITIONS_FIELD);
+        Document summary = new Document();
+        List<String> fields = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            fields.add(MinuteStatistics.countField(i));
+        }
+        fields.addAll(List.of("millisCost", "upFlow", "downFlow"));
+        for (String field : fields) {
+            summary.append(field, new Document("$sum", new Document("$map", new Document("input", partitionsArray).append("in", "$$this.v." + field))));
+        }
+
+        Document bucketSum = new Document(
+                "$sum",
+                new Document(
+                        "$map",
+                        new Document("input", partitionsArray).append(
+                                "in", new Document("$arrayElemAt", List.of("$$this.v." + AccessLogStatisticsUtil.LATENCY_HISTOGRAM_FIELD, "$$bucket"))
+                        )
+                )
+        );
+        Document histogram = new Document(
+                "$map",
+                new Document("input", new Document("$range", List.of(0, LatencyHistogram.BUCKET_COUNT))).append("as", "bucket").append("in", bucketSum)
+        );
+        summary.append(AccessLogStatisticsUtil.LATENCY_HISTOGRAM_FIELD, histogram);
+        summary.append(AccessLogStatisticsUtil.TOTAL_DIRTY_FIELD, true);
+        return new Document("$set", summary);
+    }
+
+    private record Key(String apiId, long minute, int partition) {
+
+        /**
+         * 与dashboard中统计文档的_id结构一致，字段顺序不能改变
+         */
+        Document toId() {
+            return new Document("apiId", apiId).append("timestampMillis", Instant.ofEpochMilli(minute));
+        }
+
+        static Key fromId(Document id) {
+            Object timestamp = id.get("timestampMillis");
+            long minute = timestamp instanceof Date date ? date.getTime() : 0;
+            return new Key(id.getString("apiId"), minute, -1);
+        }
+
+    }
+
+}
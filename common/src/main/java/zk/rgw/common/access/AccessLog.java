@@ -15,12 +15,15 @@
  */
 package zk.rgw.common.access;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -48,6 +51,11 @@ public class AccessLog {
 
     private Map<String, Object> extraInfo;
 
+    /**
+     * 采样权重，即这条日志代表的请求数，统计时按此加权。未开启采样以及始终记录的错误、慢调用为1
+     */
+    private int sampleWeight = 1;
+
     public void addTag(String tag) {
         if (Objects.isNull(tag)) {
             tags = new HashSet<>();
@@ -71,6 +79,16 @@ public class AccessLog {
         private String body;
         private long bodySize;
         private boolean bodyBase64;
+
+        /**
+         * 网关采集的原始body，设置后优先于body，编码时直接写入，避免创建String
+         */
+        @JsonIgnore
+        private byte[] rawBody;
+
+        public String getBody() {
+            return Objects.isNull(rawBody) ? body : decodeRawBody(rawBody, bodyBase64);
+        }
     }
 
     @Getter
@@ -81,6 +99,20 @@ public class AccessLog {
         private String body;
         private long bodySize;
         private boolean bodyBase64;
+
+        /**
+         * 网关采集的原始body，设置后优先于body，编码时直接写入，避免创建String
+         */
+        @JsonIgnore
+        private byte[] rawBody;
+
+        public String getBody() {
+            return Objects.isNull(rawBody) ? body : decodeRawBody(rawBody, bodyBase64);
+        }
+    }
+
+    private static String decodeRawBody(byte[] rawBody, boolean base64) {
+        return base64 ? Base64.getEncoder().encodeToString(rawBody) : new String(rawBody, StandardCharsets.UTF_8);
     }
 
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.common.access;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import zk.rgw.common.util.JsonUtil;
+
+/**
+ * AccessLog的紧凑二进制编码，用于网关写入Kafka和access-log-consumer读取。
+ * <p>
+ * 格式：第一个字节是版本号，之后按固定的字段顺序依次写入各字段，不写字段名。整数使用变长编码，字符串写入UTF-8长度加1（0表示null）后跟UTF-8字节，
+ * 嵌套对象先写一个字节表示是否存在。extraInfo的值类型不固定，以Json字符串写入。
+ * 新增字段时只能追加在末尾并提升版本号，解码时按版本号决定读取哪些字段。
+ * 版本2在末尾追加了sampleWeight，权重为1时仍然按版本1编码，未开启采样时旧版本的消费端可以继续解码。
+ * <p>
+ * Json编码的第一个字节是'{'，与版本号不冲突，因此可以用{@link #isBinary(byte[])}兼容旧的Json格式的消息。
+ */
+public final class AccessLogCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    public static final byte VERSION_2 = 2;
+
+    private AccessLogCodec() {
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] == VERSION_1 || bytes[0] == VERSION_2);
+    }
+
+    public static AccessLog decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        byte version = reader.readByte();
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IllegalArgumentException("Unsupported access log encoding version: " + version);
+        }
+        AccessLog accessLog = new AccessLog();
+        accessLog.setRequestId(reader.readString());
+        accessLog.setReqTimestamp(reader.readVarLong());
+        accessLog.setRespTimestamp(reader.readVarLong());
+        accessLog.setMillisCost((int) reader.readVarLong());
+        accessLog.setApiId(reader.readString());
+
+        if (reader.readBoolean()) {
+            AccessLog.ClientInfo clientInfo = new AccessLog.ClientInfo();
+            clientInfo.setIp(reader.readString());
+            clientInfo.setAppId(reader.readString());
+            accessLog.setClientInfo(clientInfo);
+        }
+
+        if (reader.readBoolean()) {
+            AccessLog.RequestInfo requestInfo = new AccessLog.RequestInfo();
+            requestInfo.setUri(reader.readString());
+            requestInfo.setMethod(reader.readString());
+            requestInfo.setHeaders(reader.readHeaders());
+            requestInfo.setBody(reader.readString());
+            requestInfo.setBodySize(reader.readVarLong());
+            requestInfo.setBodyBase64(reader.readBoolean());
+            accessLog.setRequestInfo(requestInfo);
+        }
+
+        if (reader.readBoolean()) {
+            AccessLog.ResponseInfo responseInfo = new AccessLog.ResponseInfo();
+            responseInfo.setCode((int) reader.readVarLong());
+            responseInfo.setHeaders(reader.readHeaders());
+            responseInfo.setBody(reader.readString());
+            responseInfo.setBodySize(reader.readVarLong());
+            responseInfo.setBodyBase64(reader.readBoolean());
+            accessLog.setResponseInfo(responseInfo);
+        }
+
+        int tagCount = (int) reader.readVarLong() - 1;
+        if (tagCount >= 0) {
+            Set<String> tags = new HashSet<>(Math.max(4, tagCount * 2));
+            for (int i = 0; i < tagCount; ++i) {
+                tags.add(reader.readString());
+            }
+            accessLog.setTags(tags);
+        }
+
+        String extraInfoJson = reader.readString();
+        if (Objects.nonNull(extraInfoJson)) {
+            try {
+                accessLog.setExtraInfo(JsonUtil.readValue(extraInfoJson, Map.class));
+            } catch (JsonProcessingException exception) {
+                throw new IllegalArgumentException("Invalid extra info of access log", exception);
+            }
+        }
+
+        if (version >= VERSION_2) {
+            accessLog.setSampleWeight((int) reader.readVarLong());
+        }
+        return accessLog;
+    }
+
+    /**
+     * 编码器内部的缓冲区在多次编码之间复用，字符串直接按UTF-8写入缓冲区，不产生中间的字节数组。非线程安全。
+     */
+    public static final class Encoder {
+
+        private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+        private byte[] buffer;
+
+        private int position;
+
+        public Encoder(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        public byte[] encode(AccessLog accessLog) {
+            position = 0;
+            boolean weighted = accessLog.getSampleWeight() != 1;
+            writeByte(weighted ? VERSION_2 : VERSION_1);
+            writeString(accessLog.getRequestId());
+            writeVarLong(accessLog.getReqTimestamp());
+            writeVarLong(accessLog.getRespTimestamp());
+            writeVarLong(accessLog.getMillisCost());
+            writeString(accessLog.getApiId());
+
+            AccessLog.ClientInfo clientInfo = accessLog.getClientInfo();
+            writeBoolean(Objects.nonNull(clientInfo));
+            if (Objects.nonNull(clientInfo)) {
+                writeString(clientInfo.getIp());
+                writeString(clientInfo.getAppId());
+            }
+
+            AccessLog.RequestInfo requestInfo = accessLog.getRequestInfo();
+            writeBoolean(Objects.nonNull(requestInfo));
+            if (Objects.nonNull(requestInfo)) {
+                writeString(requestInfo.getUri());
+                writeString(requestInfo.getMethod());
+                writeHeaders(requestInfo.getHeaders());
+                writeBody(requestInfo.getRawBody(), requestInfo.isBodyBase64(), requestInfo.getBody());
+                writeVarLong(requestInfo.getBodySize());
+                writeBoolean(requestInfo.isBodyBase64());
+            }
+
+            AccessLog.ResponseInfo responseInfo = accessLog.getResponseInfo();
+            writeBoolean(Objects.nonNull(responseInfo));
+            if (Objects.nonNull(responseInfo)) {
+                writeVarLong(responseInfo.getCode());
+                writeHeaders(responseInfo.getHeaders());
+                writeBody(responseInfo.getRawBody(), responseInfo.isBodyBase64(), responseInfo.getBody());
+                writeVarLong(responseInfo.getBodySize());
+                writeBoolean(responseInfo.isBodyBase64());
+            }
+
+            Set<String> tags = accessLog.getTags();
+            if (Objects.isNull(tags)) {
+                writeVarLong(0);
+            } else {
+                writeVarLong(tags.size() + 1L);
+                tags.forEach(this::writeString);
+            }
+
+            Map<String, Object> extraInfo = accessLog.getExtraInfo();
+            if (Objects.isNull(extraInfo) || extraInfo.isEmpty()) {
+                writeString(null);
+            } else {
+                try {
+                    writeString(JsonUtil.toJson(extraInfo));
+                } catch (JsonProcessingException exception) {
+                    throw new IllegalArgumentException("Failed to serialize extra info of access log", exception);
+                }
+            }
+
+            if (weighted) {
+                writeVarLong(accessLog.getSampleWeight());
+            }
+
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            int required = position + extra;
+            if (required > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+            }
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeBoolean(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        /**
+         * 无符号变长编码，负数会占用10个字节，AccessLog中的整数都不是负数
+         */
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            if (Objects.isNull(value)) {
+                writeVarLong(0);
+                return;
+            }
+            int length = value.length();
+            int utf8Length = utf8Length(value);
+            writeVarLong(utf8Length + 1L);
+            ensureCapacity(utf8Length);
+            if (utf8Length == length) {
+                for (int i = 0; i < length; ++i) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+                return;
+            }
+            for (int i = 0; i < length; ++i) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 不成对的代理字符，与String.getBytes(UTF_8)一致替换为'?'
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        /**
+         * 原始body已经是UTF-8字节时直接拷贝，否则直接Base64编码到缓冲区中，与解码后得到的字符串一致
+         */
+        private void writeBody(byte[] rawBody, boolean base64, String body) {
+            if (Objects.isNull(rawBody)) {
+                writeString(body);
+                return;
+            }
+            if (!base64) {
+                writeVarLong(rawBody.length + 1L);
+                ensureCapacity(rawBody.length);
+                System.arraycopy(rawBody, 0, buffer, position, rawBody.length);
+                position += rawBody.length;
+                return;
+            }
+            int encodedLength = 4 * ((rawBody.length + 2) / 3);
+            writeVarLong(encodedLength + 1L);
+            ensureCapacity(encodedLength);
+            int i = 0;
+            for (; i + 2 < rawBody.length; i += 3) {
+                int bits = (rawBody[i] & 0xFF) << 16 | (rawBody[i + 1] & 0xFF) << 8 | (rawBody[i + 2] & 0xFF);
+                buffer[position++] = BASE64_ALPHABET[bits >>> 18];
+                buffer[position++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+                buffer[position++] = BASE64_ALPHABET[(bits >>> 6) & 0x3F];
+                buffer[position++] = BASE64_ALPHABET[bits & 0x3F];
+            }
+            int remaining = rawBody.length - i;
+            if (remaining > 0) {
+                int bits = (rawBody[i] & 0xFF) << 16 | (remaining == 2 ? (rawBody[i + 1] & 0xFF) << 8 : 0);
+                buffer[position++] = BASE64_ALPHABET[bits >>> 18];
+                buffer[position++] = BASE64_ALPHABET[(bits >>> 12) & 0x3F];
+                buffer[position++] = remaining == 2 ? BASE64_ALPHABET[(bits >>> 6) & 0x3F] : (byte) '=';
+                buffer[position++] = '=';
+            }
+        }
+
+        private static int utf8Length(String value) {
+            int length = value.length();
+            int utf8Length = length;
+            for (int i = 0; i < length; ++i) {
+                char c = value.charAt(i);
+                if (c >= 0x800) {
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        // 一对代理字符共4个字节，两个char已经计了2个
+                        utf8Length += 2;
+                        ++i;
+                    } else if (!Character.isSurrogate(c)) {
+                        utf8Length += 2;
+                    }
+                } else if (c >= 0x80) {
+                    utf8Length += 1;
+                }
+            }
+            return utf8Length;
+        }
+
+        private void writeHeaders(Map<String, List<String>> headers) {
+            if (Objects.isNull(headers)) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(headers.size() + 1L);
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                writeString(entry.getKey());
+                List<String> values = entry.getValue();
+                writeVarLong(Objects.isNull(values) ? 0 : values.size());
+                if (Objects.nonNull(values)) {
+                    values.forEach(this::writeString);
+                }
+            }
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated access log data");
+            }
+            return bytes[position++];
+        }
+
+        private boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable length integer");
+        }
+
+        private String readString() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (position + length > bytes.length) {
+                throw new IllegalArgumentException("Truncated access log data");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private Map<String, List<String>> readHeaders() {
+            int size = (int) readVarLong() - 1;
+            if (size < 0) {
+                return null;
+            }
+            Map<String, List<String>> headers = new HashMap<>(Math.max(4, size * 2));
+            for (int i = 0; i < size; ++i) {
+                String name = readString();
+                int valueCount = (int) readVarLong();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; ++j) {
+                    values.add(readString());
+                }
+                headers.put(name, values);
+            }
+            return headers;
+        }
+
+    }
+
+}
@@ -33,6 +33,31 @@ public class AccessLogConf {
 
     private long bodyLimit = BODY_LIMIT_MAX;
 
+    /**
+     * 采样率，取值[0, 1]，1表示记录所有请求。被采样丢弃的请求不收集body，被记录的请求带有采样权重，统计时按权重还原请求数
+     */
+    private double sampleRate = 1.0D;
+
+    /**
+     * 按requestId的哈希值采样，否则随机采样
+     */
+    private boolean sampleByRequestId = false;
+
+    /**
+     * 响应码大于等于500的请求不受采样影响，始终记录
+     */
+    private boolean alwaysLogErrors = true;
+
+    /**
+     * 耗时大于等于该值（毫秒）的请求不受采样影响，始终记录，0表示不开启
+     */
+    private long alwaysLogSlowerThanMillis = 0;
+
+    /**
+     * 访问日志写入队列积压时自动降低采样率
+     */
+    private boolean adaptiveSampling = false;
+
     public void setBodyLimit(long bodyLimit) {
         if (bodyLimit <= 0) {
             throw new IllegalArgumentException("body limit can not must bigger than 0.");
@@ -40,4 +65,18 @@ public class AccessLogConf {
         this.bodyLimit = Math.min(bodyLimit, BODY_LIMIT_MAX);
     }
 
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sample rate must be in [0, 1].");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public void setAlwaysLogSlowerThanMillis(long alwaysLogSlowerThanMillis) {
+        if (alwaysLogSlowerThanMillis < 0) {
+            throw new IllegalArgumentException("slow threshold can not be negative.");
+        }
+        this.alwaysLogSlowerThanMillis = alwaysLogSlowerThanMillis;
+    }
+
 }
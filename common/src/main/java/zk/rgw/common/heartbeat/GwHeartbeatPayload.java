@@ -27,7 +27,10 @@ public class GwHeartbeatPayload {
      */
     private String nodeId;
 
-    private SyncState syncState = new SyncState();
+    /**
+     * 网关中心跳线程和事件线程都会整体替换同步状态，其他线程读取
+     */
+    private volatile SyncState syncState = new SyncState();
 
     private JvmMetrics jvmMetrics = new JvmMetrics();
 
@@ -19,6 +19,7 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+import zk.rgw.common.definition.IdRouteDefinition;
 import zk.rgw.common.event.impl.AppSubRouteEvent;
 import zk.rgw.common.event.impl.EnvironmentChangedEvent;
 
@@ -29,6 +30,11 @@ public class Notification {
 
     private boolean apiUpdated;
 
+    /**
+     * 通过推送通道下发时携带发布或下线的API，gateway按seqNum连续应用，出现缺口时回退到拉取
+     */
+    private IdRouteDefinition routeDefinition;
+
     private boolean subscriptionUpdated;
 
     private boolean environmentUpdated;
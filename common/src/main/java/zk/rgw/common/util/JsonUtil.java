@@ -26,11 +26,13 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 public class JsonUtil {
@@ -65,6 +67,10 @@ public class JsonUtil {
         return toJson(object, false);
     }
 
+    public static byte[] toJsonBytes(Object object) throws JsonProcessingException {
+        return OM.writeValueAsBytes(object);
+    }
+
     public static <T> T readValue(String content, Class<T> clazz) throws JsonProcessingException {
         return OM.readValue(content, clazz);
     }
@@ -73,6 +79,22 @@ public class JsonUtil {
         return OM.readValue(inputStream, clazz);
     }
 
+    /**
+     * 反序列化由非阻塞解析器缓存下来的一段token
+     */
+    public static <T> T readValue(TokenBuffer tokenBuffer, Class<T> clazz) throws IOException {
+        try (JsonParser parser = tokenBuffer.asParser(OM)) {
+            return OM.readValue(parser, clazz);
+        }
+    }
+
+    /**
+     * 创建可以分段输入字节的非阻塞解析器，用于边接收边解析
+     */
+    public static JsonParser createNonBlockingParser() throws IOException {
+        return OM.getFactory().createNonBlockingByteArrayParser();
+    }
+
     @SuppressWarnings("unchecked")
     public static Map<Object, Object> readValue(String content) throws JsonProcessingException {
         return OM.readValue(content, HashMap.class);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.common.access;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AccessLogCodecTest {
+
+    @Test
+    void testRoundTrip() {
+        AccessLog accessLog = new AccessLog();
+        accessLog.setRequestId("req-1");
+        accessLog.setReqTimestamp(1700000000000L);
+        accessLog.setRespTimestamp(1700000000123L);
+        accessLog.setMillisCost(123);
+        accessLog.setApiId("api-1");
+        AccessLog.ClientInfo clientInfo = new AccessLog.ClientInfo();
+        clientInfo.setIp("10.0.0.1");
+        accessLog.setClientInfo(clientInfo);
+        AccessLog.RequestInfo requestInfo = new AccessLog.RequestInfo();
+        requestInfo.setUri("/users?name=张三");
+        requestInfo.setMethod("GET");
+        requestInfo.setHeaders(Map.of("accept", List.of("a", "b")));
+        requestInfo.setBody("emoji 😀 中文");
+        requestInfo.setBodySize(20);
+        accessLog.setRequestInfo(requestInfo);
+        AccessLog.ResponseInfo responseInfo = new AccessLog.ResponseInfo();
+        responseInfo.setCode(200);
+        responseInfo.setBody("ok");
+        responseInfo.setBodySize(2);
+        responseInfo.setBodyBase64(true);
+        accessLog.setResponseInfo(responseInfo);
+        accessLog.setTags(Set.of("限流", "tag"));
+        accessLog.setExtraInfo(Map.of("k", "v"));
+
+        AccessLogCodec.Encoder encoder = new AccessLogCodec.Encoder(16);
+        byte[] bytes = encoder.encode(accessLog);
+        Assertions.assertTrue(AccessLogCodec.isBinary(bytes));
+        AccessLog decoded = AccessLogCodec.decode(bytes);
+
+        Assertions.assertEquals("req-1", decoded.getRequestId());
+        Assertions.assertEquals(1700000000123L, decoded.getRespTimestamp());
+        Assertions.assertEquals(123, decoded.getMillisCost());
+        Assertions.assertEquals("10.0.0.1", decoded.getClientInfo().getIp());
+        Assertions.assertNull(decoded.getClientInfo().getAppId());
+        Assertions.assertEquals("/users?name=张三", decoded.getRequestInfo().getUri());
+        Assertions.assertEquals(List.of("a", "b"), decoded.getRequestInfo().getHeaders().get("accept"));
+        Assertions.assertEquals(requestInfo.getBody(), decoded.getRequestInfo().getBody());
+        Assertions.assertNull(decoded.getResponseInfo().getHeaders());
+        Assertions.assertTrue(decoded.getResponseInfo().isBodyBase64());
+        Assertions.assertEquals(Set.of("限流", "tag"), decoded.getTags());
+        Assertions.assertEquals("v", decoded.getExtraInfo().get("k"));
+
+        // 编码器复用缓冲区，不影响之前的结果
+        AccessLog other = new AccessLog();
+        other.setApiId("api-2");
+        AccessLog decodedOther = AccessLogCodec.decode(encoder.encode(other));
+        Assertions.assertEquals("api-2", decodedOther.getApiId());
+        Assertions.assertNull(decodedOther.getRequestInfo());
+        Assertions.assertEquals("req-1", AccessLogCodec.decode(bytes).getRequestId());
+    }
+
+    @Test
+    void testSampleWeight() {
+        AccessLogCodec.Encoder encoder = new AccessLogCodec.Encoder(16);
+        AccessLog accessLog = new AccessLog();
+        accessLog.setApiId("api-1");
+        byte[] bytes = encoder.encode(accessLog);
+        // 权重为1时仍然按版本1编码
+        Assertions.assertEquals(AccessLogCodec.VERSION_1, bytes[0]);
+        Assertions.assertEquals(1, AccessLogCodec.decode(bytes).getSampleWeight());
+
+        accessLog.setSampleWeight(300);
+        bytes = encoder.encode(accessLog);
+        Assertions.assertEquals(AccessLogCodec.VERSION_2, bytes[0]);
+        Assertions.assertTrue(AccessLogCodec.isBinary(bytes));
+        AccessLog decoded = AccessLogCodec.decode(bytes);
+        Assertions.assertEquals(300, decoded.getSampleWeight());
+        Assertions.assertEquals("api-1", decoded.getApiId());
+    }
+
+    @Test
+    void testRawBody() {
+        byte[] binary = new byte[] { 0, (byte) 0xFF, (byte) 0xFE, 1, 2 };
+        byte[] text = "中文 body".getBytes(StandardCharsets.UTF_8);
+        for (int length = 0; length <= binary.length; ++length) {
+            AccessLog accessLog = new AccessLog();
+            AccessLog.RequestInfo requestInfo = new AccessLog.RequestInfo();
+            requestInfo.setRawBody(text);
+            accessLog.setRequestInfo(requestInfo);
+            AccessLog.ResponseInfo responseInfo = new AccessLog.ResponseInfo();
+            responseInfo.setRawBody(Arrays.copyOf(binary, length));
+            responseInfo.setBodyBase64(true);
+            accessLog.setResponseInfo(responseInfo);
+
+            AccessLog decoded = AccessLogCodec.decode(new AccessLogCodec.Encoder(16).encode(accessLog));
+            Assertions.assertEquals("中文 body", decoded.getRequestInfo().getBody());
+            Assertions.assertEquals(Base64.getEncoder().encodeToString(Arrays.copyOf(binary, length)), decoded.getResponseInfo().getBody());
+            Assertions.assertEquals(responseInfo.getBody(), decoded.getResponseInfo().getBody());
+        }
+    }
+
+}
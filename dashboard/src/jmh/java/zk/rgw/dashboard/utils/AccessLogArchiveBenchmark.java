@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.dashboard.utils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BsonField;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import zk.rgw.alc.common.AccessLogDocument;
+import zk.rgw.alc.common.AccessLogDocumentUtil;
+import zk.rgw.common.access.AccessLog;
+
+/**
+ * 在本地mongod中对100万条访问日志做一次分钟级归档，对比JavaScript $accumulator与原生聚合操作符统计响应码的耗时，
+ * 其中原生聚合操作符的管道还同时计算了耗时直方图。
+ * <p>
+ * 需要一个可访问的mongod，连接串通过系统属性rgw.benchmark.mongodb指定，默认为mongodb://127.0.0.1:27017。
+ * 数据写入rgw_benchmark库，已存在足够的数据时不再重复写入。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class AccessLogArchiveBenchmark {
+
+    private static final int DOCUMENT_COUNT = 1_000_000;
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    private static final int API_COUNT = 100;
+
+    private static final int[] RESPONSE_CODES = { 200, 200, 200, 201, 204, 250, 301, 304, 404, 500 };
+
+    private static final String ENV_ID = "benchmark";
+
+    private static final Instant BEGIN = Instant.parse("2023-01-01T00:00:00Z");
+
+    private static final Instant END = BEGIN.plus(Duration.ofHours(1));
+
+    private MongoClient mongoClient;
+
+    private MongoCollection<AccessLogDocument> accessLogCollection;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mongoClient = MongoClients.create(System.getProperty("rgw.benchmark.mongodb", "mongodb://127.0.0.1:27017"));
+        MongoDatabase database = mongoClient.getDatabase("rgw_benchmark");
+        accessLogCollection = AccessLogDocumentUtil.getAccessLogCollectionForEnv(database, ENV_ID).block();
+
+        Long existing = Mono.from(accessLogCollection.countDocuments()).block();
+        if (Objects.nonNull(existing) && existing >= DOCUMENT_COUNT) {
+            return;
+        }
+        Mono.from(accessLogCollection.deleteMany(Filters.empty())).block();
+
+        long stepMicros = TimeUnit.HOURS.toMicros(1) / DOCUMENT_COUNT;
+        List<AccessLogDocument> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            batch.add(accessLog(i, BEGIN.toEpochMilli() + i * stepMicros / 1000));
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                Mono.from(accessLogCollection.insertMany(batch)).block();
+                batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            Mono.from(accessLogCollection.insertMany(batch)).block();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public void jsAccumulator() {
+        List<BsonField> accumulators = new ArrayList<>();
+        for (int bigCode = 1; bigCode <= 5; bigCode++) {
+            accumulators.add(jsAccumulatorForRespCode(bigCode));
+        }
+        accumulators.add(Accumulators.sum("millisCost", "$millisCost"));
+        accumulators.add(Accumulators.sum("upFlow", "$requestInfo.bodySize"));
+        accumulators.add(Accumulators.sum("downFlow", "$responseInfo.bodySize"));
+        Bson group = Aggregates.group(
+                Document.parse("{\"apiId\": \"$apiId\", \"timestampMillis\": {\"$dateTrunc\": {\"date\": \"$timestampMillis\", \"unit\": \"minute\"}}}"),
+                accumulators
+        );
+        archive(List.of(group), "js");
+    }
+
+    @Benchmark
+    public void nativeOperators() {
+        archive(AccessLogStatisticsHelper.AGG_ARCHIVE_MINUTE, "native");
+    }
+
+    private void archive(List<Bson> groupStages, String suffix) {
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(Filters.and(Filters.gte("timestampMillis", BEGIN), Filters.lt("timestampMillis", END))));
+        pipeline.addAll(groupStages);
+        pipeline.add(Aggregates.merge("AccessLogStatistics_MINUTES_" + ENV_ID + "_" + suffix, AccessLogStatisticsHelper.MERGE_OPTIONS));
+        Mono.from(accessLogCollection.withDocumentClass(Document.class).aggregate(pipeline).toCollection()).block();
+    }
+
+    /**
+     * 优化前的实现
+     */
+    private static BsonField jsAccumulatorForRespCode(int bigCode) {
+        String accumulateFunc = String.format(
+                "function (state, code) { if (Math.round(code / 100) == %d) { return { count: state.count + 1 } } else { return state } }",
+                bigCode
+        );
+        return Accumulators.accumulator(
+                "count" + bigCode + "xx",
+                "function () { return { count: 0 } }",
+                null,
+                accumulateFunc,
+                List.of("$responseInfo.code"),
+                "function (state1, state2) { return { count: state1.count + state2.count } }",
+                "function (state) { return state.count }",
+                "js"
+        );
+    }
+
+    private static AccessLogDocument accessLog(int index, long timestampMillis) {
+        AccessLog accessLog = new AccessLog();
+        accessLog.setRequestId(String.valueOf(index));
+        accessLog.setApiId("api-" + index % API_COUNT);
+        accessLog.setReqTimestamp(timestampMillis);
+        accessLog.setRespTimestamp(timestampMillis + index % 200);
+        accessLog.setMillisCost(index % 200);
+
+        AccessLog.RequestInfo requestInfo = new AccessLog.RequestInfo();
+        requestInfo.setBodySize(index % 1024);
+        accessLog.setRequestInfo(requestInfo);
+
+        AccessLog.ResponseInfo responseInfo = new AccessLog.ResponseInfo();
+        responseInfo.setCode(RESPONSE_CODES[index % RESPONSE_CODES.length]);
+        responseInfo.setBodySize(index % 4096);
+        accessLog.setResponseInfo(responseInfo);
+        return AccessLogDocumentUtil.convertFromAccessLog(accessLog);
+    }
+
+}
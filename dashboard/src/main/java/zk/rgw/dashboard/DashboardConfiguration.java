@@ -57,6 +57,27 @@ public class DashboardConfiguration extends ServerConfiguration {
     @CommandLine.Option(names = "--jwt.expire.seconds", description = "Jwt expire time in seconds.")
     private int jwtExpireSeconds = 60 * 60 * 24;
 
+    @CommandLine.Option(
+            names = "--access.log.statistics.pre.aggregated",
+            description = "Whether per-minute access log statistics are aggregated by access-log-consumer, if true raw access logs are not archived by minutes."
+    )
+    private boolean accessLogStatisticsPreAggregated = true;
+
+    @CommandLine.Option(
+            names = "--access.log.archive.late.window.minutes",
+            description = "Access logs arriving within this many minutes after their minute was archived are re-aggregated."
+    )
+    private int accessLogArchiveLateWindowMinutes = 60;
+
+    @CommandLine.Option(
+            names = "--access.log.archive.max.catch.up.hours",
+            description = "Max hours of missed archive windows to catch up after the dashboard was down, older windows are skipped."
+    )
+    private int accessLogArchiveMaxCatchUpHours = 48;
+
+    @CommandLine.Option(names = "--access.log.archive.parallelism", description = "Max concurrent archive batches for one environment.")
+    private int accessLogArchiveParallelism = 4;
+
     public DashboardConfiguration() {
         this.confFile = DEFAULT_CONF_FILE;
         this.serverPort = DEFAULT_PORT;
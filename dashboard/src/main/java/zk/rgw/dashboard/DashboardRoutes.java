@@ -16,18 +16,32 @@
 
 package zk.rgw.dashboard;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import reactor.core.publisher.Flux;
 
 import zk.rgw.dashboard.framework.filter.auth.JwtAuthenticationFilter;
 import zk.rgw.dashboard.framework.filter.mvc.ControllerMethodInvokeFilter;
+import zk.rgw.dashboard.global.GlobalSingletons;
+import zk.rgw.dashboard.web.event.stream.ConfigStreamHub;
+import zk.rgw.dashboard.web.event.stream.GatewayConfigStreamEndpoint;
+import zk.rgw.dashboard.web.sync.GatewayRouteSyncEndpoint;
 import zk.rgw.http.path.PathUtil;
 import zk.rgw.http.route.Route;
 import zk.rgw.http.route.locator.RouteLocator;
+import zk.rgw.plugin.api.filter.Filter;
 
 public class DashboardRoutes implements RouteLocator {
 
+    @SuppressWarnings("java:S1075")
+    private static final String CONFIG_STREAM_PATH = "/gateway/_stream";
+
+    @SuppressWarnings("java:S1075")
+    private static final String ROUTE_SYNC_STREAM_PATH = "/gateway/_sync-stream";
+
     private static final List<String> NO_NEED_LOGIN_PATHS = List.of("/user/_login", "/gateway/**");
 
     private final String apiContextPath;
@@ -36,6 +50,8 @@ public class DashboardRoutes implements RouteLocator {
 
     private final Flux<Route> internalRoutes;
 
+    private final Map<String, Flux<Route>> streamingRoutes = new HashMap<>();
+
     public DashboardRoutes(String apiContextPath) {
         this.apiContextPath = PathUtil.normalize(apiContextPath);
         this.apiContextPathWithEndSlash = this.apiContextPath + PathUtil.SLASH;
@@ -53,11 +69,28 @@ public class DashboardRoutes implements RouteLocator {
                 )
         );
         this.internalRoutes = Flux.just(route);
+
+        // 推送通道和分页同步的响应都是流式写出的，不能由Controller聚合后再返回，各自单独使用一个路由
+        addStreamingRoute("__dashboard_config_stream", CONFIG_STREAM_PATH, new GatewayConfigStreamEndpoint(GlobalSingletons.get(ConfigStreamHub.class)));
+        addStreamingRoute("__dashboard_route_sync_stream", ROUTE_SYNC_STREAM_PATH, new GatewayRouteSyncEndpoint());
+    }
+
+    private void addStreamingRoute(String id, String path, Filter endpoint) {
+        String fullPath = this.apiContextPath + path;
+        Route route = new Route();
+        route.setId(id);
+        route.setPath(fullPath);
+        route.setFilters(List.of(endpoint));
+        streamingRoutes.put(fullPath, Flux.just(route));
     }
 
     @Override
     public Flux<Route> getRoutes(String path) {
         String normalizePath = PathUtil.normalize(path);
+        Flux<Route> streamingRoute = streamingRoutes.get(normalizePath);
+        if (Objects.nonNull(streamingRoute)) {
+            return streamingRoute;
+        }
         if (normalizePath.startsWith(apiContextPathWithEndSlash) || normalizePath.equals(apiContextPath)) {
             return internalRoutes;
         }
@@ -92,7 +92,7 @@ public class DashboardServer extends ReactorHttpServer {
                 configuration.getRgwHome(), configuration.getConfFile(),
                 host, port
         );
-        AccessLogArchiveScheduler accessLogArchiveScheduler = new AccessLogArchiveScheduler();
+        AccessLogArchiveScheduler accessLogArchiveScheduler = new AccessLogArchiveScheduler(configuration);
         lifeCycles.add(accessLogArchiveScheduler);
         accessLogArchiveScheduler.start();
     }
@@ -22,6 +22,7 @@ import zk.rgw.common.event.EventPublisher;
 import zk.rgw.common.event.EventPublisherImpl;
 import zk.rgw.common.event.RgwEvent;
 import zk.rgw.dashboard.web.event.listener.DashboardEventListener;
+import zk.rgw.dashboard.web.event.stream.ConfigStreamHub;
 
 public class GlobalSingletons {
 
@@ -31,8 +32,11 @@ public class GlobalSingletons {
     private static final Map<Class<?>, Object> INSTANCES = new HashMap<>();
 
     static {
+        ConfigStreamHub configStreamHub = new ConfigStreamHub();
+        INSTANCES.put(ConfigStreamHub.class, configStreamHub);
+
         EventPublisher<RgwEvent> eventPublisher = new EventPublisherImpl<>();
-        eventPublisher.registerListener(new DashboardEventListener());
+        eventPublisher.registerListener(new DashboardEventListener(configStreamHub));
         INSTANCES.put(EventPublisher.class, eventPublisher);
     }
 
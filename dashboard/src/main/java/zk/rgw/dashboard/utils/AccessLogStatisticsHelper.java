@@ -15,6 +15,8 @@
  */
 package zk.rgw.dashboard.utils;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import com.mongodb.client.model.Accumulators;
@@ -28,20 +30,47 @@ import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
+import zk.rgw.alc.common.AccessLogStatisticsUtil;
+import zk.rgw.alc.common.LatencyHistogram;
 import zk.rgw.dashboard.web.bean.AccessLogStatistics;
 import zk.rgw.dashboard.web.bean.AccessLogStatisticsArchiveLevel;
 
 @Slf4j
 public class AccessLogStatisticsHelper {
 
-    private static final String BASE_COLLECTION_NAME = "AccessLogStatistics";
+    private static final String STATUS_CLASS_FIELD = "statusClass";
 
-    public static final Bson AGG_GROUP_MINUTE;
-    public static final Bson AGG_GROUP_HOUR;
-    public static final Bson AGG_GROUP_DAY;
+    private static final String LATENCY_BUCKET_FIELD = "latencyBucket";
+
+    private static final String SAMPLE_WEIGHT_FIELD = "sampleWeight";
+
+    private static final String LATENCY_HISTOGRAM_FIELD = AccessLogStatisticsUtil.LATENCY_HISTOGRAM_FIELD;
+
+    private static final String LATENCY_HISTOGRAMS_FIELD = "latencyHistograms";
+
+    /**
+     * 由原始日志归档分钟级统计：先计算响应码类别和耗时分桶，按(apiId, 分钟, 耗时分桶)分组后再按(apiId, 分钟)汇总出耗时直方图。
+     * 每条日志按采样权重计数，没有采样权重的日志按1计算
+     */
+    public static final List<Bson> AGG_ARCHIVE_MINUTE;
+
+    /**
+     * 由分钟级统计归档小时级统计，直方图按桶相加
+     */
+    public static final List<Bson> AGG_ARCHIVE_HOUR;
+
+    /**
+     * 由小时级统计归档天级统计，直方图按桶相加
+     */
+    public static final List<Bson> AGG_ARCHIVE_DAY;
 
     public static final MergeOptions MERGE_OPTIONS = new MergeOptions().whenMatched(MergeOptions.WhenMatched.REPLACE);
 
+    /**
+     * 重新归档分钟级统计时只覆盖统计字段，保留已累加到总量统计的快照
+     */
+    public static final MergeOptions MERGE_OPTIONS_FOR_MINUTES = new MergeOptions().whenMatched(MergeOptions.WhenMatched.MERGE);
+
     public static final MergeOptions MERGE_OPTIONS_FOR_TOTAL;
 
     public static final BsonField COUNT_1_XX = Accumulators.sum("count1xx", "$count1xx");
@@ -54,6 +83,37 @@ public class AccessLogStatisticsHelper {
     public static final BsonField UP_FLOW_SUM = Accumulators.sum("upFlow", "$upFlow");
     public static final BsonField DOWN_FLOW_SUM = Accumulators.sum("downFlow", "$downFlow");
 
+    /**
+     * 与{@link #AGG_MERGE_LATENCY_HISTOGRAMS}、{@link #AGG_UNSET_LATENCY_HISTOGRAMS}配合使用，分组时收集各条统计的直方图
+     */
+    public static final BsonField LATENCY_HISTOGRAMS = Accumulators.push(LATENCY_HISTOGRAMS_FIELD, "$" + LATENCY_HISTOGRAM_FIELD);
+
+    public static final Bson AGG_MERGE_LATENCY_HISTOGRAMS = Aggregates.set(
+            new Field<>(LATENCY_HISTOGRAM_FIELD, sumHistograms("$" + LATENCY_HISTOGRAMS_FIELD))
+    );
+
+    public static final Bson AGG_UNSET_LATENCY_HISTOGRAMS = Aggregates.unset(LATENCY_HISTOGRAMS_FIELD);
+
+    public static final String PENDING_TOTAL_FIELD = "pendingTotal";
+
+    private static final String ACCUMULATED_FIELD = "accumulated";
+
+    private static final List<String> SUM_FIELDS = List.of(
+            "count1xx", "count2xx", "count3xx", "count4xx", "count5xx", "millisCost", "upFlow", "downFlow"
+    );
+
+    /**
+     * 累加到总量统计的第一步，对有变化的分钟统计逐个文档原子地执行：
+     * pendingTotal += 当前值 - accumulated，accumulated = 当前值，清除变化标记。
+     * 之后把pendingTotal按api汇总累加到总量统计再清除，因此同一分钟重复归档、迟到的日志都只会累加增量。
+     */
+    public static final List<Bson> ACCUMULATE_SNAPSHOT_PIPELINE;
+
+    /**
+     * 按api汇总各分钟的pendingTotal，输出的文档可以直接使用{@link #MERGE_OPTIONS_FOR_TOTAL}合并到总量统计
+     */
+    public static final List<Bson> AGG_GROUP_PENDING_TOTAL;
+
     static {
         // init some constant
         String groupIdMinuteDef = """
@@ -65,9 +125,10 @@ public class AccessLogStatisticsHelper {
                             "unit": "minute",
                             "binSize": 1
                         }
-                    }
+                    },
+                    "latencyBucket": "$latencyBucket"
                 }""";
-        Document groupIdMinute = Document.parse(groupIdMinuteDef);
+        Document groupIdMinuteAndBucket = Document.parse(groupIdMinuteDef);
 
         String template = """
                 {
@@ -82,26 +143,75 @@ public class AccessLogStatisticsHelper {
                 }""";
         Document groupIdHour = Document.parse(String.format(template, "hour"));
         Document groupIdDay = Document.parse(String.format(template, "day"));
+        Document groupIdMinute = new Document("apiId", "$_id.apiId").append("timestampMillis", "$_id.timestampMillis");
 
-        AGG_GROUP_MINUTE = Aggregates.group(
-                groupIdMinute,
+        // 小于耗时的边界个数即为耗时所在的桶，与LatencyHistogram.bucketOf一致
+        Document latencyBucket = new Document(
+                "$size",
+                new Document(
+                        "$filter",
+                        new Document("input", LatencyHistogram.bounds()).append("as", "bound")
+                                .append("cond", new Document("$lt", List.of("$$bound", "$millisCost")))
+                )
+        );
+        Bson setClassification = Aggregates.set(
+                new Field<>(
+                        STATUS_CLASS_FIELD,
+                        Document.parse("{\"$trunc\": {\"$divide\": [{\"$ifNull\": [\"$responseInfo.code\", 0]}, 100]}}")
+                ),
+                new Field<>(LATENCY_BUCKET_FIELD, latencyBucket),
+                new Field<>(SAMPLE_WEIGHT_FIELD, new Document("$max", List.of(1, new Document("$ifNull", List.of("$" + SAMPLE_WEIGHT_FIELD, 1)))))
+        );
+
+        Bson groupByMinuteAndBucket = Aggregates.group(
+                groupIdMinuteAndBucket,
                 AccessLogStatisticsHelper.accumulatorForRespCode(1),
                 AccessLogStatisticsHelper.accumulatorForRespCode(2),
                 AccessLogStatisticsHelper.accumulatorForRespCode(3),
                 AccessLogStatisticsHelper.accumulatorForRespCode(4),
                 AccessLogStatisticsHelper.accumulatorForRespCode(5),
-                Accumulators.sum("millisCost", "$millisCost"),
-                Accumulators.sum("upFlow", "$requestInfo.bodySize"),
-                Accumulators.sum("downFlow", "$responseInfo.bodySize")
+                Accumulators.sum("millisCost", weighted("$millisCost")),
+                Accumulators.sum("upFlow", weighted("$requestInfo.bodySize")),
+                Accumulators.sum("downFlow", weighted("$responseInfo.bodySize")),
+                Accumulators.sum("latencyCount", "$" + SAMPLE_WEIGHT_FIELD)
+        );
+        Bson groupByMinute = Aggregates.group(
+                groupIdMinute, COUNT_1_XX, COUNT_2_XX, COUNT_3_XX, COUNT_4_XX, COUNT_5_XX, MILLIS_COST_SUM, UP_FLOW_SUM, DOWN_FLOW_SUM,
+                Accumulators.push("latencyBuckets", new Document("bucket", "$_id.latencyBucket").append("count", "$latencyCount"))
         );
+        Document bucketCount = new Document(
+                "$sum",
+                new Document(
+                        "$map",
+                        new Document(
+                                "input",
+                                new Document(
+                                        "$filter",
+                                        new Document("input", "$latencyBuckets").append("as", "item")
+                                                .append("cond", new Document("$eq", List.of("$$item.bucket", "$$bucket")))
+                                )
+                        ).append("as", "item").append("in", "$$item.count")
+                )
+        );
+        Bson setHistogram = Aggregates.set(new Field<>(LATENCY_HISTOGRAM_FIELD, mapBuckets(bucketCount)));
+
+        AGG_ARCHIVE_MINUTE = List.of(setClassification, groupByMinuteAndBucket, groupByMinute, setHistogram, Aggregates.unset("latencyBuckets"));
 
-        AGG_GROUP_HOUR = Aggregates.group(
-                groupIdHour, COUNT_1_XX, COUNT_2_XX, COUNT_3_XX, COUNT_4_XX,
-                COUNT_5_XX, MILLIS_COST_SUM, UP_FLOW_SUM, DOWN_FLOW_SUM
+        AGG_ARCHIVE_HOUR = List.of(
+                Aggregates.group(
+                        groupIdHour, COUNT_1_XX, COUNT_2_XX, COUNT_3_XX, COUNT_4_XX,
+                        COUNT_5_XX, MILLIS_COST_SUM, UP_FLOW_SUM, DOWN_FLOW_SUM, LATENCY_HISTOGRAMS
+                ),
+                AGG_MERGE_LATENCY_HISTOGRAMS,
+                AGG_UNSET_LATENCY_HISTOGRAMS
         );
-        AGG_GROUP_DAY = Aggregates.group(
-                groupIdDay, COUNT_1_XX, COUNT_2_XX, COUNT_3_XX, COUNT_4_XX,
-                COUNT_5_XX, MILLIS_COST_SUM, UP_FLOW_SUM, DOWN_FLOW_SUM
+        AGG_ARCHIVE_DAY = List.of(
+                Aggregates.group(
+                        groupIdDay, COUNT_1_XX, COUNT_2_XX, COUNT_3_XX, COUNT_4_XX,
+                        COUNT_5_XX, MILLIS_COST_SUM, UP_FLOW_SUM, DOWN_FLOW_SUM, LATENCY_HISTOGRAMS
+                ),
+                AGG_MERGE_LATENCY_HISTOGRAMS,
+                AGG_UNSET_LATENCY_HISTOGRAMS
         );
 
         List<Bson> matchedPipeline = List.of(
@@ -113,17 +223,64 @@ public class AccessLogStatisticsHelper {
                         new Field<>("count5xx", Document.parse("{\"$add\": [\"$count5xx\", \"$$new.count5xx\"]}")),
                         new Field<>("millisCost", Document.parse("{\"$add\": [\"$millisCost\", \"$$new.millisCost\"]}")),
                         new Field<>("upFlow", Document.parse("{\"$add\": [\"$upFlow\", \"$$new.upFlow\"]}")),
-                        new Field<>("downFlow", Document.parse("{\"$add\": [\"$downFlow\", \"$$new.downFlow\"]}"))
+                        new Field<>("downFlow", Document.parse("{\"$add\": [\"$downFlow\", \"$$new.downFlow\"]}")),
+                        new Field<>(
+                                LATENCY_HISTOGRAM_FIELD,
+                                sumHistograms(List.of("$" + LATENCY_HISTOGRAM_FIELD, "$$new." + LATENCY_HISTOGRAM_FIELD))
+                        )
                 )
         );
         MERGE_OPTIONS_FOR_TOTAL = new MergeOptions().whenMatched(MergeOptions.WhenMatched.PIPELINE).whenMatchedPipeline(matchedPipeline);
+
+        Document pendingTotal = new Document();
+        Document accumulated = new Document();
+        for (String field : SUM_FIELDS) {
+            Document delta = new Document(
+                    "$subtract",
+                    List.of(new Document("$ifNull", List.of("$" + field, 0)), new Document("$ifNull", List.of("$" + ACCUMULATED_FIELD + "." + field, 0)))
+            );
+            pendingTotal.append(field, new Document("$add", List.of(new Document("$ifNull", List.of("$" + PENDING_TOTAL_FIELD + "." + field, 0)), delta)));
+            accumulated.append(field, "$" + field);
+        }
+        // 直方图逐桶计算 pendingTotal + 当前值 - accumulated
+        Document histogramDelta = mapBuckets(
+                new Document(
+                        "$sum",
+                        List.of(
+                                new Document("$arrayElemAt", List.of("$" + PENDING_TOTAL_FIELD + "." + LATENCY_HISTOGRAM_FIELD, "$$bucket")),
+                                new Document("$arrayElemAt", List.of("$" + LATENCY_HISTOGRAM_FIELD, "$$bucket")),
+                                new Document(
+                                        "$multiply",
+                                        List.of(-1, new Document("$arrayElemAt", List.of("$" + ACCUMULATED_FIELD + "." + LATENCY_HISTOGRAM_FIELD, "$$bucket")))
+                                )
+                        )
+                )
+        );
+        pendingTotal.append(LATENCY_HISTOGRAM_FIELD, histogramDelta);
+        accumulated.append(LATENCY_HISTOGRAM_FIELD, "$" + LATENCY_HISTOGRAM_FIELD);
+        ACCUMULATE_SNAPSHOT_PIPELINE = List.of(
+                Aggregates.set(
+                        new Field<>(PENDING_TOTAL_FIELD, pendingTotal),
+                        new Field<>(ACCUMULATED_FIELD, accumulated),
+                        new Field<>(AccessLogStatisticsUtil.TOTAL_DIRTY_FIELD, false)
+                )
+        );
+
+        List<BsonField> pendingSums = new ArrayList<>();
+        for (String field : SUM_FIELDS) {
+            pendingSums.add(Accumulators.sum(field, "$" + PENDING_TOTAL_FIELD + "." + field));
+        }
+        pendingSums.add(Accumulators.push(LATENCY_HISTOGRAMS_FIELD, "$" + PENDING_TOTAL_FIELD + "." + LATENCY_HISTOGRAM_FIELD));
+        // 总量统计的timestampMillis是一个固定的值
+        Document groupIdTotal = new Document("apiId", "$_id.apiId").append("timestampMillis", new Date(0));
+        AGG_GROUP_PENDING_TOTAL = List.of(Aggregates.group(groupIdTotal, pendingSums), AGG_MERGE_LATENCY_HISTOGRAMS, AGG_UNSET_LATENCY_HISTOGRAMS);
     }
 
     private AccessLogStatisticsHelper() {
     }
 
     public static String collectionNameForEnvAndArchiveLevel(String envId, AccessLogStatisticsArchiveLevel level) {
-        return BASE_COLLECTION_NAME + "_" + level.name() + "_" + envId;
+        return AccessLogStatisticsUtil.collectionName(level.name(), envId);
     }
 
     public static MongoCollection<AccessLogStatistics> getAccessLogStatisticsCollection(
@@ -135,20 +292,49 @@ public class AccessLogStatisticsHelper {
         return mongoDatabase.getCollection(collectionName, AccessLogStatistics.class);
     }
 
+    /**
+     * 使用原生的聚合操作符统计响应码个数，不再在mongodb的JavaScript引擎中逐条执行$accumulator函数
+     */
     private static BsonField accumulatorForRespCode(int bigCode) {
         String fieldName = "count" + bigCode + "xx";
-        String initFunc = "function () { return { count: 0 } }";
+        Document isBigCode = new Document("$eq", List.of("$" + STATUS_CLASS_FIELD, bigCode));
+        return Accumulators.sum(fieldName, new Document("$cond", List.of(isBigCode, "$" + SAMPLE_WEIGHT_FIELD, 0)));
+    }
 
-        String accumulateFunc = String.format(
-                "function (state, code) { if (Math.round(code / 100) == %d) { return { count: state.count + 1 } } else { return state } }",
-                bigCode
+    /**
+     * 字段值乘以采样权重，字段缺失时结果为null，$sum会忽略
+     */
+    private static Document weighted(String fieldExpression) {
+        return new Document("$multiply", List.of(fieldExpression, "$" + SAMPLE_WEIGHT_FIELD));
+    }
+
+    /**
+     * 多个直方图按桶相加，缺少直方图或者缺少某些桶的统计按0计算
+     *
+     * @param histograms 结果为直方图数组的表达式
+     */
+    private static Document sumHistograms(Object histograms) {
+        Document bucketSum = new Document(
+                "$sum",
+                new Document(
+                        "$map",
+                        new Document("input", histograms).append("as", "histogram")
+                                .append("in", new Document("$arrayElemAt", List.of("$$histogram", "$$bucket")))
+                )
         );
+        return mapBuckets(bucketSum);
+    }
 
-        List<String> accumulateArgs = List.of("$responseInfo.code");
-        String mergeFunc = "function (state1, state2) { return { count: state1.count + state2.count } }";
-        String finalizeFunction = "function (state) { return state.count }";
-        String lang = "js";
-        return Accumulators.accumulator(fieldName, initFunc, null, accumulateFunc, accumulateArgs, mergeFunc, finalizeFunction, lang);
+    /**
+     * 对每个桶下标（变量bucket）计算bucketExpression，得到完整的直方图
+     */
+    private static Document mapBuckets(Document bucketExpression) {
+        return new Document(
+                "$map",
+                new Document("input", new Document("$range", List.of(0, LatencyHistogram.BUCKET_COUNT)))
+                        .append("as", "bucket")
+                        .append("in", bucketExpression)
+        );
     }
 
 }
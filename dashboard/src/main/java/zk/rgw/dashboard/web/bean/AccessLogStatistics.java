@@ -15,11 +15,16 @@
  */
 package zk.rgw.dashboard.web.bean;
 
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 
+import zk.rgw.alc.common.LatencyHistogram;
+
 /**
  * 给定的时间区间内各个http响应状态码的统计个数
  */
@@ -67,6 +72,12 @@ public class AccessLogStatistics {
      */
     private long downFlow;
 
+    /**
+     * 时间区间内请求耗时的直方图，分桶方式见{@link LatencyHistogram}
+     */
+    @JsonIgnore
+    private List<Long> latencyHistogram;
+
     @JsonProperty("succeedCount")
     @BsonIgnore
     public long succeedCount() {
@@ -95,4 +106,22 @@ public class AccessLogStatistics {
         return millisCost / totalCount;
     }
 
+    @JsonProperty("p50MillisCost")
+    @BsonIgnore
+    public long p50MillisCost() {
+        return LatencyHistogram.percentile(latencyHistogram, 0.5);
+    }
+
+    @JsonProperty("p90MillisCost")
+    @BsonIgnore
+    public long p90MillisCost() {
+        return LatencyHistogram.percentile(latencyHistogram, 0.9);
+    }
+
+    @JsonProperty("p99MillisCost")
+    @BsonIgnore
+    public long p99MillisCost() {
+        return LatencyHistogram.percentile(latencyHistogram, 0.99);
+    }
+
 }
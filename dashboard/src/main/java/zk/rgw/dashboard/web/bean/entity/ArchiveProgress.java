@@ -20,35 +20,52 @@ import java.time.Instant;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.bson.BsonType;
 import org.bson.codecs.pojo.annotations.BsonId;
-import org.bson.codecs.pojo.annotations.BsonRepresentation;
 
 import zk.rgw.dashboard.framework.mongodb.Document;
-import zk.rgw.dashboard.framework.mongodb.Index;
 
 /**
- * 维护访问日志归档进度信息，latestArchiveTime应该是一个整分钟，存在的值表示所表示的那一分钟的时间有归档
+ * 维护某个环境的访问日志归档进度，每个环境一条记录。
+ * <p>
+ * 各级别的水位线都是整点时间，表示在它之前的时间桶都已经归档。同时记录归档任务的租约，多个dashboard节点中同一时刻只有一个节点归档某个环境。
  */
 @Getter
 @Setter
-@Document(collection = "ArchiveProgress")
-@Index(name = "ArchiveProgress-envIdAndLatestArchiveTime", unique = true, def = "{\"envIdAndLatestArchiveTime\": 1}", expireSeconds = 3600 * 24 * 2)
+@Document(collection = "AccessLogArchiveProgress")
 @NoArgsConstructor
 public class ArchiveProgress {
 
     @BsonId
-    @BsonRepresentation(BsonType.OBJECT_ID)
-    private String id;
+    private String envId;
 
     /**
-     * 环境和最后归档时间记录在一个字段
-     * 因为mongodb的TTL index不支持多字段联合索引
+     * 分钟级统计已归档（并累加到总量统计）到的时间
      */
-    private String envIdAndLatestArchiveTime;
+    private Instant minutesWatermark;
 
-    public ArchiveProgress(String envId, Instant latestArchiveTime) {
-        this.envIdAndLatestArchiveTime = envId + "_" + latestArchiveTime.toString();
+    /**
+     * 小时级统计已归档到的时间
+     */
+    private Instant hoursWatermark;
+
+    /**
+     * 天级统计已归档到的时间
+     */
+    private Instant daysWatermark;
+
+    /**
+     * 上次检查迟到的原始日志的时间，在此之后写入的原始日志视为新到达的
+     */
+    private Instant lateScanTime;
+
+    private String lockedBy;
+
+    private Instant lockedUntil;
+
+    private Instant updatedAt;
+
+    public ArchiveProgress(String envId) {
+        this.envId = envId;
     }
 
 }
@@ -94,15 +94,25 @@ public class LineChartVo {
 
     public static LineChartVo apiCallsDelayTrend(List<AccessLogStatisticsWithTime> dataList) {
         LineChartVo lineChartVo = new LineChartVo();
-        lineChartVo.setTitle("请求平均耗时趋势");
+        lineChartVo.setTitle("请求耗时趋势");
         lineChartVo.axisX.setName("时间");
         lineChartVo.axisY.setName("耗时");
         NamedArray seriesAvgDelay = new NamedArray("耗时");
+        NamedArray seriesP50Delay = new NamedArray("P50耗时");
+        NamedArray seriesP90Delay = new NamedArray("P90耗时");
+        NamedArray seriesP99Delay = new NamedArray("P99耗时");
         for (AccessLogStatisticsWithTime item : dataList) {
             lineChartVo.axisX.add(JsonUtil.formatInstant(item.getTimestampMillis()));
             seriesAvgDelay.add(item.avgMillisCost());
+            seriesP50Delay.add(item.p50MillisCost());
+            seriesP90Delay.add(item.p90MillisCost());
+            seriesP99Delay.add(item.p99MillisCost());
         }
+        // 平均耗时放在第一个，保持与之前的前端展示一致
         lineChartVo.series.add(seriesAvgDelay);
+        lineChartVo.series.add(seriesP50Delay);
+        lineChartVo.series.add(seriesP90Delay);
+        lineChartVo.series.add(seriesP99Delay);
         return lineChartVo;
     }
 
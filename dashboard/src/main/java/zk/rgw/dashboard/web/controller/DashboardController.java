@@ -15,6 +15,8 @@
  */
 package zk.rgw.dashboard.web.controller;
 
+import java.util.Map;
+
 import reactor.core.publisher.Mono;
 
 import zk.rgw.dashboard.framework.annotation.Controller;
@@ -75,4 +77,9 @@ public class DashboardController {
         return accessLogArchiveService.archiveAccessLog(envId, minTimestamp, maxTimestamp, level);
     }
 
+    @RequestMapping(path = "/access-log-archive-lags")
+    public Mono<Map<String, Long>> accessLogArchiveLags() {
+        return accessLogArchiveService.archiveLags();
+    }
+
 }
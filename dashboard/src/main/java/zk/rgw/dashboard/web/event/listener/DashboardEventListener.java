@@ -33,6 +33,7 @@ import zk.rgw.common.util.JsonUtil;
 import zk.rgw.dashboard.web.bean.entity.GatewayNode;
 import zk.rgw.dashboard.web.event.ApiPublishingEvent;
 import zk.rgw.dashboard.web.event.AppSubApiEvent;
+import zk.rgw.dashboard.web.event.stream.ConfigStreamHub;
 import zk.rgw.dashboard.web.repository.GatewayNodeRepository;
 import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
 
@@ -50,6 +51,12 @@ public class DashboardEventListener implements RgwEventListener<RgwEvent> {
 
     private final HttpClient httpClient = HttpClient.create();
 
+    private final ConfigStreamHub configStreamHub;
+
+    public DashboardEventListener(ConfigStreamHub configStreamHub) {
+        this.configStreamHub = configStreamHub;
+    }
+
     @Override
     public void onEvent(RgwEvent event) {
         if (event instanceof ApiPublishingEvent apiPublishingEvent) {
@@ -68,7 +75,7 @@ public class DashboardEventListener implements RgwEventListener<RgwEvent> {
                 event.getEnvId(),
                 event.getRouteDefinition().getId()
         );
-        executorService.submit(() -> notifyGatewayNodesApiUpdated(event.getEnvId()));
+        executorService.submit(() -> notifyGatewayNodesApiUpdated(event));
     }
 
     private void handleEnvironmentChangedEvent(EnvironmentChangedEvent event) {
@@ -88,10 +95,11 @@ public class DashboardEventListener implements RgwEventListener<RgwEvent> {
         executorService.submit(() -> notifyGatewayNodesSubscriptionChanged(event));
     }
 
-    private void notifyGatewayNodesApiUpdated(String envId) {
+    private void notifyGatewayNodesApiUpdated(ApiPublishingEvent event) {
         Notification notification = new Notification();
         notification.setApiUpdated(true);
-        notifyByEnvId(envId, notification);
+        notification.setRouteDefinition(event.getRouteDefinition());
+        notifyByEnvId(event.getEnvId(), notification);
     }
 
     private void notifyGatewayNodesEnvironmentChanged(EnvironmentChangedEvent event) {
@@ -102,7 +110,10 @@ public class DashboardEventListener implements RgwEventListener<RgwEvent> {
     }
 
     private void notifyByEnvId(String envId, Notification notification) {
+        // 通过推送通道连接到当前dashboard的节点直接推送，其余节点（连接到其他dashboard或未开启推送通道）仍然发送HTTP通知
+        configStreamHub.publish(envId, notification);
         gatewayNodeRepository.findAllByEnvId(envId)
+                .filter(gatewayNode -> !configStreamHub.isConnected(gatewayNode.getId()))
                 .parallel()
                 .flatMap(gatewayNode -> notifyGatewayNode(gatewayNode, notification))
                 .subscribe();
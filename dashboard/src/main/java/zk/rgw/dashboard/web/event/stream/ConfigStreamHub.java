@@ -0,0 +1,178 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.dashboard.web.event.stream;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import zk.rgw.common.heartbeat.Notification;
+import zk.rgw.common.util.JsonUtil;
+
+/**
+ * 向gateway节点推送配置变更的通道，每个环境一个，gateway节点通过一个SSE长连接订阅所在环境的变更。
+ * <p>
+ * 每个环境最近的变更带着递增的序号缓存在内存中，gateway断线重连时携带收到的最后一个序号，能续上时补发缺失的变更，
+ * 否则（缓存已淘汰或dashboard重启过）发送一个resync事件，由gateway按各自的opSeq拉取。
+ */
+@Slf4j
+public class ConfigStreamHub {
+
+    public static final String EVENT_NOTIFICATION = "notification";
+
+    public static final String EVENT_RESYNC = "resync";
+
+    private static final int REPLAY_CAPACITY = 1024;
+
+    private static final int SUBSCRIBER_QUEUE_CAPACITY = 2 * REPLAY_CAPACITY;
+
+    /**
+     * 区分dashboard进程，重启后之前的序号不再有效
+     */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> connectedNodes = new ConcurrentHashMap<>();
+
+    public void publish(String envId, Notification notification) {
+        String data;
+        try {
+            data = JsonUtil.toJson(notification);
+        } catch (Exception exception) {
+            log.error("Failed to serialize notification for config stream.", exception);
+            return;
+        }
+        channels.computeIfAbsent(envId, key -> new Channel()).publish(EVENT_NOTIFICATION, data);
+    }
+
+    /**
+     * 订阅某个环境的变更，lastEventId为gateway收到的最后一个事件的id，没有时传null
+     */
+    public Flux<Frame> subscribe(String envId, String nodeId, String lastEventId) {
+        Channel channel = channels.computeIfAbsent(envId, key -> new Channel());
+        Subscriber subscriber = channel.subscribe(nodeId, lastEventId);
+        connectedNodes.merge(nodeId, 1, Integer::sum);
+        log.info("Gateway node {} subscribed config stream of environment {}, last event id {}", nodeId, envId, lastEventId);
+        return subscriber.sink().asFlux().doFinally(signalType -> {
+            channel.unsubscribe(subscriber);
+            connectedNodes.computeIfPresent(nodeId, (key, count) -> count > 1 ? count - 1 : null);
+            log.info("Gateway node {} unsubscribed config stream of environment {}", nodeId, envId);
+        });
+    }
+
+    /**
+     * 节点是否通过推送通道连接到了当前dashboard，已连接的节点不需要再发送HTTP通知
+     */
+    public boolean isConnected(String nodeId) {
+        return connectedNodes.containsKey(nodeId);
+    }
+
+    private long parseSeq(String lastEventId) {
+        if (Objects.isNull(lastEventId)) {
+            return -1L;
+        }
+        int index = lastEventId.indexOf(':');
+        if (index < 0 || !epoch.equals(lastEventId.substring(0, index))) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(index + 1));
+        } catch (NumberFormatException exception) {
+            return -1L;
+        }
+    }
+
+    public record Frame(String id, String event, String data) {
+
+        /**
+         * 按text/event-stream格式编码，data是单行的JSON
+         */
+        public String encode() {
+            StringBuilder builder = new StringBuilder(data.length() + 64);
+            builder.append("id: ").append(id).append('\n');
+            builder.append("event: ").append(event).append('\n');
+            builder.append("data: ").append(data).append("\n\n");
+            return builder.toString();
+        }
+
+    }
+
+    private record Subscriber(String nodeId, Sinks.Many<Frame> sink) {
+    }
+
+    private class Channel {
+
+        private final ArrayDeque<Frame> replayBuffer = new ArrayDeque<>();
+
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        private long seq = 0L;
+
+        synchronized void publish(String event, String data) {
+            seq++;
+            Frame frame = new Frame(epoch + ":" + seq, event, data);
+            replayBuffer.addLast(frame);
+            if (replayBuffer.size() > REPLAY_CAPACITY) {
+                replayBuffer.removeFirst();
+            }
+            Iterator<Subscriber> iterator = subscribers.iterator();
+            while (iterator.hasNext()) {
+                Subscriber subscriber = iterator.next();
+                if (subscriber.sink().tryEmitNext(frame).isFailure()) {
+                    // 消费过慢，断开连接，gateway重连时从缓存中补发
+                    log.warn("Config stream of gateway node {} is overflowed, disconnect it.", subscriber.nodeId());
+                    subscriber.sink().tryEmitComplete();
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized Subscriber subscribe(String nodeId, String lastEventId) {
+            Sinks.Many<Frame> sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<Frame>get(SUBSCRIBER_QUEUE_CAPACITY).get());
+            long lastSeq = parseSeq(lastEventId);
+            long oldestSeq = seq - replayBuffer.size() + 1;
+            if (lastSeq < 0 || lastSeq > seq || lastSeq + 1 < oldestSeq) {
+                sink.tryEmitNext(new Frame(epoch + ":" + seq, EVENT_RESYNC, "{}"));
+            } else {
+                for (Frame frame : replayBuffer) {
+                    if (parseSeq(frame.id()) > lastSeq) {
+                        sink.tryEmitNext(frame);
+                    }
+                }
+            }
+            Subscriber subscriber = new Subscriber(nodeId, sink);
+            subscribers.add(subscriber);
+            return subscriber;
+        }
+
+        synchronized void unsubscribe(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+        }
+
+    }
+
+}
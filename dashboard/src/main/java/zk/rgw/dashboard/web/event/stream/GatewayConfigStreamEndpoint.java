@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.dashboard.web.event.stream;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import zk.rgw.dashboard.web.repository.GatewayNodeRepository;
+import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
+import zk.rgw.plugin.api.Exchange;
+import zk.rgw.plugin.api.filter.Filter;
+import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.util.ResponseUtil;
+
+/**
+ * gateway节点订阅配置变更的SSE端点，节点需要先注册，按节点所在的环境推送变更
+ */
+@Slf4j
+public class GatewayConfigStreamEndpoint implements Filter {
+
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final String PARAMETER_NODE_ID = "nodeId";
+
+    /**
+     * 定期发送注释行，避免连接被中间设备回收，也让gateway能够发现失效的连接
+     */
+    private static final Duration PING_INTERVAL = Duration.ofSeconds(15);
+
+    private static final String PING = ":ping\n\n";
+
+    private final GatewayNodeRepository gatewayNodeRepository = RepositoryFactory.get(GatewayNodeRepository.class);
+
+    private final ConfigStreamHub configStreamHub;
+
+    public GatewayConfigStreamEndpoint(ConfigStreamHub configStreamHub) {
+        this.configStreamHub = configStreamHub;
+    }
+
+    @Override
+    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
+        HttpServerRequest request = exchange.getRequest();
+        HttpServerResponse response = exchange.getResponse();
+
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        List<String> nodeIds = parameters.get(PARAMETER_NODE_ID);
+        if (Objects.isNull(nodeIds) || nodeIds.isEmpty()) {
+            return ResponseUtil.sendStatus(response, HttpResponseStatus.BAD_REQUEST, "缺少必要的参数 " + PARAMETER_NODE_ID);
+        }
+        String nodeId = nodeIds.get(0);
+        String lastEventId = request.requestHeaders().get(LAST_EVENT_ID);
+
+        return gatewayNodeRepository.findOneById(nodeId)
+                .flatMap(gatewayNode -> {
+                    String envId = gatewayNode.getEnvironment().getId();
+                    // 推送通道被关闭（比如消费过慢）时结束响应，gateway会重连
+                    Flux<String> frames = configStreamHub.subscribe(envId, nodeId, lastEventId)
+                            .map(ConfigStreamHub.Frame::encode)
+                            .publish(shared -> Flux.merge(shared, Flux.interval(PING_INTERVAL).map(ignore -> PING).takeUntilOther(shared.ignoreElements())));
+                    return response.status(HttpResponseStatus.OK)
+                            .header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream; charset=utf-8")
+                            .header(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE)
+                            .sendString(frames)
+                            .then();
+                })
+                .switchIfEmpty(Mono.defer(() -> ResponseUtil.sendStatus(response, HttpResponseStatus.NOT_FOUND, "网关节点未注册")));
+    }
+
+}
@@ -18,6 +18,7 @@ package zk.rgw.dashboard.web.repository;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -27,14 +28,19 @@ import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Field;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
 import com.mongodb.reactivestreams.client.MongoCollection;
 import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import zk.rgw.alc.common.AccessLogDocument;
 import zk.rgw.alc.common.AccessLogDocumentUtil;
+import zk.rgw.alc.common.AccessLogStatisticsUtil;
 import zk.rgw.common.util.ObjectUtil;
 import zk.rgw.dashboard.utils.AccessLogStatisticsHelper;
 import zk.rgw.dashboard.web.bean.AccessLogStatistics;
@@ -113,34 +119,80 @@ public class AccessLogRepository {
         aggPipelines.add(Aggregates.match(matchFilter));
 
         // step-2 : group
-        aggPipelines.add(AccessLogStatisticsHelper.AGG_GROUP_MINUTE);
+        aggPipelines.addAll(AccessLogStatisticsHelper.AGG_ARCHIVE_MINUTE);
+        aggPipelines.add(Aggregates.set(new Field<>(AccessLogStatisticsUtil.TOTAL_DIRTY_FIELD, true)));
 
-        // step-3 : merge into AccessLogStatistics
+        // step-3 : merge into AccessLogStatistics，保留已累加到总量统计的快照，以便重新归档后只累加增量
         String targetCollectionName = AccessLogStatisticsHelper.collectionNameForEnvAndArchiveLevel(envId, AccessLogStatisticsArchiveLevel.MINUTES);
-        Bson merge = Aggregates.merge(targetCollectionName, AccessLogStatisticsHelper.MERGE_OPTIONS);
+        Bson merge = Aggregates.merge(targetCollectionName, AccessLogStatisticsHelper.MERGE_OPTIONS_FOR_MINUTES);
         aggPipelines.add(merge);
 
         return AccessLogDocumentUtil.getAccessLogCollectionForEnv(database, envId)
-                .flatMap(collection -> Mono.from(collection.withDocumentClass(AccessLogStatisticsDocument.class).aggregate(aggPipelines)).then())
-                .then(accumulateToTotal(envId, beginTime));
+                .flatMap(collection -> Mono.from(collection.withDocumentClass(AccessLogStatisticsDocument.class).aggregate(aggPipelines)).then());
     }
 
-    private Mono<Void> accumulateToTotal(String envId, long beginTime) {
-        List<Bson> aggPipelines = new ArrayList<>();
-
-        Bson filter = Filters.gte("_id.timestampMillis", Instant.ofEpochMilli(beginTime));
-        aggPipelines.add(Aggregates.match(filter));
-
-        // 把timestampMillis设置为一个固定的值
-        aggPipelines.add(Aggregates.set(new Field<>("_id.timestampMillis", Instant.ofEpochMilli(0))));
+    /**
+     * 把[beginTime, endTime)内有变化的分钟统计的增量累加到总量统计，返回有变化的分钟。
+     * 每个分钟文档先原子地把增量转入pendingTotal，合并到总量统计后再清除，
+     * 合并之后、清除之前进程退出时，下一次执行会重复累加这部分增量。
+     */
+    public Mono<List<Instant>> accumulateToTotal(String envId, long beginTime, long endTime) {
+        Bson rangeFilter = Filters.and(
+                Filters.gte("_id.timestampMillis", Instant.ofEpochMilli(beginTime)),
+                Filters.lt("_id.timestampMillis", Instant.ofEpochMilli(endTime))
+        );
+        Bson dirtyFilter = Filters.and(rangeFilter, Filters.eq(AccessLogStatisticsUtil.TOTAL_DIRTY_FIELD, true));
+        Bson pendingFilter = Filters.and(rangeFilter, Filters.exists(AccessLogStatisticsHelper.PENDING_TOTAL_FIELD));
 
+        List<Bson> aggPipelines = new ArrayList<>();
+        aggPipelines.add(Aggregates.match(pendingFilter));
+        aggPipelines.addAll(AccessLogStatisticsHelper.AGG_GROUP_PENDING_TOTAL);
         String totalCollectionName = AccessLogStatisticsHelper.collectionNameForEnvAndArchiveLevel(envId, AccessLogStatisticsArchiveLevel.ALL);
         aggPipelines.add(Aggregates.merge(totalCollectionName, AccessLogStatisticsHelper.MERGE_OPTIONS_FOR_TOTAL));
 
         MongoCollection<AccessLogStatistics> minutesCollection = AccessLogStatisticsHelper.getAccessLogStatisticsCollection(
                 database, envId, AccessLogStatisticsArchiveLevel.MINUTES
         );
-        return Mono.from(minutesCollection.aggregate(aggPipelines)).then();
+
+        Mono<List<Instant>> affectedMinutes = Flux.from(minutesCollection.distinct("_id.timestampMillis", pendingFilter, Date.class))
+                .map(Date::toInstant)
+                .collectList();
+
+        Mono<UpdateResult> clearPending = Mono.from(
+                minutesCollection.updateMany(pendingFilter, Updates.unset(AccessLogStatisticsHelper.PENDING_TOTAL_FIELD))
+        );
+        return Mono.from(minutesCollection.updateMany(dirtyFilter, AccessLogStatisticsHelper.ACCUMULATE_SNAPSHOT_PIPELINE))
+                .then(affectedMinutes)
+                .flatMap(
+                        minutes -> minutes.isEmpty() ? Mono.just(minutes)
+                                : Mono.from(minutesCollection.aggregate(aggPipelines)).then()
+                                        .then(clearPending)
+                                        .thenReturn(minutes)
+                );
+    }
+
+    /**
+     * 查找insertedAfter之后才写入、但时间落在[beginTime, endTime)内的迟到日志所在的分钟
+     */
+    public Mono<List<Instant>> findLateMinutes(String envId, long beginTime, long endTime, Instant insertedAfter) {
+        Bson matchFilter = Filters.and(
+                Filters.gte("timestampMillis", Instant.ofEpochMilli(beginTime)),
+                Filters.lt("timestampMillis", Instant.ofEpochMilli(endTime)),
+                // _id由消费端写入时生成，其中的时间即写入时间
+                Filters.gt("_id", new ObjectId(Date.from(insertedAfter)))
+        );
+        Bson groupByMinute = Aggregates.group(
+                new Document("$dateTrunc", new Document("date", "$timestampMillis").append("unit", "minute"))
+        );
+        return AccessLogDocumentUtil.getAccessLogCollectionForEnv(database, envId)
+                .flatMapMany(
+                        collection -> Flux.from(
+                                collection.aggregate(List.of(Aggregates.match(matchFilter), groupByMinute), Document.class)
+                        )
+                )
+                .map(document -> document.getDate("_id").toInstant())
+                .sort()
+                .collectList();
     }
 
     @SuppressWarnings({ "java:S3776", "java:S107" })
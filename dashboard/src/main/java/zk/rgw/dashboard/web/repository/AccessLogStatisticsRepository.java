@@ -61,12 +61,12 @@ public class AccessLogStatisticsRepository {
         aggPipelines.add(Aggregates.match(matchFilter));
 
         // step-2 : group
-        Bson groupDefBson = switch (level) {
-            case HOURS -> AccessLogStatisticsHelper.AGG_GROUP_HOUR;
-            case DAYS -> AccessLogStatisticsHelper.AGG_GROUP_DAY;
+        List<Bson> groupStages = switch (level) {
+            case HOURS -> AccessLogStatisticsHelper.AGG_ARCHIVE_HOUR;
+            case DAYS -> AccessLogStatisticsHelper.AGG_ARCHIVE_DAY;
             default -> throw new IllegalArgumentException("AccessLogStatisticsArchiveLevel illegal for archive self.");
         };
-        aggPipelines.add(groupDefBson);
+        aggPipelines.addAll(groupStages);
 
         // step-3 : merge into AccessLogStatistics
         String targetCollectionName = AccessLogStatisticsHelper.collectionNameForEnvAndArchiveLevel(envId, level);
@@ -139,9 +139,12 @@ public class AccessLogStatisticsRepository {
                         AccessLogStatisticsHelper.COUNT_5_XX,
                         AccessLogStatisticsHelper.MILLIS_COST_SUM,
                         AccessLogStatisticsHelper.UP_FLOW_SUM,
-                        AccessLogStatisticsHelper.DOWN_FLOW_SUM
+                        AccessLogStatisticsHelper.DOWN_FLOW_SUM,
+                        AccessLogStatisticsHelper.LATENCY_HISTOGRAMS
                 )
         );
+        aggPipeline.add(AccessLogStatisticsHelper.AGG_MERGE_LATENCY_HISTOGRAMS);
+        aggPipeline.add(AccessLogStatisticsHelper.AGG_UNSET_LATENCY_HISTOGRAMS);
 
         Mono<List<AccessLogStatisticsWithTime>> resultMono = Flux.from(
                 collection.withDocumentClass(AccessLogStatisticsWithTime.class).aggregate(aggPipeline)
@@ -15,11 +15,19 @@
  */
 package zk.rgw.dashboard.web.repository;
 
+import java.time.Duration;
 import java.time.Instant;
 
-import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
 import com.mongodb.reactivestreams.client.MongoCollection;
 import com.mongodb.reactivestreams.client.MongoDatabase;
+import org.bson.conversions.Bson;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import zk.rgw.dashboard.framework.mongodb.MongodbUtil;
@@ -27,6 +35,10 @@ import zk.rgw.dashboard.web.bean.entity.ArchiveProgress;
 
 public class ArchiveProgressRepository {
 
+    private static final String LOCKED_BY = "lockedBy";
+
+    private static final String LOCKED_UNTIL = "lockedUntil";
+
     private final MongoCollection<ArchiveProgress> collection;
 
     public ArchiveProgressRepository(MongoDatabase database) {
@@ -34,14 +46,65 @@ public class ArchiveProgressRepository {
         this.collection = database.getCollection(collectionName, ArchiveProgress.class);
     }
 
-    public Mono<Boolean> save(String envId, Instant instant) {
-        if (instant.toEpochMilli() % 60_000L != 0) {
-            return Mono.just(false);
-        }
-        ArchiveProgress archiveProgress = new ArchiveProgress(envId, instant);
-        return Mono.from(collection.insertOne(archiveProgress))
-                .map(InsertOneResult::wasAcknowledged)
-                .onErrorResume(throwable -> Mono.just(Boolean.FALSE));
+    /**
+     * 获取某个环境归档任务的租约，成功时返回该环境最新的归档进度，租约未过期时返回empty。
+     * 租约不可重入，即使持有者是自己，也要等它被释放或过期
+     */
+    public Mono<ArchiveProgress> tryLock(String envId, String owner, Duration lease) {
+        Instant now = Instant.now();
+        Bson filter = Filters.and(
+                Filters.eq("_id", envId),
+                Filters.or(Filters.eq(LOCKED_UNTIL, null), Filters.lt(LOCKED_UNTIL, now))
+        );
+        Bson update = Updates.combine(Updates.set(LOCKED_BY, owner), Updates.set(LOCKED_UNTIL, now.plus(lease)));
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER);
+        // 记录已存在但被其他节点锁定时，upsert会因为_id重复而失败
+        return Mono.from(collection.findOneAndUpdate(filter, update, options))
+                .onErrorResume(
+                        throwable -> throwable instanceof MongoException mongoException
+                                && ErrorCategory.fromErrorCode(mongoException.getCode()) == ErrorCategory.DUPLICATE_KEY,
+                        throwable -> Mono.empty()
+                );
+    }
+
+    /**
+     * 延长仍持有的租约，租约已过期或已被其他节点获取时返回false
+     */
+    public Mono<Boolean> renew(String envId, String owner, Duration lease) {
+        Instant now = Instant.now();
+        Bson filter = heldBy(envId, owner, now);
+        return Mono.from(collection.updateOne(filter, Updates.set(LOCKED_UNTIL, now.plus(lease))))
+                .map(updateResult -> updateResult.getMatchedCount() > 0);
+    }
+
+    /**
+     * 保存归档进度，只有仍持有租约时才会写入，同时延长租约
+     */
+    public Mono<Boolean> save(ArchiveProgress progress, String owner, Duration lease) {
+        Instant now = Instant.now();
+        Bson filter = heldBy(progress.getEnvId(), owner, now);
+        Bson update = Updates.combine(
+                Updates.set("minutesWatermark", progress.getMinutesWatermark()),
+                Updates.set("hoursWatermark", progress.getHoursWatermark()),
+                Updates.set("daysWatermark", progress.getDaysWatermark()),
+                Updates.set("lateScanTime", progress.getLateScanTime()),
+                Updates.set("updatedAt", now),
+                Updates.set(LOCKED_UNTIL, now.plus(lease))
+        );
+        return Mono.from(collection.updateOne(filter, update)).map(updateResult -> updateResult.getMatchedCount() > 0);
+    }
+
+    public Mono<Void> unlock(String envId, String owner) {
+        Bson filter = Filters.and(Filters.eq("_id", envId), Filters.eq(LOCKED_BY, owner));
+        return Mono.from(collection.updateOne(filter, Updates.set(LOCKED_UNTIL, Instant.now()))).then();
+    }
+
+    public Flux<ArchiveProgress> findAll() {
+        return Flux.from(collection.find());
+    }
+
+    private static Bson heldBy(String envId, String owner, Instant now) {
+        return Filters.and(Filters.eq("_id", envId), Filters.eq(LOCKED_BY, owner), Filters.gt(LOCKED_UNTIL, now));
     }
 
 }
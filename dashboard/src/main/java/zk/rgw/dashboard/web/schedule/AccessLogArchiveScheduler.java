@@ -15,9 +15,16 @@
  */
 package zk.rgw.dashboard.web.schedule;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -25,29 +32,84 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import zk.rgw.common.bootstrap.LifeCycle;
 import zk.rgw.common.util.TimeUtil;
+import zk.rgw.dashboard.DashboardConfiguration;
 import zk.rgw.dashboard.web.bean.AccessLogStatisticsArchiveLevel;
+import zk.rgw.dashboard.web.bean.entity.ArchiveProgress;
+import zk.rgw.dashboard.web.repository.AccessLogRepository;
 import zk.rgw.dashboard.web.repository.ArchiveProgressRepository;
 import zk.rgw.dashboard.web.repository.EnvironmentRepository;
 import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
 import zk.rgw.dashboard.web.service.AccessLogArchiveService;
 import zk.rgw.dashboard.web.service.impl.AccessLogArchiveServiceImpl;
 
+/**
+ * 按环境维护归档水位线，每分钟把水位线推进到一分钟之前。
+ * <p>
+ * dashboard停机后重启时，分批并行地补归档错过的时间窗口；水位线之前迟到的日志会触发受影响的分钟、小时、天统计重新归档，
+ * 总量统计只累加增量。
+ * <p>
+ * 同一个环境同一时刻只有一个归档任务：本节点内由runningEnvs保证，节点之间由不可重入的租约保证，每处理完一批都会续约，
+ * 续约失败时放弃本次调度。
+ * <p>
+ * 每次调度只在[水位线 - 迟到窗口, 新水位线)内查找有变化的分钟统计累加到总量统计，水位线跨过整点时再扫描一次全部有变化的分钟，
+ * 因此比迟到窗口更晚到达的数据最多延迟一小时计入总量统计。
+ */
 @Slf4j
 public class AccessLogArchiveScheduler implements LifeCycle {
 
+    /**
+     * 从原始日志归档时每一批的分钟数
+     */
+    private static final int BATCH_MINUTES = 10;
+
+    /**
+     * 每次调度最多推进的分钟数，超出的部分留到下一次调度，避免长时间持有租约
+     */
+    private static final int MAX_MINUTES_PER_TICK = 6 * 60;
+
+    private static final Duration LEASE = Duration.ofMinutes(5);
+
     private ScheduledExecutorService scheduledExecutorService;
 
     // 直接new, 不从Factory获取代理，这样不需要校验角色
     private final AccessLogArchiveService accessLogArchiveService = new AccessLogArchiveServiceImpl();
 
+    private final AccessLogRepository accessLogRepository = RepositoryFactory.get(AccessLogRepository.class);
+
     private final EnvironmentRepository environmentRepository = RepositoryFactory.get(EnvironmentRepository.class);
 
     private final ArchiveProgressRepository archiveProgressRepository = RepositoryFactory.get(ArchiveProgressRepository.class);
 
+    private final String owner = UUID.randomUUID().toString();
+
+    /**
+     * 本节点上正在归档的环境，一次调度耗时超过调度间隔时，下一次调度跳过这些环境
+     */
+    private final Set<String> runningEnvs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 分钟级统计由access-log-consumer在消费时预聚合，此时不再扫描原始日志，只需累加到总量统计
+     */
+    private final boolean preAggregated;
+
+    private final long lateWindowMillis;
+
+    private final long maxCatchUpMillis;
+
+    private final int parallelism;
+
+    public AccessLogArchiveScheduler(DashboardConfiguration configuration) {
+        this.preAggregated = configuration.isAccessLogStatisticsPreAggregated();
+        this.lateWindowMillis = configuration.getAccessLogArchiveLateWindowMinutes() * TimeUtil.MINUTE_IN_MILLS;
+        this.maxCatchUpMillis = configuration.getAccessLogArchiveMaxCatchUpHours() * TimeUtil.HOUR_IN_MILLS;
+        this.parallelism = Math.max(1, configuration.getAccessLogArchiveParallelism());
+    }
+
     @Override
     public void start() {
         scheduledExecutorService = Executors.newScheduledThreadPool(4, new ArchiveThreadFactory());
@@ -68,49 +130,180 @@ public class AccessLogArchiveScheduler implements LifeCycle {
         ).subscribe();
     }
 
-    private Mono<Void> archive(String envId, Instant instant) {
-        // 对2分钟之前的数据进行归档
-        long twoMinutesAgo = TimeUtil.minutesAgo(instant, 2);
-
-        return archiveProgressRepository.save(envId, Instant.ofEpochMilli(twoMinutesAgo)).flatMap(succeed -> {
-            if (Boolean.TRUE.equals(succeed)) {
-                log.debug("Going to archive access logs for environment {} and time {}", envId, twoMinutesAgo);
-                return doArchive(envId, instant);
-            } else {
-                log.debug("Failed to write archive progress for environment {} and time {} , another node got the chance", envId, twoMinutesAgo);
-                return Mono.empty();
-            }
-        });
+    private Mono<Void> archive(String envId, Instant now) {
+        if (!runningEnvs.add(envId)) {
+            log.debug("Archive of environment {} is still running on this node", envId);
+            return Mono.empty();
+        }
+        return archiveProgressRepository.tryLock(envId, owner, LEASE)
+                .flatMap(
+                        progress -> doArchive(progress, now)
+                                .onErrorResume(throwable -> {
+                                    log.error("Failed to archive access logs for environment {}", envId, throwable);
+                                    return Mono.empty();
+                                })
+                                .then(archiveProgressRepository.unlock(envId, owner))
+                                .thenReturn(Boolean.TRUE)
+                )
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.debug("Archive of environment {} is running on another node", envId);
+                    return Boolean.FALSE;
+                }))
+                .doFinally(signalType -> runningEnvs.remove(envId))
+                .then();
     }
 
-    private Mono<Void> doArchive(String envId, Instant instant) {
-        long twoMinutesAgo = TimeUtil.minutesAgo(instant, 2);
-
-        Mono<Void> mono = accessLogArchiveService.archiveAccessLog(
-                envId, twoMinutesAgo, twoMinutesAgo + TimeUtil.MINUTE_IN_MILLS, AccessLogStatisticsArchiveLevel.MINUTES
-        );
+    /**
+     * 延长租约，租约已经丢失时以错误结束，避免与获取了租约的其他节点同时归档
+     */
+    private Mono<Void> renewLease(String envId) {
+        return archiveProgressRepository.renew(envId, owner, LEASE)
+                .flatMap(
+                        renewed -> Boolean.TRUE.equals(renewed) ? Mono.<Void>empty()
+                                : Mono.error(new IllegalStateException("Lease of archive for environment " + envId + " is lost"))
+                );
+    }
 
-        LocalDateTime localDateTime = LocalDateTime.ofInstant(instant, TimeUtil.TZ_ID);
+    private Mono<Void> doArchive(ArchiveProgress progress, Instant now) {
+        String envId = progress.getEnvId();
+        // 对1分钟之前的数据进行归档
+        long target = TimeUtil.minutesAgo(now, 1);
 
-        if (localDateTime.getMinute() == 4) {
-            long hourAgo = TimeUtil.hoursAgo(instant, 1);
-            mono = mono.then(
-                    accessLogArchiveService.archiveAccessLog(
-                            envId, hourAgo, hourAgo + TimeUtil.HOUR_IN_MILLS, AccessLogStatisticsArchiveLevel.HOURS
-                    )
+        long minutesWatermark = Objects.isNull(progress.getMinutesWatermark()) ? target - TimeUtil.MINUTE_IN_MILLS
+                : progress.getMinutesWatermark().toEpochMilli();
+        if (target - minutesWatermark > maxCatchUpMillis) {
+            long skipTo = target - maxCatchUpMillis;
+            log.warn(
+                    "Archive of environment {} is {} minutes behind, windows before {} are skipped",
+                    envId, (target - minutesWatermark) / TimeUtil.MINUTE_IN_MILLS, Instant.ofEpochMilli(skipTo)
             );
+            minutesWatermark = skipTo;
         }
+        long end = Math.min(target, minutesWatermark + MAX_MINUTES_PER_TICK * TimeUtil.MINUTE_IN_MILLS);
+        final long begin = minutesWatermark;
 
-        if (localDateTime.getHour() == 0 && localDateTime.getMinute() == 5) {
-            long dayAgo = TimeUtil.daysAgo(instant, 1);
-            mono = mono.then(
-                    accessLogArchiveService.archiveAccessLog(
-                            envId, dayAgo, dayAgo + TimeUtil.DAY_IN_MILLIS, AccessLogStatisticsArchiveLevel.DAYS
-                    )
-            );
+        if (Objects.isNull(progress.getHoursWatermark())) {
+            progress.setHoursWatermark(Instant.ofEpochMilli(begin).truncatedTo(ChronoUnit.HOURS));
+        }
+        if (Objects.isNull(progress.getDaysWatermark())) {
+            progress.setDaysWatermark(Instant.ofEpochMilli(begin).truncatedTo(ChronoUnit.DAYS));
         }
 
-        return mono;
+        // 在此之后写入的原始日志在下次调度时视为迟到的，留出一分钟余量应对写入端的时钟偏差，重复归档是幂等的
+        Instant lateScanTime = now.minus(1, ChronoUnit.MINUTES);
+
+        Mono<Void> archiveMinutes = preAggregated ? Mono.empty() : archiveLateMinutes(progress, begin).then(archiveRawMinutes(envId, begin, end));
+
+        boolean crossHour = Instant.ofEpochMilli(begin).truncatedTo(ChronoUnit.HOURS).isBefore(Instant.ofEpochMilli(end).truncatedTo(ChronoUnit.HOURS));
+        long accumulateBegin = crossHour ? 0 : Math.max(0, begin - lateWindowMillis);
+
+        return archiveMinutes
+                .then(accessLogArchiveService.accumulateMinutesToTotal(envId, accumulateBegin, end))
+                .flatMap(affectedMinutes -> renewLease(envId).then(archiveHoursAndDays(progress, affectedMinutes, end)))
+                .then(renewLease(envId))
+                .then(Mono.defer(() -> {
+                    progress.setMinutesWatermark(Instant.ofEpochMilli(end));
+                    progress.setLateScanTime(lateScanTime);
+                    return archiveProgressRepository.save(progress, owner, LEASE);
+                }))
+                .doOnNext(saved -> {
+                    if (Boolean.FALSE.equals(saved)) {
+                        log.warn("Lease of archive for environment {} is lost, progress is not saved", envId);
+                    }
+                    long lag = now.toEpochMilli() - end;
+                    if (lag > lateWindowMillis) {
+                        log.warn("Archive of environment {} lags {} minutes behind", envId, lag / TimeUtil.MINUTE_IN_MILLS);
+                    } else {
+                        log.debug("Archived access logs for environment {} to {}", envId, Instant.ofEpochMilli(end));
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * 分批并行地从原始日志归档[begin, end)内的分钟级统计
+     */
+    private Mono<Void> archiveRawMinutes(String envId, long begin, long end) {
+        List<long[]> batches = new ArrayList<>();
+        for (long batchBegin = begin; batchBegin < end; batchBegin += BATCH_MINUTES * TimeUtil.MINUTE_IN_MILLS) {
+            batches.add(new long[] { batchBegin, Math.min(end, batchBegin + BATCH_MINUTES * TimeUtil.MINUTE_IN_MILLS) });
+        }
+        return Flux.fromIterable(batches)
+                .flatMap(batch -> accessLogRepository.archiveAccessLogsByMinutes(envId, batch[0], batch[1]).then(renewLease(envId)), parallelism)
+                .then();
+    }
+
+    /**
+     * 重新归档上次调度之后才写入、但时间落在水位线之前的原始日志所在的分钟
+     */
+    private Mono<Void> archiveLateMinutes(ArchiveProgress progress, long minutesWatermark) {
+        if (Objects.isNull(progress.getLateScanTime())) {
+            return Mono.empty();
+        }
+        String envId = progress.getEnvId();
+        return accessLogRepository.findLateMinutes(envId, minutesWatermark - lateWindowMillis, minutesWatermark, progress.getLateScanTime())
+                .flatMapMany(Flux::fromIterable)
+                .doOnNext(minute -> log.debug("Late access logs found for environment {} and minute {}", envId, minute))
+                .flatMap(
+                        minute -> accessLogRepository.archiveAccessLogsByMinutes(
+                                envId, minute.toEpochMilli(), minute.toEpochMilli() + TimeUtil.MINUTE_IN_MILLS
+                        ),
+                        parallelism
+                )
+                .then(renewLease(envId));
+    }
+
+    /**
+     * 重新归档受迟到数据影响的小时、天统计，再把小时、天的水位线推进到分钟水位线所在的整点
+     */
+    private Mono<Void> archiveHoursAndDays(ArchiveProgress progress, List<Instant> affectedMinutes, long minutesWatermark) {
+        String envId = progress.getEnvId();
+        Instant hoursWatermark = progress.getHoursWatermark();
+        Instant daysWatermark = progress.getDaysWatermark();
+        Instant newHoursWatermark = Instant.ofEpochMilli(minutesWatermark).truncatedTo(ChronoUnit.HOURS);
+
+        TreeSet<Instant> affectedHours = new TreeSet<>();
+        for (Instant minute : affectedMinutes) {
+            Instant hour = minute.truncatedTo(ChronoUnit.HOURS);
+            if (hour.isBefore(hoursWatermark)) {
+                affectedHours.add(hour);
+            }
+        }
+
+        Mono<Void> hours = Flux.fromIterable(affectedHours)
+                .flatMap(hour -> archiveSelf(envId, hour, hour.plus(1, ChronoUnit.HOURS), AccessLogStatisticsArchiveLevel.HOURS), parallelism)
+                .then(
+                        newHoursWatermark.isAfter(hoursWatermark)
+                                ? archiveSelf(envId, hoursWatermark, newHoursWatermark, AccessLogStatisticsArchiveLevel.HOURS)
+                                : Mono.empty()
+                );
+
+        TreeSet<Instant> affectedDays = new TreeSet<>();
+        for (Instant hour : affectedHours) {
+            Instant day = hour.truncatedTo(ChronoUnit.DAYS);
+            if (day.isBefore(daysWatermark)) {
+                affectedDays.add(day);
+            }
+        }
+        Instant latestHoursWatermark = newHoursWatermark.isAfter(hoursWatermark) ? newHoursWatermark : hoursWatermark;
+        Instant newDaysWatermark = latestHoursWatermark.truncatedTo(ChronoUnit.DAYS);
+
+        Mono<Void> days = Flux.fromIterable(affectedDays)
+                .flatMap(day -> archiveSelf(envId, day, day.plus(1, ChronoUnit.DAYS), AccessLogStatisticsArchiveLevel.DAYS), parallelism)
+                .then(
+                        newDaysWatermark.isAfter(daysWatermark)
+                                ? archiveSelf(envId, daysWatermark, newDaysWatermark, AccessLogStatisticsArchiveLevel.DAYS)
+                                : Mono.empty()
+                );
+
+        return hours.then(days).then(Mono.fromRunnable(() -> {
+            progress.setHoursWatermark(latestHoursWatermark);
+            progress.setDaysWatermark(newDaysWatermark.isAfter(daysWatermark) ? newDaysWatermark : daysWatermark);
+        }));
+    }
+
+    private Mono<Void> archiveSelf(String envId, Instant begin, Instant end, AccessLogStatisticsArchiveLevel level) {
+        return accessLogArchiveService.archiveAccessLog(envId, begin.toEpochMilli(), end.toEpochMilli(), level);
     }
 
     public static class ArchiveThreadFactory implements ThreadFactory {
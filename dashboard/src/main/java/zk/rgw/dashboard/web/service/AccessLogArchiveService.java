@@ -15,6 +15,10 @@
  */
 package zk.rgw.dashboard.web.service;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
 import reactor.core.publisher.Mono;
 
 import zk.rgw.dashboard.framework.security.HasRole;
@@ -29,4 +33,16 @@ public interface AccessLogArchiveService {
     @HasRole(Role.SYSTEM_ADMIN)
     Mono<Void> archiveAccessLog(String envId, long minTimestamp, long maxTimestamp, AccessLogStatisticsArchiveLevel level);
 
+    /**
+     * 把分钟级统计中有变化的部分累加到总量统计，返回有变化的分钟，可以重复执行
+     */
+    @HasRole(Role.SYSTEM_ADMIN)
+    Mono<List<Instant>> accumulateMinutesToTotal(String envId, long minTimestamp, long maxTimestamp);
+
+    /**
+     * 各环境分钟级统计的归档延迟，单位毫秒
+     */
+    @HasRole(Role.SYSTEM_ADMIN)
+    Mono<Map<String, Long>> archiveLags();
+
 }
@@ -13,7 +13,24 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package zk.rgw.dashboard.web.service;
 
+import java.util.List;
+
+import reactor.core.publisher.Mono;
+
+import zk.rgw.dashboard.web.bean.AccessLogStatisticsWithTime;
+import zk.rgw.dashboard.web.bean.TimeRangeType;
+
 public interface AccessLogStatisticsService {
+
+    /**
+     * 按时间范围查询访问统计，各个时间点的统计包含由耗时直方图估算的p50、p90、p99耗时
+     *
+     * @param apiIds 为空时统计所有api
+     * @param timeRangeType 为null时查询历史总量，结果中只有一条
+     */
+    Mono<List<AccessLogStatisticsWithTime>> searchAccessLogStatistics(String envId, List<String> apiIds, TimeRangeType timeRangeType);
+
 }
@@ -36,6 +36,11 @@ public interface GatewayNodeService {
 
     Flux<IdRouteDefinition> syncRouteDefinitions(String envId, long seq);
 
+    /**
+     * 分页同步，按opSeq升序返回大于seq的至多limit条API，full为true时不返回已下线的API
+     */
+    Flux<IdRouteDefinition> syncRouteDefinitions(String envId, long seq, boolean full, int limit);
+
     Flux<SubscriptionRelationship> syncApiSubscriptions(long opSeq);
 
 }
@@ -15,14 +15,19 @@
  */
 package zk.rgw.dashboard.web.service.impl;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
 import zk.rgw.dashboard.web.bean.AccessLogStatisticsArchiveLevel;
+import zk.rgw.dashboard.web.bean.entity.ArchiveProgress;
 import zk.rgw.dashboard.web.repository.AccessLogRepository;
 import zk.rgw.dashboard.web.repository.AccessLogStatisticsRepository;
+import zk.rgw.dashboard.web.repository.ArchiveProgressRepository;
 import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
 import zk.rgw.dashboard.web.service.AccessLogArchiveService;
 
@@ -33,15 +38,33 @@ public class AccessLogArchiveServiceImpl implements AccessLogArchiveService {
 
     private final AccessLogStatisticsRepository accessLogStatisticsRepository = RepositoryFactory.get(AccessLogStatisticsRepository.class);
 
+    private final ArchiveProgressRepository archiveProgressRepository = RepositoryFactory.get(ArchiveProgressRepository.class);
+
     @Override
     public Mono<Void> archiveAccessLog(String envId, long minTimestamp, long maxTimestamp, AccessLogStatisticsArchiveLevel level) {
         Objects.requireNonNull(envId);
         Objects.requireNonNull(level);
         if (level == AccessLogStatisticsArchiveLevel.MINUTES) {
-            return accessLogRepository.archiveAccessLogsByMinutes(envId, minTimestamp, maxTimestamp);
+            return accessLogRepository.archiveAccessLogsByMinutes(envId, minTimestamp, maxTimestamp)
+                    .then(accessLogRepository.accumulateToTotal(envId, minTimestamp, maxTimestamp))
+                    .then();
         } else {
             return accessLogStatisticsRepository.archiveSelf(envId, minTimestamp, maxTimestamp, level);
         }
     }
 
+    @Override
+    public Mono<List<Instant>> accumulateMinutesToTotal(String envId, long minTimestamp, long maxTimestamp) {
+        Objects.requireNonNull(envId);
+        return accessLogRepository.accumulateToTotal(envId, minTimestamp, maxTimestamp);
+    }
+
+    @Override
+    public Mono<Map<String, Long>> archiveLags() {
+        long now = System.currentTimeMillis();
+        return archiveProgressRepository.findAll()
+                .filter(progress -> Objects.nonNull(progress.getMinutesWatermark()))
+                .collectMap(ArchiveProgress::getEnvId, progress -> now - progress.getMinutesWatermark().toEpochMilli());
+    }
+
 }
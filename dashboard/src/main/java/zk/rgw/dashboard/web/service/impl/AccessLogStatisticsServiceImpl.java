@@ -13,9 +13,26 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package zk.rgw.dashboard.web.service.impl;
 
+import java.util.List;
+
+import reactor.core.publisher.Mono;
+
+import zk.rgw.dashboard.web.bean.AccessLogStatisticsWithTime;
+import zk.rgw.dashboard.web.bean.TimeRangeType;
+import zk.rgw.dashboard.web.repository.AccessLogStatisticsRepository;
+import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
 import zk.rgw.dashboard.web.service.AccessLogStatisticsService;
 
 public class AccessLogStatisticsServiceImpl implements AccessLogStatisticsService {
+
+    private final AccessLogStatisticsRepository accessLogStatisticsRepository = RepositoryFactory.get(AccessLogStatisticsRepository.class);
+
+    @Override
+    public Mono<List<AccessLogStatisticsWithTime>> searchAccessLogStatistics(String envId, List<String> apiIds, TimeRangeType timeRangeType) {
+        return accessLogStatisticsRepository.searchAccessLogStatistics(envId, apiIds, timeRangeType);
+    }
+
 }
@@ -31,17 +31,16 @@ import zk.rgw.dashboard.web.bean.AccessLogStatistics;
 import zk.rgw.dashboard.web.bean.AccessLogStatisticsWithTime;
 import zk.rgw.dashboard.web.bean.ApiPublishStatus;
 import zk.rgw.dashboard.web.bean.TimeRangeType;
-import zk.rgw.dashboard.web.repository.AccessLogStatisticsRepository;
 import zk.rgw.dashboard.web.repository.ApiRepository;
 import zk.rgw.dashboard.web.repository.factory.RepositoryFactory;
+import zk.rgw.dashboard.web.service.AccessLogStatisticsService;
 import zk.rgw.dashboard.web.service.DashboardService;
+import zk.rgw.dashboard.web.service.factory.ServiceFactory;
 
 public class DashboardServiceImpl implements DashboardService {
 
     private final ApiRepository apiRepository = RepositoryFactory.get(ApiRepository.class);
 
-    private final AccessLogStatisticsRepository accessLogStatisticsRepository = RepositoryFactory.get(AccessLogStatisticsRepository.class);
-
     @Override
     public Mono<Long> apisCount(String envId, String orgId) {
         return getApiFilterByEnvAndOrg(envId, orgId).flatMap(apiRepository::count);
@@ -103,7 +102,9 @@ public class DashboardServiceImpl implements DashboardService {
             apiIdsMono = Mono.just(List.of());
         }
 
-        return apiIdsMono.flatMap(apiIds -> accessLogStatisticsRepository.searchAccessLogStatistics(envId, apiIds, timeRangeType));
+        // 服务都在ServiceFactory的静态初始化中创建，不能在构造时获取
+        final AccessLogStatisticsService accessLogStatisticsService = ServiceFactory.get(AccessLogStatisticsService.class);
+        return apiIdsMono.flatMap(apiIds -> accessLogStatisticsService.searchAccessLogStatistics(envId, apiIds, timeRangeType));
     }
 
 }
@@ -44,6 +44,7 @@ import zk.rgw.dashboard.utils.ErrorMsgUtil;
 import zk.rgw.dashboard.web.bean.ApiPublishStatus;
 import zk.rgw.dashboard.web.bean.RegisterPayload;
 import zk.rgw.dashboard.web.bean.RouteDefinitionPublishSnapshot;
+import zk.rgw.dashboard.web.bean.entity.Api;
 import zk.rgw.dashboard.web.bean.entity.App;
 import zk.rgw.dashboard.web.bean.entity.Environment;
 import zk.rgw.dashboard.web.bean.entity.GatewayNode;
@@ -200,7 +201,12 @@ public class GatewayNodeServiceImpl implements GatewayNodeService {
 
     @Override
     public Flux<IdRouteDefinition> syncRouteDefinitions(String envId, long seq) {
-        return getEnvByEnvId(envId).flatMapMany(environment -> doSyncRouteDefinitions(environment.getId(), seq));
+        return getEnvByEnvId(envId).flatMapMany(environment -> doSyncRouteDefinitions(environment.getId(), seq, seq == 0L, 0));
+    }
+
+    @Override
+    public Flux<IdRouteDefinition> syncRouteDefinitions(String envId, long seq, boolean full, int limit) {
+        return getEnvByEnvId(envId).flatMapMany(environment -> doSyncRouteDefinitions(environment.getId(), seq, full, limit));
     }
 
     @Override
@@ -236,10 +242,11 @@ public class GatewayNodeServiceImpl implements GatewayNodeService {
         );
     }
 
-    private Flux<IdRouteDefinition> doSyncRouteDefinitions(String envId, long seq) {
-        final Bson filter = filterForSyncRouteDefinition(envId, seq);
+    private Flux<IdRouteDefinition> doSyncRouteDefinitions(String envId, long seq, boolean full, int limit) {
+        final Bson filter = filterForSyncRouteDefinition(envId, seq, full);
         Bson sort = Sorts.ascending("publishSnapshots." + envId + ".opSeq");
-        return apiRepository.find(filter, sort).map(api -> {
+        Flux<Api> apiFlux = limit > 0 ? apiRepository.find(filter, sort, List.of(Aggregates.limit(limit))) : apiRepository.find(filter, sort);
+        return apiFlux.map(api -> {
             IdRouteDefinition idRouteDefinition = new IdRouteDefinition();
             idRouteDefinition.setId(api.getId());
             idRouteDefinition.setOrgId(api.getOrganization().getId());
@@ -255,14 +262,16 @@ public class GatewayNodeServiceImpl implements GatewayNodeService {
         });
     }
 
-    private static Bson filterForSyncRouteDefinition(String envId, long seq) {
+    private static Bson filterForSyncRouteDefinition(String envId, long seq, boolean full) {
         Bson filter = Filters.exists("publishSnapshots." + envId);
-        if (seq == 0L) {
+        if (full) {
+            // 全量同步时gateway本地没有路由，已下线的API无需返回
             filter = Filters.and(
                     filter,
                     Filters.ne("publishSnapshots." + envId + ".publishStatus", ApiPublishStatus.UNPUBLISHED.name())
             );
-        } else {
+        }
+        if (seq > 0L) {
             filter = Filters.and(
                     filter,
                     Filters.gt("publishSnapshots." + envId + ".opSeq", seq)
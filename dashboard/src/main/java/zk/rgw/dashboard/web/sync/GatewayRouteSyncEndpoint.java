@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.dashboard.web.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import zk.rgw.common.definition.IdRouteDefinition;
+import zk.rgw.common.util.JsonUtil;
+import zk.rgw.dashboard.framework.exception.BizException;
+import zk.rgw.dashboard.web.service.GatewayNodeService;
+import zk.rgw.dashboard.web.service.factory.ServiceFactory;
+import zk.rgw.plugin.api.Exchange;
+import zk.rgw.plugin.api.filter.Filter;
+import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.util.ResponseUtil;
+
+/**
+ * gateway分页同步路由的端点，响应体是一个逐条写出的JSON数组，gateway可以边接收边解析。
+ * 请求头Accept-Encoding包含gzip时，按批压缩并flush，保证每批数据到达后即可解压
+ */
+@Slf4j
+public class GatewayRouteSyncEndpoint implements Filter {
+
+    public static final int DEFAULT_LIMIT = 1000;
+
+    public static final int MAX_LIMIT = 5000;
+
+    /**
+     * 每次写出的路由条数
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private static final byte[] ARRAY_START = {'['};
+
+    private static final byte[] ARRAY_END = {']'};
+
+    private static final byte[] SEPARATOR = {','};
+
+    private final GatewayNodeService gatewayNodeService = ServiceFactory.get(GatewayNodeService.class);
+
+    @Override
+    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
+        HttpServerRequest request = exchange.getRequest();
+        HttpServerResponse response = exchange.getResponse();
+
+        Map<String, List<String>> parameters = new QueryStringDecoder(request.uri()).parameters();
+        String envId = getParameter(parameters, "envId");
+        if (Objects.isNull(envId)) {
+            return ResponseUtil.sendStatus(response, HttpResponseStatus.BAD_REQUEST, "缺少必要的参数 envId");
+        }
+
+        long seq;
+        int limit;
+        try {
+            seq = Long.parseLong(Objects.requireNonNullElse(getParameter(parameters, "seq"), "0"));
+            limit = Integer.parseInt(Objects.requireNonNullElse(getParameter(parameters, "limit"), String.valueOf(DEFAULT_LIMIT)));
+        } catch (NumberFormatException exception) {
+            return ResponseUtil.sendStatus(response, HttpResponseStatus.BAD_REQUEST, "参数格式错误");
+        }
+        limit = Math.min(Math.max(limit, 1), MAX_LIMIT);
+        boolean full = Boolean.parseBoolean(getParameter(parameters, "full"));
+
+        String acceptEncoding = request.requestHeaders().get(HttpHeaderNames.ACCEPT_ENCODING);
+        boolean gzip = Objects.nonNull(acceptEncoding) && acceptEncoding.contains(HttpHeaderValues.GZIP);
+
+        // 环境不存在等错误在第一个元素之前就会出现，此时还没有写出响应头，可以正常返回错误
+        return gatewayNodeService.syncRouteDefinitions(envId, seq, full, limit)
+                .switchOnFirst((first, routes) -> {
+                    if (first.isOnError()) {
+                        Throwable throwable = Objects.requireNonNull(first.getThrowable());
+                        if (throwable instanceof BizException) {
+                            return ResponseUtil.sendStatus(response, HttpResponseStatus.NOT_FOUND, throwable.getMessage()).flux();
+                        }
+                        log.error("Failed to sync route definitions of env {}.", envId, throwable);
+                        return ResponseUtil.sendError(response).flux();
+                    }
+                    return sendJsonArray(response, routes, gzip).flux();
+                })
+                .then();
+    }
+
+    private static Mono<Void> sendJsonArray(HttpServerResponse response, Flux<IdRouteDefinition> routes, boolean gzip) {
+        response.status(HttpResponseStatus.OK).header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        if (gzip) {
+            response.header(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+        }
+
+        Flux<byte[]> body = Flux.using(
+                () -> new ChunkEncoder(gzip),
+                encoder -> routes.buffer(BATCH_SIZE)
+                        .map(encoder::encode)
+                        .concatWith(Mono.fromCallable(encoder::finish)),
+                ChunkEncoder::close
+        );
+        return response.sendByteArray(body).then();
+    }
+
+    private static String getParameter(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        if (Objects.isNull(values) || values.isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    /**
+     * 把路由按批编码成JSON数组的片段，单个请求内使用，非线程安全
+     */
+    private static class ChunkEncoder {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+        private final OutputStream out;
+
+        private boolean first = true;
+
+        ChunkEncoder(boolean gzip) throws IOException {
+            // syncFlush使得每次flush都能输出完整可解压的数据块
+            this.out = gzip ? new GZIPOutputStream(buffer, 8192, true) : buffer;
+        }
+
+        byte[] encode(List<IdRouteDefinition> batch) {
+            try {
+                for (IdRouteDefinition idRouteDefinition : batch) {
+                    out.write(first ? ARRAY_START : SEPARATOR);
+                    first = false;
+                    out.write(JsonUtil.toJsonBytes(idRouteDefinition));
+                }
+                out.flush();
+                return drain();
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        byte[] finish() throws IOException {
+            if (first) {
+                out.write(ARRAY_START);
+            }
+            out.write(ARRAY_END);
+            out.close();
+            return drain();
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (IOException exception) {
+                // 只是为了释放Deflater，忽略异常
+            }
+        }
+
+        private byte[] drain() {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            return bytes;
+        }
+
+    }
+
+}
@@ -21,6 +21,7 @@ import lombok.Setter;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 
+import zk.rgw.gateway.accesslog.AccessLogOverflowStrategy;
 import zk.rgw.http.conf.ServerConfiguration;
 
 @SuppressWarnings("java:S1075")
@@ -65,6 +66,36 @@ public class GatewayConfiguration extends ServerConfiguration {
     @CommandLine.Option(names = "--heartbeat.interval", description = "The interval of for send heartbeat to dashboard.")
     private int heartbeatInterval = 30;
 
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--dashboard.config.stream.enabled",
+            description = "Set if subscribe config changes from dashboard through a long-lived stream, otherwise rely on notifications and heartbeats only."
+    )
+    private boolean dashboardConfigStreamEnabled = true;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--config.snapshot.enabled",
+            description = "Set if applied routes, subscriptions and environments should be saved to a local snapshot, and restored from it on start."
+    )
+    private boolean configSnapshotEnabled = true;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--config.snapshot.file",
+            description = "The file of the local config snapshot, relative to RGW_HOME if not absolute. "
+                    + "It contains app secrets and environment variables, and is created with permission 0600 (owner read/write only)."
+    )
+    private String configSnapshotFile = "data/config-snapshot.json.gz";
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--config.snapshot.save.interval", description = "The interval in seconds to save the local config snapshot if changed.")
+    private int configSnapshotSaveInterval = 10;
+
     @Getter
     @Setter
     @CommandLine.Option(names = "--server.schema", description = "The uri schema used for dashboard send http request to gateway, http or https.")
@@ -80,6 +111,81 @@ public class GatewayConfiguration extends ServerConfiguration {
     @CommandLine.Option(names = "--access.log.enabled", description = "Set if access log should be audited and sent to kafka.")
     private boolean accessLogEnabled = true;
 
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.queue.size", description = "The capacity of the in-memory queue buffering access logs before sent to kafka.")
+    private int accessLogQueueSize = 32768;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--access.log.overflow.strategy",
+            description = "What to do when the access log queue is full, one of: ${COMPLETION-CANDIDATES}."
+    )
+    private AccessLogOverflowStrategy accessLogOverflowStrategy = AccessLogOverflowStrategy.DROP_NEWEST;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--access.log.overflow.sample.rate",
+            description = "The sample rate of non-error access logs when the queue is backlogged, used by SAMPLE overflow strategy."
+    )
+    private double accessLogOverflowSampleRate = 0.1D;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.kafka.linger.ms", description = "The linger.ms of the kafka producer writing access log.")
+    private int accessLogKafkaLingerMs = 50;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.kafka.batch.size", description = "The batch.size of the kafka producer writing access log.")
+    private int accessLogKafkaBatchSize = 65536;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.kafka.compression.type", description = "The compression.type of the kafka producer writing access log.")
+    private String accessLogKafkaCompressionType = "lz4";
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--access.log.kafka.max.block.ms",
+            description = "The max.block.ms of the kafka producer writing access log, access logs are spooled when blocked longer than it."
+    )
+    private int accessLogKafkaMaxBlockMs = 1000;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--access.log.spool.enabled",
+            description = "Set if access logs failed to send to kafka should be spooled to local disk and replayed later."
+    )
+    private boolean accessLogSpoolEnabled = false;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.spool.dir", description = "The directory of access log spool, relative to RGW_HOME if not absolute.")
+    private String accessLogSpoolDir = "spool/access-log";
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.spool.segment.size.mb", description = "The size of each access log spool segment file in MB.")
+    private int accessLogSpoolSegmentSizeMb = 64;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(
+            names = "--access.log.spool.max.size.mb",
+            description = "The max total size of access log spool in MB, oldest segments are evicted when exceeded."
+    )
+    private int accessLogSpoolMaxSizeMb = 1024;
+
+    @Getter
+    @Setter
+    @CommandLine.Option(names = "--access.log.spool.replay.interval.ms", description = "The interval to retry replaying spooled access logs to kafka.")
+    private int accessLogSpoolReplayIntervalMs = 1000;
+
     public GatewayConfiguration() {
         this.confFile = DEFAULT_CONF_FILE;
         this.serverPort = DEFAULT_PORT;
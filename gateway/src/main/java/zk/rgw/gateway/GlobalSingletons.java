@@ -31,6 +31,9 @@ import zk.rgw.gateway.heartbeat.HeartbeatReporter;
 import zk.rgw.gateway.internal.GatewayInternalEndpoint;
 import zk.rgw.gateway.internal.GatewayInternalRouteLocator;
 import zk.rgw.gateway.route.PullFromDashboardRouteLocator;
+import zk.rgw.gateway.snapshot.ConfigSnapshotManager;
+import zk.rgw.gateway.snapshot.ConfigSnapshotStore;
+import zk.rgw.gateway.stream.ConfigStreamClient;
 
 public class GlobalSingletons {
 
@@ -58,6 +61,7 @@ public class GlobalSingletons {
 
         GatewayInternalRouteLocator gatewayInternalRouteLocator = new GatewayInternalRouteLocator(gatewayInternalEndpoint);
         INSTANCES.put(GatewayInternalRouteLocator.class, gatewayInternalRouteLocator);
+        gatewayInternalEndpoint.registerMetrics("/metrics/route-sync", pullFromDashboardRouteLocator::getSyncMetrics);
 
         HeartbeatReporter heartbeatReporter = new HeartbeatReporter(
                 configuration.getDashboardAddress(),
@@ -85,10 +89,32 @@ public class GlobalSingletons {
         if (configuration.isAccessLogEnabled()) {
             String envId = configuration.getEnvironmentId();
             envId = Constants.BUILT_IN_ENV_IDS.getOrDefault(envId, envId);
-            AccessLogKafkaWriter accessLogKafkaWriter = new AccessLogKafkaWriter(configuration.getKafkaBootstrapServers(), envId);
-            AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogKafkaWriter);
+            AccessLogKafkaWriter accessLogKafkaWriter = new AccessLogKafkaWriter(configuration, envId);
+            AccessLogFilter accessLogFilter = new AccessLogFilter(accessLogKafkaWriter, accessLogKafkaWriter::getBacklog);
             INSTANCES.put(AccessLogKafkaWriter.class, accessLogKafkaWriter);
             INSTANCES.put(AccessLogFilter.class, accessLogFilter);
+            gatewayInternalEndpoint.registerMetrics("/metrics/access-log", accessLogKafkaWriter::getMetrics);
+        }
+
+        if (configuration.isDashboardConfigStreamEnabled()) {
+            ConfigStreamClient configStreamClient = new ConfigStreamClient(configuration.getDashboardAddress(), configuration.getDashboardApiContextPath());
+            configStreamClient.setEventPublisher(eventPublisher);
+            eventPublisher.registerListener(configStreamClient);
+            INSTANCES.put(ConfigStreamClient.class, configStreamClient);
+        }
+
+        if (configuration.isConfigSnapshotEnabled()) {
+            ConfigSnapshotStore configSnapshotStore = new ConfigSnapshotStore(configuration.getRgwHome().resolve(configuration.getConfigSnapshotFile()));
+            ConfigSnapshotManager configSnapshotManager = new ConfigSnapshotManager(
+                    configSnapshotStore,
+                    configuration.getEnvironmentId(),
+                    configuration.getConfigSnapshotSaveInterval(),
+                    pullFromDashboardRouteLocator,
+                    appSubscribeRouteManager,
+                    environmentPrepareFilter,
+                    heartbeatReporter
+            );
+            INSTANCES.put(ConfigSnapshotManager.class, configSnapshotManager);
         }
 
         eventPublisher.registerListener(environmentPrepareFilter);
@@ -18,6 +18,7 @@ package zk.rgw.gateway;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -26,8 +27,11 @@ import zk.rgw.gateway.accesslog.AccessLogKafkaWriter;
 import zk.rgw.gateway.heartbeat.HeartbeatReporter;
 import zk.rgw.gateway.internal.GatewayInternalRouteLocator;
 import zk.rgw.gateway.route.PullFromDashboardRouteLocator;
+import zk.rgw.gateway.snapshot.ConfigSnapshotManager;
+import zk.rgw.gateway.stream.ConfigStreamClient;
 import zk.rgw.http.route.locator.CompositeRouteLocator;
 import zk.rgw.http.route.locator.RouteLocator;
+import zk.rgw.http.server.HttpHandler;
 import zk.rgw.http.server.ReactorHttpServer;
 
 @Slf4j
@@ -49,10 +53,22 @@ public class ReactorGatewayServer extends ReactorHttpServer {
         return routeLocator;
     }
 
+    @Override
+    protected HttpHandler getHttpHandler() {
+        // 网关的Filter都通过Exchange传递数据，不依赖ReactiveRequestContextHolder，无需为每个请求写入Reactor Context
+        return new HttpHandler(this.getRouteLocator(), false);
+    }
+
     @Override
     protected void beforeStart() {
         GlobalSingletons.init(this.configuration);
         initRouteLocator();
+        if (configuration.isDashboardConfigStreamEnabled()) {
+            // 注册成功后才会建立连接，因此要先于HeartbeatReporter启动
+            ConfigStreamClient configStreamClient = GlobalSingletons.get(ConfigStreamClient.class);
+            configStreamClient.start();
+            this.lifeCycles.add(configStreamClient);
+        }
         HeartbeatReporter heartbeatReporter = GlobalSingletons.get(HeartbeatReporter.class);
         heartbeatReporter.start();
         this.lifeCycles.add(heartbeatReporter);
@@ -66,8 +82,19 @@ public class ReactorGatewayServer extends ReactorHttpServer {
         }
 
         PullFromDashboardRouteLocator pullFromDashboardRouteLocator = GlobalSingletons.get(PullFromDashboardRouteLocator.class);
+        ConfigSnapshotManager configSnapshotManager = GlobalSingletons.get(ConfigSnapshotManager.class);
+        if (Objects.nonNull(configSnapshotManager)) {
+            // 先从快照恢复，服务启动后即可处理请求，dashboard不可用时也不必退出
+            boolean restored = configSnapshotManager.restore();
+            GlobalSingletons.get(HeartbeatReporter.class).setRegisterRetryEnabled(restored);
+        }
         pullFromDashboardRouteLocator.start();
         this.lifeCycles.add(pullFromDashboardRouteLocator);
+        if (Objects.nonNull(configSnapshotManager)) {
+            // 停止时逆序执行，在定位器停止前保存最后一次快照
+            configSnapshotManager.start();
+            this.lifeCycles.add(configSnapshotManager);
+        }
 
         GatewayInternalRouteLocator gatewayInternalRouteLocator = GlobalSingletons.get(GatewayInternalRouteLocator.class);
 
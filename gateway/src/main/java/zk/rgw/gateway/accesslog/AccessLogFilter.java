@@ -15,12 +15,12 @@
  */
 package zk.rgw.gateway.accesslog;
 
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 
 import io.netty.handler.codec.http.HttpHeaders;
 import reactor.core.publisher.Mono;
@@ -41,8 +41,14 @@ public class AccessLogFilter implements Filter {
 
     private final Consumer<AccessLog> accessLogConsumer;
 
-    public AccessLogFilter(Consumer<AccessLog> accessLogConsumer) {
+    private final DoubleSupplier backlogSupplier;
+
+    /**
+     * @param backlogSupplier 访问日志写入队列的积压比例，用于自适应采样
+     */
+    public AccessLogFilter(Consumer<AccessLog> accessLogConsumer, DoubleSupplier backlogSupplier) {
         this.accessLogConsumer = accessLogConsumer;
+        this.backlogSupplier = backlogSupplier;
     }
 
     @Override
@@ -51,7 +57,13 @@ public class AccessLogFilter implements Filter {
         if (Objects.isNull(route) || Objects.isNull(route.getAccessLogConf())) {
             return chain.filter(exchange);
         }
-        return new AccessLogAuditContext(exchange, chain).run();
+        AccessLogConf accessLogConf = route.getAccessLogConf();
+        double sampleRate = AccessLogSampler.headRate(accessLogConf, backlogSupplier.getAsDouble());
+        boolean sampled = AccessLogSampler.sampleAtRate(accessLogConf, exchange.getRequest().requestId(), sampleRate);
+        if (!sampled && !AccessLogSampler.mayForceTail(accessLogConf)) {
+            return chain.filter(exchange);
+        }
+        return new AccessLogAuditContext(exchange, chain, sampled, sampleRate).run();
     }
 
     class AccessLogAuditContext {
@@ -66,9 +78,18 @@ public class AccessLogFilter implements Filter {
 
         private final AccessLogConf accessLogConf;
 
-        AccessLogAuditContext(Exchange exchange, FilterChain filterChain) {
+        /**
+         * 未被采样时不收集body，只在错误或慢调用时记录
+         */
+        private final boolean sampled;
+
+        private final double sampleRate;
+
+        AccessLogAuditContext(Exchange exchange, FilterChain filterChain, boolean sampled, double sampleRate) {
             this.exchange = exchange;
             this.filterChain = filterChain;
+            this.sampled = sampled;
+            this.sampleRate = sampleRate;
             this.accessLog = new AccessLog();
             this.route = RouteUtil.getRoute(exchange);
             this.accessLogConf = this.route.getAccessLogConf();
@@ -90,20 +111,20 @@ public class AccessLogFilter implements Filter {
             requestInfo.setMethod(request.method().name());
             requestInfo.setUri(request.uri());
 
-            if (accessLogConf.isReqHeadersEnabled()) {
+            if (sampled && accessLogConf.isReqHeadersEnabled()) {
                 requestInfo.setHeaders(copyHeaders(request.requestHeaders()));
             }
 
             accessLog.setRequestInfo(requestInfo);
 
-            if (accessLogConf.isReqBodyEnabled() || accessLogConf.isRespBodyEnabled()) {
+            if (sampled && (accessLogConf.isReqBodyEnabled() || accessLogConf.isRespBodyEnabled())) {
                 buildNewExchange();
             }
 
             return filterChain.filter(exchange)
-                    .doOnSuccess(ignore -> doAuditInResponseStage())
-                    .doOnError(ignore -> doAuditInResponseStage())
-                    .doOnCancel(this::doAuditInResponseStage);
+                    .doOnSuccess(ignore -> doAuditInResponseStage(false))
+                    .doOnError(ignore -> doAuditInResponseStage(true))
+                    .doOnCancel(() -> doAuditInResponseStage(false));
         }
 
         private void buildNewExchange() {
@@ -116,36 +137,39 @@ public class AccessLogFilter implements Filter {
             this.exchange = new DefaultExchangeBuilder(exchange).request(bodyAuditableRequest).response(bodyAuditableResponse).build();
         }
 
-        void doAuditInResponseStage() {
-            BodyAuditableRequest bodyAuditableRequest = (BodyAuditableRequest) exchange.getRequest();
-            accessLog.getRequestInfo().setBodySize(bodyAuditableRequest.getBodySize());
-            byte[] auditRequestBodyBytes = bodyAuditableRequest.getAuditBody();
-            try {
-                String auditRequestBodyString = new String(auditRequestBodyBytes);
-                accessLog.getRequestInfo().setBody(auditRequestBodyString);
-                accessLog.getRequestInfo().setBodyBase64(false);
-            } catch (Exception exception) {
-                accessLog.getRequestInfo().setBody(Base64.getEncoder().encodeToString(auditRequestBodyBytes));
-                accessLog.getRequestInfo().setBodyBase64(true);
+        void doAuditInResponseStage(boolean error) {
+            int statusCode = exchange.getResponse().status().code();
+            long respTimestamp = System.currentTimeMillis();
+            long millisCost = respTimestamp - accessLog.getReqTimestamp();
+            // 无论是否被采样都会记录的请求只代表它自己，其他请求代表按采样率被丢弃的同类请求
+            boolean forced = AccessLogSampler.mayForceTail(accessLogConf)
+                    && (error || AccessLogSampler.forceTail(accessLogConf, statusCode, millisCost));
+            if (!sampled && !forced) {
+                return;
+            }
+            accessLog.setSampleWeight(forced ? 1 : AccessLogSampler.sampleWeight(sampleRate));
+
+            AccessLog.RequestInfo requestInfo = accessLog.getRequestInfo();
+            if (!sampled && accessLogConf.isReqHeadersEnabled()) {
+                requestInfo.setHeaders(copyHeaders(exchange.getRequest().requestHeaders()));
+            }
+            if (exchange.getRequest() instanceof BodyAuditableRequest bodyAuditableRequest) {
+                requestInfo.setBodySize(bodyAuditableRequest.getBodySize());
+                requestInfo.setRawBody(bodyAuditableRequest.drainAuditBody());
+                requestInfo.setBodyBase64(!bodyAuditableRequest.isAuditBodyUtf8());
             }
 
             AccessLog.ResponseInfo responseInfo = new AccessLog.ResponseInfo();
-            responseInfo.setCode(exchange.getResponse().status().code());
+            responseInfo.setCode(statusCode);
 
             if (accessLogConf.isRespHeadersEnabled()) {
                 responseInfo.setHeaders(copyHeaders(exchange.getResponse().responseHeaders()));
             }
 
-            BodyAuditableResponse bodyAuditableResponse = (BodyAuditableResponse) exchange.getResponse();
-            responseInfo.setBodySize(bodyAuditableResponse.getBodySize());
-            byte[] auditResponseBodyBytes = bodyAuditableResponse.getAuditBody();
-            try {
-                String auditResponseBodyString = new String(auditResponseBodyBytes);
-                responseInfo.setBody(auditResponseBodyString);
-                responseInfo.setBodyBase64(false);
-            } catch (Exception exception) {
-                responseInfo.setBody(Base64.getEncoder().encodeToString(auditResponseBodyBytes));
-                responseInfo.setBodyBase64(true);
+            if (exchange.getResponse() instanceof BodyAuditableResponse bodyAuditableResponse) {
+                responseInfo.setBodySize(bodyAuditableResponse.getBodySize());
+                responseInfo.setRawBody(bodyAuditableResponse.drainAuditBody());
+                responseInfo.setBodyBase64(!bodyAuditableResponse.isAuditBodyUtf8());
             }
 
             accessLog.setResponseInfo(responseInfo);
@@ -158,8 +182,8 @@ public class AccessLogFilter implements Filter {
             accessLog.setExtraInfo(ExchangeUtil.getAuditInfo(exchange));
             accessLog.setTags(ExchangeUtil.getAuditTags(exchange));
 
-            accessLog.setRespTimestamp(System.currentTimeMillis());
-            accessLog.setMillisCost((int) (accessLog.getRespTimestamp() - accessLog.getReqTimestamp()));
+            accessLog.setRespTimestamp(respTimestamp);
+            accessLog.setMillisCost((int) millisCost);
 
             accessLogConsumer.accept(accessLog);
         }
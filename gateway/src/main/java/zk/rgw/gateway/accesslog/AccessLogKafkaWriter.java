@@ -13,63 +13,188 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package zk.rgw.gateway.accesslog;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
 import zk.rgw.common.access.AccessLog;
+import zk.rgw.common.access.AccessLogCodec;
 import zk.rgw.common.bootstrap.LifeCycle;
 import zk.rgw.common.constant.Constants;
-import zk.rgw.common.util.JsonUtil;
+import zk.rgw.gateway.GatewayConfiguration;
+import zk.rgw.gateway.accesslog.spool.AccessLogSpool;
+import zk.rgw.gateway.accesslog.spool.SpoolReplayer;
 
 @Slf4j
 public class AccessLogKafkaWriter implements Consumer<AccessLog>, LifeCycle {
 
-    private static final int QUEUE_SIZE = 16384 * 2;
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private static final int ENCODER_INITIAL_CAPACITY = 4096;
+
+    /**
+     * 队列为空时生产线程的最长休眠时间，正常情况下由写入方唤醒，超时只是兜底
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
-    private final BlockingQueue<AccessLog> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final MpscRingBuffer<AccessLog> queue;
+
+    private final AccessLogOverflowPolicy overflowPolicy;
 
     private final String kafkaBootstrapServers;
 
     private final String topicName;
 
-    private Producer<String, String> producer;
+    private final int lingerMs;
+
+    private final int batchSize;
+
+    private final String compressionType;
+
+    private final int maxBlockMs;
+
+    /**
+     * 未开启磁盘缓存时为null
+     */
+    private final AccessLogSpool spool;
+
+    private final SpoolReplayer spoolReplayer;
+
+    /**
+     * 发送失败后置为false，此后的日志直接写入磁盘缓存，直到回放成功
+     */
+    private volatile boolean kafkaAvailable = true;
+
+    /**
+     * 只在生产线程中使用（停止时生产线程已经退出）
+     */
+    private final AccessLogCodec.Encoder encoder = new AccessLogCodec.Encoder(ENCODER_INITIAL_CAPACITY);
+
+    private final List<AccessLog> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder sampledOut = new LongAdder();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder sendFailed = new LongAdder();
+
+    private final LongAdder encodeFailed = new LongAdder();
+
+    private Producer<String, byte[]> producer;
+
+    /**
+     * 回放磁盘缓存专用的producer，使用acks=all，只有Kafka确认了全部日志后才能删除磁盘上的数据。
+     * 未开启磁盘缓存时为null
+     */
+    private Producer<String, byte[]> replayProducer;
 
     private volatile boolean running = false;
 
-    private Thread producerThread;
+    private volatile Thread producerThread;
 
-    public AccessLogKafkaWriter(String kafkaBootstrapServers, String envId) {
-        this.kafkaBootstrapServers = kafkaBootstrapServers;
+    /**
+     * 生产线程因队列为空而休眠时为true，只有把它从true改为false的写入方负责唤醒，其他写入方只读一次volatile
+     */
+    private final AtomicBoolean idle = new AtomicBoolean(false);
+
+    public AccessLogKafkaWriter(GatewayConfiguration configuration, String envId) {
+        this.kafkaBootstrapServers = configuration.getKafkaBootstrapServers();
         this.topicName = Constants.ACCESS_LOG_KAFKA_TOPIC_NAME_PREFIX + envId;
+        this.queue = new MpscRingBuffer<>(configuration.getAccessLogQueueSize());
+        this.lingerMs = configuration.getAccessLogKafkaLingerMs();
+        this.batchSize = configuration.getAccessLogKafkaBatchSize();
+        this.compressionType = configuration.getAccessLogKafkaCompressionType();
+        this.maxBlockMs = configuration.getAccessLogKafkaMaxBlockMs();
+
+        if (configuration.isAccessLogSpoolEnabled()) {
+            Path spoolDir = configuration.getRgwHome().resolve(configuration.getAccessLogSpoolDir());
+            long megabytes = 1024L * 1024L;
+            this.spool = new AccessLogSpool(
+                    spoolDir,
+                    (int) (configuration.getAccessLogSpoolSegmentSizeMb() * megabytes),
+                    configuration.getAccessLogSpoolMaxSizeMb() * megabytes
+            );
+            this.spoolReplayer = new SpoolReplayer(spool, this::replay, configuration.getAccessLogSpoolReplayIntervalMs());
+        } else {
+            this.spool = null;
+            this.spoolReplayer = null;
+        }
+
+        this.overflowPolicy = AccessLogOverflowPolicy.create(
+                configuration.getAccessLogOverflowStrategy(),
+                configuration.getAccessLogOverflowSampleRate(),
+                spool,
+                dropped::add
+        );
     }
 
     @Override
     public void accept(AccessLog accessLog) {
-        try {
-            this.queue.add(accessLog);
-        } catch (Exception exception) {
-            log.error("Failed to add AccessLog into queue.", exception);
+        if (!overflowPolicy.admit(accessLog, queue.size(), queue.capacity())) {
+            sampledOut.increment();
+            return;
+        }
+        if (!queue.offer(accessLog)) {
+            int droppedCount = overflowPolicy.onOverflow(accessLog, queue);
+            if (droppedCount > 0) {
+                dropped.add(droppedCount);
+            }
         }
+        if (idle.get() && idle.compareAndSet(true, false)) {
+            LockSupport.unpark(producerThread);
+        }
+    }
+
+    /**
+     * 队列的积压比例，取值[0, 1]
+     */
+    public double getBacklog() {
+        return (double) queue.size() / queue.capacity();
+    }
+
+    public AccessLogWriterMetrics getMetrics() {
+        return new AccessLogWriterMetrics(
+                queue.size(),
+                queue.capacity(),
+                queue.highWaterMark(),
+                dropped.sum(),
+                sampledOut.sum(),
+                sent.sum(),
+                sendFailed.sum(),
+                encodeFailed.sum(),
+                kafkaAvailable,
+                Objects.isNull(spool) ? null : spool.getMetrics()
+        );
     }
 
     @Override
     public void start() {
-        initProducer();
+        producer = createProducer("0", "");
+        if (Objects.nonNull(spool)) {
+            replayProducer = createProducer("all", "_replay");
+        }
         this.running = true;
 
         producerThread = new Thread(() -> {
@@ -81,11 +206,22 @@ public class AccessLogKafkaWriter implements Consumer<AccessLog>, LifeCycle {
         producerThread.setName(this.getClass().getSimpleName());
         producerThread.setDaemon(true);
         producerThread.start();
+
+        if (Objects.nonNull(spoolReplayer)) {
+            spoolReplayer.start();
+        }
         log.info("{} started", this.getClass().getSimpleName());
     }
 
     @Override
     public void stop() {
+        if (Objects.nonNull(spoolReplayer)) {
+            spoolReplayer.stop();
+        }
+        if (Objects.nonNull(replayProducer)) {
+            replayProducer.close();
+        }
+
         running = false;
         if (Objects.nonNull(producerThread)) {
             producerThread.interrupt();
@@ -99,58 +235,145 @@ public class AccessLogKafkaWriter implements Consumer<AccessLog>, LifeCycle {
 
         }
 
-        List<AccessLog> leftInQueue = new ArrayList<>();
-        int leftCount = queue.drainTo(leftInQueue);
+        batch.clear();
+        int leftCount = 0;
+        int drained;
+        while ((drained = queue.drainTo(batch, MAX_BATCH_SIZE)) > 0) {
+            leftCount += drained;
+            sendBatch();
+        }
         if (leftCount > 0) {
             log.info("Send {} access log before stop.", leftCount);
-            for (AccessLog accessLog : leftInQueue) {
-                doSend(accessLog);
-            }
-            log.info("Send access log done.");
         }
 
         producer.close();
+        // 等待写盘线程把已经溢出的日志写完，再刷新磁盘缓存
+        overflowPolicy.close();
+        if (Objects.nonNull(spool)) {
+            spool.close();
+        }
         log.info("{} stop", this.getClass().getSimpleName());
     }
 
     private void send() {
-        AccessLog accessLog;
-        try {
-            accessLog = queue.take();
-        } catch (InterruptedException interruptedException) {
-            if (running) {
-                // 非正常，非主动停止，打印下日志
-                log.error("InterruptedException happened while take AccessLog from queue.", interruptedException);
+        if (queue.drainTo(batch, MAX_BATCH_SIZE) == 0) {
+            idle.set(true);
+            // 标记之后再检查一次，避免错过标记之前刚写入的日志；停止时通过interrupt唤醒
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
             }
-            Thread.currentThread().interrupt();
+            idle.set(false);
             return;
         }
-        doSend(accessLog);
+        sendBatch();
+    }
+
+    private void sendBatch() {
+        for (AccessLog accessLog : batch) {
+            doSend(accessLog);
+        }
+        batch.clear();
     }
 
     private void doSend(AccessLog accessLog) {
-        String json;
+        byte[] bytes;
         try {
-            json = JsonUtil.toJson(accessLog);
-        } catch (JsonProcessingException jsonProcessingException) {
-            log.error("Failed to serialize an AccessLog to json string", jsonProcessingException);
+            bytes = encoder.encode(accessLog);
+        } catch (Exception exception) {
+            encodeFailed.increment();
+            log.error("Failed to encode an AccessLog.", exception);
+            return;
+        }
+        if (Objects.nonNull(spool) && !kafkaAvailable) {
+            spool(bytes);
+            return;
+        }
+        try {
+            producer.send(new ProducerRecord<>(topicName, null, accessLog.getReqTimestamp(), accessLog.getApiId(), bytes), (metadata, exception) -> {
+                if (Objects.isNull(exception)) {
+                    sent.increment();
+                } else {
+                    onSendFailed(bytes, exception);
+                }
+            });
+        } catch (Exception exception) {
+            // 超过max.block.ms仍无法获取元数据或缓冲区已满
+            onSendFailed(bytes, exception);
+        }
+    }
+
+    private void onSendFailed(byte[] bytes, Exception exception) {
+        sendFailed.increment();
+        if (Objects.isNull(spool)) {
             return;
         }
-        producer.send(new ProducerRecord<>(topicName, null, accessLog.getReqTimestamp(), accessLog.getApiId(), json));
+        if (kafkaAvailable) {
+            kafkaAvailable = false;
+            log.warn("Failed to send access log to kafka, following access logs will be spooled to local disk.", exception);
+        }
+        spool(bytes);
+    }
+
+    private void spool(byte[] bytes) {
+        if (!spool.append(bytes)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 在回放线程中调用，回放的日志不再带有apiId作为key。
+     * 等待每一条日志的发送回调，全部成功才返回true，否则整批保留在磁盘上稍后重试
+     */
+    private boolean replay(List<byte[]> records) {
+        CountDownLatch completed = new CountDownLatch(records.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            for (byte[] bytes : records) {
+                replayProducer.send(new ProducerRecord<>(topicName, bytes), (metadata, exception) -> {
+                    if (Objects.nonNull(exception)) {
+                        failure.compareAndSet(null, exception);
+                    }
+                    completed.countDown();
+                });
+            }
+            replayProducer.flush();
+            if (!completed.await(maxBlockMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception exception) {
+            // Kafka仍不可用，等待下次重试
+            return false;
+        }
+        if (Objects.nonNull(failure.get())) {
+            log.debug("Failed to replay access logs to kafka.", failure.get());
+            return false;
+        }
+        if (!kafkaAvailable) {
+            kafkaAvailable = true;
+            log.info("Access logs are being replayed to kafka, stop spooling new access logs.");
+        }
+        return true;
     }
 
-    private void initProducer() {
+    private Producer<String, byte[]> createProducer(String acks, String clientIdSuffix) {
         Properties properties = new Properties();
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
-        properties.put(ProducerConfig.ACKS_CONFIG, "0");
-        String clientId = "rgw_kafka_producer_" + this.getClass().getSimpleName();
+        properties.put(ProducerConfig.ACKS_CONFIG, acks);
+        String clientId = "rgw_kafka_producer_" + this.getClass().getSimpleName() + clientIdSuffix;
         properties.put(ProducerConfig.CLIENT_ID_CONFIG, clientId);
         properties.put(ProducerConfig.RECONNECT_BACKOFF_MAX_MS_CONFIG, 5000);
         properties.put(ProducerConfig.RECONNECT_BACKOFF_MS_CONFIG, 5000);
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        properties.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, maxBlockMs);
 
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        producer = new KafkaProducer<>(properties);
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new KafkaProducer<>(properties);
     }
 
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import zk.rgw.common.access.AccessLog;
+import zk.rgw.gateway.accesslog.spool.AccessLogSpool;
+
+/**
+ * 访问日志写入队列前的准入判断，以及队列满时的处理
+ */
+public interface AccessLogOverflowPolicy {
+
+    /**
+     * 写入队列前调用，返回false表示该日志被采样丢弃，不再写入队列
+     */
+    default boolean admit(AccessLog accessLog, int depth, int capacity) {
+        return true;
+    }
+
+    /**
+     * 队列已满时调用，返回因此被丢弃的日志数量
+     */
+    int onOverflow(AccessLog accessLog, MpscRingBuffer<AccessLog> queue);
+
+    /**
+     * 写入方停止写入之后调用，释放策略自己持有的资源
+     */
+    default void close() {
+    }
+
+    /**
+     * @param onDropped 异步处理溢出的日志时，报告之后才被丢弃的日志数量
+     */
+    static AccessLogOverflowPolicy create(AccessLogOverflowStrategy strategy, double sampleRate, AccessLogSpool spool, IntConsumer onDropped) {
+        return switch (strategy) {
+            case DROP_OLDEST -> new DropOldestOverflowPolicy();
+            case SAMPLE -> new SampleOverflowPolicy(sampleRate);
+            case SPILL -> Objects.isNull(spool) ? new DropNewestOverflowPolicy() : new SpillOverflowPolicy(spool, onDropped);
+            default -> new DropNewestOverflowPolicy();
+        };
+    }
+
+}
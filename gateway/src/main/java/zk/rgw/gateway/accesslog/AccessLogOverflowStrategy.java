@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+/**
+ * 访问日志队列满时的处理方式
+ */
+public enum AccessLogOverflowStrategy {
+
+    /**
+     * 丢弃新的日志
+     */
+    DROP_NEWEST,
+
+    /**
+     * 丢弃队列中最旧的日志，放入新的日志
+     */
+    DROP_OLDEST,
+
+    /**
+     * 队列积压超过高水位后按比例采样，错误响应始终保留；队列满时丢弃新的日志
+     */
+    SAMPLE,
+
+    /**
+     * 写入本地磁盘缓存，之后由回放线程发送到Kafka；未开启磁盘缓存时等同于DROP_NEWEST
+     */
+    SPILL
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import zk.rgw.common.definition.AccessLogConf;
+
+/**
+ * 访问日志的采样判断。请求开始时决定是否采样（head-based），未被采样的请求在响应阶段仍可能因为错误或慢调用被记录。
+ */
+final class AccessLogSampler {
+
+    /**
+     * 积压低于该比例时不降低采样率
+     */
+    private static final double ADAPTIVE_BACKLOG_THRESHOLD = 0.5D;
+
+    private static final double ADAPTIVE_MIN_SCALE = 0.01D;
+
+    private AccessLogSampler() {
+    }
+
+    /**
+     * @param backlog 访问日志写入队列的积压比例，取值[0, 1]
+     */
+    static boolean sampleHead(AccessLogConf conf, String requestId, double backlog) {
+        return sampleAtRate(conf, requestId, headRate(conf, backlog));
+    }
+
+    /**
+     * @param backlog 访问日志写入队列的积压比例，取值[0, 1]
+     * @return 考虑自适应采样后的实际采样率
+     */
+    static double headRate(AccessLogConf conf, double backlog) {
+        double rate = conf.getSampleRate();
+        if (conf.isAdaptiveSampling()) {
+            rate *= adaptiveScale(backlog);
+        }
+        return rate;
+    }
+
+    static boolean sampleAtRate(AccessLogConf conf, String requestId, double rate) {
+        if (rate >= 1.0D) {
+            return true;
+        }
+        if (rate <= 0.0D) {
+            return false;
+        }
+        double random = conf.isSampleByRequestId() && Objects.nonNull(requestId)
+                ? hashToUnit(requestId)
+                : ThreadLocalRandom.current().nextDouble();
+        return random < rate;
+    }
+
+    /**
+     * 未被采样的请求是否还需要在响应阶段判断
+     */
+    static boolean mayForceTail(AccessLogConf conf) {
+        return conf.isAlwaysLogErrors() || conf.getAlwaysLogSlowerThanMillis() > 0;
+    }
+
+    static boolean forceTail(AccessLogConf conf, int statusCode, long millisCost) {
+        if (conf.isAlwaysLogErrors() && statusCode >= 500) {
+            return true;
+        }
+        long slowThreshold = conf.getAlwaysLogSlowerThanMillis();
+        return slowThreshold > 0 && millisCost >= slowThreshold;
+    }
+
+    /**
+     * 按采样率被记录的日志代表1/rate个请求。权重需要是整数才能直接累加到计数中，
+     * 小数部分按概率向上取整，权重的期望仍然是1/rate，统计结果无偏。
+     * 不受采样影响、始终记录的日志（错误、慢调用）的权重为1。
+     */
+    static int sampleWeight(double rate) {
+        if (rate >= 1.0D || rate <= 0.0D) {
+            return 1;
+        }
+        double weight = 1.0D / rate;
+        int floor = (int) Math.min(weight, Integer.MAX_VALUE);
+        return ThreadLocalRandom.current().nextDouble() < weight - floor ? floor + 1 : floor;
+    }
+
+    static double adaptiveScale(double backlog) {
+        if (backlog <= ADAPTIVE_BACKLOG_THRESHOLD) {
+            return 1.0D;
+        }
+        double scale = (1.0D - backlog) / (1.0D - ADAPTIVE_BACKLOG_THRESHOLD);
+        return Math.max(ADAPTIVE_MIN_SCALE, scale);
+    }
+
+    /**
+     * 把requestId均匀映射到[0, 1)，同一个requestId在各个网关实例上的结果相同
+     */
+    static double hashToUnit(String requestId) {
+        long hash = requestId.hashCode();
+        // SplitMix64的混合函数，String.hashCode的低位分布不够均匀
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash = hash ^ (hash >>> 31);
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import zk.rgw.gateway.accesslog.spool.SpoolMetrics;
+
+/**
+ * 访问日志写入Kafka的状态，计数均为启动以来的累计值
+ */
+@Getter
+@AllArgsConstructor
+public class AccessLogWriterMetrics {
+
+    private int queueDepth;
+
+    private int queueCapacity;
+
+    /**
+     * 启动以来队列深度的最大值
+     */
+    private int queueHighWaterMark;
+
+    private long dropped;
+
+    private long sampledOut;
+
+    private long sent;
+
+    private long sendFailed;
+
+    private long encodeFailed;
+
+    private boolean kafkaAvailable;
+
+    /**
+     * 未开启磁盘缓存时为null
+     */
+    private SpoolMetrics spool;
+
+}
@@ -35,8 +35,15 @@ public class BodyAuditableRequest extends HttpServerRequestDecorator {
         return ByteBufFlux.fromInbound(super.receive().doOnNext(this.bytesCollector::append));
     }
 
-    public byte[] getAuditBody() {
-        return this.bytesCollector.allBytes();
+    /**
+     * 只能调用一次，返回后收集的分片已经释放
+     */
+    public byte[] drainAuditBody() {
+        return this.bytesCollector.drain();
+    }
+
+    public boolean isAuditBodyUtf8() {
+        return this.bytesCollector.isUtf8();
     }
 
     public long getBodySize() {
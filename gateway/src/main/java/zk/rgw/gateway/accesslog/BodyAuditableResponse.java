@@ -38,8 +38,15 @@ public class BodyAuditableResponse extends HttpServerResponseDecorator {
         return super.send(Flux.from(dataStream).doOnNext(this.bytesCollector::append));
     }
 
-    public byte[] getAuditBody() {
-        return this.bytesCollector.allBytes();
+    /**
+     * 只能调用一次，返回后收集的分片已经释放
+     */
+    public byte[] drainAuditBody() {
+        return this.bytesCollector.drain();
+    }
+
+    public boolean isAuditBodyUtf8() {
+        return this.bytesCollector.isUtf8();
     }
 
     public long getBodySize() {
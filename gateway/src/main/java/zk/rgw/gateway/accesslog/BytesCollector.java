@@ -13,66 +13,94 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package zk.rgw.gateway.accesslog;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import lombok.Getter;
 
+/**
+ * 收集请求或响应的body，每个分片只retain一个slice放入CompositeByteBuf，不拷贝数据。
+ * 超过限制后立即释放已收集的分片，只继续统计大小。
+ * <p>
+ * 在event loop线程中使用，{@link #drain()}之后释放所有分片，之后的分片不再收集。
+ */
 public class BytesCollector {
 
-    private final List<byte[]> byteArrayList;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 超过后CompositeByteBuf会合并分片，一般的body达不到这个数量
+     */
+    private static final int MAX_COMPONENTS = 1024;
 
     private final long limit;
 
+    private CompositeByteBuf composite;
+
     @Getter
-    private int size = 0;
+    private long size = 0;
 
-    private boolean exceed = false;
+    private boolean exceed;
+
+    private boolean drained = false;
+
+    @Getter
+    private boolean utf8 = true;
 
     public BytesCollector(long limit) {
         this.limit = limit;
-        if (limit == 0) {
-            exceed = true;
-            byteArrayList = null;
-        } else {
-            byteArrayList = new ArrayList<>();
-        }
+        this.exceed = limit == 0;
     }
 
     public void append(ByteBuf byteBuf) {
-        if (exceed) {
-            size += byteBuf.readableBytes();
+        int readableBytes = byteBuf.readableBytes();
+        size += readableBytes;
+        if (exceed || drained || readableBytes == 0) {
             return;
         }
-        byte[] bytes = ByteBufUtil.getBytes(byteBuf);
-        size += bytes.length;
-        assert byteArrayList != null;
         if (size > limit) {
-            // 尽快删除byteArrayList，以便JVM更好的GC
-            byteArrayList.clear();
             exceed = true;
-        } else {
-            byteArrayList.add(bytes);
+            release();
+            return;
         }
+        if (Objects.isNull(composite)) {
+            composite = ByteBufAllocator.DEFAULT.compositeBuffer(MAX_COMPONENTS);
+        }
+        composite.addComponent(true, byteBuf.retainedSlice());
     }
 
-    public byte[] allBytes() {
-        if (exceed) {
-            return new byte[0];
+    /**
+     * 返回收集到的body并释放所有分片，超过限制或未开启时返回空数组。只会拷贝一次，同时校验是否是合法的UTF-8
+     */
+    public byte[] drain() {
+        if (drained) {
+            return EMPTY;
+        }
+        drained = true;
+        if (exceed || Objects.isNull(composite)) {
+            release();
+            return EMPTY;
         }
-        byte[] finalByteArray = new byte[size];
-        int start = 0;
-        assert byteArrayList != null;
-        for (byte[] byteArray : byteArrayList) {
-            int length = byteArray.length;
-            System.arraycopy(byteArray, 0, finalByteArray, start, length);
-            start += length;
+        try {
+            utf8 = ByteBufUtil.isText(composite, StandardCharsets.UTF_8);
+            return ByteBufUtil.getBytes(composite);
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (Objects.nonNull(composite)) {
+            composite.release();
+            composite = null;
         }
-        return finalByteArray;
     }
 
 }
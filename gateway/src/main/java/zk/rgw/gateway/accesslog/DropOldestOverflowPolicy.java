@@ -0,0 +1,32 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.Objects;
+
+import zk.rgw.common.access.AccessLog;
+
+class DropOldestOverflowPolicy implements AccessLogOverflowPolicy {
+
+    @Override
+    public int onOverflow(AccessLog accessLog, MpscRingBuffer<AccessLog> queue) {
+        int dropped = Objects.isNull(queue.poll()) ? 0 : 1;
+        // 并发写入时腾出的位置可能被其他线程占用，此时新的日志也被丢弃
+        return queue.offer(accessLog) ? dropped : dropped + 1;
+    }
+
+}
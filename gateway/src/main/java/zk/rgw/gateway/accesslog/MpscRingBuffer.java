@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界的无锁环形队列，用于event loop线程把访问日志交给写Kafka的线程。
+ * <p>
+ * 每个槽位带一个序号（Dmitry Vyukov的bounded MPMC queue），写入方通过CAS抢占生产位置，不会相互阻塞，也不会阻塞消费线程。
+ * 正常使用时只有一个消费线程，但{@link #poll()}也允许多个线程同时调用，{@link DropOldestOverflowPolicy}会在写入线程中取出最旧的元素。
+ * 高水位只在消费线程批量取出时采样，避免写入方更新共享变量。
+ */
+public class MpscRingBuffer<E> {
+
+    /**
+     * 生产位置和消费位置放在同一个数组中相隔较远的两个位置上，避免伪共享
+     */
+    private static final int PRODUCER_INDEX = 7;
+
+    private static final int CONSUMER_INDEX = 23;
+
+    private static final int INDEXES_LENGTH = 31;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final Object[] elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLongArray indexes = new AtomicLongArray(INDEXES_LENGTH);
+
+    private volatile int highWaterMark;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity should be in [2, 2^30], but is " + requestedCapacity);
+        }
+        this.capacity = 1 << (32 - Integer.numberOfLeadingZeros(requestedCapacity - 1));
+        this.mask = capacity - 1;
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    public boolean offer(E element) {
+        Objects.requireNonNull(element);
+        while (true) {
+            long position = indexes.get(PRODUCER_INDEX);
+            int index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (indexes.compareAndSet(PRODUCER_INDEX, position, position + 1)) {
+                    elements[index] = element;
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+            // difference > 0，其他写入方已经抢占了该位置，重新读取生产位置
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long position = indexes.get(CONSUMER_INDEX);
+            int index = (int) (position & mask);
+            long difference = sequences.getAcquire(index) - (position + 1);
+            if (difference == 0) {
+                if (indexes.compareAndSet(CONSUMER_INDEX, position, position + 1)) {
+                    E element = (E) elements[index];
+                    elements[index] = null;
+                    sequences.setRelease(index, position + capacity);
+                    return element;
+                }
+            } else if (difference < 0) {
+                // 队列为空，或者写入方已经抢占了位置但还没有写入元素
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 最多取出maxElements个元素放入target，返回取出的数量
+     */
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        int depth = size();
+        if (depth > highWaterMark) {
+            highWaterMark = depth;
+        }
+        int count = 0;
+        while (count < maxElements) {
+            E element = poll();
+            if (Objects.isNull(element)) {
+                break;
+            }
+            target.add(element);
+            ++count;
+        }
+        return count;
+    }
+
+    public int size() {
+        long consumer = indexes.get(CONSUMER_INDEX);
+        long producer = indexes.get(PRODUCER_INDEX);
+        long size = producer - consumer;
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import zk.rgw.common.access.AccessLog;
+
+class SampleOverflowPolicy implements AccessLogOverflowPolicy {
+
+    private static final double HIGH_WATERMARK = 0.75D;
+
+    private final double sampleRate;
+
+    SampleOverflowPolicy(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate should be in [0, 1], but is " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public boolean admit(AccessLog accessLog, int depth, int capacity) {
+        if (depth < capacity * HIGH_WATERMARK || isError(accessLog)) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    @Override
+    public int onOverflow(AccessLog accessLog, MpscRingBuffer<AccessLog> queue) {
+        return 1;
+    }
+
+    private static boolean isError(AccessLog accessLog) {
+        AccessLog.ResponseInfo responseInfo = accessLog.getResponseInfo();
+        return Objects.isNull(responseInfo) || responseInfo.getCode() >= 500;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.access.AccessLog;
+import zk.rgw.common.access.AccessLogCodec;
+import zk.rgw.gateway.accesslog.spool.AccessLogSpool;
+
+/**
+ * 队列满时把日志交给专用的写盘线程编码并写入磁盘缓存。
+ * <p>
+ * 写入磁盘缓存可能需要创建和mmap新的segment文件，是阻塞的磁盘IO，不能在写入线程（通常是event loop线程）中进行。
+ * 写盘线程也跟不上时直接丢弃。
+ */
+@Slf4j
+class SpillOverflowPolicy implements AccessLogOverflowPolicy {
+
+    private static final int SPILL_QUEUE_SIZE = 4096;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final AccessLogSpool spool;
+
+    private final IntConsumer onDropped;
+
+    /**
+     * 只在写盘线程中使用
+     */
+    private final AccessLogCodec.Encoder encoder = new AccessLogCodec.Encoder(4096);
+
+    private final ThreadPoolExecutor spillExecutor;
+
+    /**
+     * @param onDropped 在写盘线程中编码或者写入磁盘缓存失败时，报告被丢弃的日志数量
+     */
+    SpillOverflowPolicy(AccessLogSpool spool, IntConsumer onDropped) {
+        this.spool = spool;
+        this.onDropped = onDropped;
+        this.spillExecutor = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SPILL_QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, this.getClass().getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    @Override
+    public int onOverflow(AccessLog accessLog, MpscRingBuffer<AccessLog> queue) {
+        try {
+            spillExecutor.execute(() -> spill(accessLog));
+            return 0;
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            return 1;
+        }
+    }
+
+    @Override
+    public void close() {
+        spillExecutor.shutdown();
+        try {
+            if (!spillExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Access logs are still being spilled to local disk after {} seconds.", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void spill(AccessLog accessLog) {
+        byte[] bytes;
+        try {
+            bytes = encoder.encode(accessLog);
+        } catch (Exception exception) {
+            log.error("Failed to encode an AccessLog.", exception);
+            onDropped.accept(1);
+            return;
+        }
+        if (!spool.append(bytes)) {
+            onDropped.accept(1);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog.spool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.exception.RgwRuntimeException;
+
+/**
+ * Kafka不可用时访问日志的本地磁盘缓存，由多个固定大小的segment文件组成，写满后切换到新的segment。
+ * <p>
+ * 只有已封存的segment会被回放，回放完成后删除。总大小超过上限时从最旧的segment开始淘汰（正在回放的除外）。
+ * 回放进度只保存在内存中，进程重启后未回放完的segment会从头回放，一批日志部分发送失败时也会整批重试，因此Kafka中可能出现少量重复的日志。
+ */
+@Slf4j
+public class AccessLogSpool {
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final long maxBytes;
+
+    private final Deque<SpoolSegment> sealedSegments = new ArrayDeque<>();
+
+    private SpoolSegment activeSegment;
+
+    private SpoolSegment replayingSegment;
+
+    private long nextSequence;
+
+    private final LongAdder appended = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder evicted = new LongAdder();
+
+    private final LongAdder replayed = new LongAdder();
+
+    public AccessLogSpool(Path directory, int segmentBytes, long maxBytes) {
+        if (segmentBytes <= 0 || maxBytes < segmentBytes) {
+            throw new IllegalArgumentException("Spool max bytes " + maxBytes + " should not be less than segment bytes " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioException) {
+            throw new RgwRuntimeException("Failed to create access log spool directory " + directory, ioException);
+        }
+        recover();
+    }
+
+    public synchronized boolean append(byte[] bytes) {
+        if (bytes.length > SpoolSegment.maxRecordBytes(segmentBytes)) {
+            rejected.increment();
+            return false;
+        }
+        boolean success = Objects.nonNull(activeSegment) && activeSegment.append(bytes);
+        if (!success) {
+            success = rotate() && activeSegment.append(bytes);
+        }
+        if (success) {
+            appended.increment();
+        } else {
+            rejected.increment();
+        }
+        return success;
+    }
+
+    /**
+     * 返回下一个需要回放的segment，没有已封存的segment时封存当前正在写入的segment
+     */
+    synchronized SpoolSegment nextReplayable() {
+        if (sealedSegments.isEmpty() && Objects.nonNull(activeSegment) && activeSegment.getRecordCount() > 0) {
+            seal();
+        }
+        replayingSegment = sealedSegments.peekFirst();
+        return replayingSegment;
+    }
+
+    synchronized void finishReplay(SpoolSegment segment) {
+        replayingSegment = null;
+        if (sealedSegments.remove(segment)) {
+            deleteSegment(segment);
+        }
+    }
+
+    void onReplayed(int count) {
+        replayed.add(count);
+    }
+
+    public synchronized void close() {
+        if (Objects.nonNull(activeSegment)) {
+            activeSegment.force();
+        }
+    }
+
+    public synchronized SpoolMetrics getMetrics() {
+        int segments = sealedSegments.size() + (Objects.isNull(activeSegment) ? 0 : 1);
+        return new SpoolMetrics(
+                segments,
+                (long) segments * segmentBytes,
+                appended.sum(),
+                rejected.sum(),
+                evicted.sum(),
+                replayed.sum()
+        );
+    }
+
+    private boolean rotate() {
+        if (Objects.nonNull(activeSegment)) {
+            seal();
+        }
+        while ((sealedSegments.size() + 1L) * segmentBytes > maxBytes) {
+            if (!evictOldest()) {
+                return false;
+            }
+        }
+        try {
+            activeSegment = SpoolSegment.create(directory, nextSequence++, segmentBytes);
+            return true;
+        } catch (IOException ioException) {
+            log.error("Failed to create access log spool segment in {}.", directory, ioException);
+            return false;
+        }
+    }
+
+    private void seal() {
+        activeSegment.force();
+        sealedSegments.addLast(activeSegment);
+        activeSegment = null;
+    }
+
+    private boolean evictOldest() {
+        Iterator<SpoolSegment> iterator = sealedSegments.iterator();
+        while (iterator.hasNext()) {
+            SpoolSegment segment = iterator.next();
+            if (segment != replayingSegment) {
+                iterator.remove();
+                int lost = segment.getRecordCount() - segment.getReplayedCount();
+                evicted.add(lost);
+                log.warn("Access log spool is full, evict segment {} with {} access logs not replayed.", segment.getSequence(), lost);
+                deleteSegment(segment);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deleteSegment(SpoolSegment segment) {
+        try {
+            segment.delete();
+        } catch (IOException ioException) {
+            log.error("Failed to delete access log spool segment {}.", segment.getSequence(), ioException);
+        }
+    }
+
+    private void recover() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> path.getFileName().toString().endsWith(SpoolSegment.FILE_SUFFIX)).sorted().forEach(files::add);
+        } catch (IOException ioException) {
+            throw new RgwRuntimeException("Failed to list access log spool directory " + directory, ioException);
+        }
+
+        long recoveredRecords = 0;
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            long sequence;
+            try {
+                sequence = Long.parseLong(fileName.substring(0, fileName.length() - SpoolSegment.FILE_SUFFIX.length()));
+            } catch (NumberFormatException numberFormatException) {
+                log.warn("Ignore unknown file {} in access log spool directory.", file);
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            try {
+                SpoolSegment segment = SpoolSegment.recover(file, sequence);
+                if (segment.getRecordCount() == 0) {
+                    segment.delete();
+                } else {
+                    sealedSegments.addLast(segment);
+                    recoveredRecords += segment.getRecordCount();
+                }
+            } catch (IOException ioException) {
+                log.error("Failed to recover access log spool segment {}, it will be ignored.", file, ioException);
+            }
+        }
+        if (recoveredRecords > 0) {
+            log.info("Recovered {} access logs in {} spool segments to replay.", recoveredRecords, sealedSegments.size());
+        }
+    }
+
+}
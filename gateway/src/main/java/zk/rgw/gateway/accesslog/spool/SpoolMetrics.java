@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog.spool;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 访问日志本地磁盘缓存的状态，计数均为启动以来的累计值
+ */
+@Getter
+@AllArgsConstructor
+public class SpoolMetrics {
+
+    private int segments;
+
+    private long bytes;
+
+    private long appended;
+
+    /**
+     * 因单条日志过大或磁盘缓存已满而未能写入的数量
+     */
+    private long rejected;
+
+    /**
+     * 磁盘缓存已满时淘汰的未回放日志数量
+     */
+    private long evicted;
+
+    private long replayed;
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog.spool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.bootstrap.LifeCycle;
+
+/**
+ * 把磁盘缓存中的访问日志回放到Kafka，发送失败时等待一段时间后从失败的位置重试
+ */
+@Slf4j
+public class SpoolReplayer implements LifeCycle {
+
+    private static final int CHUNK_SIZE = 512;
+
+    private final AccessLogSpool spool;
+
+    private final Sink sink;
+
+    private final long retryIntervalNanos;
+
+    private volatile boolean running = false;
+
+    private Thread replayThread;
+
+    public SpoolReplayer(AccessLogSpool spool, Sink sink, long retryIntervalMillis) {
+        this.spool = spool;
+        this.sink = sink;
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        replayThread = new Thread(() -> {
+            while (running) {
+                if (!replayOnce()) {
+                    LockSupport.parkNanos(this, retryIntervalNanos);
+                }
+            }
+        });
+        replayThread.setName(this.getClass().getSimpleName());
+        replayThread.setDaemon(true);
+        replayThread.start();
+        log.info("{} started", this.getClass().getSimpleName());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (Objects.nonNull(replayThread)) {
+            LockSupport.unpark(replayThread);
+            try {
+                replayThread.join();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("{} stop", this.getClass().getSimpleName());
+    }
+
+    /**
+     * 回放一批日志，返回是否有进展
+     */
+    boolean replayOnce() {
+        SpoolSegment segment = spool.nextReplayable();
+        if (Objects.isNull(segment)) {
+            return false;
+        }
+        List<byte[]> chunk = new ArrayList<>(CHUNK_SIZE);
+        int position = segment.readReplayChunk(chunk, CHUNK_SIZE);
+        if (chunk.isEmpty()) {
+            spool.finishReplay(segment);
+            return true;
+        }
+        boolean sent;
+        try {
+            sent = sink.send(chunk);
+        } catch (Exception exception) {
+            log.warn("Failed to replay access logs from spool.", exception);
+            sent = false;
+        }
+        if (!sent) {
+            return false;
+        }
+        segment.commitReplay(position, chunk.size());
+        spool.onReplayed(chunk.size());
+        return true;
+    }
+
+    public interface Sink {
+
+        /**
+         * 同步发送一批已编码的访问日志，全部发送成功时返回true
+         */
+        boolean send(List<byte[]> records);
+
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog.spool;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 一个固定大小、通过mmap写入的spool文件。
+ * <p>
+ * 文件以4字节的magic开头，之后是连续的记录，每条记录为：4字节长度、4字节CRC32C、数据。
+ * 写入时先写数据和CRC，最后写长度，长度为0表示后面没有记录，因此进程中途退出最多损坏最后一条记录，恢复时遇到CRC不匹配的记录即停止。
+ * <p>
+ * 删除前主动解除映射，否则文件占用的磁盘空间要等到MappedByteBuffer被GC回收才会释放，磁盘缓存的总大小上限形同虚设。
+ */
+@Slf4j
+final class SpoolSegment {
+
+    static final String FILE_SUFFIX = ".spool";
+
+    private static final int MAGIC = 0x52475731;
+
+    private static final int FILE_HEADER_BYTES = 4;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /**
+     * sun.misc.Unsafe.invokeCleaner(ByteBuffer)，不可用时为null，只能等待GC解除映射
+     */
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    @Getter
+    private final long sequence;
+
+    private final Path path;
+
+    private final MappedByteBuffer buffer;
+
+    private final CRC32C crc32c = new CRC32C();
+
+    private int writePosition;
+
+    @Getter
+    private int recordCount;
+
+    /**
+     * 只由回放线程修改
+     */
+    private int replayPosition = FILE_HEADER_BYTES;
+
+    @Getter
+    private volatile int replayedCount;
+
+    private boolean unmapped = false;
+
+    private SpoolSegment(long sequence, Path path, MappedByteBuffer buffer, int writePosition, int recordCount) {
+        this.sequence = sequence;
+        this.path = path;
+        this.buffer = buffer;
+        this.writePosition = writePosition;
+        this.recordCount = recordCount;
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%020d%s", sequence, FILE_SUFFIX);
+    }
+
+    static SpoolSegment create(Path directory, long sequence, int size) throws IOException {
+        Path path = directory.resolve(fileName(sequence));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            return new SpoolSegment(sequence, path, buffer, FILE_HEADER_BYTES, 0);
+        }
+    }
+
+    static SpoolSegment recover(Path path, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < FILE_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid spool file size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Invalid spool file magic");
+            }
+            SpoolSegment segment = new SpoolSegment(sequence, path, buffer, FILE_HEADER_BYTES, 0);
+            int length;
+            while ((length = segment.validRecordLength(segment.writePosition)) >= 0) {
+                segment.writePosition += RECORD_HEADER_BYTES + length;
+                ++segment.recordCount;
+            }
+            return segment;
+        }
+    }
+
+    static int maxRecordBytes(int segmentBytes) {
+        return segmentBytes - FILE_HEADER_BYTES - RECORD_HEADER_BYTES;
+    }
+
+    boolean append(byte[] bytes) {
+        if (writePosition + RECORD_HEADER_BYTES + bytes.length > buffer.capacity()) {
+            return false;
+        }
+        crc32c.reset();
+        crc32c.update(bytes);
+        buffer.put(writePosition + RECORD_HEADER_BYTES, bytes);
+        buffer.putInt(writePosition + 4, (int) crc32c.getValue());
+        buffer.putInt(writePosition, bytes.length);
+        writePosition += RECORD_HEADER_BYTES + bytes.length;
+        ++recordCount;
+        return true;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * 从上次回放的位置开始读取最多maxRecords条记录，返回读取后的位置，回放成功后通过{@link #commitReplay(int, int)}提交
+     */
+    int readReplayChunk(List<byte[]> target, int maxRecords) {
+        int position = replayPosition;
+        int length;
+        while (target.size() < maxRecords && position < writePosition && (length = validRecordLength(position)) >= 0) {
+            byte[] bytes = new byte[length];
+            buffer.get(position + RECORD_HEADER_BYTES, bytes);
+            target.add(bytes);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    void commitReplay(int position, int count) {
+        this.replayPosition = position;
+        this.replayedCount += count;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 解除映射并删除文件，之后不能再访问这个segment。调用方需要保证没有其他线程正在读写
+     */
+    void delete() throws IOException {
+        unmap();
+        Files.deleteIfExists(path);
+    }
+
+    private void unmap() throws IOException {
+        if (unmapped || Objects.isNull(INVOKE_CLEANER)) {
+            return;
+        }
+        unmapped = true;
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Error error) {
+            throw error;
+        } catch (Throwable throwable) {
+            throw new IOException("Failed to unmap spool file " + path, throwable);
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException exception) {
+            log.warn("Unable to unmap spool files explicitly, disk space of deleted spool files is freed after GC.", exception);
+            return null;
+        }
+    }
+
+    private int validRecordLength(int position) {
+        if (position + RECORD_HEADER_BYTES > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_BYTES) {
+            return -1;
+        }
+        // 恢复和回放时调用，与写入使用的crc32c分开
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.slice(position + RECORD_HEADER_BYTES, length));
+        return (int) checksum.getValue() == buffer.getInt(position + 4) ? length : -1;
+    }
+
+}
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +40,7 @@ import zk.rgw.common.heartbeat.Notification;
 import zk.rgw.common.util.JsonUtil;
 import zk.rgw.common.util.ObjectUtil;
 import zk.rgw.gateway.event.AppOpSeqBehindEvent;
+import zk.rgw.gateway.event.ConfigStreamResyncEvent;
 import zk.rgw.gateway.event.NotificationEvent;
 import zk.rgw.http.utils.UriBuilder;
 import zk.rgw.plugin.util.Shuck;
@@ -51,11 +53,15 @@ public class AppSubscribeRouteManager implements RgwEventListener<RgwEvent> {
 
     private static final String PARAMETER_SEQ = "seq";
 
-    public final Map<String, Map<String, AppDefinition>> subscriptions = new HashMap<>();
+    /**
+     * routeId -> (appKey -> app)，内层的Map发布后不再修改，变更时替换为新的Map，可以安全地被快照读取
+     */
+    public final Map<String, Map<String, AppDefinition>> subscriptions = new ConcurrentHashMap<>();
 
     private final HttpClient httpClient;
 
-    private long opSeq = 0L;
+    @Getter
+    private volatile long opSeq = 0L;
 
     @Getter
     private final String dashboardAddress;
@@ -87,18 +93,29 @@ public class AppSubscribeRouteManager implements RgwEventListener<RgwEvent> {
         if (event instanceof NotificationEvent notificationEvent) {
             Notification notification = notificationEvent.getNotification();
             if (notification.isSubscriptionUpdated()) {
-                handleAppSubRouteEvent(notification.getAppSubRouteEvent());
+                AppSubRouteEvent appSubRouteEvent = notification.getAppSubRouteEvent();
+                if (appSubRouteEvent.getOpSeq() > this.opSeq + 1) {
+                    // 中间有变更没有收到，直接应用会跳过它们，改为拉取本地序号之后的全部变更
+                    log.info("Subscription relationship opSeq jumped from {} to {}, going to sync", this.opSeq, appSubRouteEvent.getOpSeq());
+                    syncAndHandle();
+                } else {
+                    handleAppSubRouteEvent(appSubRouteEvent);
+                }
             }
-        } else if (event instanceof AppOpSeqBehindEvent) {
+        } else if (event instanceof AppOpSeqBehindEvent || event instanceof ConfigStreamResyncEvent) {
             log.info("Subscription relationship is behind, going to sync");
-            Mono<List<SubscriptionRelationship>> listMono = sync();
-            listMono.doOnSuccess(this::handleSyncData).subscribe();
+            syncAndHandle();
         }
     }
 
+    private void syncAndHandle() {
+        Mono<List<SubscriptionRelationship>> listMono = sync();
+        listMono.doOnSuccess(this::handleSyncData).subscribe();
+    }
+
     private void handleAppSubRouteEvent(AppSubRouteEvent appSubRouteEvent) {
         String routeId = appSubRouteEvent.getRouteId();
-        Map<String, AppDefinition> map = subscriptions.computeIfAbsent(routeId, key -> new HashMap<>());
+        Map<String, AppDefinition> map = new HashMap<>(subscriptions.getOrDefault(routeId, Map.of()));
         AppDefinition appDefinition = appSubRouteEvent.getAppDefinition();
         if (appSubRouteEvent.isSub()) {
             log.debug("app with key = {} subscribe route with id = {}", appDefinition.getKey(), routeId);
@@ -107,6 +124,7 @@ public class AppSubscribeRouteManager implements RgwEventListener<RgwEvent> {
             log.debug("app with key = {} cancel subscribe route with id = {}", appDefinition.getKey(), routeId);
             map.remove(appDefinition.getKey());
         }
+        subscriptions.put(routeId, map);
         if (appSubRouteEvent.getOpSeq() > this.opSeq) {
             this.opSeq = appSubRouteEvent.getOpSeq();
         }
@@ -129,6 +147,20 @@ public class AppSubscribeRouteManager implements RgwEventListener<RgwEvent> {
         }
     }
 
+    public Map<String, Map<String, AppDefinition>> getSubscriptions() {
+        return new HashMap<>(subscriptions);
+    }
+
+    /**
+     * 从快照恢复订阅关系，之后从快照的序列号开始同步
+     */
+    public void restore(Map<String, Map<String, AppDefinition>> snapshot, long snapshotOpSeq) {
+        subscriptions.putAll(snapshot);
+        if (snapshotOpSeq > opSeq) {
+            opSeq = snapshotOpSeq;
+        }
+    }
+
     public Map<String, AppDefinition> getForRouteId(String routeId) {
         Map<String, AppDefinition> map = subscriptions.getOrDefault(routeId, Map.of());
         return Map.copyOf(map);
@@ -16,20 +16,19 @@
 package zk.rgw.gateway.app;
 
 import zk.rgw.plugin.api.Exchange;
+import zk.rgw.plugin.util.ExchangeUtil;
 
 public class ClientIdUtil {
 
-    private static final String KEY = "__app_auth_succeed_client_id__";
-
     private ClientIdUtil() {
     }
 
     public static void setAppAuthSucceedClientId(Exchange exchange, String clientId) {
-        exchange.getAttributes().put(KEY, clientId);
+        ExchangeUtil.setClientId(exchange, clientId);
     }
 
     public static String getAppAuthSucceedClientId(Exchange exchange) {
-        return exchange.getAttribute(KEY);
+        return ExchangeUtil.getClientId(exchange);
     }
 
 }
@@ -17,21 +17,27 @@ package zk.rgw.gateway.env;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EnvironmentManager {
 
-    private final Map<String, Map<String, String>> envMap = new HashMap<>();
+    private final Map<String, Map<String, String>> envMap = new ConcurrentHashMap<>();
 
     public Map<String, String> getEnvForOrg(String orgId) {
         return envMap.getOrDefault(orgId, Map.of());
     }
 
     public void setEnvForOrg(String orgId, Map<String, String> env) {
-        this.envMap.put(orgId, env);
+        this.envMap.put(orgId, Objects.requireNonNullElse(env, Map.of()));
     }
 
     public void merge(Map<String, Map<String, String>> data) {
-        envMap.putAll(data);
+        data.forEach(this::setEnvForOrg);
+    }
+
+    public Map<String, Map<String, String>> getAll() {
+        return new HashMap<>(envMap);
     }
 
 }
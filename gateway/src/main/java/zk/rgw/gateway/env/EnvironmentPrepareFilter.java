@@ -15,6 +15,7 @@
  */
 package zk.rgw.gateway.env;
 
+import java.util.Map;
 import java.util.Objects;
 
 import lombok.extern.slf4j.Slf4j;
@@ -29,23 +30,30 @@ import zk.rgw.gateway.event.NotificationEvent;
 import zk.rgw.http.route.Route;
 import zk.rgw.http.utils.RouteUtil;
 import zk.rgw.plugin.api.Exchange;
-import zk.rgw.plugin.api.filter.Filter;
-import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.api.filter.SyncFilter;
 import zk.rgw.plugin.util.ExchangeUtil;
 
 @Slf4j
-public class EnvironmentPrepareFilter implements Filter, RgwEventListener<RgwEvent> {
+public class EnvironmentPrepareFilter implements SyncFilter, RgwEventListener<RgwEvent> {
 
     private final EnvironmentManager environmentManager = new EnvironmentManager();
 
     @Override
-    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
+    public Mono<Void> filterSync(Exchange exchange) {
         Route route = RouteUtil.getRoute(exchange);
         if (Objects.nonNull(route) && Objects.nonNull(route.getEnvKey())) {
             String envKey = route.getEnvKey();
             exchange.getAttributes().put(ExchangeUtil.ENVIRONMENT_VARS, environmentManager.getEnvForOrg(envKey));
         }
-        return chain.filter(exchange);
+        return null;
+    }
+
+    public Map<String, Map<String, String>> getEnvironments() {
+        return environmentManager.getAll();
+    }
+
+    public void restore(Map<String, Map<String, String>> environments) {
+        environmentManager.merge(environments);
     }
 
     @Override
@@ -17,6 +17,10 @@
 package zk.rgw.gateway.heartbeat;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -45,11 +49,14 @@ import zk.rgw.common.heartbeat.GwHeartbeatResult;
 import zk.rgw.common.heartbeat.GwRegisterPayload;
 import zk.rgw.common.heartbeat.GwRegisterResult;
 import zk.rgw.common.heartbeat.Notification;
+import zk.rgw.common.heartbeat.SyncState;
 import zk.rgw.common.util.JsonUtil;
 import zk.rgw.gateway.event.ApiOpSeqBehindEvent;
 import zk.rgw.gateway.event.ApiOpSeqUpdateEvent;
 import zk.rgw.gateway.event.AppOpSeqBehindEvent;
+import zk.rgw.gateway.event.ConfigStreamResyncEvent;
 import zk.rgw.gateway.event.EnvBehindEvent;
+import zk.rgw.gateway.event.NodeRegisteredEvent;
 import zk.rgw.gateway.event.NotificationEvent;
 import zk.rgw.plugin.util.Shuck;
 
@@ -81,6 +88,12 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
     @Setter
     private EventPublisher<RgwEvent> eventPublisher;
 
+    /**
+     * 已经从本地快照恢复了配置时，注册失败不退出进程，继续用快照中的配置处理请求并定期重试注册
+     */
+    @Setter
+    private boolean registerRetryEnabled = false;
+
     public HeartbeatReporter(
             String dashboardAddress, String dashboardApiContextPath, String environmentId,
             int interval, String serverSchema, int serverPort
@@ -98,6 +111,7 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
         ).baseUrl(dashboardAddress);
 
         this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        this.heartbeatPayload.setSyncState(concurrent(heartbeatPayload.getSyncState()));
     }
 
     @Override
@@ -107,10 +121,35 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
             return;
         }
         log.info("Start {}.", this.getClass().getSimpleName());
-        register().doOnNext(this.heartbeatPayload::setNodeId)
-                .doOnSuccess(
+        registerAndStartHeartbeat();
+    }
+
+    private void registerAndStartHeartbeat() {
+        register().doOnNext(nodeId -> {
+            this.heartbeatPayload.setNodeId(nodeId);
+            eventPublisher.publishEvent(new NodeRegisteredEvent(nodeId));
+        }).doOnSuccess(
                         unused -> scheduledExecutorService.scheduleAtFixedRate(HeartbeatReporter.this::heartbeat, 0, interval, TimeUnit.SECONDS)
-                ).subscribe();
+                ).onErrorResume(exception -> {
+                    handleRegisterFailure(exception);
+                    return Mono.empty();
+                }).subscribe();
+    }
+
+    private void handleRegisterFailure(Throwable exception) {
+        log.error("Failed to send register request to dashboard,", exception);
+        if (registerRetryEnabled) {
+            if (!scheduledExecutorService.isShutdown()) {
+                log.warn("Keep serving with config restored from local snapshot, retry to register to dashboard after {} seconds.", interval);
+                scheduledExecutorService.schedule(this::registerAndStartHeartbeat, interval, TimeUnit.SECONDS);
+            }
+            return;
+        }
+        log.error(
+                "Process is going to shutdown because of failed to register to dashboard, " +
+                        "please make sure dashboard is running, and configured the dashboard address."
+        );
+        System.exit(2);
     }
 
     @Override
@@ -156,17 +195,44 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
                     } catch (IOException ioException) {
                         throw new RgwRuntimeException("Failed to deserialize response of register request sent to dashboard.");
                     }
-                })
-                .doOnError(exception -> {
-                    log.error("Failed to send register request to dashboard,", exception);
-                    log.error(
-                            "Process is going to shutdown because of failed to register to dashboard, " +
-                                    "please make sure dashboard is running, and configured the dashboard address."
-                    );
-                    System.exit(2);
                 });
     }
 
+    /**
+     * 当前同步状态的副本，供保存快照使用
+     */
+    public SyncState getSyncState() {
+        SyncState syncState = heartbeatPayload.getSyncState();
+        SyncState copy = new SyncState();
+        copy.setApiOpSeq(syncState.getApiOpSeq());
+        copy.setAppOpSeq(syncState.getAppOpSeq());
+        copy.setOrgEnvOpSeqMap(new HashMap<>(syncState.getOrgEnvOpSeqMap()));
+        return copy;
+    }
+
+    /**
+     * 从快照恢复后上报快照中的序列号，dashboard只需要补齐之后的变更
+     */
+    public void restoreSyncState(SyncState syncState) {
+        heartbeatPayload.setSyncState(concurrent(syncState));
+    }
+
+    /**
+     * 环境变更通知的线程会修改orgEnvOpSeqMap，心跳和保存快照的线程会同时遍历它，因此换成ConcurrentHashMap
+     */
+    private static SyncState concurrent(SyncState syncState) {
+        Map<String, Long> orgEnvOpSeqMap = new ConcurrentHashMap<>();
+        if (Objects.nonNull(syncState.getOrgEnvOpSeqMap())) {
+            syncState.getOrgEnvOpSeqMap().forEach((orgId, opSeq) -> {
+                if (Objects.nonNull(orgId) && Objects.nonNull(opSeq)) {
+                    orgEnvOpSeqMap.put(orgId, opSeq);
+                }
+            });
+        }
+        syncState.setOrgEnvOpSeqMap(orgEnvOpSeqMap);
+        return syncState;
+    }
+
     @Override
     public void onEvent(RgwEvent event) {
         if (event instanceof NotificationEvent notificationEvent) {
@@ -177,6 +243,9 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
             }
         } else if (event instanceof ApiOpSeqUpdateEvent apiOpSeqUpdateEvent) {
             heartbeatPayload.getSyncState().setApiOpSeq(apiOpSeqUpdateEvent.getValue());
+        } else if (event instanceof ConfigStreamResyncEvent && Objects.nonNull(heartbeatPayload.getNodeId()) && !scheduledExecutorService.isShutdown()) {
+            // 立即发送一次心跳，由心跳结果补齐落后的环境变量
+            scheduledExecutorService.execute(this::heartbeat);
         }
     }
 
@@ -199,7 +268,7 @@ public class HeartbeatReporter implements LifeCycle, RgwEventListener<RgwEvent>
     }
 
     private Mono<Void> handleHeartbeatResult(GwHeartbeatResult heartbeatResult) {
-        heartbeatPayload.setSyncState(heartbeatResult.getSyncState());
+        heartbeatPayload.setSyncState(concurrent(heartbeatResult.getSyncState()));
 
         if (heartbeatResult.isApiBehind()) {
             eventPublisher.publishEvent(new ApiOpSeqBehindEvent());
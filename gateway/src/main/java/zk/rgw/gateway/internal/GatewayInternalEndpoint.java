@@ -18,6 +18,7 @@ package zk.rgw.gateway.internal;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
 import lombok.Setter;
@@ -33,6 +34,7 @@ import zk.rgw.http.path.PathUtil;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.filter.proxyhttp.UpstreamClients;
 import zk.rgw.plugin.util.ResponseUtil;
 
 @Slf4j
@@ -48,6 +50,11 @@ public class GatewayInternalEndpoint implements Filter {
     public GatewayInternalEndpoint(String contextPath) {
         this.contextPath = contextPath;
         endpoints.put("/notification", new NotificationReceiverEndpoint());
+        endpoints.put("/metrics/upstream-pools", new JsonMetricsEndpoint(UpstreamClients::getPoolMetrics));
+    }
+
+    public void registerMetrics(String path, Supplier<Object> metricsSupplier) {
+        endpoints.put(path, new JsonMetricsEndpoint(metricsSupplier));
     }
 
     @Override
@@ -65,6 +72,28 @@ public class GatewayInternalEndpoint implements Filter {
         Mono<Void> handle(Exchange exchange);
     }
 
+    static class JsonMetricsEndpoint implements Endpoint {
+
+        private final Supplier<Object> metricsSupplier;
+
+        JsonMetricsEndpoint(Supplier<Object> metricsSupplier) {
+            this.metricsSupplier = metricsSupplier;
+        }
+
+        @Override
+        public Mono<Void> handle(Exchange exchange) {
+            String json;
+            try {
+                json = JsonUtil.toJson(metricsSupplier.get());
+            } catch (Exception exception) {
+                log.error("Failed to serialize metrics.", exception);
+                return ResponseUtil.sendError(exchange.getResponse());
+            }
+            return ResponseUtil.sendRawJson(exchange.getResponse(), json);
+        }
+
+    }
+
     class NotificationReceiverEndpoint implements Endpoint {
 
         @Override
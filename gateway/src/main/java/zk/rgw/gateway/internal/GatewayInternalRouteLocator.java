@@ -16,11 +16,13 @@
 package zk.rgw.gateway.internal;
 
 import java.util.List;
+import java.util.function.Predicate;
 
 import reactor.core.publisher.Flux;
 
 import zk.rgw.http.path.PathUtil;
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
 import zk.rgw.http.route.locator.RouteLocator;
 
 @SuppressWarnings("java:S1075")
@@ -30,6 +32,10 @@ public class GatewayInternalRouteLocator implements RouteLocator {
 
     private static final String INTERNAL_CONTEXT_PATH_SLASH = INTERNAL_CONTEXT_PATH + "/";
 
+    private static final String INTERNAL_SEGMENT = INTERNAL_CONTEXT_PATH.substring(1);
+
+    private final Route internalRoute;
+
     private final Flux<Route> internalRoutes;
 
     public GatewayInternalRouteLocator(GatewayInternalEndpoint gatewayInternalEndpoint) {
@@ -37,16 +43,35 @@ public class GatewayInternalRouteLocator implements RouteLocator {
         route.setId("__rgw_internal");
         route.setPath(INTERNAL_CONTEXT_PATH);
         route.setFilters(List.of(gatewayInternalEndpoint));
+        this.internalRoute = route;
         this.internalRoutes = Flux.just(route);
     }
 
     @Override
     public Flux<Route> getRoutes(String path) {
-        String normalizePath = PathUtil.normalize(path);
-        if (normalizePath.startsWith(INTERNAL_CONTEXT_PATH_SLASH) || normalizePath.equals(INTERNAL_CONTEXT_PATH)) {
-            return internalRoutes;
+        return isInternalPath(path) ? internalRoutes : Flux.empty();
+    }
+
+    @Override
+    public boolean supportSyncLookup() {
+        return true;
+    }
+
+    @Override
+    public RouteMatch lookup(String path, Predicate<Route> predicate) {
+        if (isInternalPath(path) && predicate.test(internalRoute)) {
+            return internalRoute.getConstantMatch();
+        }
+        return null;
+    }
+
+    private static boolean isInternalPath(String path) {
+        // 绝大多数请求都不是内部请求，normalize只会删除路径段而不会拼出新的路径段，不包含该段名的路径可以直接排除
+        if (!path.contains(INTERNAL_SEGMENT)) {
+            return false;
         }
-        return Flux.empty();
+        String normalizePath = PathUtil.normalize(path);
+        return normalizePath.startsWith(INTERNAL_CONTEXT_PATH_SLASH) || normalizePath.equals(INTERNAL_CONTEXT_PATH);
     }
 
 }
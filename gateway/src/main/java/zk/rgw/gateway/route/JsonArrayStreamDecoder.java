@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.route;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import zk.rgw.common.util.JsonUtil;
+
+/**
+ * 边接收边解析一个JSON数组，每收到一段字节就返回其中已经完整的数组元素，不需要等待整个响应体
+ */
+class JsonArrayStreamDecoder<T> {
+
+    private final Class<T> elementType;
+
+    private final JsonParser parser;
+
+    /**
+     * 当前所处的嵌套深度，数组本身为1
+     */
+    private int depth = 0;
+
+    private boolean finished = false;
+
+    private TokenBuffer element;
+
+    JsonArrayStreamDecoder(Class<T> elementType) throws IOException {
+        this.elementType = elementType;
+        this.parser = JsonUtil.createNonBlockingParser();
+    }
+
+    List<T> feed(byte[] bytes) throws IOException {
+        ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+        List<T> elements = new ArrayList<>();
+        JsonToken token;
+        while (Objects.nonNull(token = parser.nextToken()) && token != JsonToken.NOT_AVAILABLE) {
+            if (depth == 0) {
+                if (token != JsonToken.START_ARRAY || finished) {
+                    throw new JsonParseException(parser, "Expect exactly one json array, but got " + token);
+                }
+                depth = 1;
+                continue;
+            }
+            if (depth == 1 && token == JsonToken.END_ARRAY) {
+                depth = 0;
+                finished = true;
+                continue;
+            }
+            if (Objects.isNull(element)) {
+                element = new TokenBuffer(parser);
+            }
+            element.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            if (depth == 1) {
+                elements.add(JsonUtil.readValue(element, elementType));
+                element = null;
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * 是否已经读到了数组的结尾，连接中断时响应体会不完整
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+}
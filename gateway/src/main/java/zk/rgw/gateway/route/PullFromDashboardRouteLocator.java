@@ -17,17 +17,28 @@
 package zk.rgw.gateway.route;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
+import io.netty.handler.codec.http.HttpResponseStatus;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
 import zk.rgw.common.definition.IdRouteDefinition;
@@ -36,15 +47,14 @@ import zk.rgw.common.event.RgwEvent;
 import zk.rgw.common.event.RgwEventListener;
 import zk.rgw.common.exception.RgwRuntimeException;
 import zk.rgw.common.heartbeat.Notification;
-import zk.rgw.common.util.JsonUtil;
 import zk.rgw.gateway.event.ApiOpSeqBehindEvent;
 import zk.rgw.gateway.event.ApiOpSeqUpdateEvent;
+import zk.rgw.gateway.event.ConfigStreamResyncEvent;
 import zk.rgw.gateway.event.NotificationEvent;
 import zk.rgw.http.route.Route;
 import zk.rgw.http.route.RouteEvent;
 import zk.rgw.http.route.locator.AsyncUpdatableRouteLocator;
 import zk.rgw.http.utils.UriBuilder;
-import zk.rgw.plugin.util.Shuck;
 
 @Slf4j
 public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator implements RgwEventListener<RgwEvent> {
@@ -53,11 +63,28 @@ public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator im
 
     private static final String PARAMETER_SEQ = "seq";
 
+    private static final String PARAMETER_FULL = "full";
+
+    private static final String PARAMETER_LIMIT = "limit";
+
+    private static final int PAGE_SIZE = 1000;
+
     @SuppressWarnings("java:S1075")
-    private static final String SYNC_ROUTE_PATH = "/gateway/_sync";
+    private static final String SYNC_ROUTE_PATH = "/gateway/_sync-stream";
+
+    private static final int CONVERT_BATCH_SIZE = 256;
+
+    private static final int CONVERT_PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final long JVM_START_TIME = ManagementFactory.getRuntimeMXBean().getStartTime();
 
     private final HttpClient httpClient;
 
+    /**
+     * 转换路由时要加载插件类、解析插件配置，数量多时放在独立的有界线程池上并行执行，不占用reactor的IO线程
+     */
+    private final Scheduler convertScheduler = Schedulers.newParallel("rgw-route-convert", CONVERT_PARALLELISM, true);
+
     @Getter
     private final String dashboardAddress;
 
@@ -70,10 +97,30 @@ public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator im
     @Getter
     private final String environmentId;
 
-    private long latestSequenceNum = 0L;
+    @Getter
+    private volatile long latestSequenceNum = 0L;
+
+    /**
+     * 已应用的路由定义，用于保存本地快照
+     */
+    private final Map<String, IdRouteDefinition> appliedRouteDefinitions = new ConcurrentHashMap<>();
+
+    private final Queue<IdRouteDefinition> pushedRouteDefinitions = new ConcurrentLinkedQueue<>();
 
     private final UriBuilder uriBuilder;
 
+    private final LongAdder syncedRoutes = new LongAdder();
+
+    private volatile long firstRouteAppliedAt = -1L;
+
+    private volatile long firstFullSyncCompletedAt = -1L;
+
+    private volatile int lastSyncRoutes = 0;
+
+    private volatile int lastSyncPages = 0;
+
+    private volatile long lastSyncMillis = -1L;
+
     @Setter
     private EventPublisher<RgwEvent> eventPublisher;
 
@@ -82,11 +129,13 @@ public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator im
         this.dashboardRouteSyncEndpoint = dashboardApiContextPath + SYNC_ROUTE_PATH;
         this.dashboardAuthKey = dashboardAuthKey;
         this.environmentId = environmentId;
-        httpClient = HttpClient.create();
+        // 全量同步的响应可能很大，请求dashboard压缩
+        httpClient = HttpClient.create().compress(true);
         try {
             uriBuilder = new UriBuilder(dashboardAddress);
             uriBuilder.path(dashboardRouteSyncEndpoint);
             uriBuilder.queryParam(PARAMETER_ENV_ID, this.environmentId);
+            uriBuilder.queryParam(PARAMETER_LIMIT, PAGE_SIZE + "");
             httpClient.baseUrl(uriBuilder.build().toString());
         } catch (URISyntaxException exception) {
             throw new RgwRuntimeException("Dashboard address is not validated uri.", exception);
@@ -95,52 +144,212 @@ public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator im
 
     @Override
     protected Flux<RouteEvent> fetchRouteChange() {
-        return fetchRouteDefinitions()
-                .doOnNext(idRouteDefinition -> latestSequenceNum = Math.max(latestSequenceNum, idRouteDefinition.getSeqNum()))
-                .map(idRouteDefinition -> {
-                    RouteEvent routeEvent = new RouteEvent();
-                    routeEvent.setRouteId(idRouteDefinition.getId());
-
-                    if (Objects.isNull(idRouteDefinition.getRouteDefinition())) {
-                        // 没有routeDefinition说明是下线了
-                        routeEvent.setDelete(true);
-                    } else {
-                        routeEvent.setDelete(false);
-                        try {
-                            Route route = RouteConverter.convertRouteDefinition(idRouteDefinition);
-                            routeEvent.setRoute(route);
-                        } catch (RouteConvertException exception) {
-                            log.error("Failed to convert a route definition to route.", exception);
-                            routeEvent.setRouteId(null);
-                        }
+        return fetchRouteChangeBatches().concatMapIterable(Function.identity());
+    }
+
+    @Override
+    protected Flux<List<RouteEvent>> fetchRouteChangeBatches() {
+        List<IdRouteDefinition> pushed = drainPushedRouteDefinitions();
+        Flux<IdRouteDefinition> definitions;
+        if (!pushed.isEmpty() && isContinuous(pushed)) {
+            log.info("Apply {} route definitions pushed by dashboard.", pushed.size());
+            definitions = Flux.fromIterable(pushed).filter(idRouteDefinition -> idRouteDefinition.getSeqNum() > latestSequenceNum);
+        } else {
+            // 没有推送的变更，或者推送的变更与本地的序号之间有缺口，拉取本地序号之后的全部变更
+            definitions = fetchRouteDefinitions();
+        }
+        return convertInParallel(definitions)
+                .doOnComplete(() -> eventPublisher.publishEvent(new ApiOpSeqUpdateEvent(latestSequenceNum)));
+    }
+
+    /**
+     * 分批在有界的线程池上并行转换，转换完成的批次按原有顺序发出，每一批整体生效
+     */
+    private Flux<List<RouteEvent>> convertInParallel(Flux<IdRouteDefinition> definitions) {
+        return definitions.buffer(CONVERT_BATCH_SIZE)
+                .flatMapSequential(
+                        batch -> Mono.fromCallable(() -> batch.stream().map(PullFromDashboardRouteLocator::toRouteEvent).toList())
+                                .subscribeOn(convertScheduler)
+                                .map(routeEvents -> new ConvertedBatch(batch, routeEvents)),
+                        CONVERT_PARALLELISM
+                )
+                .map(convertedBatch -> {
+                    for (IdRouteDefinition idRouteDefinition : convertedBatch.definitions()) {
+                        // 先记录路由定义再推进序列号，保存快照时读到的序列号对应的路由一定已经被记录
+                        recordApplied(idRouteDefinition);
+                        latestSequenceNum = Math.max(latestSequenceNum, idRouteDefinition.getSeqNum());
+                        syncedRoutes.increment();
                     }
-                    return routeEvent;
-                }).doOnComplete(() -> eventPublisher.publishEvent(new ApiOpSeqUpdateEvent(latestSequenceNum)));
+                    return convertedBatch.routeEvents();
+                });
+    }
+
+    /**
+     * 从本地快照恢复路由，在定位器启动前调用，之后从快照的序列号开始追赶
+     */
+    public void restore(List<IdRouteDefinition> idRouteDefinitions, long snapshotSequenceNum) {
+        convertInParallel(Flux.fromIterable(idRouteDefinitions)).doOnNext(this::applyRouteEventBatch).blockLast();
+        latestSequenceNum = Math.max(latestSequenceNum, snapshotSequenceNum);
+        update();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        convertScheduler.dispose();
+    }
+
+    public List<IdRouteDefinition> getAppliedRouteDefinitions() {
+        return new ArrayList<>(appliedRouteDefinitions.values());
+    }
+
+    private void recordApplied(IdRouteDefinition idRouteDefinition) {
+        if (Objects.isNull(idRouteDefinition.getRouteDefinition())) {
+            appliedRouteDefinitions.remove(idRouteDefinition.getId());
+        } else {
+            appliedRouteDefinitions.put(idRouteDefinition.getId(), idRouteDefinition);
+        }
+    }
+
+    private static RouteEvent toRouteEvent(IdRouteDefinition idRouteDefinition) {
+        RouteEvent routeEvent = new RouteEvent();
+        routeEvent.setRouteId(idRouteDefinition.getId());
+
+        if (Objects.isNull(idRouteDefinition.getRouteDefinition())) {
+            // 没有routeDefinition说明是下线了
+            routeEvent.setDelete(true);
+        } else {
+            routeEvent.setDelete(false);
+            try {
+                Route route = RouteConverter.convertRouteDefinition(idRouteDefinition);
+                routeEvent.setRoute(route);
+            } catch (RouteConvertException exception) {
+                log.error("Failed to convert a route definition to route.", exception);
+                routeEvent.setRouteId(null);
+            }
+        }
+        return routeEvent;
+    }
+
+    private List<IdRouteDefinition> drainPushedRouteDefinitions() {
+        List<IdRouteDefinition> list = new ArrayList<>();
+        IdRouteDefinition idRouteDefinition;
+        while (Objects.nonNull(idRouteDefinition = pushedRouteDefinitions.poll())) {
+            list.add(idRouteDefinition);
+        }
+        list.sort(Comparator.comparingLong(IdRouteDefinition::getSeqNum));
+        return list;
+    }
+
+    /**
+     * 推送的变更能否紧接着本地的序号应用，已经应用过的忽略
+     */
+    private boolean isContinuous(List<IdRouteDefinition> sortedDefinitions) {
+        long expect = latestSequenceNum + 1;
+        for (IdRouteDefinition idRouteDefinition : sortedDefinitions) {
+            long seqNum = idRouteDefinition.getSeqNum();
+            if (seqNum < expect) {
+                continue;
+            }
+            if (seqNum != expect) {
+                return false;
+            }
+            expect++;
+        }
+        return true;
     }
 
     private Flux<IdRouteDefinition> fetchRouteDefinitions() {
+        // 本地还没有任何路由时全量同步，不需要已下线的API
+        boolean full = this.latestSequenceNum == 0L;
+        long begin = System.currentTimeMillis();
+        SyncProgress progress = new SyncProgress();
+        return fetchPages(this.latestSequenceNum, full, progress)
+                .doOnComplete(() -> {
+                    lastSyncRoutes = progress.routes;
+                    lastSyncPages = progress.pages;
+                    lastSyncMillis = System.currentTimeMillis() - begin;
+                    if (progress.routes > 0) {
+                        log.info("Fetched {} route definitions in {} pages from dashboard, cost {} ms.", progress.routes, progress.pages, lastSyncMillis);
+                    }
+                    if (full && firstFullSyncCompletedAt < 0) {
+                        firstFullSyncCompletedAt = System.currentTimeMillis();
+                        log.info("First full sync of route definitions completed {} ms after jvm started.", firstFullSyncCompletedAt - JVM_START_TIME);
+                    }
+                })
+                .onErrorResume(throwable -> {
+                    log.error("Failed to fetch route changes from dashboard after {} routes.", progress.routes, throwable);
+                    return Flux.empty();
+                });
+    }
+
+    /**
+     * 按序号分页拉取，收到的路由边解析边返回，一页满了再接着拉取下一页。
+     * 只有第一页按全量拉取（不返回已下线的API）；拉取第一页之后才下线的API序号更大，会出现在后面的页中，
+     * 后面的页必须包含下线记录，否则已经收到的路由不会被移除
+     */
+    private Flux<IdRouteDefinition> fetchPages(long afterSeq, boolean full, SyncProgress progress) {
         URI uri;
         try {
-            uri = uriBuilder.clearQueryParam(PARAMETER_SEQ).queryParam(PARAMETER_SEQ, this.latestSequenceNum + "").build();
+            uri = uriBuilder.clearQueryParam(PARAMETER_SEQ).queryParam(PARAMETER_SEQ, afterSeq + "")
+                    .clearQueryParam(PARAMETER_FULL).queryParam(PARAMETER_FULL, full + "")
+                    .build();
         } catch (URISyntaxException exception) {
-            throw new RgwRuntimeException(exception);
+            return Flux.error(new RgwRuntimeException(exception));
         }
-        return httpClient.get().uri(uri).responseContent().aggregate().asInputStream()
-                .onErrorResume(throwable -> {
-                    log.error("Failed to fetch route changes from uri: {}", uri);
-                    return Mono.empty();
-                }).map(inputStream -> {
-                    try {
-                        SyncRouteResp syncRouteResp = JsonUtil.readValue(inputStream, SyncRouteResp.class);
-                        List<IdRouteDefinition> list = syncRouteResp.getData();
-                        if (!list.isEmpty()) {
-                            log.info("Fetched {} route definitions from {}", list.size(), uri);
+
+        PageState page = new PageState(afterSeq);
+        Flux<IdRouteDefinition> pageFlux = httpClient.get().uri(uri).response((response, content) -> {
+            if (response.status().code() != HttpResponseStatus.OK.code()) {
+                String message = "Sync route definitions request sent to " + uri + " returned status " + response.status();
+                return Flux.<IdRouteDefinition>error(new RgwRuntimeException(message));
+            }
+            JsonArrayStreamDecoder<IdRouteDefinition> decoder;
+            try {
+                decoder = new JsonArrayStreamDecoder<>(IdRouteDefinition.class);
+            } catch (IOException ioException) {
+                return Flux.<IdRouteDefinition>error(ioException);
+            }
+            return content.asByteArray()
+                    .concatMapIterable(bytes -> {
+                        try {
+                            return decoder.feed(bytes);
+                        } catch (IOException ioException) {
+                            throw new RgwRuntimeException("Failed to deserialize response of sync route definitions request sent to " + uri, ioException);
                         }
-                        return list;
-                    } catch (IOException ioException) {
-                        throw new RgwRuntimeException("Failed to deserialize response of sync route definitions request sent to " + uri);
-                    }
-                }).flatMapMany((Function<List<IdRouteDefinition>, Flux<IdRouteDefinition>>) Flux::fromIterable);
+                    })
+                    .concatWith(Mono.defer(() -> decoder.isFinished() ? Mono.empty() : Mono.error(
+                            new RgwRuntimeException("Response of sync route definitions request sent to " + uri + " is truncated.")
+                    )));
+        }).doOnNext(idRouteDefinition -> {
+            page.count++;
+            page.lastSeq = idRouteDefinition.getSeqNum();
+            progress.routes++;
+        }).doOnComplete(() -> progress.pages++);
+
+        return pageFlux.concatWith(Flux.defer(() -> page.count >= PAGE_SIZE ? fetchPages(page.lastSeq, false, progress) : Flux.empty()));
+    }
+
+    @Override
+    protected List<Route> applyRouteEvents(List<RouteEvent> routeEvents) {
+        List<Route> staleRoutes = super.applyRouteEvents(routeEvents);
+        if (firstRouteAppliedAt < 0 && routeEvents.stream().anyMatch(routeEvent -> Objects.nonNull(routeEvent.getRoute()))) {
+            firstRouteAppliedAt = System.currentTimeMillis();
+            log.info("First route is ready to serve {} ms after jvm started.", firstRouteAppliedAt - JVM_START_TIME);
+        }
+        return staleRoutes;
+    }
+
+    public RouteSyncMetrics getSyncMetrics() {
+        return new RouteSyncMetrics(
+                firstRouteAppliedAt < 0 ? -1 : firstRouteAppliedAt - JVM_START_TIME,
+                firstFullSyncCompletedAt < 0 ? -1 : firstFullSyncCompletedAt - JVM_START_TIME,
+                latestSequenceNum,
+                syncedRoutes.sum(),
+                lastSyncRoutes,
+                lastSyncPages,
+                lastSyncMillis
+        );
     }
 
     @Override
@@ -148,32 +357,43 @@ public class PullFromDashboardRouteLocator extends AsyncUpdatableRouteLocator im
         if (event instanceof NotificationEvent notificationEvent) {
             Notification notification = notificationEvent.getNotification();
             if (notification.isApiUpdated()) {
-                log.info("Received api updated notification.");
-                update();
+                IdRouteDefinition idRouteDefinition = notification.getRouteDefinition();
+                if (Objects.nonNull(idRouteDefinition)) {
+                    log.info("Received pushed route definition with id = {}, seq = {}", idRouteDefinition.getId(), idRouteDefinition.getSeqNum());
+                    pushedRouteDefinitions.add(idRouteDefinition);
+                    updateImmediately();
+                } else {
+                    log.info("Received api updated notification.");
+                    update();
+                }
             }
-        } else if (event instanceof ApiOpSeqBehindEvent) {
+        } else if (event instanceof ApiOpSeqBehindEvent || event instanceof ConfigStreamResyncEvent) {
             log.info("Api operation sequence is behind, going to sync from dashboard.");
             update();
         }
     }
 
-    static class SyncRouteResp extends Shuck<List<IdRouteDefinition>> {
+    private record ConvertedBatch(List<IdRouteDefinition> definitions, List<RouteEvent> routeEvents) {
+    }
 
-        @Override
-        public List<IdRouteDefinition> getData() {
-            if (getCode() != Shuck.CODE_OK) {
-                log.error("Sync route definitions request returned not ok status, something maybe wrong.");
-                return List.of();
-            }
-            // 保证不能返回null
-            List<IdRouteDefinition> data = super.getData();
-            if (Objects.isNull(data)) {
-                log.error("Sync route definitions request returned empty data, something maybe wrong.");
-                return List.of();
-            }
-            return data;
+    private static class PageState {
+
+        private int count = 0;
+
+        private long lastSeq;
+
+        PageState(long afterSeq) {
+            this.lastSeq = afterSeq;
         }
 
     }
 
+    private static class SyncProgress {
+
+        private int routes = 0;
+
+        private int pages = 0;
+
+    }
+
 }
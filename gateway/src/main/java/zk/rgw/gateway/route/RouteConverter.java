@@ -16,11 +16,19 @@
 
 package zk.rgw.gateway.route;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.netty.handler.codec.http.HttpMethod;
 
@@ -37,10 +45,25 @@ import zk.rgw.http.plugin.PluginLoadException;
 import zk.rgw.http.route.Route;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.exception.PluginConfException;
 
 public class RouteConverter {
 
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    /**
+     * 插件类的无参构造方法，避免每次转换都加载类和反射查找构造方法
+     */
+    private static final Map<PluginClassKey, PluginClass> PLUGIN_CLASSES = new ConcurrentHashMap<>();
+
+    /**
+     * 配置相同的无状态插件实例，在多个Route之间共享
+     */
+    private static final Map<SharedPluginKey, SharedPluginReference> SHARED_PLUGINS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Filter> SHARED_PLUGIN_QUEUE = new ReferenceQueue<>();
+
     private RouteConverter() {
     }
 
@@ -96,6 +119,36 @@ public class RouteConverter {
     }
 
     public static Filter convertPluginDefinition(PluginInstanceDefinition definition) throws PluginConfException, PluginLoadException {
+        PluginClassKey classKey = new PluginClassKey(definition);
+        PluginClass pluginClass = PLUGIN_CLASSES.get(classKey);
+        if (Objects.isNull(pluginClass)) {
+            // 并发时可能重复加载，结果相同，不需要加锁
+            pluginClass = loadPluginClass(definition);
+            PLUGIN_CLASSES.putIfAbsent(classKey, pluginClass);
+        }
+
+        if (!pluginClass.stateless()) {
+            return newPluginInstance(pluginClass, definition.getJsonConf());
+        }
+
+        expungeStaleSharedPlugins();
+        SharedPluginKey sharedKey = new SharedPluginKey(classKey, definition.getJsonConf());
+        SharedPluginReference reference = SHARED_PLUGINS.get(sharedKey);
+        Filter shared = Objects.isNull(reference) ? null : reference.get();
+        if (Objects.nonNull(shared)) {
+            return shared;
+        }
+        Filter created = newPluginInstance(pluginClass, definition.getJsonConf());
+        // 并发转换时以先放入的实例为准
+        reference = SHARED_PLUGINS.compute(
+                sharedKey,
+                (key, existed) -> Objects.nonNull(existed) && Objects.nonNull(existed.get()) ? existed : new SharedPluginReference(key, created)
+        );
+        shared = reference.get();
+        return Objects.isNull(shared) ? created : shared;
+    }
+
+    private static PluginClass loadPluginClass(PluginInstanceDefinition definition) throws PluginLoadException {
         ClassLoader classLoader;
         if (definition.isBuiltin()) {
             classLoader = RouteConverter.class.getClassLoader();
@@ -109,15 +162,74 @@ public class RouteConverter {
         } catch (ClassNotFoundException exception) {
             throw new PluginLoadException("Failed to load class " + definition.getFullClassName(), exception);
         }
-        final Object object;
         try {
-            object = clazz.getDeclaredConstructor().newInstance();
+            MethodHandle constructor = MethodHandles.publicLookup().findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+            return new PluginClass(clazz.getName(), constructor, clazz.isAnnotationPresent(Stateless.class));
         } catch (ReflectiveOperationException | SecurityException exception) {
-            throw new PluginLoadException("", exception);
+            throw new PluginLoadException("Failed to access the public no-arg constructor of " + clazz.getName(), exception);
+        }
+    }
+
+    private static Filter newPluginInstance(PluginClass pluginClass, String jsonConf) throws PluginConfException, PluginLoadException {
+        final JsonConfFilterPlugin filter;
+        try {
+            filter = (JsonConfFilterPlugin) (Object) pluginClass.constructor().invokeExact();
+        } catch (LinkageError error) {
+            // 插件的静态初始化失败、依赖缺失等属于插件本身的问题
+            throw new PluginLoadException("Failed to initialize plugin class " + pluginClass.className(), error);
+        } catch (Error error) {
+            // OutOfMemoryError等虚拟机错误不能被当作插件加载失败吞掉
+            throw error;
+        } catch (Throwable throwable) {
+            throw new PluginLoadException("Failed to create instance of plugin class " + pluginClass.className(), throwable);
         }
-        JsonConfFilterPlugin filter = (JsonConfFilterPlugin) object;
-        filter.configure(definition.getJsonConf());
+        filter.configure(jsonConf);
         return filter;
     }
 
+    private static void expungeStaleSharedPlugins() {
+        Reference<? extends Filter> reference;
+        while (Objects.nonNull(reference = SHARED_PLUGIN_QUEUE.poll())) {
+            SharedPluginReference stale = (SharedPluginReference) reference;
+            SHARED_PLUGINS.remove(stale.key, stale);
+        }
+    }
+
+    /**
+     * 同一个插件类由加载它的类加载器和类名唯一确定，内置插件都由网关自身的类加载器加载
+     */
+    private record PluginClassKey(boolean builtin, String name, String version, String fullClassName) {
+
+        PluginClassKey(PluginInstanceDefinition definition) {
+            this(
+                    definition.isBuiltin(),
+                    definition.isBuiltin() ? null : definition.getName(),
+                    definition.isBuiltin() ? null : definition.getVersion(),
+                    definition.getFullClassName()
+            );
+        }
+
+    }
+
+    private record PluginClass(String className, MethodHandle constructor, boolean stateless) {
+    }
+
+    private record SharedPluginKey(PluginClassKey classKey, String jsonConf) {
+    }
+
+    /**
+     * 共享的插件实例只被Route引用，所有使用它的Route都被替换后即可回收
+     */
+    private static class SharedPluginReference extends WeakReference<Filter> {
+
+        private final SharedPluginKey key;
+
+        SharedPluginReference(SharedPluginKey key, Filter filter) {
+            super(filter, SHARED_PLUGIN_QUEUE);
+            this.key = key;
+        }
+
+    }
+
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.route;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 从dashboard同步路由的状态，耗时均为毫秒，尚未发生时为-1
+ */
+@Getter
+@AllArgsConstructor
+public class RouteSyncMetrics {
+
+    /**
+     * JVM启动到第一个路由可以处理请求的耗时
+     */
+    private long millisToFirstRoute;
+
+    /**
+     * JVM启动到第一次全量同步完成的耗时
+     */
+    private long millisToFirstFullSync;
+
+    private long latestSequenceNum;
+
+    private long syncedRoutes;
+
+    private int lastSyncRoutes;
+
+    private int lastSyncPages;
+
+    private long lastSyncMillis;
+
+}
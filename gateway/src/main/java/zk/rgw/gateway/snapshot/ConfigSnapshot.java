@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import zk.rgw.common.definition.AppDefinition;
+import zk.rgw.common.definition.IdRouteDefinition;
+
+/**
+ * 网关已应用配置的本地快照，包括路由、订阅关系和环境变量，以及各自对应的序列号
+ */
+@Getter
+@Setter
+public class ConfigSnapshot {
+
+    public static final int CURRENT_VERSION = 1;
+
+    private int version = CURRENT_VERSION;
+
+    /**
+     * 保存快照时配置的环境id，与当前配置不一致时快照无效
+     */
+    private String environmentId;
+
+    private long savedAt;
+
+    private long apiOpSeq;
+
+    private List<IdRouteDefinition> routeDefinitions = new ArrayList<>();
+
+    private long appOpSeq;
+
+    /**
+     * routeId -> (appKey -> app)
+     */
+    private Map<String, Map<String, AppDefinition>> subscriptions = new HashMap<>();
+
+    /**
+     * orgId -> 环境变量
+     */
+    private Map<String, Map<String, String>> environments = new HashMap<>();
+
+    private Map<String, Long> orgEnvOpSeqMap = new HashMap<>();
+
+}
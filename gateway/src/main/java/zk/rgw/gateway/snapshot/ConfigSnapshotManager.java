@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.snapshot;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.bootstrap.LifeCycle;
+import zk.rgw.common.heartbeat.SyncState;
+import zk.rgw.gateway.app.AppSubscribeRouteManager;
+import zk.rgw.gateway.env.EnvironmentPrepareFilter;
+import zk.rgw.gateway.heartbeat.HeartbeatReporter;
+import zk.rgw.gateway.route.PullFromDashboardRouteLocator;
+
+/**
+ * 启动时从本地快照恢复路由、订阅关系和环境变量，使网关不依赖dashboard即可立即处理请求，之后再从快照的序列号开始追赶。
+ * 运行期间定期检查各序列号，有变化时保存新的快照
+ */
+@Slf4j
+public class ConfigSnapshotManager implements LifeCycle {
+
+    private final ConfigSnapshotStore store;
+
+    private final String environmentId;
+
+    private final int saveIntervalSeconds;
+
+    private final PullFromDashboardRouteLocator routeLocator;
+
+    private final AppSubscribeRouteManager appSubscribeRouteManager;
+
+    private final EnvironmentPrepareFilter environmentPrepareFilter;
+
+    private final HeartbeatReporter heartbeatReporter;
+
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    private Watermark savedWatermark;
+
+    @SuppressWarnings("java:S107")
+    public ConfigSnapshotManager(
+            ConfigSnapshotStore store, String environmentId, int saveIntervalSeconds,
+            PullFromDashboardRouteLocator routeLocator, AppSubscribeRouteManager appSubscribeRouteManager,
+            EnvironmentPrepareFilter environmentPrepareFilter, HeartbeatReporter heartbeatReporter
+    ) {
+        this.store = store;
+        this.environmentId = environmentId;
+        this.saveIntervalSeconds = saveIntervalSeconds;
+        this.routeLocator = routeLocator;
+        this.appSubscribeRouteManager = appSubscribeRouteManager;
+        this.environmentPrepareFilter = environmentPrepareFilter;
+        this.heartbeatReporter = heartbeatReporter;
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, this.getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 从快照恢复，需要在路由定位器启动之前调用
+     *
+     * @return 是否成功恢复
+     */
+    public boolean restore() {
+        long begin = System.currentTimeMillis();
+        ConfigSnapshot snapshot = store.load();
+        if (Objects.isNull(snapshot)) {
+            log.info("No config snapshot found at {}, going to sync all config from dashboard.", store.getFile());
+            return false;
+        }
+        if (!Objects.equals(environmentId, snapshot.getEnvironmentId())) {
+            log.warn("Ignore config snapshot of environment {}, current environment is {}.", snapshot.getEnvironmentId(), environmentId);
+            return false;
+        }
+
+        environmentPrepareFilter.restore(snapshot.getEnvironments());
+        appSubscribeRouteManager.restore(snapshot.getSubscriptions(), snapshot.getAppOpSeq());
+        routeLocator.restore(snapshot.getRouteDefinitions(), snapshot.getApiOpSeq());
+
+        SyncState syncState = new SyncState();
+        syncState.setApiOpSeq(snapshot.getApiOpSeq());
+        syncState.setAppOpSeq(snapshot.getAppOpSeq());
+        syncState.getOrgEnvOpSeqMap().putAll(snapshot.getOrgEnvOpSeqMap());
+        heartbeatReporter.restoreSyncState(syncState);
+
+        savedWatermark = new Watermark(snapshot.getApiOpSeq(), snapshot.getAppOpSeq(), snapshot.getOrgEnvOpSeqMap());
+        log.info(
+                "Restored {} routes from config snapshot saved at {}, api seq = {}, app seq = {}, cost {} ms.",
+                snapshot.getRouteDefinitions().size(), snapshot.getSavedAt(), snapshot.getApiOpSeq(), snapshot.getAppOpSeq(),
+                System.currentTimeMillis() - begin
+        );
+        return true;
+    }
+
+    @Override
+    public void start() {
+        log.info("Start {}, snapshot file is {}.", this.getClass().getSimpleName(), store.getFile());
+        scheduledExecutorService.scheduleWithFixedDelay(this::saveIfChanged, saveIntervalSeconds, saveIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (!scheduledExecutorService.isShutdown()) {
+            log.info("Stop {}.", this.getClass().getSimpleName());
+            scheduledExecutorService.shutdownNow();
+            saveIfChanged();
+        }
+    }
+
+    private synchronized void saveIfChanged() {
+        try {
+            // 先读取序列号再读取数据，数据只会比序列号新，恢复后从序列号开始追赶时重复应用是幂等的
+            SyncState syncState = heartbeatReporter.getSyncState();
+            Watermark watermark = new Watermark(routeLocator.getLatestSequenceNum(), appSubscribeRouteManager.getOpSeq(), syncState.getOrgEnvOpSeqMap());
+            if (watermark.equals(savedWatermark) || watermark.isEmpty()) {
+                return;
+            }
+
+            ConfigSnapshot snapshot = new ConfigSnapshot();
+            snapshot.setEnvironmentId(environmentId);
+            snapshot.setSavedAt(System.currentTimeMillis());
+            snapshot.setApiOpSeq(watermark.apiOpSeq());
+            snapshot.setAppOpSeq(watermark.appOpSeq());
+            snapshot.setOrgEnvOpSeqMap(watermark.orgEnvOpSeqMap());
+            snapshot.setRouteDefinitions(routeLocator.getAppliedRouteDefinitions());
+            snapshot.setSubscriptions(appSubscribeRouteManager.getSubscriptions());
+            snapshot.setEnvironments(environmentPrepareFilter.getEnvironments());
+
+            store.save(snapshot);
+            savedWatermark = watermark;
+            log.debug("Saved config snapshot with {} routes, api seq = {}.", snapshot.getRouteDefinitions().size(), watermark.apiOpSeq());
+        } catch (Exception exception) {
+            log.error("Failed to save config snapshot to {}.", store.getFile(), exception);
+        }
+    }
+
+    private record Watermark(long apiOpSeq, long appOpSeq, Map<String, Long> orgEnvOpSeqMap) {
+
+        boolean isEmpty() {
+            return apiOpSeq == 0L && appOpSeq == 0L && orgEnvOpSeqMap.isEmpty();
+        }
+
+    }
+
+}
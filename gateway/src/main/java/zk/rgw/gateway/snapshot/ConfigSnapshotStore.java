@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.snapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.util.JsonUtil;
+
+/**
+ * 快照文件的读写，内容为gzip压缩的JSON。先写临时文件再原子替换，进程在写入过程中退出也不会破坏已有的快照。
+ * 快照中含有应用的secret和环境变量，支持POSIX权限的文件系统上文件权限为0600，只有运行网关的用户可以读写
+ */
+@Slf4j
+public class ConfigSnapshotStore {
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final Set<PosixFilePermission> OWNER_READ_WRITE = PosixFilePermissions.fromString("rw-------");
+
+    @Getter
+    private final Path file;
+
+    public ConfigSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取快照，文件不存在或无法解析时返回null
+     */
+    public ConfigSnapshot load() {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ConfigSnapshot snapshot = JsonUtil.readValue(in, ConfigSnapshot.class);
+            if (Objects.isNull(snapshot) || snapshot.getVersion() != ConfigSnapshot.CURRENT_VERSION) {
+                log.warn("Ignore config snapshot {} with unsupported version.", file);
+                return null;
+            }
+            return snapshot;
+        } catch (NoSuchFileException exception) {
+            return null;
+        } catch (Exception exception) {
+            log.error("Failed to load config snapshot from {}, ignore it.", file, exception);
+            return null;
+        }
+    }
+
+    public void save(ConfigSnapshot snapshot) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (Objects.nonNull(parent)) {
+            Files.createDirectories(parent);
+        }
+        Path tmpFile = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+        // 创建时就指定权限，而不是写入后再修改，避免内容在短时间内可以被其他用户读取；替换后快照文件沿用临时文件的权限
+        Files.deleteIfExists(tmpFile);
+        if (tmpFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tmpFile, PosixFilePermissions.asFileAttribute(OWNER_READ_WRITE));
+        } else {
+            Files.createFile(tmpFile);
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmpFile), 8192)) {
+            out.write(JsonUtil.toJsonBytes(snapshot));
+        }
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
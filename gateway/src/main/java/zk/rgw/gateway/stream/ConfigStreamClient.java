@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.stream;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Objects;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import zk.rgw.common.bootstrap.LifeCycle;
+import zk.rgw.common.event.EventPublisher;
+import zk.rgw.common.event.RgwEvent;
+import zk.rgw.common.event.RgwEventListener;
+import zk.rgw.common.exception.RgwRuntimeException;
+import zk.rgw.common.heartbeat.Notification;
+import zk.rgw.common.util.JsonUtil;
+import zk.rgw.gateway.event.ConfigStreamResyncEvent;
+import zk.rgw.gateway.event.NodeRegisteredEvent;
+import zk.rgw.gateway.event.NotificationEvent;
+import zk.rgw.http.utils.UriBuilder;
+
+/**
+ * 向dashboard订阅配置变更的SSE长连接，收到的变更按通知事件发布，与dashboard发送HTTP通知的处理方式相同。
+ * <p>
+ * 注册成功拿到节点id后建立连接，断开后退避重连，重连时携带收到的最后一个事件id以便dashboard补发。
+ */
+@SuppressWarnings("java:S1075")
+@Slf4j
+public class ConfigStreamClient implements LifeCycle, RgwEventListener<RgwEvent> {
+
+    private static final String PATH_STREAM = "/gateway/_stream";
+
+    private static final String PARAMETER_NODE_ID = "nodeId";
+
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final String EVENT_NOTIFICATION = "notification";
+
+    private static final String EVENT_RESYNC = "resync";
+
+    /**
+     * dashboard每15秒发送一次ping，超过该时间没有收到任何数据认为连接已失效
+     */
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(45);
+
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final String dashboardAddress;
+
+    private final String pathStream;
+
+    private final HttpClient httpClient;
+
+    @Setter
+    private EventPublisher<RgwEvent> eventPublisher;
+
+    private volatile boolean running = false;
+
+    private volatile String nodeId;
+
+    private volatile String lastEventId;
+
+    private volatile Duration backoff = MIN_BACKOFF;
+
+    private Disposable disposable;
+
+    public ConfigStreamClient(String dashboardAddress, String dashboardApiContextPath) {
+        this.dashboardAddress = dashboardAddress;
+        this.pathStream = dashboardApiContextPath + PATH_STREAM;
+        // 长连接不放回连接池
+        this.httpClient = HttpClient.newConnection().responseTimeout(READ_TIMEOUT);
+    }
+
+    @Override
+    public synchronized void start() {
+        log.info("Start {}.", this.getClass().getSimpleName());
+        running = true;
+        connectIfReady();
+    }
+
+    @Override
+    public synchronized void stop() {
+        log.info("Stop {}.", this.getClass().getSimpleName());
+        running = false;
+        if (Objects.nonNull(disposable)) {
+            disposable.dispose();
+            disposable = null;
+        }
+    }
+
+    @Override
+    public void onEvent(RgwEvent event) {
+        if (event instanceof NodeRegisteredEvent nodeRegisteredEvent) {
+            this.nodeId = nodeRegisteredEvent.getNodeId();
+            connectIfReady();
+        }
+    }
+
+    private synchronized void connectIfReady() {
+        if (!running || Objects.isNull(nodeId) || Objects.nonNull(disposable)) {
+            return;
+        }
+        disposable = Mono.defer(this::connect)
+                .onErrorResume(throwable -> {
+                    log.warn("Config stream from dashboard is broken: {}", throwable.toString());
+                    return Mono.empty();
+                })
+                .then(Mono.defer(() -> Mono.delay(nextBackoff())))
+                .repeat(() -> running)
+                .subscribe();
+    }
+
+    private Mono<Void> connect() {
+        URI uri;
+        try {
+            uri = new UriBuilder(dashboardAddress).path(pathStream).queryParam(PARAMETER_NODE_ID, nodeId).build();
+        } catch (URISyntaxException exception) {
+            return Mono.error(new RgwRuntimeException("Dashboard address is not validated uri.", exception));
+        }
+        final String resumeFrom = lastEventId;
+        ServerSentEventParser parser = new ServerSentEventParser();
+        return httpClient.headers(headers -> {
+            if (Objects.nonNull(resumeFrom)) {
+                headers.set(LAST_EVENT_ID, resumeFrom);
+            }
+        }).get().uri(uri).response((response, content) -> {
+            if (response.status().code() != HttpResponseStatus.OK.code()) {
+                return Flux.error(new RgwRuntimeException("Config stream request responded " + response.status()));
+            }
+            log.info("Config stream connected to {}, resume from {}", uri, resumeFrom);
+            return content.doOnNext(byteBuf -> {
+                for (ServerSentEventParser.ServerSentEvent event : parser.feed(ByteBufUtil.getBytes(byteBuf))) {
+                    handleEvent(event);
+                }
+            });
+        }).then(Mono.fromRunnable(() -> log.warn("Config stream from dashboard is closed.")));
+    }
+
+    private void handleEvent(ServerSentEventParser.ServerSentEvent event) {
+        backoff = MIN_BACKOFF;
+        try {
+            if (EVENT_NOTIFICATION.equals(event.event())) {
+                Notification notification = JsonUtil.readValue(event.data(), Notification.class);
+                log.debug("Received notification from config stream: {}", notification);
+                eventPublisher.publishEvent(new NotificationEvent(notification));
+            } else if (EVENT_RESYNC.equals(event.event())) {
+                log.info("Config stream can not resume from {}, going to resync.", lastEventId);
+                eventPublisher.publishEvent(new ConfigStreamResyncEvent());
+            }
+        } catch (Exception exception) {
+            log.error("Failed to handle event {} from config stream.", event, exception);
+        }
+        if (Objects.nonNull(event.id())) {
+            lastEventId = event.id();
+        }
+    }
+
+    private Duration nextBackoff() {
+        Duration current = backoff;
+        Duration doubled = current.multipliedBy(2);
+        backoff = doubled.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : doubled;
+        return current;
+    }
+
+}
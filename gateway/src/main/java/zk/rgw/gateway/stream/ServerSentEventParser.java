@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 增量解析text/event-stream，按字节查找事件的结束位置，避免多字节字符被拆分到两个数据块时解码出错。
+ * <p>
+ * 只支持以单个换行符分隔的行，注释行和没有data的事件会被忽略。
+ */
+class ServerSentEventParser {
+
+    private byte[] buffer = new byte[1024];
+
+    private int size = 0;
+
+    /**
+     * 已经查找过事件结束位置的字节数，事件很长、被拆成很多数据块时不必每次都从头查找
+     */
+    private int scanned = 0;
+
+    List<ServerSentEvent> feed(byte[] bytes) {
+        ensureCapacity(size + bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+
+        List<ServerSentEvent> events = new ArrayList<>(1);
+        int begin = 0;
+        for (int i = Math.max(1, scanned); i < size; ++i) {
+            if (buffer[i] == '\n' && buffer[i - 1] == '\n') {
+                ServerSentEvent event = parseEvent(new String(buffer, begin, i - begin, StandardCharsets.UTF_8));
+                if (Objects.nonNull(event)) {
+                    events.add(event);
+                }
+                begin = i + 1;
+            }
+        }
+        if (begin > 0) {
+            System.arraycopy(buffer, begin, buffer, 0, size - begin);
+            size -= begin;
+        }
+        scanned = size;
+        return events;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private static ServerSentEvent parseEvent(String block) {
+        String id = null;
+        String event = null;
+        StringBuilder data = null;
+        for (String line : block.split("\n")) {
+            if (line.isEmpty() || line.startsWith(":")) {
+                continue;
+            }
+            int index = line.indexOf(':');
+            String field = index < 0 ? line : line.substring(0, index);
+            String value = index < 0 ? "" : line.substring(index + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "id" -> id = value;
+                case "event" -> event = value;
+                case "data" -> {
+                    if (Objects.isNull(data)) {
+                        data = new StringBuilder(value);
+                    } else {
+                        data.append('\n').append(value);
+                    }
+                }
+                default -> {
+                    // 其他字段不需要处理
+                }
+            }
+        }
+        if (Objects.isNull(data)) {
+            return null;
+        }
+        return new ServerSentEvent(id, Objects.isNull(event) ? "message" : event, data.toString());
+    }
+
+    record ServerSentEvent(String id, String event, String data) {
+    }
+
+}
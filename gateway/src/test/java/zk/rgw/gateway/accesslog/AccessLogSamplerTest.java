@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import zk.rgw.common.definition.AccessLogConf;
+
+class AccessLogSamplerTest {
+
+    @Test
+    void testSampleByRequestId() {
+        AccessLogConf conf = new AccessLogConf();
+        conf.setSampleRate(0.1D);
+        conf.setSampleByRequestId(true);
+
+        int sampled = 0;
+        for (int i = 0; i < 100_000; ++i) {
+            String requestId = "a1b2c3d4-" + i;
+            boolean result = AccessLogSampler.sampleHead(conf, requestId, 0);
+            // 同一个requestId的结果始终相同
+            Assertions.assertEquals(result, AccessLogSampler.sampleHead(conf, requestId, 0));
+            if (result) {
+                ++sampled;
+            }
+        }
+        Assertions.assertEquals(10_000, sampled, 1_000);
+    }
+
+    @Test
+    void testAdaptiveScale() {
+        Assertions.assertEquals(1.0D, AccessLogSampler.adaptiveScale(0.3D));
+        Assertions.assertEquals(0.5D, AccessLogSampler.adaptiveScale(0.75D), 1e-9);
+        Assertions.assertEquals(0.01D, AccessLogSampler.adaptiveScale(1.0D));
+
+        AccessLogConf conf = new AccessLogConf();
+        Assertions.assertTrue(AccessLogSampler.sampleHead(conf, "id", 1.0D));
+        conf.setAdaptiveSampling(true);
+        conf.setSampleByRequestId(true);
+        int sampled = 0;
+        for (int i = 0; i < 10_000; ++i) {
+            if (AccessLogSampler.sampleHead(conf, "id-" + i, 0.75D)) {
+                ++sampled;
+            }
+        }
+        Assertions.assertEquals(5_000, sampled, 500);
+    }
+
+    @Test
+    void testSampleWeight() {
+        Assertions.assertEquals(1, AccessLogSampler.sampleWeight(1.0D));
+        Assertions.assertEquals(10, AccessLogSampler.sampleWeight(0.1D));
+
+        // 1/0.3的小数部分按概率向上取整，权重的均值等于1/0.3
+        long total = 0;
+        for (int i = 0; i < 100_000; ++i) {
+            int weight = AccessLogSampler.sampleWeight(0.3D);
+            Assertions.assertTrue(weight == 3 || weight == 4);
+            total += weight;
+        }
+        Assertions.assertEquals(100_000 / 0.3D, total, 2_000);
+    }
+
+    @Test
+    void testForceTail() {
+        AccessLogConf conf = new AccessLogConf();
+        conf.setSampleRate(0);
+        Assertions.assertFalse(AccessLogSampler.sampleHead(conf, "id", 0));
+        Assertions.assertTrue(AccessLogSampler.mayForceTail(conf));
+        Assertions.assertTrue(AccessLogSampler.forceTail(conf, 502, 1));
+        Assertions.assertFalse(AccessLogSampler.forceTail(conf, 200, 10_000));
+
+        conf.setAlwaysLogSlowerThanMillis(500);
+        Assertions.assertTrue(AccessLogSampler.forceTail(conf, 200, 500));
+        Assertions.assertFalse(AccessLogSampler.forceTail(conf, 200, 499));
+
+        conf.setAlwaysLogErrors(false);
+        conf.setAlwaysLogSlowerThanMillis(0);
+        Assertions.assertFalse(AccessLogSampler.mayForceTail(conf));
+    }
+
+}
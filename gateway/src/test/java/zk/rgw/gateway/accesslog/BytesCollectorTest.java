@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BytesCollectorTest {
+
+    @Test
+    void testCollectAndRelease() {
+        ByteBuf first = Unpooled.copiedBuffer("中文", StandardCharsets.UTF_8);
+        ByteBuf second = Unpooled.copiedBuffer(" body", StandardCharsets.UTF_8);
+        BytesCollector bytesCollector = new BytesCollector(1024);
+        bytesCollector.append(first);
+        bytesCollector.append(second);
+        // 收集时只retain，不改变读取位置
+        Assertions.assertEquals(2, first.refCnt());
+        Assertions.assertEquals(0, first.readerIndex());
+
+        byte[] bytes = bytesCollector.drain();
+        Assertions.assertEquals("中文 body", new String(bytes, StandardCharsets.UTF_8));
+        Assertions.assertTrue(bytesCollector.isUtf8());
+        Assertions.assertEquals(bytes.length, bytesCollector.getSize());
+        Assertions.assertEquals(1, first.refCnt());
+        Assertions.assertEquals(1, second.refCnt());
+        Assertions.assertEquals(0, bytesCollector.drain().length);
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void testExceedLimit() {
+        ByteBuf first = Unpooled.wrappedBuffer(new byte[] { 1, 2, 3 });
+        ByteBuf second = Unpooled.wrappedBuffer(new byte[] { 4, 5, 6 });
+        BytesCollector bytesCollector = new BytesCollector(4);
+        bytesCollector.append(first);
+        Assertions.assertEquals(2, first.refCnt());
+        bytesCollector.append(second);
+        // 超过限制时立即释放已收集的分片
+        Assertions.assertEquals(1, first.refCnt());
+        Assertions.assertEquals(1, second.refCnt());
+        Assertions.assertEquals(0, bytesCollector.drain().length);
+        Assertions.assertEquals(6, bytesCollector.getSize());
+
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void testInvalidUtf8() {
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(new byte[] { (byte) 0xC3, (byte) 0x28 });
+        BytesCollector bytesCollector = new BytesCollector(1024);
+        bytesCollector.append(byteBuf);
+        Assertions.assertArrayEquals(new byte[] { (byte) 0xC3, (byte) 0x28 }, bytesCollector.drain());
+        Assertions.assertFalse(bytesCollector.isUtf8());
+        byteBuf.release();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+
+    @Test
+    void testOfferAndPoll() {
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(3);
+        Assertions.assertEquals(4, ringBuffer.capacity());
+        Assertions.assertNull(ringBuffer.poll());
+
+        for (int i = 0; i < 4; ++i) {
+            Assertions.assertTrue(ringBuffer.offer(i));
+        }
+        Assertions.assertFalse(ringBuffer.offer(4));
+        Assertions.assertEquals(4, ringBuffer.size());
+
+        Assertions.assertEquals(0, ringBuffer.poll());
+        Assertions.assertTrue(ringBuffer.offer(4));
+
+        List<Integer> drained = new ArrayList<>();
+        Assertions.assertEquals(3, ringBuffer.drainTo(drained, 3));
+        Assertions.assertEquals(List.of(1, 2, 3), drained);
+        Assertions.assertEquals(4, ringBuffer.highWaterMark());
+        Assertions.assertEquals(4, ringBuffer.poll());
+        Assertions.assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    void testConcurrentProducers() throws InterruptedException {
+        int producers = 8;
+        int perProducer = 100_000;
+        MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(1024);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; ++p) {
+            int base = p * perProducer;
+            executorService.execute(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; ++i) {
+                    while (!ringBuffer.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+
+        startLatch.countDown();
+        Set<Integer> received = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        while (received.size() < producers * perProducer) {
+            batch.clear();
+            ringBuffer.drainTo(batch, 256);
+            for (Integer value : batch) {
+                Assertions.assertTrue(received.add(value));
+                // 同一个写入方写入的元素保持顺序
+                int producer = value / perProducer;
+                Assertions.assertTrue(value > lastOfProducer[producer]);
+                lastOfProducer[producer] = value;
+            }
+        }
+
+        executorService.shutdown();
+        Assertions.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(ringBuffer.isEmpty());
+        Assertions.assertTrue(ringBuffer.highWaterMark() <= ringBuffer.capacity());
+    }
+
+}
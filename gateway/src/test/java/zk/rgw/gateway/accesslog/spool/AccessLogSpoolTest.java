@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.accesslog.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccessLogSpoolTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplayInOrder() throws IOException {
+        AccessLogSpool spool = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 8L);
+        for (int i = 0; i < 100; ++i) {
+            Assertions.assertTrue(spool.append(record(i)));
+        }
+
+        List<String> received = new ArrayList<>();
+        SpoolReplayer replayer = new SpoolReplayer(spool, records -> {
+            records.forEach(bytes -> received.add(new String(bytes, StandardCharsets.UTF_8)));
+            return true;
+        }, 10);
+        // 3个segment，每个segment回放一批，再确认没有剩余记录
+        Assertions.assertEquals(6, replayAll(replayer));
+
+        Assertions.assertEquals(100, received.size());
+        for (int i = 0; i < 100; ++i) {
+            Assertions.assertEquals(name(i), received.get(i));
+        }
+        Assertions.assertEquals(100, spool.getMetrics().getReplayed());
+        Assertions.assertEquals(0, spool.getMetrics().getSegments());
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testRetryAfterSinkFailure() {
+        AccessLogSpool spool = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 8L);
+        spool.append(record(0));
+        spool.append(record(1));
+
+        List<String> received = new ArrayList<>();
+        boolean[] available = { false };
+        SpoolReplayer replayer = new SpoolReplayer(spool, records -> {
+            if (!available[0]) {
+                return false;
+            }
+            records.forEach(bytes -> received.add(new String(bytes, StandardCharsets.UTF_8)));
+            return true;
+        }, 10);
+
+        Assertions.assertFalse(replayer.replayOnce());
+        Assertions.assertTrue(received.isEmpty());
+
+        available[0] = true;
+        Assertions.assertEquals(2, replayAll(replayer));
+        Assertions.assertEquals(List.of(name(0), name(1)), received);
+    }
+
+    @Test
+    void testRecoverAndIgnoreTornRecord() throws IOException {
+        AccessLogSpool spool = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 8L);
+        spool.append(record(0));
+        spool.append(record(1));
+        spool.close();
+
+        // 模拟写入第三条记录时进程退出：长度已写入，数据不完整
+        try (FileChannel channel = FileChannel.open(directory.resolve(SpoolSegment.fileName(0)), StandardOpenOption.WRITE)) {
+            int position = 4 + 2 * (8 + record(0).length);
+            channel.write(ByteBuffer.allocate(4).putInt(0, 12), position);
+        }
+
+        AccessLogSpool recovered = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 8L);
+        List<byte[]> chunk = new ArrayList<>();
+        SpoolSegment segment = recovered.nextReplayable();
+        Assertions.assertNotNull(segment);
+        Assertions.assertEquals(2, segment.getRecordCount());
+        segment.readReplayChunk(chunk, 10);
+        Assertions.assertEquals(2, chunk.size());
+
+        // 新的segment不会覆盖恢复的segment
+        Assertions.assertTrue(recovered.append(record(2)));
+        Assertions.assertEquals(2, recovered.getMetrics().getSegments());
+    }
+
+    @Test
+    void testEvictOldest() {
+        AccessLogSpool spool = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 2L);
+        int recordBytes = 8 + record(0).length;
+        int perSegment = (SEGMENT_BYTES - 4) / recordBytes;
+        for (int i = 0; i < perSegment * 3; ++i) {
+            Assertions.assertTrue(spool.append(record(i)));
+        }
+
+        SpoolMetrics metrics = spool.getMetrics();
+        Assertions.assertEquals(2, metrics.getSegments());
+        Assertions.assertEquals(perSegment, metrics.getEvicted());
+
+        List<byte[]> chunk = new ArrayList<>();
+        spool.nextReplayable().readReplayChunk(chunk, 1);
+        Assertions.assertEquals(name(perSegment), new String(chunk.get(0), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRejectTooLarge() {
+        AccessLogSpool spool = new AccessLogSpool(directory, SEGMENT_BYTES, SEGMENT_BYTES * 2L);
+        Assertions.assertFalse(spool.append(new byte[SEGMENT_BYTES]));
+        Assertions.assertEquals(1, spool.getMetrics().getRejected());
+    }
+
+    /**
+     * 回放直到没有进展，返回有进展的回放次数
+     */
+    private static int replayAll(SpoolReplayer replayer) {
+        int rounds = 0;
+        while (replayer.replayOnce()) {
+            ++rounds;
+        }
+        return rounds;
+    }
+
+    private static String name(int index) {
+        return String.format("access-log-%04d", index);
+    }
+
+    private static byte[] record(int index) {
+        return name(index).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package zk.rgw.gateway.route;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import zk.rgw.common.definition.IdRouteDefinition;
+
+class JsonArrayStreamDecoderTest {
+
+    @Test
+    void testDecodeByteByByte() throws IOException {
+        String json = "[{\"id\":\"a\",\"orgId\":\"o\",\"seqNum\":1,\"routeDefinition\":null},"
+                + "{\"id\":\"b\",\"orgId\":\"组织\",\"seqNum\":2,\"routeDefinition\":null}]";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        JsonArrayStreamDecoder<IdRouteDefinition> decoder = new JsonArrayStreamDecoder<>(IdRouteDefinition.class);
+        List<IdRouteDefinition> decoded = new ArrayList<>();
+        for (int i = 0; i < bytes.length; ++i) {
+            decoded.addAll(decoder.feed(Arrays.copyOfRange(bytes, i, i + 1)));
+            if (i < bytes.length - 1) {
+                Assertions.assertFalse(decoder.isFinished());
+            }
+        }
+
+        Assertions.assertTrue(decoder.isFinished());
+        Assertions.assertEquals(2, decoded.size());
+        Assertions.assertEquals("a", decoded.get(0).getId());
+        Assertions.assertEquals(2L, decoded.get(1).getSeqNum());
+        Assertions.assertEquals("组织", decoded.get(1).getOrgId());
+    }
+
+    @Test
+    void testElementsAvailableBeforeArrayEnds() throws IOException {
+        JsonArrayStreamDecoder<IdRouteDefinition> decoder = new JsonArrayStreamDecoder<>(IdRouteDefinition.class);
+        List<IdRouteDefinition> decoded = decoder.feed("[{\"id\":\"a\",\"seqNum\":1},{\"id\":".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(1, decoded.size());
+        Assertions.assertFalse(decoder.isFinished());
+    }
+
+    @Test
+    void testRejectNotArray() throws IOException {
+        JsonArrayStreamDecoder<IdRouteDefinition> decoder = new JsonArrayStreamDecoder<>(IdRouteDefinition.class);
+        byte[] bytes = "{\"code\":500}".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThrows(JsonParseException.class, () -> decoder.feed(bytes));
+    }
+
+}
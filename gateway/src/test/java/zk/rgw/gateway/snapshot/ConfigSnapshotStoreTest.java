@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.gateway.snapshot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import zk.rgw.common.definition.AppDefinition;
+import zk.rgw.common.definition.IdRouteDefinition;
+
+class ConfigSnapshotStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        ConfigSnapshotStore store = new ConfigSnapshotStore(directory.resolve("data/config-snapshot.json.gz"));
+
+        ConfigSnapshot snapshot = new ConfigSnapshot();
+        snapshot.setEnvironmentId("dev");
+        snapshot.setApiOpSeq(42L);
+        snapshot.setAppOpSeq(7L);
+        IdRouteDefinition idRouteDefinition = new IdRouteDefinition();
+        idRouteDefinition.setId("route-1");
+        idRouteDefinition.setOrgId("组织1");
+        idRouteDefinition.setSeqNum(42L);
+        snapshot.getRouteDefinitions().add(idRouteDefinition);
+        snapshot.getSubscriptions().put("route-1", Map.of("key-1", new AppDefinition("app-1", "key-1", "secret-1")));
+        snapshot.getEnvironments().put("org-1", Map.of("HOST", "127.0.0.1"));
+        snapshot.getOrgEnvOpSeqMap().put("org-1", 3L);
+        store.save(snapshot);
+        // 再次保存会原子替换已有的文件
+        snapshot.setApiOpSeq(43L);
+        store.save(snapshot);
+
+        ConfigSnapshot loaded = store.load();
+        Assertions.assertNotNull(loaded);
+        Assertions.assertEquals("dev", loaded.getEnvironmentId());
+        Assertions.assertEquals(43L, loaded.getApiOpSeq());
+        Assertions.assertEquals(7L, loaded.getAppOpSeq());
+        Assertions.assertEquals(1, loaded.getRouteDefinitions().size());
+        Assertions.assertEquals("组织1", loaded.getRouteDefinitions().get(0).getOrgId());
+        Assertions.assertEquals("secret-1", loaded.getSubscriptions().get("route-1").get("key-1").getSecret());
+        Assertions.assertEquals("127.0.0.1", loaded.getEnvironments().get("org-1").get("HOST"));
+        Assertions.assertEquals(3L, (long) loaded.getOrgEnvOpSeqMap().get("org-1"));
+
+        if (store.getFile().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Assertions.assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(store.getFile())));
+        }
+    }
+
+    @Test
+    void testLoadMissingOrCorrupted() throws IOException {
+        Path file = directory.resolve("config-snapshot.json.gz");
+        ConfigSnapshotStore store = new ConfigSnapshotStore(file);
+        Assertions.assertNull(store.load());
+
+        Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertNull(store.load());
+    }
+
+}
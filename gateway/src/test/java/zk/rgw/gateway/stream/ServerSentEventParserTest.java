@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package zk.rgw.gateway.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ServerSentEventParserTest {
+
+    @Test
+    void testParseEventsAcrossChunks() {
+        ServerSentEventParser parser = new ServerSentEventParser();
+        byte[] bytes = "id: a:1\nevent: notification\ndata: {\"name\":\"环境\"}\n\n:ping\n\nid: a:2\nevent: resync\ndata: {}\n\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        // 在多字节字符中间切开
+        int split = "id: a:1\nevent: notification\ndata: {\"name\":\"".getBytes(StandardCharsets.UTF_8).length + 1;
+        Assertions.assertTrue(parser.feed(Arrays.copyOfRange(bytes, 0, split)).isEmpty());
+        List<ServerSentEventParser.ServerSentEvent> events = parser.feed(Arrays.copyOfRange(bytes, split, bytes.length));
+
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals(new ServerSentEventParser.ServerSentEvent("a:1", "notification", "{\"name\":\"环境\"}"), events.get(0));
+        Assertions.assertEquals(new ServerSentEventParser.ServerSentEvent("a:2", "resync", "{}"), events.get(1));
+    }
+
+    @Test
+    void testMultiLineDataAndDefaultEvent() {
+        ServerSentEventParser parser = new ServerSentEventParser();
+        List<ServerSentEventParser.ServerSentEvent> events = parser.feed("data: line1\ndata: line2\n\ndata: tail".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(1, events.size());
+        Assertions.assertEquals(new ServerSentEventParser.ServerSentEvent(null, "message", "line1\nline2"), events.get(0));
+        Assertions.assertEquals(1, parser.feed("\n\n".getBytes(StandardCharsets.UTF_8)).size());
+    }
+
+    @Test
+    void testFeedByteByByte() {
+        ServerSentEventParser parser = new ServerSentEventParser();
+        byte[] bytes = "data: 1\n\ndata: 2\n\n".getBytes(StandardCharsets.UTF_8);
+        List<ServerSentEventParser.ServerSentEvent> events = new ArrayList<>();
+        for (byte b : bytes) {
+            // 两个换行符被拆到不同的数据块时，从上次查找的位置继续也能找到事件的结束位置
+            events.addAll(parser.feed(new byte[] { b }));
+        }
+        Assertions.assertEquals(
+                List.of(
+                        new ServerSentEventParser.ServerSentEvent(null, "message", "1"),
+                        new ServerSentEventParser.ServerSentEvent(null, "message", "2")
+                ), events
+        );
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import zk.rgw.plugin.api.filter.Filter;
+import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.api.filter.SyncFilter;
+
+/**
+ * 对比DeferFilterChain和预编译的FilterChainImpl执行一条完整链的开销，链中一半是普通Filter，一半是SyncFilter。
+ * 建议配合-prof gc查看每次调用的分配量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterChainBenchmark {
+
+    @Param({ "4", "12", "24" })
+    private int depth;
+
+    private List<Filter> filters;
+
+    private FilterChain compiledChain;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        filters = new ArrayList<>(depth);
+        for (int i = 0; i < depth; ++i) {
+            if (i % 2 == 0) {
+                filters.add((exchange, chain) -> chain.filter(exchange));
+            } else {
+                filters.add((SyncFilter) exchange -> null);
+            }
+        }
+        compiledChain = FilterChainImpl.compile(filters);
+    }
+
+    @Benchmark
+    public Void deferChain() {
+        return new DeferFilterChain(filters).filter(null).block();
+    }
+
+    @Benchmark
+    public Void compiledChain() {
+        return compiledChain.filter(null).block();
+    }
+
+}
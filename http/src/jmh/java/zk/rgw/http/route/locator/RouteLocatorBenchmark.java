@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route.locator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
+
+/**
+ * 对比PrefixWalkRouteLocator(按前缀逐级查找RouteGroup)和基于RouteTrie的ManageableRouteLocator的查找性能。
+ * 模拟的Route中一半是常量path，一半含有路径变量，查找的请求路径同时覆盖两种情况。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteLocatorBenchmark {
+
+    private static final int SERVICE_COUNT = 100;
+
+    @Param({ "1000", "10000", "100000" })
+    private int routeCount;
+
+    private PrefixWalkRouteLocator prefixWalkRouteLocator;
+
+    private ManageableRouteLocator manageableRouteLocator;
+
+    private String[] requestPaths;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        prefixWalkRouteLocator = new PrefixWalkRouteLocator();
+        manageableRouteLocator = new ManageableRouteLocator();
+        for (int i = 0; i < routeCount; ++i) {
+            Route route = new Route();
+            route.setId("route-" + i);
+            route.setPath(routePath(i));
+            prefixWalkRouteLocator.addRoute(route);
+            manageableRouteLocator.addRoute(route);
+        }
+        requestPaths = new String[1024];
+        for (int i = 0; i < requestPaths.length; ++i) {
+            int routeIndex = (int) ((i * 2654435761L) % routeCount);
+            requestPaths[i] = requestPath(routeIndex);
+        }
+    }
+
+    private static String routePath(int index) {
+        String prefix = "/api/svc" + (index % SERVICE_COUNT) + "/v1/resource" + index;
+        return index % 2 == 0 ? prefix : prefix + "/{id}/detail";
+    }
+
+    private static String requestPath(int index) {
+        String prefix = "/api/svc" + (index % SERVICE_COUNT) + "/v1/resource" + index;
+        return index % 2 == 0 ? prefix : prefix + "/" + index + "/detail";
+    }
+
+    private String nextPath() {
+        cursor = (cursor + 1) & (requestPaths.length - 1);
+        return requestPaths[cursor];
+    }
+
+    @Benchmark
+    public Route prefixWalkGetRoutes() {
+        return prefixWalkRouteLocator.getRoutes(nextPath()).blockFirst();
+    }
+
+    @Benchmark
+    public Route routeTrieGetRoutes() {
+        return manageableRouteLocator.getRoutes(nextPath()).blockFirst();
+    }
+
+    @Benchmark
+    public RouteMatch routeTrieLookup() {
+        return manageableRouteLocator.lookup(nextPath(), route -> true);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route.locator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
+
+/**
+ * 对比HttpHandler通过getRoutes组装Flux查找Route和通过lookup同步查找Route的开销，
+ * 路由表的结构与网关相同：一个没有Route的内部RouteLocator加上一个ManageableRouteLocator，由CompositeRouteLocator组合。
+ * 建议配合-prof gc查看每次查找的分配量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteLookupBenchmark {
+
+    private static final int ROUTE_COUNT = 10000;
+
+    private static final Predicate<Route> ANY = route -> true;
+
+    /**
+     * constant：请求路径对应的Route不含路径变量；variable：含有路径变量
+     */
+    @Param({ "constant", "variable" })
+    private String pathType;
+
+    private RouteLocator routeLocator;
+
+    private String[] requestPaths;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ManageableRouteLocator manageableRouteLocator = new ManageableRouteLocator();
+        for (int i = 0; i < ROUTE_COUNT; ++i) {
+            Route route = new Route();
+            route.setId("route-" + i);
+            route.setPath(i % 2 == 0 ? "/api/resource" + i : "/api/resource" + i + "/{id}/detail");
+            manageableRouteLocator.addRoute(route);
+        }
+        routeLocator = new CompositeRouteLocator(new ManageableRouteLocator(), manageableRouteLocator);
+
+        requestPaths = new String[1024];
+        int offset = "constant".equals(pathType) ? 0 : 1;
+        for (int i = 0; i < requestPaths.length; ++i) {
+            int index = (int) ((i * 2654435761L) % (ROUTE_COUNT / 2)) * 2 + offset;
+            requestPaths[i] = offset == 0 ? "/api/resource" + index : "/api/resource" + index + "/" + i + "/detail";
+        }
+    }
+
+    private String nextPath() {
+        cursor = (cursor + 1) & (requestPaths.length - 1);
+        return requestPaths[cursor];
+    }
+
+    /**
+     * 与HttpHandler在RouteLocator不支持同步查找时的查找方式相同
+     */
+    @Benchmark
+    public void getRoutes(Blackhole blackhole) {
+        routeLocator.getRoutes(nextPath()).filter(ANY).next().subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        RouteMatch routeMatch = routeLocator.lookup(nextPath(), ANY);
+        blackhole.consume(routeMatch.getRoute());
+        blackhole.consume(routeMatch.getPathVariables());
+    }
+
+}
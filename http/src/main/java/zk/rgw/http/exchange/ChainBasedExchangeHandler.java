@@ -25,12 +25,15 @@ import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.filter.FilterChain;
 
+/**
+ * FilterChain在构造时预先编译好且不可变，可以被同一个Route的所有请求共享
+ */
 public class ChainBasedExchangeHandler implements ExchangeHandler {
 
     private final FilterChain filterChain;
 
     public ChainBasedExchangeHandler(List<Filter> filters) {
-        this.filterChain = new FilterChainImpl(filters);
+        this.filterChain = FilterChainImpl.compile(filters);
     }
 
     @Override
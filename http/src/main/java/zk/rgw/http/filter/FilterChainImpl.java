@@ -17,35 +17,100 @@
 package zk.rgw.http.filter;
 
 import java.util.List;
+import java.util.Objects;
 
+import reactor.core.CoreSubscriber;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
 
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.api.filter.SyncFilter;
 
-public class FilterChainImpl implements FilterChain {
+/**
+ * 不可变的FilterChain，每个Route在构建时预先编译好，由位于各个下标的节点串成一个单链表，可以被所有请求共享。
+ * 每个请求只需为每次异步跳转创建一个轻量的{@link FilterInvocation}，其状态只有当前节点和Exchange，因此重复订阅是安全的。
+ */
+public final class FilterChainImpl implements FilterChain {
+
+    private static final FilterChainImpl TAIL = new FilterChainImpl(null, null);
+
+    /**
+     * 为null表示已经到达链尾
+     */
+    private final Filter filter;
+
+    private final SyncFilter syncFilter;
 
-    private int index;
+    private final FilterChainImpl next;
 
-    private final List<Filter> filters;
+    private FilterChainImpl(Filter filter, FilterChainImpl next) {
+        this.filter = filter;
+        this.syncFilter = filter instanceof SyncFilter sf ? sf : null;
+        this.next = next;
+    }
 
-    public FilterChainImpl(List<Filter> filters) {
-        this.filters = filters;
-        this.index = 0;
+    public static FilterChainImpl compile(List<Filter> filters) {
+        FilterChainImpl chain = TAIL;
+        if (Objects.isNull(filters)) {
+            return chain;
+        }
+        for (int i = filters.size() - 1; i >= 0; i--) {
+            chain = new FilterChainImpl(Objects.requireNonNull(filters.get(i)), chain);
+        }
+        return chain;
     }
 
+    /**
+     * 与Mono.defer一样，订阅时才真正执行Filter，保证上一个Filter的异步逻辑完成后才会执行下一个Filter
+     */
     @Override
     public Mono<Void> filter(Exchange exchange) {
-        return Mono.defer(() -> {
-            if (this.index < filters.size()) {
-                Filter filter = filters.get(this.index);
-                this.index++;
-                return filter.filter(exchange, this);
-            } else {
-                return Mono.empty();
+        return Objects.isNull(filter) ? Mono.empty() : new FilterInvocation(this, exchange);
+    }
+
+    Mono<Void> invoke(Exchange exchange) {
+        FilterChainImpl current = this;
+        while (Objects.nonNull(current.filter)) {
+            if (Objects.isNull(current.syncFilter)) {
+                return current.filter.filter(exchange, current.next);
+            }
+            Mono<Void> result = current.syncFilter.filterSync(exchange);
+            if (Objects.nonNull(result)) {
+                return result;
             }
-        });
+            current = current.next;
+        }
+        return Mono.empty();
+    }
+
+    private static final class FilterInvocation extends Mono<Void> {
+
+        private final FilterChainImpl chain;
+
+        private final Exchange exchange;
+
+        private FilterInvocation(FilterChainImpl chain, Exchange exchange) {
+            this.chain = chain;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super Void> actual) {
+            Mono<Void> result;
+            try {
+                result = Objects.requireNonNull(chain.invoke(exchange), "Filter returned a null Mono");
+            } catch (Throwable throwable) {
+                // 虚拟机错误不转换为错误信号，与插件实例化时的处理一致
+                Exceptions.throwIfFatal(throwable);
+                Operators.error(actual, Operators.onOperatorError(throwable, actual.currentContext()));
+                return;
+            }
+            result.subscribe(actual);
+        }
+
     }
 
 }
@@ -17,15 +17,19 @@
 package zk.rgw.http.route;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import io.netty.handler.codec.http.HttpMethod;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import zk.rgw.common.definition.AccessLogConf;
 import zk.rgw.common.definition.AppAuthConf;
 import zk.rgw.http.constant.Constants;
+import zk.rgw.http.exchange.ChainBasedExchangeHandler;
+import zk.rgw.http.exchange.ExchangeHandler;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.predicate.RoutePredicate;
 
@@ -49,4 +53,20 @@ public class Route {
 
     private AppAuthConf appAuthConf;
 
+    /**
+     * 根据filters预先构建好的请求处理器，每个请求直接复用，不再重复创建
+     */
+    @Setter(AccessLevel.NONE)
+    private ExchangeHandler exchangeHandler;
+
+    /**
+     * 不含路径变量时的匹配结果，所有请求共用同一个实例
+     */
+    private final RouteMatch constantMatch = new RouteMatch(this, Map.of());
+
+    public void setFilters(List<Filter> filters) {
+        this.filters = filters;
+        this.exchangeHandler = new ChainBasedExchangeHandler(filters);
+    }
+
 }
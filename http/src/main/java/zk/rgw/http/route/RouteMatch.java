@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route;
+
+import java.util.Map;
+
+import lombok.Getter;
+
+@Getter
+public class RouteMatch {
+
+    private final Route route;
+
+    /**
+     * 从请求路径中提取出的路径变量，比如Route的path是/users/{id}，请求路径是/users/123，则为{id=123}
+     */
+    private final Map<String, String> pathVariables;
+
+    public RouteMatch(Route route, Map<String, String> pathVariables) {
+        this.route = route;
+        this.pathVariables = pathVariables;
+    }
+
+}
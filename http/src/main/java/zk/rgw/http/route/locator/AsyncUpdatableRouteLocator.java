@@ -48,6 +48,16 @@ public abstract class AsyncUpdatableRouteLocator extends UpdatableRouteLocator {
         updated.set(true);
     }
 
+    /**
+     * 不等待下一个周期，立即在更新线程上执行一次更新，用于收到推送的变更时
+     */
+    protected void updateImmediately() {
+        updated.set(true);
+        if (!scheduledExecutorService.isShutdown()) {
+            scheduledExecutorService.execute(this::doUpdate);
+        }
+    }
+
     @Override
     public void start() {
         if (scheduledExecutorService.isShutdown() || scheduledExecutorService.isTerminated()) {
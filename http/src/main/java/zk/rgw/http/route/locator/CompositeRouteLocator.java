@@ -16,20 +16,39 @@
 
 package zk.rgw.http.route.locator;
 
+import java.util.Objects;
+import java.util.function.Predicate;
+
 import reactor.core.publisher.Flux;
 
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
 
 public class CompositeRouteLocator implements RouteLocator {
 
     private final Flux<RouteLocator> delegates;
 
+    /**
+     * 通过数组构造时才有值，用于同步查找
+     */
+    private final RouteLocator[] routeLocators;
+
+    private final boolean supportSyncLookup;
+
     public CompositeRouteLocator(Flux<RouteLocator> delegates) {
         this.delegates = delegates;
+        this.routeLocators = null;
+        this.supportSyncLookup = false;
     }
 
     public CompositeRouteLocator(RouteLocator... routeLocators) {
-        this(Flux.fromArray(routeLocators));
+        this.delegates = Flux.fromArray(routeLocators);
+        this.routeLocators = routeLocators.clone();
+        boolean allSupportSyncLookup = true;
+        for (RouteLocator routeLocator : routeLocators) {
+            allSupportSyncLookup &= routeLocator.supportSyncLookup();
+        }
+        this.supportSyncLookup = allSupportSyncLookup;
     }
 
     @Override
@@ -37,4 +56,24 @@ public class CompositeRouteLocator implements RouteLocator {
         return this.delegates.flatMapSequential(routeLocator -> routeLocator.getRoutes(path));
     }
 
+    @Override
+    public boolean supportSyncLookup() {
+        return supportSyncLookup;
+    }
+
+    @Override
+    public RouteMatch lookup(String path, Predicate<Route> predicate) {
+        if (!supportSyncLookup) {
+            // 有的RouteLocator只能通过getRoutes查找，按顺序合并所有的结果
+            return RouteLocator.super.lookup(path, predicate);
+        }
+        for (RouteLocator routeLocator : routeLocators) {
+            RouteMatch routeMatch = routeLocator.lookup(path, predicate);
+            if (Objects.nonNull(routeMatch)) {
+                return routeMatch;
+            }
+        }
+        return null;
+    }
+
 }
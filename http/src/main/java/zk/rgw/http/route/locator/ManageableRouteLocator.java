@@ -18,155 +18,102 @@ package zk.rgw.http.route.locator;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import reactor.core.publisher.Flux;
 
-import zk.rgw.http.path.AntPathMatcher;
-import zk.rgw.http.path.PathMatcher;
 import zk.rgw.http.path.PathUtil;
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteEvent;
+import zk.rgw.http.route.RouteMatch;
 
 public class ManageableRouteLocator implements RouteLocator {
 
-    private final Map<String, Route> allRoutes = new ConcurrentHashMap<>(8);
-
     /**
-     * Route配置的path都是常量，没有pattern，key就是normalize后的path
+     * 按id索引的所有Route，只在持有锁的写操作中访问，读请求从不接触它
      */
-    private final Map<String, RouteGroup> constantPathRoutes = new ConcurrentHashMap<>(8);
+    private final Map<String, Route> allRoutes = new HashMap<>(8);
 
     /**
-     * Route配置的path都不是常量，含有pattern，key是最长的常量前缀
-     * 比如一个Route的path是/foo/bar/{name}/info,那么它应该在key为/foo/bar的group中
+     * 所有Route组成的前缀树，也是读请求唯一访问的状态。
+     * 每批变更都会生成一棵新树再通过这一个volatile引用整体发布，读请求无需加锁，也不会看到只应用了一半的变更
      */
-    private final Map<String, RouteGroup> patternPathRoutes = new ConcurrentHashMap<>(8);
-
-    private final PathMatcher pathMatcher = AntPathMatcher.getDefaultInstance();
+    private volatile RouteTrie routeTrie = RouteTrie.EMPTY;
 
     @Override
     public Flux<Route> getRoutes(String path) {
-        String normalizePath = PathUtil.normalize(path);
-        RouteGroup routeGroup = constantPathRoutes.get(normalizePath);
-        List<RouteGroup> groups = findInPatternPathRoutes(normalizePath);
-        if (Objects.nonNull(routeGroup)) {
-            groups.add(0, routeGroup);
-        }
-        if (groups.isEmpty()) {
+        List<Route> routes = routeTrie.matchAll(PathUtil.normalize(path));
+        if (routes.isEmpty()) {
             return Flux.empty();
-        } else if (groups.size() == 1) {
-            return groups.get(0).getRoutes();
+        } else if (routes.size() == 1) {
+            return Flux.just(routes.get(0));
         }
-        List<Flux<Route>> list = new ArrayList<>(groups.size());
-        for (RouteGroup rg : groups) {
-            list.add(rg.getRoutes());
-        }
-        return Flux.concat(list);
+        return Flux.fromIterable(routes);
     }
 
-    private List<RouteGroup> findInPatternPathRoutes(String normalizePath) {
-        String prefix = PathUtil.removeLast(normalizePath);
-        List<RouteGroup> groups = new LinkedList<>();
-        while (!prefix.isEmpty()) {
-            RouteGroup routeGroup = patternPathRoutes.get(prefix);
-            if (Objects.nonNull(routeGroup)) {
-                groups.add(routeGroup);
-            }
-            prefix = PathUtil.removeLast(prefix);
-        }
-        return groups;
+    @Override
+    public boolean supportSyncLookup() {
+        return true;
     }
 
-    protected synchronized void addRoute(Route route) {
-        if (allRoutes.containsKey(route.getId())) {
-            // 是一个已经存在的api的更新动作，其path可能已经改变，要先根据id删除之
-            removeRouteById(route.getId());
-        }
-        this.allRoutes.put(route.getId(), route);
-        String normalizePath = PathUtil.normalize(route.getPath());
-
-        RouteGroup targetGroup;
-
-        if (pathMatcher.isPattern(normalizePath)) {
-            String prefix = PathUtil.constantPrefix(normalizePath);
-            targetGroup = patternPathRoutes.get(prefix);
-            if (Objects.isNull(targetGroup)) {
-                targetGroup = new RouteGroup();
-                patternPathRoutes.put(prefix, targetGroup);
-            }
-        } else {
-            targetGroup = constantPathRoutes.get(normalizePath);
-            if (Objects.isNull(targetGroup)) {
-                targetGroup = new RouteGroup();
-                constantPathRoutes.put(normalizePath, targetGroup);
-            }
-        }
-        targetGroup.addRoute(route);
+    /**
+     * 一次遍历前缀树，返回第一个匹配请求路径且满足predicate的Route及其路径变量
+     *
+     * @return 没有匹配的Route时返回null
+     */
+    @Override
+    public RouteMatch lookup(String path, Predicate<Route> predicate) {
+        return routeTrie.match(PathUtil.normalize(path), predicate);
     }
 
-    protected synchronized Route removeRouteById(String routeId) {
-        if (!allRoutes.containsKey(routeId)) {
-            return null;
-        }
-        Route removedRoute = allRoutes.remove(routeId);
-        String normalizePath = PathUtil.normalize(removedRoute.getPath());
+    /**
+     * @return 被替换掉的同id的旧Route，没有时返回null
+     */
+    protected Route addRoute(Route route) {
+        List<Route> staleRoutes = applyRouteEvents(List.of(new RouteEvent(route.getId(), route, false)));
+        return staleRoutes.isEmpty() ? null : staleRoutes.get(0);
+    }
 
-        RouteGroup targetGroup;
+    protected Route removeRouteById(String routeId) {
+        List<Route> staleRoutes = applyRouteEvents(List.of(new RouteEvent(routeId, null, true)));
+        return staleRoutes.isEmpty() ? null : staleRoutes.get(0);
+    }
 
-        if (pathMatcher.isPattern(normalizePath)) {
-            String prefix = PathUtil.constantPrefix(normalizePath);
-            targetGroup = patternPathRoutes.get(prefix);
-            if (Objects.nonNull(targetGroup)) {
-                targetGroup.removeRouteById(routeId);
-                if (targetGroup.isEmpty()) {
-                    patternPathRoutes.remove(prefix);
-                }
+    /**
+     * 整体应用一批变更，只替换一次前缀树，读请求要么看到这一批的全部变更，要么一个也看不到
+     *
+     * @return 被删除或被替换掉的旧Route
+     */
+    protected synchronized List<Route> applyRouteEvents(List<RouteEvent> routeEvents) {
+        List<Route> staleRoutes = new ArrayList<>(2);
+        RouteTrie.Builder builder = routeTrie.toBuilder();
+        for (RouteEvent routeEvent : routeEvents) {
+            if (Objects.isNull(routeEvent.getRouteId())) {
+                // 可以通过设置routeId为null来标识是一个无效事件
+                continue;
             }
-        } else {
-            targetGroup = constantPathRoutes.get(normalizePath);
-            if (Objects.nonNull(targetGroup)) {
-                targetGroup.removeRouteById(routeId);
-                if (targetGroup.isEmpty()) {
-                    constantPathRoutes.remove(normalizePath);
-                }
+            Route existed;
+            if (routeEvent.isDelete()) {
+                existed = allRoutes.remove(routeEvent.getRouteId());
+            } else {
+                existed = allRoutes.put(routeEvent.getRouteId(), routeEvent.getRoute());
             }
-        }
-        return removedRoute;
-    }
-
-    private static class RouteGroup {
-
-        volatile boolean changed = false;
-
-        final Map<String, Route> routes = new HashMap<>(4);
-
-        Flux<Route> flux = Flux.empty();
-
-        Flux<Route> getRoutes() {
-            if (changed) {
-                this.flux = Flux.fromIterable(routes.values());
-                changed = false;
+            if (Objects.nonNull(existed)) {
+                builder.remove(existed);
+                staleRoutes.add(existed);
+            }
+            if (!routeEvent.isDelete()) {
+                builder.add(routeEvent.getRoute());
             }
-            return flux;
-        }
-
-        void addRoute(Route route) {
-            routes.put(route.getId(), route);
-            changed = true;
-        }
-
-        void removeRouteById(String id) {
-            changed = Objects.nonNull(this.routes.remove(id));
         }
-
-        boolean isEmpty() {
-            return this.routes.isEmpty();
+        RouteTrie newRouteTrie = builder.build();
+        if (newRouteTrie != routeTrie) {
+            this.routeTrie = newRouteTrie;
         }
-
+        return staleRoutes;
     }
 
 }
@@ -16,15 +16,56 @@
 
 package zk.rgw.http.route.locator;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
 import zk.rgw.common.bootstrap.LifeCycle;
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
 
 public interface RouteLocator extends LifeCycle {
 
     Flux<Route> getRoutes(String path);
 
+    /**
+     * 是否支持同步查找，支持时HttpHandler会使用{@link #lookup(String, Predicate)}跳过Flux流水线直接分发请求
+     */
+    default boolean supportSyncLookup() {
+        return false;
+    }
+
+    /**
+     * 同步查找第一个匹配请求路径且满足predicate的Route。
+     * 默认实现订阅{@link #getRoutes(String)}并要求它在订阅时同步完成（路由都在内存中），不会阻塞调用线程，
+     * 得到的RouteMatch不含路径变量；getRoutes没有同步完成时抛出IllegalStateException
+     *
+     * @return 没有匹配的Route时返回null
+     */
+    default RouteMatch lookup(String path, Predicate<Route> predicate) {
+        AtomicReference<Route> found = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean completed = new AtomicBoolean(false);
+        Disposable disposable = getRoutes(path).filter(predicate).take(1).subscribe(
+                found::set,
+                failure::set,
+                () -> completed.set(true)
+        );
+        if (Objects.nonNull(failure.get())) {
+            throw new IllegalStateException("Failed to look up routes of " + path, failure.get());
+        }
+        if (!completed.get()) {
+            disposable.dispose();
+            throw new IllegalStateException(this.getClass().getName() + " does not complete getRoutes synchronously.");
+        }
+        Route route = found.get();
+        return Objects.isNull(route) ? null : route.getConstantMatch();
+    }
+
     @Override
     default void start() {
     }
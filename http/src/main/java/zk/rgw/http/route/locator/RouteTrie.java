@@ -0,0 +1,620 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route.locator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import zk.rgw.http.path.AntPathMatcher;
+import zk.rgw.http.path.PathUtil;
+import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
+
+/**
+ * 以路径段为单位组织的不可变前缀树，每条边是以下几种之一：
+ * <ul>
+ *     <li>常量段，比如 /foo 中的 foo</li>
+ *     <li>路径变量，比如 {name}</li>
+ *     <li>其他含有通配符的段，比如 {id}.json, foo*, ?oo，交给AntPathMatcher匹配</li>
+ *     <li>*，匹配任意一个段</li>
+ *     <li>**，匹配0个或多个段</li>
+ * </ul>
+ * 增删Route时只复制从根到目标节点这一条路径上的节点，其他节点在新旧两棵树之间共享(copy-on-write)，
+ * 因此已经发布出去的树可以被任意多个线程无锁地并发读。
+ * 一批变更通过{@link Builder}在可变的节点上完成，最后只冻结一次，同一个节点的常量段表在一批变更中只复制一次。
+ * <p>
+ * 查找时直接在请求路径上按下标扫描，常量段的匹配通过自定义的开放寻址表按区间计算hash，不会截取子串。
+ * 同一个请求路径能匹配多个Route时，每一层的优先级依次为：常量段 > 含通配符的段 > 路径变量 > * > **
+ */
+public final class RouteTrie {
+
+    public static final RouteTrie EMPTY = new RouteTrie(Node.EMPTY, 0);
+
+    private static final AntPathMatcher ANT_PATH_MATCHER = AntPathMatcher.getDefaultInstance();
+
+    private final Node root;
+
+    private final int size;
+
+    private RouteTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 返回一棵包含了route的新树，当前树不会被修改
+     */
+    public RouteTrie add(Route route) {
+        return toBuilder().add(route).build();
+    }
+
+    /**
+     * 返回一棵删除了route的新树，当前树不会被修改，route不存在时返回当前树
+     */
+    public RouteTrie remove(Route route) {
+        return toBuilder().remove(route).build();
+    }
+
+    /**
+     * 以当前树为基础批量增删Route，当前树不会被修改
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * 查找第一个匹配请求路径并且满足predicate的Route
+     *
+     * @param path 请求路径
+     * @param predicate 对候选Route的额外过滤条件，比如匹配请求方法
+     * @return 没有找到时返回null
+     */
+    public RouteMatch match(String path, Predicate<Route> predicate) {
+        if (isEmpty()) {
+            return null;
+        }
+        Route route = find(root, path, 0, predicate, null);
+        if (Objects.isNull(route)) {
+            return null;
+        }
+        if (route.getPath().indexOf('{') == -1) {
+            return route.getConstantMatch();
+        }
+        // 大多数Route不含路径变量，第一遍查找不收集变量以避免分配，确实有变量时才沿同样的路径再走一遍
+        Map<String, String> variables = new HashMap<>(4);
+        find(root, path, 0, candidate -> candidate == route, variables);
+        return new RouteMatch(route, variables);
+    }
+
+    /**
+     * 按优先级顺序返回所有匹配请求路径的Route
+     */
+    public List<Route> matchAll(String path) {
+        if (isEmpty()) {
+            return List.of();
+        }
+        List<Route> result = new ArrayList<>(2);
+        collect(root, path, 0, result);
+        return result;
+    }
+
+    private static Route find(Node node, String path, int position, Predicate<Route> predicate, Map<String, String> variables) {
+        int start = skipSlashes(path, position);
+        if (start >= path.length()) {
+            for (Route route : node.routes) {
+                if (predicate.test(route)) {
+                    return route;
+                }
+            }
+            // ** 可以匹配0个段
+            for (Edge edge : node.edges) {
+                if (edge.type == EdgeType.MULTI_WILDCARD) {
+                    Route route = find(edge.child, path, start, predicate, variables);
+                    if (Objects.nonNull(route)) {
+                        return route;
+                    }
+                }
+            }
+            return null;
+        }
+
+        int end = segmentEnd(path, start);
+
+        Node literalChild = node.literals.get(path, start, end);
+        if (Objects.nonNull(literalChild)) {
+            Route route = find(literalChild, path, end, predicate, variables);
+            if (Objects.nonNull(route)) {
+                return route;
+            }
+        }
+
+        // 含通配符的段才需要截取子串交给AntPathMatcher，同一层的多条PATTERN边共用一个子串
+        String segment = null;
+        for (Edge edge : node.edges) {
+            Route route = null;
+            switch (edge.type) {
+                case PATTERN -> {
+                    if (Objects.isNull(segment)) {
+                        segment = path.substring(start, end);
+                    }
+                    if (ANT_PATH_MATCHER.match(edge.token, segment)) {
+                        route = find(edge.child, path, end, predicate, variables);
+                        if (Objects.nonNull(route) && Objects.nonNull(variables)) {
+                            variables.putAll(ANT_PATH_MATCHER.extractUriTemplateVariables(edge.token, segment));
+                        }
+                    }
+                }
+                case VARIABLE -> {
+                    route = find(edge.child, path, end, predicate, variables);
+                    if (Objects.nonNull(route) && Objects.nonNull(variables)) {
+                        variables.put(edge.variableName, path.substring(start, end));
+                    }
+                }
+                case SINGLE_WILDCARD -> route = find(edge.child, path, end, predicate, variables);
+                case MULTI_WILDCARD -> route = findMultiWildcard(edge.child, path, start, predicate, variables);
+            }
+            if (Objects.nonNull(route)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private static Route findMultiWildcard(Node child, String path, int start, Predicate<Route> predicate, Map<String, String> variables) {
+        int position = start;
+        while (true) {
+            Route route = find(child, path, position, predicate, variables);
+            if (Objects.nonNull(route)) {
+                return route;
+            }
+            if (position >= path.length()) {
+                return null;
+            }
+            position = segmentEnd(path, skipSlashes(path, position));
+        }
+    }
+
+    private static void collect(Node node, String path, int position, List<Route> result) {
+        int start = skipSlashes(path, position);
+        if (start >= path.length()) {
+            for (Route route : node.routes) {
+                addIfAbsent(result, route);
+            }
+            for (Edge edge : node.edges) {
+                if (edge.type == EdgeType.MULTI_WILDCARD) {
+                    collect(edge.child, path, start, result);
+                }
+            }
+            return;
+        }
+
+        int end = segmentEnd(path, start);
+
+        Node literalChild = node.literals.get(path, start, end);
+        if (Objects.nonNull(literalChild)) {
+            collect(literalChild, path, end, result);
+        }
+
+        for (Edge edge : node.edges) {
+            switch (edge.type) {
+                case PATTERN -> {
+                    if (ANT_PATH_MATCHER.match(edge.token, path.substring(start, end))) {
+                        collect(edge.child, path, end, result);
+                    }
+                }
+                case VARIABLE, SINGLE_WILDCARD -> collect(edge.child, path, end, result);
+                case MULTI_WILDCARD -> {
+                    int multiPosition = start;
+                    while (true) {
+                        collect(edge.child, path, multiPosition, result);
+                        if (multiPosition >= path.length()) {
+                            break;
+                        }
+                        multiPosition = segmentEnd(path, skipSlashes(path, multiPosition));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addIfAbsent(List<Route> result, Route route) {
+        // 含有多个**的pattern可能从不同的分支多次到达同一个Route
+        for (Route existed : result) {
+            if (existed == route) {
+                return;
+            }
+        }
+        result.add(route);
+    }
+
+    private static int skipSlashes(String path, int position) {
+        int index = position;
+        while (index < path.length() && path.charAt(index) == '/') {
+            ++index;
+        }
+        return index;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int index = path.indexOf('/', start);
+        return index == -1 ? path.length() : index;
+    }
+
+    static String[] tokenize(String routePath) {
+        String normalizePath = PathUtil.normalize(routePath);
+        List<String> tokens = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int start = skipSlashes(normalizePath, position);
+            if (start >= normalizePath.length()) {
+                break;
+            }
+            int end = segmentEnd(normalizePath, start);
+            tokens.add(normalizePath.substring(start, end));
+            position = end;
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    enum EdgeType {
+
+        // 声明顺序即是匹配时的优先级顺序
+        PATTERN,
+        VARIABLE,
+        SINGLE_WILDCARD,
+        MULTI_WILDCARD;
+
+        /**
+         * @return 常量段返回null
+         */
+        static EdgeType of(String token) {
+            if ("**".equals(token)) {
+                return MULTI_WILDCARD;
+            }
+            if ("*".equals(token)) {
+                return SINGLE_WILDCARD;
+            }
+            if (isSimpleVariable(token)) {
+                return VARIABLE;
+            }
+            if (ANT_PATH_MATCHER.isPattern(token)) {
+                return PATTERN;
+            }
+            return null;
+        }
+
+        private static boolean isSimpleVariable(String token) {
+            if (token.length() < 3 || token.charAt(0) != '{' || token.charAt(token.length() - 1) != '}') {
+                return false;
+            }
+            for (int i = 1; i < token.length() - 1; ++i) {
+                char c = token.charAt(i);
+                // 带有正则约束的变量，如{id:\d+}，按PATTERN处理
+                if (c == '{' || c == '}' || c == ':') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    static final class Edge {
+
+        final EdgeType type;
+
+        final String token;
+
+        final String variableName;
+
+        final Node child;
+
+        Edge(EdgeType type, String token, Node child) {
+            this.type = type;
+            this.token = token;
+            this.variableName = type == EdgeType.VARIABLE ? token.substring(1, token.length() - 1) : null;
+            this.child = child;
+        }
+
+    }
+
+    static final class Node {
+
+        static final Node EMPTY = new Node(LiteralTable.EMPTY, new Edge[0], new Route[0]);
+
+        final LiteralTable literals;
+
+        /**
+         * 非常量的边，按EdgeType的优先级排序
+         */
+        final Edge[] edges;
+
+        /**
+         * 以此节点结尾的所有Route，按添加顺序排列
+         */
+        final Route[] routes;
+
+        Node(LiteralTable literals, Edge[] edges, Route[] routes) {
+            this.literals = literals;
+            this.edges = edges;
+            this.routes = routes;
+        }
+
+    }
+
+    /**
+     * 不可变的开放寻址hash表，key是常量路径段。
+     * 与HashMap不同的是可以直接用请求路径中的一个区间来查找，不需要先截取出子串。
+     */
+    static final class LiteralTable {
+
+        static final LiteralTable EMPTY = new LiteralTable(new String[0], new Node[0], 0);
+
+        final String[] keys;
+
+        final Node[] nodes;
+
+        final int size;
+
+        private LiteralTable(String[] keys, Node[] nodes, int size) {
+            this.keys = keys;
+            this.nodes = nodes;
+            this.size = size;
+        }
+
+        Node get(String path, int start, int end) {
+            if (size == 0) {
+                return null;
+            }
+            int length = end - start;
+            int mask = keys.length - 1;
+            int index = hash(path, start, end) & mask;
+            String key;
+            while (Objects.nonNull(key = keys[index])) {
+                if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+                    return nodes[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        private static LiteralTable of(Map<String, Node> entries) {
+            if (entries.isEmpty()) {
+                return EMPTY;
+            }
+            // 保持装载因子不超过0.5，以保证线性探测的查找效率
+            int capacity = Integer.highestOneBit(entries.size() * 2 - 1) << 1;
+            String[] keys = new String[capacity];
+            Node[] nodes = new Node[capacity];
+            int mask = capacity - 1;
+            for (Map.Entry<String, Node> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                int index = hash(key, 0, key.length()) & mask;
+                while (Objects.nonNull(keys[index])) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                nodes[index] = entry.getValue();
+            }
+            return new LiteralTable(keys, nodes, entries.size());
+        }
+
+        private static int hash(String text, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; ++i) {
+                h = 31 * h + text.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+    /**
+     * 批量增删Route。第一次修改某个节点时把它复制为可变节点，之后同一批变更直接修改可变节点，
+     * {@link #build()}时只重建被修改过的节点，其余节点与原来的树共享。非线程安全。
+     */
+    public static final class Builder {
+
+        private final RouteTrie origin;
+
+        private final MutableNode root;
+
+        private int size;
+
+        private boolean modified;
+
+        private Builder(RouteTrie origin) {
+            this.origin = origin;
+            this.root = new MutableNode(origin.root);
+            this.size = origin.size;
+        }
+
+        public Builder add(Route route) {
+            MutableNode node = root;
+            for (String token : tokenize(route.getPath())) {
+                node = node.child(token, true);
+            }
+            node.routes.add(route);
+            ++size;
+            modified = true;
+            return this;
+        }
+
+        /**
+         * route不存在时不做任何修改
+         */
+        public Builder remove(Route route) {
+            MutableNode node = root;
+            for (String token : tokenize(route.getPath())) {
+                node = node.child(token, false);
+                if (Objects.isNull(node)) {
+                    return this;
+                }
+            }
+            for (int i = 0; i < node.routes.size(); ++i) {
+                if (node.routes.get(i).getId().equals(route.getId())) {
+                    node.routes.remove(i);
+                    --size;
+                    modified = true;
+                    break;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 没有任何修改时返回原来的树
+         */
+        public RouteTrie build() {
+            if (!modified) {
+                return origin;
+            }
+            Node newRoot = root.freeze();
+            return new RouteTrie(Objects.isNull(newRoot) ? Node.EMPTY : newRoot, size);
+        }
+
+    }
+
+    /**
+     * Builder中的可变节点，子节点是未修改的{@link Node}或者已经复制出来的MutableNode
+     */
+    private static final class MutableNode {
+
+        private final Map<String, Object> literals;
+
+        /**
+         * 非常量的边，与{@link Node#edges}一样按EdgeType的优先级排序
+         */
+        private final List<MutableEdge> edges;
+
+        private final List<Route> routes;
+
+        MutableNode(Node origin) {
+            this.literals = new HashMap<>(origin.literals.size * 2 + 2);
+            for (int i = 0; i < origin.literals.keys.length; ++i) {
+                if (Objects.nonNull(origin.literals.keys[i])) {
+                    literals.put(origin.literals.keys[i], origin.literals.nodes[i]);
+                }
+            }
+            this.edges = new ArrayList<>(origin.edges.length + 1);
+            for (Edge edge : origin.edges) {
+                edges.add(new MutableEdge(edge.type, edge.token, edge.child));
+            }
+            this.routes = new ArrayList<>(Arrays.asList(origin.routes));
+        }
+
+        /**
+         * @param create 子节点不存在时是否创建
+         * @return 可变的子节点，不存在且不创建时返回null
+         */
+        MutableNode child(String token, boolean create) {
+            EdgeType edgeType = EdgeType.of(token);
+            if (Objects.isNull(edgeType)) {
+                Object child = literals.get(token);
+                if (child instanceof MutableNode mutableNode) {
+                    return mutableNode;
+                }
+                if (Objects.isNull(child) && !create) {
+                    return null;
+                }
+                MutableNode mutableNode = new MutableNode(Objects.isNull(child) ? Node.EMPTY : (Node) child);
+                literals.put(token, mutableNode);
+                return mutableNode;
+            }
+
+            int index = 0;
+            while (index < edges.size() && edges.get(index).type.ordinal() <= edgeType.ordinal()) {
+                MutableEdge edge = edges.get(index);
+                if (edge.type == edgeType && edge.token.equals(token)) {
+                    if (edge.child instanceof MutableNode mutableNode) {
+                        return mutableNode;
+                    }
+                    MutableNode mutableNode = new MutableNode((Node) edge.child);
+                    edge.child = mutableNode;
+                    return mutableNode;
+                }
+                ++index;
+            }
+            if (!create) {
+                return null;
+            }
+            MutableNode mutableNode = new MutableNode(Node.EMPTY);
+            edges.add(index, new MutableEdge(edgeType, token, mutableNode));
+            return mutableNode;
+        }
+
+        /**
+         * @return 不再含有任何Route时返回null
+         */
+        Node freeze() {
+            Map<String, Node> frozenLiterals = new HashMap<>(literals.size() * 2 + 2);
+            literals.forEach((token, child) -> {
+                Node frozenChild = freeze(child);
+                if (Objects.nonNull(frozenChild)) {
+                    frozenLiterals.put(token, frozenChild);
+                }
+            });
+            List<Edge> frozenEdges = new ArrayList<>(edges.size());
+            for (MutableEdge edge : edges) {
+                Node frozenChild = freeze(edge.child);
+                if (Objects.nonNull(frozenChild)) {
+                    frozenEdges.add(new Edge(edge.type, edge.token, frozenChild));
+                }
+            }
+            if (frozenLiterals.isEmpty() && frozenEdges.isEmpty() && routes.isEmpty()) {
+                return null;
+            }
+            return new Node(LiteralTable.of(frozenLiterals), frozenEdges.toArray(new Edge[0]), routes.toArray(new Route[0]));
+        }
+
+        private static Node freeze(Object child) {
+            return child instanceof MutableNode mutableNode ? mutableNode.freeze() : (Node) child;
+        }
+
+    }
+
+    private static final class MutableEdge {
+
+        final EdgeType type;
+
+        final String token;
+
+        Object child;
+
+        MutableEdge(EdgeType type, String token, Object child) {
+            this.type = type;
+            this.token = token;
+            this.child = child;
+        }
+
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package zk.rgw.http.route.locator;
 
+import java.util.List;
 import java.util.Objects;
 
 import lombok.extern.slf4j.Slf4j;
@@ -22,10 +23,15 @@ import reactor.core.publisher.Flux;
 
 import zk.rgw.http.route.Route;
 import zk.rgw.http.route.RouteEvent;
+import zk.rgw.plugin.api.filter.Filter;
+import zk.rgw.plugin.api.filter.FilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 
 @Slf4j
 public abstract class UpdatableRouteLocator extends ManageableRouteLocator {
 
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
     protected abstract Flux<RouteEvent> fetchRouteChange();
 
     public synchronized void update() {
@@ -33,19 +39,47 @@ public abstract class UpdatableRouteLocator extends ManageableRouteLocator {
     }
 
     protected void doUpdate() {
-        fetchRouteChange().doOnNext(routeEvent -> {
-            if (Objects.isNull(routeEvent.getRouteId())) {
-                // 可以通过设置routeId为null来标识是一个无效事件
-                return;
+        fetchRouteChangeBatches().doOnNext(this::applyRouteEventBatch).subscribe();
+    }
+
+    /**
+     * 按批获取变更，每一批整体生效，默认把{@link #fetchRouteChange()}的结果按固定大小分批
+     */
+    protected Flux<List<RouteEvent>> fetchRouteChangeBatches() {
+        return fetchRouteChange().buffer(DEFAULT_BATCH_SIZE);
+    }
+
+    protected void applyRouteEventBatch(List<RouteEvent> routeEvents) {
+        for (RouteEvent routeEvent : routeEvents) {
+            if (Objects.nonNull(routeEvent.getRouteId())) {
+                log.info(
+                        "{} {} route with id = {}",
+                        this.getClass().getSimpleName(), routeEvent.isDelete() ? "remove" : "add or update", routeEvent.getRouteId()
+                );
             }
-            if (routeEvent.isDelete()) {
-                Route route = removeRouteById(routeEvent.getRouteId());
-                log.info("{} remove route with id = {}", this.getClass().getSimpleName(), route.getId());
-            } else {
-                log.info("Add or update a route with id = {}", routeEvent.getRouteId());
-                addRoute(routeEvent.getRoute());
+        }
+        for (Route staleRoute : applyRouteEvents(routeEvents)) {
+            releaseRoute(staleRoute);
+        }
+    }
+
+    /**
+     * 下线或被替换掉的Route不会再处理新的请求，调用其插件的destroy()释放插件持有的资源，比如后台任务
+     */
+    protected void releaseRoute(Route route) {
+        if (Objects.isNull(route) || Objects.isNull(route.getFilters())) {
+            return;
+        }
+        for (Filter filter : route.getFilters()) {
+            // 无状态的插件实例可能被多个Route共享，不能随某一个Route释放
+            if (filter instanceof FilterPlugin filterPlugin && !filter.getClass().isAnnotationPresent(Stateless.class)) {
+                try {
+                    filterPlugin.destroy();
+                } catch (Exception exception) {
+                    log.error("Failed to destroy plugin {} of route {}", filter.getClass().getName(), route.getId(), exception);
+                }
             }
-        }).subscribe();
+        }
     }
 
 }
@@ -28,14 +28,15 @@ import reactor.netty.http.server.HttpServerResponse;
 import zk.rgw.http.context.ReactiveRequestContextHolder;
 import zk.rgw.http.context.RequestContext;
 import zk.rgw.http.context.RequestContextImpl;
-import zk.rgw.http.exchange.ChainBasedExchangeHandler;
 import zk.rgw.http.exchange.ExchangeImpl;
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
 import zk.rgw.http.route.locator.RouteLocator;
 import zk.rgw.http.utils.RouteUtil;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.Filter;
 import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.util.ExchangeUtil;
 import zk.rgw.plugin.util.ResponseUtil;
 
 @Slf4j
@@ -43,6 +44,11 @@ public class HttpHandler implements BiFunction<HttpServerRequest, HttpServerResp
 
     private final RouteLocator routeLocator;
 
+    /**
+     * 是否向Reactor Context中写入RequestContext，只有依赖ReactiveRequestContextHolder的场景才需要开启
+     */
+    private final boolean requestContextEnabled;
+
     private static final Route ROUTE_404;
 
     static {
@@ -53,32 +59,71 @@ public class HttpHandler implements BiFunction<HttpServerRequest, HttpServerResp
     }
 
     public HttpHandler(RouteLocator routeLocator) {
+        this(routeLocator, true);
+    }
+
+    public HttpHandler(RouteLocator routeLocator, boolean requestContextEnabled) {
         this.routeLocator = routeLocator;
+        this.requestContextEnabled = requestContextEnabled;
     }
 
     @Override
     public Mono<Void> apply(HttpServerRequest request, HttpServerResponse response) {
         Exchange exchange = new ExchangeImpl(request, response);
+        if (routeLocator.supportSyncLookup()) {
+            return applySync(exchange);
+        }
         return routeLocator.getRoutes(request.fullPath())
-                .filter(
-                        route -> Objects.nonNull(route.getMethods())
-                                && route.getMethods().contains(request.method())
-                                && Objects.nonNull(route.getPredicate())
-                                && route.getPredicate().test(exchange)
-                )
+                .filter(route -> matches(route, exchange))
                 .switchIfEmpty(Mono.just(ROUTE_404))
                 .next()
-                .flatMap(route -> {
-                    RouteUtil.setRoute(exchange, route);
-                    Mono<RequestContext> requestContext = Mono.just(new RequestContextImpl(exchange));
-                    return new ChainBasedExchangeHandler(route.getFilters())
-                            .handle(exchange)
-                            .contextWrite(ReactiveRequestContextHolder.withRequestContext(requestContext));
-                })
-                .onErrorResume(throwable -> {
-                    log.error("Request handle failed.", throwable);
-                    return ResponseUtil.sendError(response);
-                });
+                .flatMap(route -> dispatch(route, exchange))
+                .onErrorResume(throwable -> handleError(throwable, exchange));
+    }
+
+    /**
+     * 路由查找完全在内存中进行，同步查找到Route后直接交给其预先构建好的处理器，不再经过Flux流水线
+     */
+    private Mono<Void> applySync(Exchange exchange) {
+        Mono<Void> result;
+        try {
+            RouteMatch routeMatch = routeLocator.lookup(exchange.getRequest().fullPath(), route -> matches(route, exchange));
+            Route route;
+            if (Objects.isNull(routeMatch)) {
+                route = ROUTE_404;
+            } else {
+                route = routeMatch.getRoute();
+                if (!routeMatch.getPathVariables().isEmpty()) {
+                    exchange.getAttributes().put(ExchangeUtil.PATH_PARAMS, routeMatch.getPathVariables());
+                }
+            }
+            result = dispatch(route, exchange);
+        } catch (Exception exception) {
+            result = Mono.error(exception);
+        }
+        return result.onErrorResume(throwable -> handleError(throwable, exchange));
+    }
+
+    private static boolean matches(Route route, Exchange exchange) {
+        return Objects.nonNull(route.getMethods())
+                && route.getMethods().contains(exchange.getRequest().method())
+                && Objects.nonNull(route.getPredicate())
+                && route.getPredicate().test(exchange);
+    }
+
+    private Mono<Void> dispatch(Route route, Exchange exchange) {
+        RouteUtil.setRoute(exchange, route);
+        Mono<Void> handled = route.getExchangeHandler().handle(exchange);
+        if (!requestContextEnabled) {
+            return handled;
+        }
+        Mono<RequestContext> requestContext = Mono.just(new RequestContextImpl(exchange));
+        return handled.contextWrite(ReactiveRequestContextHolder.withRequestContext(requestContext));
+    }
+
+    private static Mono<Void> handleError(Throwable throwable, Exchange exchange) {
+        log.error("Request handle failed.", throwable);
+        return ResponseUtil.sendError(exchange.getResponse());
     }
 
     private static class Filter404 implements Filter {
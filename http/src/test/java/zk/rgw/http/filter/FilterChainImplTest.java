@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import zk.rgw.plugin.api.filter.Filter;
+import zk.rgw.plugin.api.filter.FilterChain;
+import zk.rgw.plugin.api.filter.SyncFilter;
+
+class FilterChainImplTest {
+
+    @Test
+    void testOrderAndSyncFilter() {
+        List<String> trace = new ArrayList<>();
+        List<Filter> filters = List.of(
+                (SyncFilter) exchange -> {
+                    trace.add("sync1");
+                    return null;
+                },
+                (exchange, chain) -> {
+                    trace.add("async");
+                    return chain.filter(exchange);
+                },
+                (SyncFilter) exchange -> {
+                    trace.add("sync2");
+                    return null;
+                }
+        );
+        FilterChain chain = FilterChainImpl.compile(filters);
+        Mono<Void> result = chain.filter(null);
+        // 订阅前不会执行任何Filter
+        Assertions.assertTrue(trace.isEmpty());
+        StepVerifier.create(result).verifyComplete();
+        Assertions.assertEquals(List.of("sync1", "async", "sync2"), trace);
+    }
+
+    @Test
+    void testSyncShortCircuit() {
+        AtomicInteger reached = new AtomicInteger();
+        List<Filter> filters = List.of(
+                (SyncFilter) exchange -> Mono.error(new IllegalStateException("rejected")),
+                (exchange, chain) -> {
+                    reached.incrementAndGet();
+                    return chain.filter(exchange);
+                }
+        );
+        StepVerifier.create(FilterChainImpl.compile(filters).filter(null)).verifyError(IllegalStateException.class);
+        Assertions.assertEquals(0, reached.get());
+    }
+
+    @Test
+    void testResubscribe() {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        List<Filter> filters = List.of(
+                (exchange, chain) -> {
+                    first.incrementAndGet();
+                    return chain.filter(exchange);
+                },
+                (exchange, chain) -> {
+                    // 前两次失败，第三次成功
+                    if (second.incrementAndGet() < 3) {
+                        return Mono.error(new IllegalStateException());
+                    }
+                    return chain.filter(exchange);
+                }
+        );
+        Mono<Void> result = FilterChainImpl.compile(filters).filter(null).retry(2);
+        StepVerifier.create(result).verifyComplete();
+        Assertions.assertEquals(3, first.get());
+        Assertions.assertEquals(3, second.get());
+    }
+
+    @Test
+    void testFilterThrows() {
+        List<Filter> filters = List.of((exchange, chain) -> {
+            throw new IllegalStateException();
+        });
+        StepVerifier.create(FilterChainImpl.compile(filters).filter(null)).verifyError(IllegalStateException.class);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route.locator;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
+
+class CompositeRouteLocatorTest {
+
+    @Test
+    void testSyncLookup() {
+        ManageableRouteLocator first = new ManageableRouteLocator();
+        ManageableRouteLocator second = new ManageableRouteLocator();
+        Route foo = newRoute("foo", "/foo");
+        Route user = newRoute("user", "/users/{id}");
+        first.addRoute(foo);
+        second.addRoute(user);
+
+        CompositeRouteLocator composite = new CompositeRouteLocator(first, second);
+        Assertions.assertTrue(composite.supportSyncLookup());
+
+        // 不含路径变量的Route每次都返回同一个RouteMatch实例
+        RouteMatch fooMatch = composite.lookup("/foo", route -> true);
+        Assertions.assertSame(foo, fooMatch.getRoute());
+        Assertions.assertSame(fooMatch, composite.lookup("/foo", route -> true));
+
+        RouteMatch userMatch = composite.lookup("/users/123", route -> true);
+        Assertions.assertSame(user, userMatch.getRoute());
+        Assertions.assertEquals(Map.of("id", "123"), userMatch.getPathVariables());
+
+        Assertions.assertNull(composite.lookup("/users/123", route -> false));
+        Assertions.assertNull(composite.lookup("/bar", route -> true));
+    }
+
+    @Test
+    void testSyncLookupNotSupported() {
+        RouteLocator fluxOnly = path -> Flux.empty();
+        CompositeRouteLocator composite = new CompositeRouteLocator(new ManageableRouteLocator(), fluxOnly);
+        Assertions.assertFalse(composite.supportSyncLookup());
+        Assertions.assertFalse(new CompositeRouteLocator(Flux.just(new ManageableRouteLocator())).supportSyncLookup());
+    }
+
+    @Test
+    void testDefaultLookup() {
+        Route foo = newRoute("foo", "/foo");
+        Route bar = newRoute("bar", "/bar");
+        ManageableRouteLocator manageable = new ManageableRouteLocator();
+        manageable.addRoute(bar);
+        RouteLocator fluxOnly = path -> "/foo".equals(path) ? Flux.just(foo) : Flux.empty();
+
+        Assertions.assertSame(foo, fluxOnly.lookup("/foo", route -> true).getRoute());
+        Assertions.assertNull(fluxOnly.lookup("/foo", route -> false));
+
+        CompositeRouteLocator composite = new CompositeRouteLocator(manageable, fluxOnly);
+        Assertions.assertSame(foo, composite.lookup("/foo", route -> true).getRoute());
+        Assertions.assertSame(bar, composite.lookup("/bar", route -> true).getRoute());
+        Assertions.assertNull(composite.lookup("/baz", route -> true));
+
+        RouteLocator async = path -> Flux.<Route>never();
+        Assertions.assertThrows(IllegalStateException.class, () -> async.lookup("/foo", route -> true));
+    }
+
+    private static Route newRoute(String id, String path) {
+        Route route = new Route();
+        route.setId(id);
+        route.setPath(path);
+        return route;
+    }
+
+}
@@ -16,12 +16,18 @@
 
 package zk.rgw.http.route.locator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import reactor.test.StepVerifier;
 
 import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteEvent;
 
 class ManageableRouteLocatorTest {
 
@@ -76,6 +82,86 @@ class ManageableRouteLocatorTest {
         StepVerifier.create(mrl.getRoutes("/bar/foo/joey")).expectNext(route4).expectNext(route3).verifyComplete();
     }
 
+    @Test
+    void testApplyRouteEvents() {
+        ManageableRouteLocator mrl = new ManageableRouteLocator();
+
+        RouteForTest foo = new RouteForTest();
+        foo.setId("foo");
+        foo.setPath("/foo");
+        RouteForTest bar = new RouteForTest();
+        bar.setId("bar");
+        bar.setPath("/bar");
+
+        List<Route> stale = mrl.applyRouteEvents(List.of(
+                new RouteEvent("foo", foo, false),
+                new RouteEvent("bar", bar, false),
+                new RouteEvent(null, null, false)
+        ));
+        Assertions.assertTrue(stale.isEmpty());
+        StepVerifier.create(mrl.getRoutes("/foo")).expectNext(foo).verifyComplete();
+        StepVerifier.create(mrl.getRoutes("/bar")).expectNext(bar).verifyComplete();
+
+        // 同一批中先更新再删除，路径改变后旧路径不再匹配
+        RouteForTest movedFoo = new RouteForTest();
+        movedFoo.setId("foo");
+        movedFoo.setPath("/foo/v2");
+        stale = mrl.applyRouteEvents(List.of(
+                new RouteEvent("foo", movedFoo, false),
+                new RouteEvent("bar", null, true)
+        ));
+        Assertions.assertEquals(List.of(foo, bar), stale);
+        StepVerifier.create(mrl.getRoutes("/foo")).expectComplete().verify();
+        StepVerifier.create(mrl.getRoutes("/foo/v2")).expectNext(movedFoo).verifyComplete();
+        StepVerifier.create(mrl.getRoutes("/bar")).expectComplete().verify();
+    }
+
+    @Test
+    void testReadersNeverSeePartialBatch() throws InterruptedException {
+        ManageableRouteLocator mrl = new ManageableRouteLocator();
+        mrl.applyRouteEvents(generation(0));
+
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            Thread reader = new Thread(() -> {
+                List<Route> seen = new ArrayList<>(2);
+                while (!stopped.get() && Objects.isNull(failure.get())) {
+                    seen.clear();
+                    // predicate始终返回false，一次查找会按顺序访问同一棵树中的全部候选Route
+                    mrl.lookup("/p/q", route -> !seen.add(route));
+                    if (seen.size() != 2 || !Objects.equals(seen.get(0).getEnvKey(), seen.get(1).getEnvKey())) {
+                        failure.set("partial batch observed: " + seen.size());
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int generation = 1; generation <= 2000; ++generation) {
+            mrl.applyRouteEvents(generation(generation));
+        }
+        stopped.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assertions.assertNull(failure.get());
+    }
+
+    private static List<RouteEvent> generation(int generation) {
+        RouteForTest variable = new RouteForTest();
+        variable.setId("variable");
+        variable.setPath("/p/{name}");
+        variable.setEnvKey(String.valueOf(generation));
+        RouteForTest wildcard = new RouteForTest();
+        wildcard.setId("wildcard");
+        wildcard.setPath("/p/*");
+        wildcard.setEnvKey(String.valueOf(generation));
+        return List.of(new RouteEvent("variable", variable, false), new RouteEvent("wildcard", wildcard, false));
+    }
+
     static class RouteForTest extends Route {
 
         @Override
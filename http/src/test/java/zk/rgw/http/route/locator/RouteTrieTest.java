@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.http.route.locator;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import zk.rgw.http.route.Route;
+import zk.rgw.http.route.RouteMatch;
+
+class RouteTrieTest {
+
+    @Test
+    void testPriority() {
+        Route constant = route("constant", "/bar/foo/joey");
+        Route variable = route("variable", "/bar/foo/{name}");
+        Route twoVariables = route("twoVariables", "/bar/{x}/{y}");
+        Route multiWildcard = route("multiWildcard", "/bar/**");
+
+        RouteTrie routeTrie = RouteTrie.EMPTY.add(multiWildcard).add(twoVariables).add(variable).add(constant);
+
+        Assertions.assertEquals(List.of(constant, variable, twoVariables, multiWildcard), routeTrie.matchAll("/bar/foo/joey"));
+        Assertions.assertEquals(List.of(variable, twoVariables, multiWildcard), routeTrie.matchAll("/bar/foo/alice"));
+        Assertions.assertEquals(List.of(multiWildcard), routeTrie.matchAll("/bar/foo/alice/bob"));
+        Assertions.assertEquals(List.of(multiWildcard), routeTrie.matchAll("/bar"));
+        Assertions.assertEquals(List.of(), routeTrie.matchAll("/foo"));
+    }
+
+    @Test
+    void testPathVariables() {
+        Route route = route("user", "/users/{userId}/orders/{orderId}");
+        RouteTrie routeTrie = RouteTrie.EMPTY.add(route);
+
+        RouteMatch routeMatch = routeTrie.match("/users/alice/orders/42", candidate -> true);
+        Assertions.assertNotNull(routeMatch);
+        Assertions.assertSame(route, routeMatch.getRoute());
+        Assertions.assertEquals(Map.of("userId", "alice", "orderId", "42"), routeMatch.getPathVariables());
+
+        Assertions.assertNull(routeTrie.match("/users/alice/orders", candidate -> true));
+        Assertions.assertNull(routeTrie.match("/users/alice/orders/42", candidate -> false));
+    }
+
+    @Test
+    void testPatternSegment() {
+        Route image = route("image", "/images/{name}.png");
+        Route single = route("single", "/files/*/raw");
+        RouteTrie routeTrie = RouteTrie.EMPTY.add(image).add(single);
+
+        RouteMatch routeMatch = routeTrie.match("/images/logo.png", candidate -> true);
+        Assertions.assertNotNull(routeMatch);
+        Assertions.assertEquals(Map.of("name", "logo"), routeMatch.getPathVariables());
+        Assertions.assertNull(routeTrie.match("/images/logo.jpg", candidate -> true));
+
+        Assertions.assertEquals(List.of(single), routeTrie.matchAll("/files/a/raw"));
+        Assertions.assertEquals(List.of(), routeTrie.matchAll("/files/a/b/raw"));
+    }
+
+    @Test
+    void testMultiWildcardInMiddle() {
+        Route route = route("middle", "/a/**/z");
+        RouteTrie routeTrie = RouteTrie.EMPTY.add(route);
+
+        Assertions.assertEquals(List.of(route), routeTrie.matchAll("/a/z"));
+        Assertions.assertEquals(List.of(route), routeTrie.matchAll("/a/b/c/z"));
+        Assertions.assertEquals(List.of(), routeTrie.matchAll("/a/b/c"));
+    }
+
+    @Test
+    void testCopyOnWrite() {
+        Route route1 = route("1", "/foo/{id}");
+        Route route2 = route("2", "/foo/bar");
+
+        RouteTrie trie1 = RouteTrie.EMPTY.add(route1);
+        RouteTrie trie2 = trie1.add(route2);
+        RouteTrie trie3 = trie2.remove(route1);
+
+        Assertions.assertEquals(List.of(route1), trie1.matchAll("/foo/bar"));
+        Assertions.assertEquals(List.of(route2, route1), trie2.matchAll("/foo/bar"));
+        Assertions.assertEquals(List.of(route2), trie3.matchAll("/foo/bar"));
+        Assertions.assertEquals(1, trie3.size());
+
+        RouteTrie trie4 = trie3.remove(route2);
+        Assertions.assertTrue(trie4.isEmpty());
+        Assertions.assertSame(trie4, trie4.remove(route2));
+    }
+
+    @Test
+    void testBuilder() {
+        Route route1 = route("1", "/foo/a");
+        Route route2 = route("2", "/foo/b");
+        Route route3 = route("3", "/foo/{id}");
+        RouteTrie trie1 = RouteTrie.EMPTY.add(route1);
+
+        RouteTrie trie2 = trie1.toBuilder().add(route2).add(route3).remove(route1).build();
+        Assertions.assertEquals(2, trie2.size());
+        Assertions.assertEquals(List.of(route3), trie2.matchAll("/foo/a"));
+        Assertions.assertEquals(List.of(route2, route3), trie2.matchAll("/foo/b"));
+        // 原来的树不受影响
+        Assertions.assertEquals(List.of(route1), trie1.matchAll("/foo/a"));
+
+        // 同一批中先删后加
+        RouteTrie trie3 = trie2.toBuilder().remove(route2).add(route2).build();
+        Assertions.assertEquals(List.of(route2, route3), trie3.matchAll("/foo/b"));
+        Assertions.assertSame(trie3, trie3.toBuilder().remove(route1).build());
+
+        RouteTrie.Builder builder = RouteTrie.EMPTY.toBuilder();
+        for (int i = 0; i < 10_000; ++i) {
+            builder.add(route("r" + i, "/api/r" + i));
+        }
+        RouteTrie trie4 = builder.build();
+        Assertions.assertEquals(10_000, trie4.size());
+        Assertions.assertEquals(List.of(), trie4.matchAll("/api/r10000"));
+        Assertions.assertEquals("r9999", trie4.match("/api/r9999", candidate -> true).getRoute().getId());
+    }
+
+    private static Route route(String id, String path) {
+        Route route = new Route();
+        route.setId(id);
+        route.setPath(path);
+        return route;
+    }
+
+}
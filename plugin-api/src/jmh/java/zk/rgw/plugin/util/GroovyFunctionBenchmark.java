@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 对比共享ScriptEngine（put变量后invokeFunction）和预编译的GroovyFunction执行同一个脚本方法的开销。
+ * 注意ScriptEngine方式在多线程下本身就存在变量串用的问题，这里只比较单线程下的调用开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GroovyFunctionBenchmark {
+
+    private static final String SCRIPT = """
+            def decideUri() {
+                return "http://" + environment.get("host") + clientRequestUriPath
+            }
+            """;
+
+    private static final Map<String, String> ENVIRONMENT = Map.of("host", "127.0.0.1:8080");
+
+    private static final String PATH = "/api/users/1";
+
+    private ScriptEngine scriptEngine;
+
+    private GroovyFunction groovyFunction;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        scriptEngine = new ScriptEngineManager().getEngineByName("groovy");
+        scriptEngine.eval(SCRIPT);
+        groovyFunction = GroovyFunction.compile(SCRIPT, "decideUri", "clientRequestUriPath", "environment");
+    }
+
+    @Benchmark
+    public Object scriptEngine() throws Exception {
+        scriptEngine.put("clientRequestUriPath", PATH);
+        scriptEngine.put("environment", ENVIRONMENT);
+        return ((Invocable) scriptEngine).invokeFunction("decideUri");
+    }
+
+    @Benchmark
+    public Object groovyFunction() throws Exception {
+        return groovyFunction.invoke(PATH, ENVIRONMENT);
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.api.filter;
+
+import java.util.Objects;
+
+import reactor.core.publisher.Mono;
+
+import zk.rgw.plugin.api.Exchange;
+
+/**
+ * 同步执行的Filter，比如只读写请求属性、做黑白名单判断的Filter。FilterChain会直接在当前调用栈中依次执行连续的SyncFilter，
+ * 不为其创建任何Mono
+ */
+public interface SyncFilter extends Filter {
+
+    /**
+     * @return 返回null表示继续执行后续的Filter；否则表示短路，返回的Mono即为整个请求的处理结果，后续的Filter不再执行
+     */
+    Mono<Void> filterSync(Exchange exchange);
+
+    @Override
+    default Mono<Void> filter(Exchange exchange, FilterChain chain) {
+        Mono<Void> result = filterSync(exchange);
+        return Objects.isNull(result) ? chain.filter(exchange) : result;
+    }
+
+}
@@ -38,6 +38,11 @@ public class ExchangeUtil {
 
     public static final String AUDIT_TAG = qualify("auditTag");
 
+    /**
+     * 应用认证通过后的客户端ID
+     */
+    public static final String CLIENT_ID = qualify("clientId");
+
     private ExchangeUtil() {
     }
 
@@ -58,6 +63,14 @@ public class ExchangeUtil {
         return exchange.getAttributeOrDefault(ENVIRONMENT_VARS, Map.of());
     }
 
+    public static void setClientId(Exchange exchange, String clientId) {
+        exchange.getAttributes().put(CLIENT_ID, clientId);
+    }
+
+    public static String getClientId(Exchange exchange) {
+        return exchange.getAttribute(CLIENT_ID);
+    }
+
     public static void setAuditInfo(Exchange exchange, String key, Object value) {
         Map<String, Object> auditInfo = getAuditInfo(exchange);
         auditInfo.put(key, value);
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+/**
+ * 预先编译好的groovy脚本方法，用于替代共享的JSR-223 ScriptEngine。
+ * <p>
+ * 脚本只在第一次出现时编译为Script类，之后相同的脚本直接复用。编译出的类按引用计数管理，
+ * 最后一个使用它的实例被{@link #release()}或者被回收后，类从缓存中移除并从Groovy的全局元数据中注销，
+ * 脚本被修改或者路由被删除后，旧的类及其GroovyClassLoader可以被回收。
+ * 每次调用都新建一个Script实例和Binding，
+ * 把参数按名称放入Binding，脚本方法中可以像以前一样直接引用这些变量，不同请求之间不共享任何可变状态，因此是线程安全的。
+ * 注意：脚本的顶层语句不会被执行，只会调用指定的方法。
+ */
+public final class GroovyFunction {
+
+    /**
+     * 只在持有自身的锁时访问，编译和释放只发生在插件配置和销毁时
+     */
+    private static final Map<String, CompiledScript> COMPILED_SCRIPTS = new HashMap<>();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Binding.class);
+
+    private static final MethodType FUNCTION_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String[] parameterNames;
+
+    private final MethodHandle constructor;
+
+    private final MethodHandle function;
+
+    private final Cleaner.Cleanable cleanable;
+
+    private GroovyFunction(String[] parameterNames, MethodHandle constructor, MethodHandle function, String source, CompiledScript compiled) {
+        this.parameterNames = parameterNames;
+        this.constructor = constructor;
+        this.function = function;
+        // 清理动作不能引用this，否则实例永远不会被回收
+        this.cleanable = CLEANER.register(this, () -> release(source, compiled));
+    }
+
+    /**
+     * @param source 脚本源码，需要定义一个名为functionName的无参方法
+     * @param parameterNames 每次调用时传入的变量名，与{@link #invoke(Object...)}的参数按顺序对应
+     * @throws IllegalArgumentException 脚本编译失败或者没有定义指定的方法
+     */
+    public static GroovyFunction compile(String source, String functionName, String... parameterNames) {
+        CompiledScript compiled = acquire(source);
+        try {
+            Method method = findFunction(compiled.scriptClass, functionName);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle constructor = lookup.findConstructor(compiled.scriptClass, MethodType.methodType(void.class, Binding.class))
+                    .asType(CONSTRUCTOR_TYPE);
+            MethodHandle function = lookup.unreflect(method).asType(FUNCTION_TYPE);
+            return new GroovyFunction(parameterNames.clone(), constructor, function, source, compiled);
+        } catch (ReflectiveOperationException exception) {
+            release(source, compiled);
+            throw new IllegalArgumentException("Failed to access groovy method " + functionName, exception);
+        } catch (RuntimeException exception) {
+            release(source, compiled);
+            throw exception;
+        }
+    }
+
+    /**
+     * 不再使用时调用以立即释放编译出的类，重复调用只生效一次；没有调用时在实例被回收后释放
+     */
+    public void release() {
+        cleanable.clean();
+    }
+
+    static boolean isCached(String source) {
+        synchronized (COMPILED_SCRIPTS) {
+            return COMPILED_SCRIPTS.containsKey(source);
+        }
+    }
+
+    private static CompiledScript acquire(String source) {
+        synchronized (COMPILED_SCRIPTS) {
+            CompiledScript compiled = COMPILED_SCRIPTS.get(source);
+            if (Objects.nonNull(compiled)) {
+                ++compiled.references;
+                return compiled;
+            }
+        }
+        // 在锁外编译，并发编译同一个脚本时只保留先放入缓存的类
+        Class<? extends Script> created;
+        try {
+            created = parse(source);
+        } catch (RuntimeException exception) {
+            throw new IllegalArgumentException("Failed to compile groovy script: " + exception.getMessage(), exception);
+        }
+        synchronized (COMPILED_SCRIPTS) {
+            CompiledScript compiled = COMPILED_SCRIPTS.computeIfAbsent(source, key -> new CompiledScript(created));
+            ++compiled.references;
+            return compiled;
+        }
+    }
+
+    private static void release(String source, CompiledScript compiled) {
+        synchronized (COMPILED_SCRIPTS) {
+            if (--compiled.references > 0) {
+                return;
+            }
+            COMPILED_SCRIPTS.remove(source, compiled);
+        }
+        // 脚本方法被调用过之后，Groovy会在全局的ClassInfo中强引用脚本类，必须显式注销才能回收类及其GroovyClassLoader
+        InvokerHelper.removeClass(compiled.scriptClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Script> parse(String source) {
+        // 每个脚本使用独立的GroovyClassLoader，避免脚本之间类名冲突
+        try (GroovyClassLoader classLoader = new GroovyClassLoader(GroovyFunction.class.getClassLoader())) {
+            return (Class<? extends Script>) classLoader.parseClass(source);
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static Method findFunction(Class<? extends Script> scriptClass, String functionName) {
+        for (Method method : scriptClass.getDeclaredMethods()) {
+            if (method.getName().equals(functionName) && method.getParameterCount() == 0) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("Groovy script does not define a no-arg method named " + functionName);
+    }
+
+    /**
+     * @param args 与编译时的parameterNames按顺序对应
+     */
+    public Object invoke(Object... args) throws Exception {
+        Map<String, Object> variables = new HashMap<>((int) (parameterNames.length / 0.75f) + 1);
+        for (int i = 0; i < parameterNames.length; ++i) {
+            variables.put(parameterNames[i], i < args.length ? args[i] : null);
+        }
+        try {
+            Object script = (Object) constructor.invokeExact(new Binding(variables));
+            return (Object) function.invokeExact(script);
+        } catch (Exception | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException(throwable);
+        }
+    }
+
+    private static final class CompiledScript {
+
+        private final Class<? extends Script> scriptClass;
+
+        private int references;
+
+        private CompiledScript(Class<? extends Script> scriptClass) {
+            this.scriptClass = scriptClass;
+        }
+
+    }
+
+}
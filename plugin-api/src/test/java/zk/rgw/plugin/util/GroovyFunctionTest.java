@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GroovyFunctionTest {
+
+    private static final String ECHO_SCRIPT = """
+            def echo() {
+                Thread.yield()
+                return name + ":" + value
+            }
+            """;
+
+    @Test
+    void testInvoke() throws Exception {
+        GroovyFunction function = GroovyFunction.compile(ECHO_SCRIPT, "echo", "name", "value");
+        Assertions.assertEquals("alice:1", function.invoke("alice", 1));
+        Assertions.assertEquals("bob:2", function.invoke("bob", 2));
+    }
+
+    @Test
+    void testNoLeakageBetweenConcurrentCalls() throws Exception {
+        GroovyFunction function = GroovyFunction.compile(ECHO_SCRIPT, "echo", "name", "value");
+        int threads = 8;
+        int loops = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; ++t) {
+                String name = "thread-" + t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int mismatch = 0;
+                    for (int i = 0; i < loops; ++i) {
+                        if (!(name + ":" + i).equals(function.invoke(name, i))) {
+                            ++mismatch;
+                        }
+                    }
+                    return mismatch;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                Assertions.assertEquals(0, future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCompiledOnce() throws Exception {
+        GroovyFunction first = GroovyFunction.compile(ECHO_SCRIPT, "echo", "name", "value");
+        GroovyFunction second = GroovyFunction.compile(ECHO_SCRIPT, "echo", "value", "name");
+        Assertions.assertEquals("a:b", first.invoke("a", "b"));
+        Assertions.assertEquals("b:a", second.invoke("a", "b"));
+    }
+
+    @Test
+    void testReleasedWhenUnused() throws Exception {
+        String source = "def unused() { " + System.nanoTime() + " }";
+        GroovyFunction first = GroovyFunction.compile(source, "unused");
+        GroovyFunction second = GroovyFunction.compile(source, "unused");
+        Assertions.assertTrue(GroovyFunction.isCached(source));
+        Assertions.assertEquals(first.invoke(), second.invoke());
+
+        // 重复释放只计一次，second仍然持有编译结果
+        first.release();
+        first.release();
+        Assertions.assertTrue(GroovyFunction.isCached(source));
+        Assertions.assertNotNull(second.invoke());
+
+        second.release();
+        Assertions.assertFalse(GroovyFunction.isCached(source));
+    }
+
+    @Test
+    void testReleasedWhenCollected() throws Exception {
+        String source = "def collected() { " + System.nanoTime() + " }";
+        // 没有显式释放的实例在被回收后释放
+        Assertions.assertNotNull(GroovyFunction.compile(source, "collected").invoke());
+        for (int i = 0; i < 50 && GroovyFunction.isCached(source); ++i) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        Assertions.assertFalse(GroovyFunction.isCached(source));
+    }
+
+    @Test
+    void testCompileFail() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GroovyFunction.compile("def echo( {", "echo"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GroovyFunction.compile("def other() { 1 }", "echo"));
+    }
+
+}
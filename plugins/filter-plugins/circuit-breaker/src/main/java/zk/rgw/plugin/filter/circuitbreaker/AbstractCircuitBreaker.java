@@ -24,26 +24,45 @@ public abstract class AbstractCircuitBreaker implements CircuitBreaker {
 
     @Override
     public <T> Mono<T> run(Mono<T> toRun, Function<Throwable, Mono<T>> fallback) {
-        return getState().flatMap(state -> {
-            if (CircuitBreakerState.CLOSED == state) {
-                return toRun;
-            } else if (CircuitBreakerState.OPEN == state) {
-                return Mono.error(new CircuitBreakerException(state));
-            } else {
-                return toRun.onErrorMap(CircuitBreakerException.class::isInstance, throwable -> new CircuitBreakerException(state));
-            }
-        }).doOnSuccess(ignore -> incrementSuccessCount()).doOnError(CircuitBreakerException.class, exception -> {
-            CircuitBreakerState state = exception.getCircuitBreakerState();
-            if (state == CircuitBreakerState.CLOSED || state == CircuitBreakerState.HALF_OPEN) {
-                incrementErrorCount();
+        return Mono.defer(() -> {
+            CircuitBreakerState state = acquirePermission();
+            if (CircuitBreakerState.OPEN == state) {
+                return Mono.<T>error(new CircuitBreakerException(state));
             }
+            long startNanos = System.nanoTime();
+            Mono<T> mono = CircuitBreakerState.CLOSED == state ? toRun
+                    : toRun.onErrorMap(CircuitBreakerException.class::isInstance, throwable -> new CircuitBreakerException(state));
+            return mono.doOnSuccess(ignore -> report(state, startNanos, false))
+                    .doOnError(throwable -> {
+                        if (throwable instanceof CircuitBreakerException) {
+                            report(state, startNanos, true);
+                        } else {
+                            onIgnored(state);
+                        }
+                    })
+                    .doOnCancel(() -> onIgnored(state));
         }).onErrorResume(fallback);
     }
 
-    protected abstract Mono<CircuitBreakerState> getState();
+    private void report(CircuitBreakerState state, long startNanos, boolean failure) {
+        long nowNanos = System.nanoTime();
+        onResult(state, nowNanos - startNanos, nowNanos, failure);
+    }
+
+    /**
+     * @return 本次调用时熔断器的状态，OPEN表示不允许调用；HALF_OPEN表示获得了一个试探调用的许可
+     */
+    protected abstract CircuitBreakerState acquirePermission();
 
-    protected abstract void incrementErrorCount();
+    /**
+     * @param state 获得许可时的状态
+     * @param failure 上游返回了需要计入熔断的状态码
+     */
+    protected abstract void onResult(CircuitBreakerState state, long durationNanos, long nowNanos, boolean failure);
 
-    protected abstract void incrementSuccessCount();
+    /**
+     * 调用被取消或者出现了与熔断无关的异常，不计入统计，但是要归还半开状态下的许可
+     */
+    protected abstract void onIgnored(CircuitBreakerState state);
 
 }
@@ -38,6 +38,16 @@ public class CircuitBreakerConf {
      */
     private int slidingWindowSize = 100;
 
+    /**
+     * 耗时达到此值的调用被认为是慢调用，单位为毫秒，0表示不统计慢调用
+     */
+    private long slowCallDurationThreshold = 0;
+
+    /**
+     * 触发熔断的慢调用比例，单位为百分比
+     */
+    private int slowCallRateThreshold = 50;
+
     /**
      * 触发熔断的最小调用次数
      */
@@ -49,7 +59,7 @@ public class CircuitBreakerConf {
     private int openStateDuration = 60;
 
     /**
-     * 半开状态下，关闭熔断需要连续成功的次数
+     * 半开状态下允许的试探调用数，也是关闭熔断需要连续成功的次数
      */
     private int halfOpenStateCalls = 20;
 
@@ -16,180 +16,162 @@
 
 package zk.rgw.plugin.filter.circuitbreaker;
 
-import lombok.Getter;
-import reactor.core.publisher.Mono;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 无锁的熔断器实现。
+ * <p>
+ * 状态保存在一个不可变的StateHolder中，状态变化时用CAS替换整个StateHolder，CAS失败说明其他线程已经完成了同样的状态变化。
+ * 关闭状态下获取许可只读取一次volatile引用；调用结果记录在按线程分条带的StripedBucketRing中，每次失败都汇总判断是否需要熔断，成功的调用则限制汇总的频率。
+ * 半开状态下的试探许可和成功次数都是原子计数器。
+ */
 public class CircuitBreakerImpl extends AbstractCircuitBreaker {
 
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 成功的调用(包括慢调用)触发汇总判断的最小间隔，失败的调用不受限制，避免漏掉恰好达到失败阈值的那一次
+     */
+    private static final long EVALUATION_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final CircuitBreakerConf conf;
 
-    private final CircleArray circleArray;
+    private final long openStateNanos;
+
+    private final long halfOpenStateNanos;
 
-    private long stateChangeTime;
+    private final long slowCallDurationNanos;
 
-    private long updateTime;
+    private final StripedBucketRing bucketRing;
 
-    private CircuitBreakerState currentState;
+    private final AtomicReference<StateHolder> current;
+
+    private final AtomicLong lastEvaluationNanos;
 
     public CircuitBreakerImpl(CircuitBreakerConf circuitBreakerConf) {
         this.conf = circuitBreakerConf;
-        this.currentState = CircuitBreakerState.CLOSED;
-        this.circleArray = new CircleArray(conf.getSlidingWindowSize());
-        this.stateChangeTime = this.updateTime = currentTimeInSecond();
+        this.openStateNanos = TimeUnit.SECONDS.toNanos(conf.getOpenStateDuration());
+        this.halfOpenStateNanos = TimeUnit.SECONDS.toNanos(conf.getHalfOpenStateDuration());
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(conf.getSlowCallDurationThreshold());
+        this.bucketRing = new StripedBucketRing(conf.getSlidingWindowSize());
+        long now = System.nanoTime();
+        this.current = new AtomicReference<>(new StateHolder(CircuitBreakerState.CLOSED, now, 0));
+        this.lastEvaluationNanos = new AtomicLong(now - EVALUATION_INTERVAL_NANOS);
     }
 
     @Override
-    protected Mono<CircuitBreakerState> getState() {
-        return Mono.just(computeState());
-    }
-
-    private synchronized CircuitBreakerState computeState() {
-        if (CircuitBreakerState.CLOSED == currentState) {
-            return currentState;
+    protected CircuitBreakerState acquirePermission() {
+        StateHolder holder = current.get();
+        if (CircuitBreakerState.CLOSED == holder.state) {
+            return CircuitBreakerState.CLOSED;
         }
-        long curTime = System.currentTimeMillis() / 1000;
-        long durationPast = curTime - stateChangeTime;
-        if (CircuitBreakerState.OPEN == currentState) {
-            if (durationPast > conf.getOpenStateDuration() + conf.getHalfOpenStateDuration()) {
-                // 当前虽然记录的是OPEN状态，但是在最后一个更新计数后，一直没有请求到来，下一次来获取状态的时候，OPEN状态最长时间
-                // 已经过去，甚至HALF_OPEN最长时间也已经过去，此时状态实际应该是CLOSED了，应该更新
-                setStateClosed(stateChangeTime + conf.getOpenStateDuration() + conf.getHalfOpenStateDuration());
-            } else if (durationPast > conf.getOpenStateDuration()) {
-                // 情况和前一个类似，但是HALF_OPEN最长时间还没有过去，应该是HALF_OPEN
-                setStateHalfOpen(stateChangeTime + conf.getOpenStateDuration());
+        holder = refresh(holder, System.nanoTime());
+        if (CircuitBreakerState.HALF_OPEN == holder.state) {
+            if (holder.permits.getAndDecrement() > 0) {
+                return CircuitBreakerState.HALF_OPEN;
             }
-        } else if (durationPast > conf.getHalfOpenStateDuration()) {
-            // 和另一种场景类似，在HALF_OPEN状态下持续了空闲了足够的时间，直接变为CLOSED状态
-            setStateClosed(stateChangeTime + conf.getHalfOpenStateDuration());
+            holder.permits.incrementAndGet();
+            return CircuitBreakerState.OPEN;
         }
-        return currentState;
+        return holder.state;
     }
 
     @Override
-    protected synchronized void incrementErrorCount() {
-        tryMoveWindow();
-        circleArray.errorIncrease();
-        checkIfShouldChangeState();
-    }
-
-    @Override
-    protected synchronized void incrementSuccessCount() {
-        tryMoveWindow();
-        circleArray.successIncrease();
-        checkIfShouldChangeState();
-    }
-
-    private void checkIfShouldChangeState() {
-        if (CircuitBreakerState.CLOSED == currentState) {
-            if (circleArray.getErrorTotal() >= conf.getFailureCountThreshold() && circleArray.getTotal() >= conf.getMinimumCalls()) {
-                setStateOpen();
+    protected void onResult(CircuitBreakerState state, long durationNanos, long nowNanos, boolean failure) {
+        boolean slow = slowCallDurationNanos > 0 && durationNanos >= slowCallDurationNanos;
+        StateHolder holder = current.get();
+        if (CircuitBreakerState.HALF_OPEN == holder.state) {
+            if (CircuitBreakerState.HALF_OPEN != state) {
+                return;
             }
-        } else if (CircuitBreakerState.HALF_OPEN == currentState) {
-            if (circleArray.getErrorTotal() > 0) {
-                setStateOpen();
-            } else if (circleArray.getSuccessTotal() >= conf.getHalfOpenStateCalls()) {
-                setStateClosed(currentTimeInSecond());
+            if (failure || slow) {
+                transit(holder, CircuitBreakerState.OPEN, nowNanos);
+            } else if (holder.successes.incrementAndGet() >= conf.getHalfOpenStateCalls()) {
+                transit(holder, CircuitBreakerState.CLOSED, nowNanos);
+            }
+        } else if (CircuitBreakerState.CLOSED == holder.state) {
+            long second = Math.floorDiv(nowNanos, NANOS_PER_SECOND);
+            bucketRing.record(second, failure, slow);
+            if ((failure || shouldEvaluate(nowNanos)) && shouldTrip(bucketRing.aggregate(second, holder.sinceSecond))) {
+                transit(holder, CircuitBreakerState.OPEN, nowNanos);
             }
         }
     }
 
-    private void setStateOpen() {
-        currentState = CircuitBreakerState.OPEN;
-        stateChangeTime = currentTimeInSecond();
-        clear();
+    @Override
+    protected void onIgnored(CircuitBreakerState state) {
+        StateHolder holder = current.get();
+        if (CircuitBreakerState.HALF_OPEN == state && CircuitBreakerState.HALF_OPEN == holder.state) {
+            holder.permits.incrementAndGet();
+        }
     }
 
-    private void setStateClosed(long time) {
-        currentState = CircuitBreakerState.CLOSED;
-        stateChangeTime = time;
-        clear();
+    CircuitBreakerState currentState() {
+        return refresh(current.get(), System.nanoTime()).state;
     }
 
-    private void setStateHalfOpen(long time) {
-        currentState = CircuitBreakerState.HALF_OPEN;
-        stateChangeTime = time;
-        clear();
+    private boolean shouldEvaluate(long nowNanos) {
+        long last = lastEvaluationNanos.get();
+        return nowNanos - last >= EVALUATION_INTERVAL_NANOS && lastEvaluationNanos.compareAndSet(last, nowNanos);
     }
 
-    private void tryMoveWindow() {
-        long currentTime = currentTimeInSecond();
-        if (updateTime != currentTime) {
-            circleArray.moveWindow((int) (currentTime - updateTime));
-            updateTime = currentTime;
+    private boolean shouldTrip(StripedBucketRing.WindowStats stats) {
+        if (stats.calls() < conf.getMinimumCalls()) {
+            return false;
+        }
+        if (stats.failures() >= conf.getFailureCountThreshold()) {
+            return true;
         }
+        return slowCallDurationNanos > 0 && stats.slowCalls() * 100 >= stats.calls() * conf.getSlowCallRateThreshold();
     }
 
-    private void clear() {
-        circleArray.clear();
-        this.stateChangeTime = this.updateTime = currentTimeInSecond();
+    /**
+     * 按时间推进状态：打开状态持续足够久后进入半开状态，半开状态持续足够久没有失败则关闭。
+     * 如果一直没有请求，可能一次跨过多个状态。
+     */
+    private StateHolder refresh(StateHolder holder, long nowNanos) {
+        long elapsed = nowNanos - holder.changeNanos;
+        if (CircuitBreakerState.OPEN == holder.state) {
+            if (elapsed > openStateNanos + halfOpenStateNanos) {
+                return transit(holder, CircuitBreakerState.CLOSED, holder.changeNanos + openStateNanos + halfOpenStateNanos);
+            } else if (elapsed > openStateNanos) {
+                return transit(holder, CircuitBreakerState.HALF_OPEN, holder.changeNanos + openStateNanos);
+            }
+        } else if (CircuitBreakerState.HALF_OPEN == holder.state && elapsed > halfOpenStateNanos) {
+            return transit(holder, CircuitBreakerState.CLOSED, holder.changeNanos + halfOpenStateNanos);
+        }
+        return holder;
     }
 
-    private static long currentTimeInSecond() {
-        return System.currentTimeMillis() / 1000;
+    private StateHolder transit(StateHolder expected, CircuitBreakerState state, long changeNanos) {
+        int permits = CircuitBreakerState.HALF_OPEN == state ? conf.getHalfOpenStateCalls() : 0;
+        StateHolder next = new StateHolder(state, changeNanos, permits);
+        return current.compareAndSet(expected, next) ? next : current.get();
     }
 
-    private static class CircleArray {
-
-        private final int size;
+    private static final class StateHolder {
 
-        private final int[] successArray;
+        private final CircuitBreakerState state;
 
-        private final int[] errorArray;
+        private final long changeNanos;
 
-        @Getter
-        private int successTotal;
+        /**
+         * 只统计进入当前状态之后的调用结果
+         */
+        private final long sinceSecond;
 
-        @Getter
-        private int errorTotal;
+        private final AtomicInteger permits;
 
-        private int headIndex;
-
-        private CircleArray(int size) {
-            this.size = size;
-            this.successArray = new int[size];
-            this.errorArray = new int[size];
-            this.headIndex = 0;
-            this.successTotal = 0;
-            this.errorTotal = 0;
-        }
+        private final AtomicInteger successes = new AtomicInteger(0);
 
-        private void moveWindowByOne() {
-            this.headIndex = (headIndex + 1) % size;
-            successTotal -= successArray[headIndex];
-            successArray[headIndex] = 0;
-            errorTotal -= errorArray[headIndex];
-            errorArray[headIndex] = 0;
-        }
-
-        private void moveWindow(int step) {
-            step = Math.max(step, size);
-            for (int i = 0; i < step; ++i) {
-                moveWindowByOne();
-            }
-        }
-
-        private void successIncrease() {
-            ++this.successArray[headIndex];
-            ++this.successTotal;
-        }
-
-        private void errorIncrease() {
-            ++this.errorArray[headIndex];
-            ++this.errorTotal;
-        }
-
-        private int getTotal() {
-            return successTotal + errorTotal;
-        }
-
-        public void clear() {
-            // 这个方法应该可以是private的，但是pmd有误报，因此暂先用public
-            headIndex = 0;
-            successTotal = 0;
-            errorTotal = 0;
-            for (int i = 0; i < size; ++i) {
-                successArray[i] = errorArray[i] = 0;
-            }
+        private StateHolder(CircuitBreakerState state, long changeNanos, int permits) {
+            this.state = state;
+            this.changeNanos = changeNanos;
+            this.sinceSecond = Math.floorDiv(changeNanos, NANOS_PER_SECOND);
+            this.permits = new AtomicInteger(permits);
         }
 
     }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.circuitbreaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按秒分桶的环形计数器，并且按线程分成多个条带，不同的线程（一般是不同的事件循环线程）写不同的条带，避免争用同一个缓存行。
+ * 只在需要判断是否触发熔断时才汇总所有条带，汇总的开销与条带数 * 桶数成正比。
+ * <p>
+ * 桶过期时由第一个写入新时间的线程清零，与同一条带上的并发写入之间可能丢失极少量计数，对熔断判断没有影响。
+ */
+final class StripedBucketRing {
+
+    private static final int MAX_STRIPES = 64;
+
+    private final int size;
+
+    private final Stripe[] stripes;
+
+    StripedBucketRing(int size) {
+        this.size = size;
+        int stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            stripes[i] = new Stripe(size);
+        }
+    }
+
+    void record(long second, boolean failure, boolean slow) {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        int index = (int) Math.floorMod(second, (long) size);
+        long epoch = stripe.epochs.get(index);
+        if (epoch < second && stripe.epochs.compareAndSet(index, epoch, second)) {
+            stripe.calls.set(index, 0);
+            stripe.failures.set(index, 0);
+            stripe.slowCalls.set(index, 0);
+        }
+        stripe.calls.incrementAndGet(index);
+        if (failure) {
+            stripe.failures.incrementAndGet(index);
+        }
+        if (slow) {
+            stripe.slowCalls.incrementAndGet(index);
+        }
+    }
+
+    /**
+     * @param sinceSecond 只统计这个时间及之后的桶，用于忽略熔断器进入当前状态之前的记录
+     */
+    WindowStats aggregate(long second, long sinceSecond) {
+        long from = Math.max(second - size + 1, sinceSecond);
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < size; ++i) {
+                long epoch = stripe.epochs.get(i);
+                if (epoch >= from && epoch <= second) {
+                    calls += stripe.calls.get(i);
+                    failures += stripe.failures.get(i);
+                    slowCalls += stripe.slowCalls.get(i);
+                }
+            }
+        }
+        return new WindowStats(calls, failures, slowCalls);
+    }
+
+    record WindowStats(long calls, long failures, long slowCalls) {
+    }
+
+    private static final class Stripe {
+
+        private final AtomicLongArray epochs;
+
+        private final AtomicLongArray calls;
+
+        private final AtomicLongArray failures;
+
+        private final AtomicLongArray slowCalls;
+
+        private Stripe(int size) {
+            this.epochs = new AtomicLongArray(size);
+            this.calls = new AtomicLongArray(size);
+            this.failures = new AtomicLongArray(size);
+            this.slowCalls = new AtomicLongArray(size);
+            for (int i = 0; i < size; ++i) {
+                epochs.set(i, Long.MIN_VALUE);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.circuitbreaker;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class CircuitBreakerImplTest {
+
+    private static CircuitBreakerConf conf() {
+        CircuitBreakerConf conf = new CircuitBreakerConf();
+        conf.setFailureCodes(Set.of(500));
+        conf.setFailureCountThreshold(5);
+        conf.setMinimumCalls(10);
+        conf.setSlidingWindowSize(10);
+        conf.setOpenStateDuration(1);
+        conf.setHalfOpenStateCalls(2);
+        conf.setHalfOpenStateDuration(10);
+        return conf;
+    }
+
+    private static String call(CircuitBreaker circuitBreaker, Mono<String> toRun) {
+        return circuitBreaker.run(toRun, throwable -> {
+            if (throwable instanceof CircuitBreakerException exception) {
+                return Mono.just(exception.getCircuitBreakerState().name());
+            }
+            return Mono.error(throwable);
+        }).block();
+    }
+
+    private static Mono<String> failure() {
+        return Mono.error(new CircuitBreakerException(CircuitBreakerState.CLOSED));
+    }
+
+    @Test
+    void testTripOnFailureCount() {
+        CircuitBreakerImpl circuitBreaker = new CircuitBreakerImpl(conf());
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertEquals("ok", call(circuitBreaker, Mono.just("ok")));
+        }
+        // 失败的调用每次都汇总判断，连续的失败不会因为汇总间隔被漏掉
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertEquals("CLOSED", call(circuitBreaker, failure()));
+        }
+        Assertions.assertEquals(CircuitBreakerState.OPEN, circuitBreaker.currentState());
+        Assertions.assertEquals("OPEN", call(circuitBreaker, Mono.just("ok")));
+    }
+
+    @Test
+    void testTripOnSuccessReachingMinimumCalls() {
+        CircuitBreakerImpl circuitBreaker = new CircuitBreakerImpl(conf());
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; ++i) {
+            circuitBreaker.onResult(CircuitBreakerState.CLOSED, 0, now, true);
+        }
+        // 失败数已经达到阈值，但调用数还不够
+        Assertions.assertEquals(CircuitBreakerState.CLOSED, circuitBreaker.currentState());
+        for (int i = 0; i < 5; ++i) {
+            now += TimeUnit.MILLISECONDS.toNanos(2);
+            circuitBreaker.onResult(CircuitBreakerState.CLOSED, 0, now, false);
+        }
+        Assertions.assertEquals(CircuitBreakerState.OPEN, circuitBreaker.currentState());
+    }
+
+    @Test
+    void testTripOnSlowCallRate() throws InterruptedException {
+        CircuitBreakerConf conf = conf();
+        conf.setFailureCountThreshold(100);
+        conf.setSlowCallDurationThreshold(20);
+        conf.setSlowCallRateThreshold(50);
+        CircuitBreakerImpl circuitBreaker = new CircuitBreakerImpl(conf);
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertEquals("ok", call(circuitBreaker, Mono.just("ok")));
+        }
+        for (int i = 0; i < 5; ++i) {
+            Assertions.assertEquals("slow", call(circuitBreaker, Mono.just("slow").delayElement(Duration.ofMillis(30))));
+        }
+        Assertions.assertEquals(CircuitBreakerState.OPEN, circuitBreaker.currentState());
+    }
+
+    @Test
+    void testHalfOpenPermits() throws InterruptedException {
+        CircuitBreakerImpl circuitBreaker = new CircuitBreakerImpl(conf());
+        for (int i = 0; i < 10; ++i) {
+            call(circuitBreaker, failure());
+        }
+        Assertions.assertEquals(CircuitBreakerState.OPEN, circuitBreaker.currentState());
+
+        Thread.sleep(1100);
+        Assertions.assertEquals(CircuitBreakerState.HALF_OPEN, circuitBreaker.acquirePermission());
+        Assertions.assertEquals(CircuitBreakerState.HALF_OPEN, circuitBreaker.acquirePermission());
+        // 试探许可已经用完
+        Assertions.assertEquals(CircuitBreakerState.OPEN, circuitBreaker.acquirePermission());
+
+        // 归还一个许可后可以再次获取
+        circuitBreaker.onIgnored(CircuitBreakerState.HALF_OPEN);
+        Assertions.assertEquals(CircuitBreakerState.HALF_OPEN, circuitBreaker.acquirePermission());
+
+        long now = System.nanoTime();
+        circuitBreaker.onResult(CircuitBreakerState.HALF_OPEN, 0, now, false);
+        circuitBreaker.onResult(CircuitBreakerState.HALF_OPEN, 0, now, false);
+        Assertions.assertEquals(CircuitBreakerState.CLOSED, circuitBreaker.currentState());
+    }
+
+}
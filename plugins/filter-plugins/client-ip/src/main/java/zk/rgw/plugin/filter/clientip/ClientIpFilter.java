@@ -23,13 +23,15 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import reactor.core.publisher.Mono;
 
 import zk.rgw.plugin.api.Exchange;
-import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
+import zk.rgw.plugin.api.filter.SyncFilter;
 import zk.rgw.plugin.exception.PluginConfException;
 import zk.rgw.plugin.util.ExchangeUtil;
 import zk.rgw.plugin.util.ResponseUtil;
 
-public class ClientIpFilter implements JsonConfFilterPlugin {
+@Stateless
+public class ClientIpFilter implements JsonConfFilterPlugin, SyncFilter {
 
     private static final String TAG_PASS_WHITE_LIST = "IP过滤-白名单-通过";
     private static final String TAG_PASS_BLACK_LIST = "IP过滤-黑名单-通过";
@@ -50,12 +52,12 @@ public class ClientIpFilter implements JsonConfFilterPlugin {
     }
 
     @Override
-    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
+    public Mono<Void> filterSync(Exchange exchange) {
         String clientIp = Objects.requireNonNull(exchange.getRequest().remoteAddress()).getAddress().getHostAddress();
         if (ipFilterRule.acceptIp(clientIp)) {
             String tag = ipFilterRule.getIpFilterRuleType() == IpFilterRuleType.ACCEPT ? TAG_PASS_WHITE_LIST : TAG_PASS_BLACK_LIST;
             ExchangeUtil.addAuditTag(exchange, tag);
-            return chain.filter(exchange);
+            return null;
         } else {
             String tag = ipFilterRule.getIpFilterRuleType() == IpFilterRuleType.ACCEPT ? TAG_FAIL_WHITE_LIST : TAG_FAIL_BLACK_LIST;
             ExchangeUtil.addAuditTag(exchange, tag);
@@ -31,8 +31,10 @@ import zk.rgw.common.util.ObjectUtil;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.util.ResponseUtil;
 
+@Stateless
 public class CorsFilter implements JsonConfFilterPlugin {
 
     private static final List<String> REQUIRED_VARY_VALUES = List.of(
@@ -31,10 +31,12 @@ import reactor.netty.http.server.HttpServerResponse;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.util.ExchangeUtil;
 
 @Getter
 @Setter
+@Stateless
 public class HttpMockFilter implements JsonConfFilterPlugin {
 
     private static final String TAG = "HTTP-MOCK";
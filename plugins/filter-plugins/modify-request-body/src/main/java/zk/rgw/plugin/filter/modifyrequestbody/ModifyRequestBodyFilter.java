@@ -19,11 +19,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -41,24 +36,29 @@ import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.HttpServerRequestDecorator;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.exception.PluginConfException;
 import zk.rgw.plugin.util.ExchangeUtil;
+import zk.rgw.plugin.util.GroovyFunction;
 
 @Slf4j
+@Stateless
 public class ModifyRequestBodyFilter implements JsonConfFilterPlugin {
 
     private static final String TAG = "修改请求体";
 
-    private static final String ENGINE_NAME = "groovy";
-
     private static final String FUNC_NAME = "convert";
 
+    private static final String VAR_REQUEST_HEADERS = "requestHeaders";
+
+    private static final String VAR_RAW_REQUEST_BODY = "rawRequestBody";
+
     @Getter
     @Setter
     private String convertFuncDef;
 
     @JsonIgnore
-    private ScriptEngine scriptEngine;
+    private GroovyFunction convertFunction;
 
     @Override
     public Mono<Void> filter(Exchange exchange, FilterChain chain) {
@@ -72,10 +72,9 @@ public class ModifyRequestBodyFilter implements JsonConfFilterPlugin {
 
     @Override
     public void afterConfigured() throws PluginConfException {
-        scriptEngine = new ScriptEngineManager().getEngineByName(ENGINE_NAME);
         try {
-            scriptEngine.eval(convertFuncDef);
-        } catch (ScriptException exception) {
+            convertFunction = GroovyFunction.compile(convertFuncDef, FUNC_NAME, VAR_REQUEST_HEADERS, VAR_RAW_REQUEST_BODY);
+        } catch (IllegalArgumentException exception) {
             String msg = "请求体修改插件配置失败：解析groovy方法定义失败";
             log.error("{}", msg, exception);
             throw new PluginConfException(msg);
@@ -108,14 +107,11 @@ public class ModifyRequestBodyFilter implements JsonConfFilterPlugin {
         private byte[] convert(byte[] rawBodyData) throws RgwRuntimeException {
             Map<String, String> requestHeaders = new HashMap<>();
             requestHeaders().forEach(entry -> requestHeaders.put(entry.getKey(), entry.getValue()));
-            scriptEngine.put("requestHeaders", requestHeaders);
-
-            scriptEngine.put("rawRequestBody", rawBodyData);
 
             Object result;
 
             try {
-                result = ((Invocable) scriptEngine).invokeFunction(FUNC_NAME);
+                result = convertFunction.invoke(requestHeaders, rawBodyData);
             } catch (Exception exception) {
                 String msg = "请求体修改插件异常：执行convert方法异常";
                 log.error("{}", msg, exception);
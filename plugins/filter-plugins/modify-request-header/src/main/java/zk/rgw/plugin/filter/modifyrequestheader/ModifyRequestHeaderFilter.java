@@ -27,8 +27,10 @@ import reactor.core.publisher.Mono;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.util.ExchangeUtil;
 
+@Stateless
 public class ModifyRequestHeaderFilter implements JsonConfFilterPlugin {
 
     private static final String TAG = "修改请求头";
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.modifyresponsebody;
+
+public enum BodyTransformMode {
+    /**
+     * 聚合完整的响应体后调用一次convert方法
+     */
+    AGGREGATE,
+    /**
+     * 每收到一块响应体就调用一次convertChunk方法，不聚合响应体
+     */
+    STREAMING
+}
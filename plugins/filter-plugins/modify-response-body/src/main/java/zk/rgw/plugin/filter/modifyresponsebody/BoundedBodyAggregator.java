@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.modifyresponsebody;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 聚合响应体，已缓存的字节数超过maxBytes时放弃聚合，把已缓存的和之后收到的数据原样透传。
+ * 每个响应一个实例，由响应体的Flux串行驱动，非线程安全。
+ */
+final class BoundedBodyAggregator {
+
+    private final long maxBytes;
+
+    private final List<ByteBuf> chunks = new ArrayList<>();
+
+    private long size;
+
+    private boolean passThrough;
+
+    /**
+     * @param maxBytes 小于等于0表示不限制
+     */
+    BoundedBodyAggregator(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 接管chunk的引用计数
+     *
+     * @return 需要立即向下游发送的数据，聚合过程中为空
+     */
+    List<ByteBuf> offer(ByteBuf chunk) {
+        if (passThrough) {
+            return List.of(chunk);
+        }
+        chunks.add(chunk);
+        size += chunk.readableBytes();
+        if (maxBytes > 0 && size > maxBytes) {
+            passThrough = true;
+            List<ByteBuf> buffered = new ArrayList<>(chunks);
+            chunks.clear();
+            return buffered;
+        }
+        return List.of();
+    }
+
+    boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * 拷贝出聚合的完整内容，并释放缓存的ByteBuf
+     */
+    byte[] drain() {
+        byte[] bytes = new byte[(int) size];
+        int offset = 0;
+        for (ByteBuf chunk : chunks) {
+            int length = chunk.readableBytes();
+            chunk.getBytes(chunk.readerIndex(), bytes, offset, length);
+            offset += length;
+        }
+        release();
+        return bytes;
+    }
+
+    void release() {
+        chunks.forEach(ByteBuf::release);
+        chunks.clear();
+    }
+
+}
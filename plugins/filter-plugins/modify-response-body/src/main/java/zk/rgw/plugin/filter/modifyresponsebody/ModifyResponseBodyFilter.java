@@ -21,20 +21,17 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.function.Predicate;
 
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
-
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.ByteBufFlux;
 import reactor.netty.NettyOutbound;
@@ -48,24 +45,48 @@ import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.HttpServerResponseDecorator;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.exception.PluginConfException;
 import zk.rgw.plugin.util.ExchangeUtil;
+import zk.rgw.plugin.util.GroovyFunction;
 
 @Slf4j
+@Stateless
 public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
 
     private static final String TAG = "修改响应体";
 
-    private static final String ENGINE_NAME = "groovy";
-
     private static final String FUNC_NAME = "convert";
 
+    private static final String VAR_RESPONSE_HEADERS = "responseHeaders";
+
+    private static final String VAR_RAW_RESPONSE_BODY = "rawResponseBody";
+
+    private static final String CHUNK_FUNC_NAME = "convertChunk";
+
+    private static final String VAR_CHUNK = "chunk";
+
+    private static final String VAR_LAST = "last";
+
+    private static final String VAR_CONTEXT = "context";
+
     @Getter
     @Setter
     private String convertFuncDef;
 
+    @Getter
+    @Setter
+    private BodyTransformMode mode = BodyTransformMode.AGGREGATE;
+
+    /**
+     * 聚合模式下最多缓存的响应体字节数，超过后放弃修改，原样透传响应体。小于等于0表示不限制
+     */
+    @Getter
+    @Setter
+    private long maxBufferedBytes = 10L * 1024 * 1024;
+
     @JsonIgnore
-    private ScriptEngine scriptEngine;
+    private GroovyFunction convertFunction;
 
     @Override
     public Mono<Void> filter(Exchange exchange, FilterChain chain) {
@@ -76,10 +97,13 @@ public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
 
     @Override
     public void afterConfigured() throws PluginConfException {
-        scriptEngine = new ScriptEngineManager().getEngineByName(ENGINE_NAME);
         try {
-            scriptEngine.eval(convertFuncDef);
-        } catch (ScriptException exception) {
+            if (mode == BodyTransformMode.STREAMING) {
+                convertFunction = GroovyFunction.compile(convertFuncDef, CHUNK_FUNC_NAME, VAR_RESPONSE_HEADERS, VAR_CHUNK, VAR_LAST, VAR_CONTEXT);
+            } else {
+                convertFunction = GroovyFunction.compile(convertFuncDef, FUNC_NAME, VAR_RESPONSE_HEADERS, VAR_RAW_RESPONSE_BODY);
+            }
+        } catch (IllegalArgumentException exception) {
             String msg = "响应体修改插件配置失败：解析groovy方法定义失败";
             log.error("{}", msg, exception);
             throw new PluginConfException(msg);
@@ -97,9 +121,9 @@ public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
         @Override
         public @NonNull NettyOutbound send(@NonNull Publisher<? extends ByteBuf> dataStream) {
             if (!modified) {
-                ByteBufFlux byteBufFlux = modifyResponseBody(dataStream);
+                Publisher<ByteBuf> modifiedStream = modifyResponseBody(dataStream);
                 modified = true;
-                return super.send(byteBufFlux);
+                return super.send(modifiedStream);
             } else {
                 return super.send(dataStream);
             }
@@ -108,19 +132,78 @@ public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
         @Override
         public @NonNull NettyOutbound send(@NonNull Publisher<? extends ByteBuf> dataStream, @NonNull Predicate<ByteBuf> predicate) {
             if (!modified) {
-                ByteBufFlux byteBufFlux = modifyResponseBody(dataStream);
+                Publisher<ByteBuf> modifiedStream = modifyResponseBody(dataStream);
                 modified = true;
-                return super.send(byteBufFlux, predicate);
+                return super.send(modifiedStream, predicate);
             } else {
                 return super.send(dataStream, predicate);
             }
         }
 
-        private ByteBufFlux modifyResponseBody(Publisher<? extends ByteBuf> dataStream) {
+        private Publisher<ByteBuf> modifyResponseBody(Publisher<? extends ByteBuf> dataStream) {
+            boolean isGzip = isRawResponseBodyGzip();
+            Map<String, String> headers = new HashMap<>();
+            responseHeaders().forEach(entry -> headers.put(entry.getKey(), entry.getValue()));
+
+            if (mode == BodyTransformMode.AGGREGATE && maxBufferedBytes > 0) {
+                long contentLength = contentLength();
+                if (contentLength > maxBufferedBytes) {
+                    log.warn("响应体长度{}超过了最大缓存字节数{}，不修改响应体", contentLength, maxBufferedBytes);
+                    return ByteBufFlux.fromInbound(dataStream);
+                }
+            }
+
             responseHeaders().remove(HttpHeaderNames.CONTENT_LENGTH);
             responseHeaders().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
-            Mono<byte[]> modifiedBytesMono = ByteBufFlux.fromInbound(dataStream).retain().aggregate().asByteArray().map(this::convert);
-            return ByteBufFlux.fromInbound(modifiedBytesMono);
+
+            Flux<ByteBuf> body = ByteBufFlux.fromInbound(dataStream).retain();
+            Flux<ByteBuf> transformed = mode == BodyTransformMode.STREAMING ? streaming(body, headers, isGzip) : aggregate(body, headers, isGzip);
+            return transformed.doOnDiscard(ByteBuf.class, ByteBuf::release);
+        }
+
+        private Flux<ByteBuf> aggregate(Flux<ByteBuf> body, Map<String, String> headers, boolean isGzip) {
+            return Flux.defer(() -> {
+                BoundedBodyAggregator aggregator = new BoundedBodyAggregator(maxBufferedBytes);
+                Mono<ByteBuf> converted = Mono.fromCallable(() -> {
+                    if (aggregator.isPassThrough()) {
+                        log.warn("响应体超过了最大缓存字节数{}，不修改响应体", maxBufferedBytes);
+                        return null;
+                    }
+                    return Unpooled.wrappedBuffer(convert(headers, aggregator.drain(), isGzip));
+                });
+                return body.concatMapIterable(aggregator::offer).concatWith(converted).doFinally(ignore -> aggregator.release());
+            });
+        }
+
+        private Flux<ByteBuf> streaming(Flux<ByteBuf> body, Map<String, String> headers, boolean isGzip) {
+            return Flux.defer(() -> {
+                Map<String, Object> context = new HashMap<>();
+                StreamingBodyTransformer transformer = new StreamingBodyTransformer(
+                        (chunk, last) -> {
+                            Object result = invokeConvert(headers, chunk, last, context);
+                            return Objects.isNull(result) ? null : toBytes(result);
+                        }, isGzip
+                );
+                return body.concatMapIterable(transformer::onChunk)
+                        .concatWith(Flux.defer(() -> Flux.fromIterable(transformer.onComplete())))
+                        .doFinally(ignore -> transformer.release());
+            });
+        }
+
+        /**
+         * 没有或者无法解析Content-Length时返回-1，此时由BoundedBodyAggregator按实际缓存的字节数判断
+         */
+        private long contentLength() {
+            String contentLength = responseHeaders().get(HttpHeaderNames.CONTENT_LENGTH);
+            if (Objects.isNull(contentLength)) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException exception) {
+                log.warn("无法解析的Content-Length: {}", contentLength);
+                return -1;
+            }
         }
 
         private boolean isRawResponseBodyGzip() {
@@ -128,24 +211,23 @@ public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
             return Objects.nonNull(contentEncoding) && HttpHeaderValues.GZIP.contentEquals(contentEncoding);
         }
 
-        private byte[] convert(byte[] rawBodyData) throws RgwRuntimeException {
-            Map<String, String> headers = new HashMap<>();
-            responseHeaders().forEach(entry -> headers.put(entry.getKey(), entry.getValue()));
-            scriptEngine.put("responseHeaders", headers);
-
-            boolean isGzip = isRawResponseBodyGzip();
-            scriptEngine.put("rawResponseBody", isGzip ? GzipCompressUtil.decompress(rawBodyData) : rawBodyData);
-
-            Object result;
+        private byte[] convert(Map<String, String> headers, byte[] rawBodyData, boolean isGzip) throws RgwRuntimeException {
+            byte[] rawResponseBody = isGzip ? GzipCompressUtil.decompress(rawBodyData) : rawBodyData;
+            byte[] modifiedBytes = toBytes(invokeConvert(headers, rawResponseBody));
+            return isGzip ? GzipCompressUtil.compress(modifiedBytes) : modifiedBytes;
+        }
 
+        private Object invokeConvert(Object... args) throws RgwRuntimeException {
             try {
-                result = ((Invocable) scriptEngine).invokeFunction(FUNC_NAME);
+                return convertFunction.invoke(args);
             } catch (Exception exception) {
                 String msg = "响应体修改插件异常：执行convert方法异常";
                 log.error("{}", msg, exception);
                 throw new RgwRuntimeException(msg);
             }
+        }
 
+        private byte[] toBytes(Object result) throws RgwRuntimeException {
             byte[] modifiedBytes;
 
             if (result instanceof CharSequence charSequence) {
@@ -162,7 +244,7 @@ public class ModifyResponseBodyFilter implements JsonConfFilterPlugin {
                 }
             }
 
-            return isGzip ? GzipCompressUtil.compress(modifiedBytes) : modifiedBytes;
+            return modifiedBytes;
         }
 
     }
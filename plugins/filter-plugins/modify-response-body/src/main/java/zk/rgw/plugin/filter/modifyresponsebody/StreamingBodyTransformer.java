@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.modifyresponsebody;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+/**
+ * 流式转换响应体，每收到一块数据就调用一次ChunkConverter，不聚合完整的响应体。
+ * gzip响应体使用Netty的zlib编解码器增量解压和压缩，中间结果都在池化的ByteBuf中。
+ * 每个响应一个实例，由响应体的Flux串行驱动，非线程安全。
+ */
+final class StreamingBodyTransformer {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    @FunctionalInterface
+    interface ChunkConverter {
+
+        /**
+         * @param chunk 解压后的一块数据
+         * @param last 是否为最后一次调用，最后一次调用时chunk可能为空
+         * @return 转换后的数据，为空表示这一块不输出任何内容
+         */
+        byte[] convert(byte[] chunk, boolean last);
+
+    }
+
+    private final ChunkConverter converter;
+
+    private final EmbeddedChannel decoder;
+
+    private final EmbeddedChannel encoder;
+
+    private boolean finished;
+
+    StreamingBodyTransformer(ChunkConverter converter, boolean gzip) {
+        this.converter = converter;
+        if (gzip) {
+            this.decoder = new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
+            this.encoder = new EmbeddedChannel(ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
+        } else {
+            this.decoder = null;
+            this.encoder = null;
+        }
+    }
+
+    /**
+     * 接管chunk的引用计数
+     */
+    List<ByteBuf> onChunk(ByteBuf chunk) {
+        byte[] plain;
+        if (Objects.isNull(decoder)) {
+            try {
+                plain = ByteBufUtil.getBytes(chunk);
+            } finally {
+                chunk.release();
+            }
+        } else {
+            decoder.writeInbound(chunk);
+            plain = drainInbound();
+        }
+        return encode(converter.convert(plain, false));
+    }
+
+    List<ByteBuf> onComplete() {
+        byte[] plain = EMPTY;
+        if (Objects.nonNull(decoder)) {
+            decoder.finish();
+            plain = drainInbound();
+        }
+        List<ByteBuf> output = encode(converter.convert(plain, true));
+        if (Objects.nonNull(encoder)) {
+            encoder.finish();
+            drainOutbound(output);
+        }
+        finished = true;
+        return output;
+    }
+
+    void release() {
+        if (!finished && Objects.nonNull(decoder)) {
+            decoder.finishAndReleaseAll();
+            encoder.finishAndReleaseAll();
+        }
+        finished = true;
+    }
+
+    private byte[] drainInbound() {
+        List<ByteBuf> buffers = new ArrayList<>(2);
+        int size = 0;
+        ByteBuf buffer;
+        while (Objects.nonNull(buffer = decoder.readInbound())) {
+            buffers.add(buffer);
+            size += buffer.readableBytes();
+        }
+        if (size == 0) {
+            buffers.forEach(ByteBuf::release);
+            return EMPTY;
+        }
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (ByteBuf buf : buffers) {
+            int length = buf.readableBytes();
+            buf.readBytes(bytes, offset, length);
+            offset += length;
+            buf.release();
+        }
+        return bytes;
+    }
+
+    private List<ByteBuf> encode(byte[] bytes) {
+        if (Objects.isNull(bytes) || bytes.length == 0) {
+            return new ArrayList<>(2);
+        }
+        List<ByteBuf> output = new ArrayList<>(2);
+        if (Objects.isNull(encoder)) {
+            output.add(Unpooled.wrappedBuffer(bytes));
+        } else {
+            encoder.writeOutbound(Unpooled.wrappedBuffer(bytes));
+            drainOutbound(output);
+        }
+        return output;
+    }
+
+    private void drainOutbound(List<ByteBuf> output) {
+        ByteBuf buffer;
+        while (Objects.nonNull(buffer = encoder.readOutbound())) {
+            if (buffer.isReadable()) {
+                output.add(buffer);
+            } else {
+                buffer.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.modifyresponsebody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import zk.rgw.common.util.GzipCompressUtil;
+
+class StreamingBodyTransformerTest {
+
+    @Test
+    void testGzipRoundTrip() {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            raw.append("line-").append(i).append('\n');
+        }
+        byte[] compressed = GzipCompressUtil.compress(raw.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        StreamingBodyTransformer transformer = new StreamingBodyTransformer((chunk, last) -> {
+            chunkSizes.add(chunk.length);
+            return new String(chunk, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8);
+        }, true);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int step = 1024;
+        for (int offset = 0; offset < compressed.length; offset += step) {
+            int length = Math.min(step, compressed.length - offset);
+            transformer.onChunk(Unpooled.copiedBuffer(compressed, offset, length)).forEach(buf -> drainTo(buf, output));
+        }
+        transformer.onComplete().forEach(buf -> drainTo(buf, output));
+        transformer.release();
+
+        Assertions.assertTrue(chunkSizes.size() > 2);
+        Assertions.assertEquals(raw.toString().toUpperCase(), new String(GzipCompressUtil.decompress(output.toByteArray()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testAggregatorPassThrough() {
+        BoundedBodyAggregator aggregator = new BoundedBodyAggregator(8);
+        Assertions.assertTrue(aggregator.offer(Unpooled.copiedBuffer("12345", StandardCharsets.UTF_8)).isEmpty());
+        List<ByteBuf> flushed = aggregator.offer(Unpooled.copiedBuffer("6789", StandardCharsets.UTF_8));
+        Assertions.assertTrue(aggregator.isPassThrough());
+        Assertions.assertEquals(2, flushed.size());
+        Assertions.assertEquals(1, aggregator.offer(Unpooled.copiedBuffer("0", StandardCharsets.UTF_8)).size());
+    }
+
+    private static void drainTo(ByteBuf buf, ByteArrayOutputStream output) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        output.writeBytes(bytes);
+    }
+
+}
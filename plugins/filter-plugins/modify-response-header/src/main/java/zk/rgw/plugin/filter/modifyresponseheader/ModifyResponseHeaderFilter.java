@@ -29,8 +29,10 @@ import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.HttpServerResponseDecorator;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
+import zk.rgw.plugin.api.filter.Stateless;
 import zk.rgw.plugin.util.ExchangeUtil;
 
+@Stateless
 public class ModifyResponseHeaderFilter implements JsonConfFilterPlugin {
 
     private static final String TAG = "修改响应头";
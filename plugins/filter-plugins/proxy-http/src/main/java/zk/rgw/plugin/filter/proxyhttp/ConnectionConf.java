@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp;
+
+import lombok.Data;
+
+/**
+ * 到上游的连接池及超时配置，相同上游地址且配置相同的插件实例共用一个连接池
+ */
+@Data
+public class ConnectionConf {
+
+    /**
+     * 到上游使用的协议
+     */
+    private UpstreamProtocol protocol = UpstreamProtocol.HTTP11;
+
+    private int maxConnections = 500;
+
+    /**
+     * 等待获取连接的请求队列长度，-1表示不限制
+     */
+    private int pendingAcquireMaxCount = 1000;
+
+    private long pendingAcquireTimeoutMillis = 10000;
+
+    /**
+     * 连接最大空闲时间，0表示不限制
+     */
+    private int maxIdleTimeSeconds = 60;
+
+    /**
+     * 连接最大存活时间，0表示不限制
+     */
+    private int maxLifeTimeSeconds = 0;
+
+    /**
+     * 后台清理过期连接的间隔，0表示不在后台清理，只在获取连接时检查
+     */
+    private int evictInBackgroundSeconds = 30;
+
+    private int connectTimeoutMillis = 3000;
+
+    /**
+     * 请求发送完成后等待上游响应的最长时间，0表示不限制
+     */
+    private long responseTimeoutMillis = 0;
+
+}
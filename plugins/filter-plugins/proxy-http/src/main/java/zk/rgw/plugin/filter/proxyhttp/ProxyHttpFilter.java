@@ -20,18 +20,17 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-
-import javax.script.Invocable;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.timeout.ReadTimeoutException;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -48,7 +47,16 @@ import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
 import zk.rgw.plugin.exception.PluginConfException;
+import zk.rgw.plugin.filter.proxyhttp.lb.HealthCheckConf;
+import zk.rgw.plugin.filter.proxyhttp.lb.HealthChecker;
+import zk.rgw.plugin.filter.proxyhttp.lb.LoadBalanceConf;
+import zk.rgw.plugin.filter.proxyhttp.lb.OutlierDetectionConf;
+import zk.rgw.plugin.filter.proxyhttp.lb.Upstream;
+import zk.rgw.plugin.filter.proxyhttp.lb.UpstreamCall;
+import zk.rgw.plugin.filter.proxyhttp.lb.UpstreamConf;
+import zk.rgw.plugin.filter.proxyhttp.lb.UpstreamGroup;
 import zk.rgw.plugin.util.ExchangeUtil;
+import zk.rgw.plugin.util.GroovyFunction;
 import zk.rgw.plugin.util.ResponseUtil;
 
 @Slf4j
@@ -58,15 +66,14 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
     private static final String HTTP11_PROXY_FAIL = "Http1.1代理-失败";
     private static final String HTTP11_PROXY_TIMEOUT = "Http1.1代理-超时";
 
-    private static final String ENGINE_NAME = "groovy";
-
     private static final String FUNC_NAME = "decideUri";
 
-    private static final HttpClient HTTP_CLIENT = HttpClient.create();
-
+    /**
+     * 不为null时所有请求都使用此HttpClient，否则按上游地址使用UpstreamClients中各自独立的HttpClient
+     */
     @Getter
     @Setter
-    private HttpClient httpClient = HTTP_CLIENT;
+    private HttpClient httpClient;
 
     private final ProxyConf proxyConf = new ProxyConf();
 
@@ -74,7 +81,18 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
 
     private List<String> envNames;
 
-    private ScriptEngine scriptEngine;
+    private GroovyFunction decideUriFunction;
+
+    private UpstreamGroup upstreamGroup;
+
+    private HealthChecker healthChecker;
+
+    /**
+     * 本实例引用的上游连接池，key是上游地址，在destroy时全部释放
+     */
+    private final Map<String, UpstreamClients.Lease> leases = new ConcurrentHashMap<>(4);
+
+    private volatile boolean destroyed = false;
 
     @Override
     public void configure(String conf) throws PluginConfException {
@@ -87,6 +105,9 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
         if (proxyConf.timeout <= 0) {
             proxyConf.timeout = Integer.MAX_VALUE;
         }
+        if (Objects.isNull(proxyConf.connection)) {
+            proxyConf.connection = new ConnectionConf();
+        }
 
         if (!ObjectUtil.isEmpty(proxyConf.upstreamEndpoint)) {
             envNames = EnvNameExtractUtil.extract(proxyConf.upstreamEndpoint);
@@ -99,11 +120,15 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
                     throw new PluginConfException(message, exception);
                 }
             }
+        } else if (!ObjectUtil.isEmpty(proxyConf.upstreams)) {
+            initUpstreamGroup();
         } else if (!ObjectUtil.isEmpty(proxyConf.upstreamEndpointDecideFuncDef)) {
-            this.scriptEngine = new ScriptEngineManager().getEngineByName(ENGINE_NAME);
             try {
-                scriptEngine.eval(proxyConf.upstreamEndpointDecideFuncDef);
-            } catch (ScriptException exception) {
+                this.decideUriFunction = GroovyFunction.compile(
+                        proxyConf.upstreamEndpointDecideFuncDef, FUNC_NAME,
+                        "requestHeaders", "clientRequestUriPath", "clientRequestUriParameters", "environment"
+                );
+            } catch (IllegalArgumentException exception) {
                 String msg = "HTTP协议代理插件配置失败：解析动态设置上游uri的groovy方法定义失败";
                 log.error("{}", msg, exception);
                 throw new PluginConfException(msg, exception);
@@ -113,24 +138,132 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
         }
     }
 
+    private void initUpstreamGroup() throws PluginConfException {
+        List<Upstream> upstreamList = new ArrayList<>(proxyConf.upstreams.size());
+        for (UpstreamConf upstreamConf : proxyConf.upstreams) {
+            if (ObjectUtil.isEmpty(upstreamConf.getEndpoint())) {
+                throw new PluginConfException("upstreams中存在endpoint为空的上游");
+            }
+            try {
+                upstreamList.add(UpstreamGroup.newUpstream(upstreamConf));
+            } catch (IllegalArgumentException exception) {
+                throw new PluginConfException("Failed to parse " + upstreamConf.getEndpoint() + " to URI", exception);
+            }
+        }
+        LoadBalanceConf loadBalanceConf = Objects.requireNonNullElseGet(proxyConf.loadBalance, LoadBalanceConf::new);
+        OutlierDetectionConf outlierDetectionConf = Objects.requireNonNullElseGet(proxyConf.outlierDetection, OutlierDetectionConf::new);
+        this.upstreamGroup = new UpstreamGroup(upstreamList, loadBalanceConf, outlierDetectionConf);
+
+        HealthCheckConf healthCheckConf = proxyConf.healthCheck;
+        if (Objects.nonNull(healthCheckConf) && healthCheckConf.isEnabled()) {
+            this.healthChecker = new HealthChecker(upstreamGroup, healthCheckConf, this::httpClientFor);
+            this.healthChecker.start();
+        }
+    }
+
     @Override
-    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
-        HttpServerRequest request = exchange.getRequest();
+    public synchronized void destroy() {
+        destroyed = true;
+        if (Objects.nonNull(healthChecker)) {
+            healthChecker.stop();
+        }
+        leases.values().forEach(UpstreamClients.Lease::release);
+        leases.clear();
+        if (Objects.nonNull(decideUriFunction)) {
+            decideUriFunction.release();
+        }
+    }
 
+    @Override
+    public Mono<Void> filter(Exchange exchange, FilterChain chain) {
         // 成功的逻辑出口只有一个，失败的有多个，先假定是失败，若成功删除失败tag
         ExchangeUtil.addAuditTag(exchange, HTTP11_PROXY_FAIL);
 
+        final Upstream upstream;
         URI uriToUse;
-        try {
-            uriToUse = decideUpstreamUri(exchange);
-        } catch (RgwException rgwException) {
-            return ResponseUtil.send(exchange.getResponse(), rgwException.getMessage());
+        if (Objects.nonNull(upstreamGroup)) {
+            upstream = upstreamGroup.choose(exchange);
+            try {
+                uriToUse = Objects.nonNull(upstream.getUri()) ? upstream.getUri() : resolveUri(upstream.getEndpoint(), upstream.getEnvNames(), exchange);
+            } catch (RgwException rgwException) {
+                return ResponseUtil.send(exchange.getResponse(), rgwException.getMessage());
+            }
+        } else {
+            upstream = null;
+            try {
+                uriToUse = decideUpstreamUri(exchange);
+            } catch (RgwException rgwException) {
+                return ResponseUtil.send(exchange.getResponse(), rgwException.getMessage());
+            }
+        }
+
+        HttpClient client = httpClientFor(uriToUse);
+        Mono<String> proxied;
+        if (Objects.isNull(upstream)) {
+            proxied = proxy(exchange, client, uriToUse, null);
+        } else {
+            proxied = Mono.defer(() -> {
+                UpstreamCall call = upstreamGroup.startCall(upstream);
+                return proxy(exchange, client, uriToUse, call).doOnError(throwable -> call.onError()).doOnCancel(call::onCancel);
+            });
         }
 
-        return this.httpClient.headers(headers -> {
-            headers.add(request.requestHeaders());
-            headers.remove(HttpHeaderNames.HOST);
-        }).request(request.method()).uri(uriToUse).send(request.receive().retain()).responseConnection((httpClientResponse, connection) -> {
+        return proxied.onErrorResume(ReadTimeoutException.class, exception -> {
+            // 由ConnectionConf.responseTimeoutMillis触发
+            ExchangeUtil.addAuditTag(exchange, HTTP11_PROXY_TIMEOUT);
+            return ResponseUtil.sendStatus(exchange.getResponse(), HttpResponseStatus.GATEWAY_TIMEOUT).thenReturn("");
+        }).timeout(
+                Duration.ofSeconds(proxyConf.timeout),
+                Mono.defer(() -> {
+                    ExchangeUtil.addAuditTag(exchange, HTTP11_PROXY_TIMEOUT);
+                    return ResponseUtil.sendStatus(exchange.getResponse(), HttpResponseStatus.GATEWAY_TIMEOUT).thenReturn("");
+                })
+        ).then();
+    }
+
+    private HttpClient httpClientFor(URI upstreamUri) {
+        if (Objects.nonNull(this.httpClient)) {
+            return this.httpClient;
+        }
+        UpstreamClients.Lease lease = leases.get(UpstreamClients.authority(upstreamUri));
+        if (Objects.nonNull(lease)) {
+            return lease.getHttpClient();
+        }
+        return acquireHttpClient(upstreamUri);
+    }
+
+    private synchronized HttpClient acquireHttpClient(URI upstreamUri) {
+        if (destroyed) {
+            // 已经销毁的实例上仍在处理的个别请求，使用公共连接池，避免获取之后再也不会被释放的连接池
+            return HttpClient.create();
+        }
+        String authority = UpstreamClients.authority(upstreamUri);
+        UpstreamClients.Lease lease = leases.get(authority);
+        if (Objects.isNull(lease)) {
+            lease = UpstreamClients.acquire(upstreamUri, proxyConf.connection);
+            leases.put(authority, lease);
+        }
+        return lease.getHttpClient();
+    }
+
+    private Mono<String> proxy(Exchange exchange, HttpClient client, URI uriToUse, UpstreamCall call) {
+        HttpServerRequest request = exchange.getRequest();
+        // 在发送时直接写入请求头，避免每个请求都调用HttpClient.headers()复制一份客户端配置
+        return client.request(request.method()).uri(uriToUse).send((clientRequest, outbound) -> {
+            HttpHeaders headers = clientRequest.requestHeaders();
+            String host = headers.get(HttpHeaderNames.HOST);
+            // 用客户端请求头整体替换HttpClient的默认请求头，避免User-Agent等请求头重复
+            headers.set(request.requestHeaders());
+            if (Objects.nonNull(host)) {
+                headers.set(HttpHeaderNames.HOST, host);
+            } else {
+                headers.remove(HttpHeaderNames.HOST);
+            }
+            return outbound.send(request.receive().retain());
+        }).responseConnection((httpClientResponse, connection) -> {
+            if (Objects.nonNull(call)) {
+                call.onResponse(httpClientResponse.status().code());
+            }
             HttpServerResponse serverResponse = exchange.getResponse();
 
             ExchangeUtil.removeAuditTag(exchange, HTTP11_PROXY_FAIL);
@@ -141,13 +274,7 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
                     .send(connection.inbound().receive().retain())
                     .then()
                     .thenReturn("");
-        }).timeout(
-                Duration.ofSeconds(proxyConf.timeout),
-                Mono.defer(() -> {
-                    ExchangeUtil.addAuditTag(exchange, HTTP11_PROXY_TIMEOUT);
-                    return ResponseUtil.sendStatus(exchange.getResponse(), HttpResponseStatus.GATEWAY_TIMEOUT).thenReturn("");
-                })
-        ).then();
+        }).next();
     }
 
     private URI decideUpstreamUri(Exchange exchange) throws RgwException {
@@ -156,15 +283,15 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
             return uri;
         } else if (ObjectUtil.isEmpty(proxyConf.upstreamEndpointDecideFuncDef)) {
             // 含有环境变量的uri
-            return decideUpstreamUriByEnv(exchange);
+            return resolveUri(proxyConf.upstreamEndpoint, envNames, exchange);
         } else {
             // 由用户配置的groovy脚本动态决定uri, 用户可以自定义
             return decideUpstreamUriByScript(exchange);
         }
     }
 
-    private URI decideUpstreamUriByEnv(Exchange exchange) throws RgwException {
-        String uriStr = proxyConf.upstreamEndpoint;
+    private static URI resolveUri(String endpoint, List<String> envNames, Exchange exchange) throws RgwException {
+        String uriStr = endpoint;
         Map<String, String> environment = ExchangeUtil.getEnvironment(exchange);
         for (String envName : envNames) {
             String value = environment.get(envName);
@@ -185,19 +312,18 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
     private URI decideUpstreamUriByScript(Exchange exchange) throws RgwException {
         Map<String, String> requestHeaders = new HashMap<>();
         exchange.getRequest().requestHeaders().forEach(entry -> requestHeaders.put(entry.getKey(), entry.getValue()));
-        scriptEngine.put("requestHeaders", requestHeaders);
-
-        scriptEngine.put("clientRequestUriPath", exchange.getRequest().uri());
-
-        scriptEngine.put("clientRequestUriParameters", ExchangeUtil.getQueryParams(exchange));
 
         Map<String, String> environment = ExchangeUtil.getEnvironment(exchange);
-        scriptEngine.put("environment", Map.copyOf(environment));
 
         Object result;
 
         try {
-            result = ((Invocable) scriptEngine).invokeFunction(FUNC_NAME);
+            result = decideUriFunction.invoke(
+                    requestHeaders,
+                    exchange.getRequest().uri(),
+                    ExchangeUtil.getQueryParams(exchange),
+                    Map.copyOf(environment)
+            );
         } catch (Exception exception) {
             String msg = "HTTP协议代理异常：执行动态设置上游uri的groovy方法异常";
             log.error("{}", msg, exception);
@@ -222,6 +348,19 @@ public class ProxyHttpFilter implements JsonConfFilterPlugin {
 
         private int timeout = Integer.MAX_VALUE;
 
+        private ConnectionConf connection = new ConnectionConf();
+
+        /**
+         * 多个带权重的上游，upstreamEndpoint为空时才生效
+         */
+        private List<UpstreamConf> upstreams;
+
+        private LoadBalanceConf loadBalance = new LoadBalanceConf();
+
+        private OutlierDetectionConf outlierDetection = new OutlierDetectionConf();
+
+        private HealthCheckConf healthCheck = new HealthCheckConf();
+
     }
 
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.ChannelOption;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * 按上游地址(scheme://host:port)和连接配置隔离的HttpClient，每个上游有自己独立的ConnectionProvider，
+ * 一个上游变慢只会耗尽它自己的连接池，不会影响其他API。
+ * <p>
+ * 连接池按引用计数管理：插件实例通过{@link #acquire}获取，在destroy时{@link Lease#release()}，
+ * 引用计数归零的连接池从缓存中移除，延迟一段时间等待进行中的请求结束后再释放。
+ */
+@Slf4j
+public class UpstreamClients {
+
+    /**
+     * 引用计数归零后延迟释放连接池的时间
+     */
+    private static final Duration DISPOSE_DELAY = Duration.ofSeconds(60);
+
+    /**
+     * 只在持有类锁时访问，获取和释放只发生在插件配置和销毁时，不在请求路径上
+     */
+    private static final Map<UpstreamKey, PooledClient> CLIENTS = new HashMap<>();
+
+    private static final Map<String, ConnectionPoolMetrics> POOL_METRICS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+    private UpstreamClients() {
+    }
+
+    /**
+     * 获取上游对应的HttpClient并增加连接池的引用计数，不再使用时必须调用{@link Lease#release()}
+     */
+    public static synchronized Lease acquire(URI uri, ConnectionConf connectionConf) {
+        UpstreamKey key = new UpstreamKey(authority(uri), PoolSettings.of(connectionConf));
+        PooledClient pooledClient = CLIENTS.computeIfAbsent(key, UpstreamClients::create);
+        ++pooledClient.references;
+        return new Lease(key, pooledClient.httpClient);
+    }
+
+    private static synchronized void release(UpstreamKey key) {
+        PooledClient pooledClient = CLIENTS.get(key);
+        if (Objects.isNull(pooledClient) || --pooledClient.references > 0) {
+            return;
+        }
+        CLIENTS.remove(key);
+        Mono.delay(DISPOSE_DELAY)
+                .then(pooledClient.connectionProvider.disposeLater())
+                .subscribe(
+                        ignore -> {
+                        },
+                        throwable -> log.warn("Failed to dispose connection pool for upstream {}", key.authority(), throwable),
+                        () -> log.info("Disposed connection pool for upstream {}", key.authority())
+                );
+    }
+
+    static synchronized int pooledClientCount() {
+        return CLIENTS.size();
+    }
+
+    /**
+     * 所有上游连接池当前的状态，连接池在第一次建立到某个远端地址的连接时才会注册
+     */
+    public static List<PoolMetrics> getPoolMetrics() {
+        List<PoolMetrics> result = new ArrayList<>(POOL_METRICS.size());
+        POOL_METRICS.forEach((id, metrics) -> {
+            int separator = id.indexOf('|');
+            result.add(new PoolMetrics(
+                    id.substring(0, separator),
+                    id.substring(separator + 1),
+                    metrics.acquiredSize(),
+                    metrics.allocatedSize(),
+                    metrics.idleSize(),
+                    metrics.pendingAcquireSize(),
+                    metrics.maxAllocatedSize(),
+                    metrics.maxPendingAcquireSize()
+            ));
+        });
+        return result;
+    }
+
+    private static PooledClient create(UpstreamKey key) {
+        PoolSettings conf = key.settings();
+        String poolName = "rgw-upstream-" + POOL_SEQ.incrementAndGet() + "-" + key.authority();
+
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(poolName)
+                .maxConnections(conf.maxConnections())
+                .pendingAcquireMaxCount(conf.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(conf.pendingAcquireTimeoutMillis()))
+                .metrics(true, PoolMetricsRegistrar::new);
+        if (conf.maxIdleTimeSeconds() > 0) {
+            builder.maxIdleTime(Duration.ofSeconds(conf.maxIdleTimeSeconds()));
+        }
+        if (conf.maxLifeTimeSeconds() > 0) {
+            builder.maxLifeTime(Duration.ofSeconds(conf.maxLifeTimeSeconds()));
+        }
+        if (conf.evictInBackgroundSeconds() > 0) {
+            builder.evictInBackground(Duration.ofSeconds(conf.evictInBackgroundSeconds()));
+        }
+        ConnectionProvider connectionProvider = builder.build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, conf.connectTimeoutMillis());
+        if (conf.responseTimeoutMillis() > 0) {
+            httpClient = httpClient.responseTimeout(Duration.ofMillis(conf.responseTimeoutMillis()));
+        }
+        httpClient = switch (conf.protocol()) {
+            case H2C -> httpClient.protocol(HttpProtocol.H2C);
+            case H2 -> httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+            default -> httpClient;
+        };
+        log.info("Created connection pool {} for upstream {}", poolName, key.authority());
+        return new PooledClient(httpClient, connectionProvider);
+    }
+
+    static String authority(URI uri) {
+        String scheme = Objects.isNull(uri.getScheme()) ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        return scheme + "://" + uri.getHost() + ":" + port;
+    }
+
+    /**
+     * 插件实例对一个连接池的引用，重复release只生效一次
+     */
+    public static final class Lease {
+
+        private final UpstreamKey key;
+
+        @Getter
+        private final HttpClient httpClient;
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(UpstreamKey key, HttpClient httpClient) {
+            this.key = key;
+            this.httpClient = httpClient;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                UpstreamClients.release(key);
+            }
+        }
+
+    }
+
+    private static final class PooledClient {
+
+        private final HttpClient httpClient;
+
+        private final ConnectionProvider connectionProvider;
+
+        private int references;
+
+        private PooledClient(HttpClient httpClient, ConnectionProvider connectionProvider) {
+            this.httpClient = httpClient;
+            this.connectionProvider = connectionProvider;
+        }
+
+    }
+
+    private record UpstreamKey(String authority, PoolSettings settings) {
+    }
+
+    /**
+     * ConnectionConf的不可变快照，ConnectionConf之后被修改也不会影响已经创建的连接池的查找
+     */
+    private record PoolSettings(
+            UpstreamProtocol protocol,
+            int maxConnections,
+            int pendingAcquireMaxCount,
+            long pendingAcquireTimeoutMillis,
+            int maxIdleTimeSeconds,
+            int maxLifeTimeSeconds,
+            int evictInBackgroundSeconds,
+            int connectTimeoutMillis,
+            long responseTimeoutMillis
+    ) {
+
+        static PoolSettings of(ConnectionConf conf) {
+            return new PoolSettings(
+                    conf.getProtocol(),
+                    conf.getMaxConnections(),
+                    conf.getPendingAcquireMaxCount(),
+                    conf.getPendingAcquireTimeoutMillis(),
+                    conf.getMaxIdleTimeSeconds(),
+                    conf.getMaxLifeTimeSeconds(),
+                    conf.getEvictInBackgroundSeconds(),
+                    conf.getConnectTimeoutMillis(),
+                    conf.getResponseTimeoutMillis()
+            );
+        }
+
+    }
+
+    private static class PoolMetricsRegistrar implements ConnectionProvider.MeterRegistrar {
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+            POOL_METRICS.put(poolName + "|" + remoteAddress, metrics);
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            POOL_METRICS.remove(poolName + "|" + remoteAddress);
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp;
+
+public enum UpstreamProtocol {
+
+    HTTP11,
+
+    /**
+     * 明文HTTP/2，要求上游支持prior knowledge方式的h2c
+     */
+    H2C,
+
+    /**
+     * 基于TLS的HTTP/2，通过ALPN协商，上游不支持时回退到HTTP/1.1
+     */
+    H2
+
+}
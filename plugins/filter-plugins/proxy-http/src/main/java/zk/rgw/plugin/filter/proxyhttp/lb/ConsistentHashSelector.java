@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import zk.rgw.plugin.api.Exchange;
+
+/**
+ * 基于虚拟节点的一致性哈希环，每个上游的虚拟节点数与权重成正比。目标上游不可用时沿环顺时针找下一个可用的
+ */
+class ConsistentHashSelector implements UpstreamSelector {
+
+    private static final int VIRTUAL_NODES_PER_WEIGHT = 64;
+
+    private static final int MAX_RING_SIZE = 65536;
+
+    private final Upstream[] upstreams;
+
+    private final String hashHeader;
+
+    private final long[] ringHashes;
+
+    private final int[] ringOwners;
+
+    ConsistentHashSelector(Upstream[] upstreams, String hashHeader) {
+        this.upstreams = upstreams;
+        this.hashHeader = hashHeader;
+
+        int totalWeight = 0;
+        for (Upstream upstream : upstreams) {
+            totalWeight += upstream.getWeight();
+        }
+        int perWeight = Math.max(1, Math.min(VIRTUAL_NODES_PER_WEIGHT, MAX_RING_SIZE / totalWeight));
+
+        long[][] nodes = new long[totalWeight * perWeight][];
+        int n = 0;
+        for (int i = 0; i < upstreams.length; ++i) {
+            int count = upstreams[i].getWeight() * perWeight;
+            for (int v = 0; v < count; ++v) {
+                nodes[n++] = new long[] { hash(upstreams[i].getEndpoint() + "#" + v), i };
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compareUnsigned(a[0], b[0]));
+        this.ringHashes = new long[n];
+        this.ringOwners = new int[n];
+        for (int i = 0; i < n; ++i) {
+            ringHashes[i] = nodes[i][0];
+            ringOwners[i] = (int) nodes[i][1];
+        }
+    }
+
+    @Override
+    public Upstream select(Exchange exchange, long nowNanos, boolean ignoreAvailability) {
+        String key = Objects.isNull(hashHeader) ? null : exchange.getRequest().requestHeaders().get(hashHeader);
+        if (Objects.isNull(key)) {
+            return LeastOutstandingSelector.leastLoaded(upstreams, nowNanos, ignoreAvailability);
+        }
+        return selectByKey(key, nowNanos, ignoreAvailability);
+    }
+
+    Upstream selectByKey(String key, long nowNanos, boolean ignoreAvailability) {
+        int start = ceilingIndex(hash(key));
+        for (int i = 0; i < ringHashes.length; ++i) {
+            Upstream upstream = upstreams[ringOwners[(start + i) % ringHashes.length]];
+            if (ignoreAvailability || upstream.isAvailable(nowNanos)) {
+                return upstream;
+            }
+        }
+        return null;
+    }
+
+    private int ceilingIndex(long hash) {
+        int low = 0;
+        int high = ringHashes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(ringHashes[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low == ringHashes.length ? 0 : low;
+    }
+
+    /**
+     * 64位FNV-1a再做一次混淆，使分布更均匀
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
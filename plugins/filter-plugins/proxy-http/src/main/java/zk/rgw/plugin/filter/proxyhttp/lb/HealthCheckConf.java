@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 主动健康检查：后台定时向每个上游发送GET请求，2xx和3xx视为健康
+ */
+@Getter
+@Setter
+public class HealthCheckConf {
+
+    private boolean enabled = false;
+
+    private String path = "/";
+
+    private int intervalSeconds = 10;
+
+    private long timeoutMillis = 2000;
+
+    /**
+     * 连续失败多少次后标记为不健康
+     */
+    private int unhealthyThreshold = 3;
+
+    /**
+     * 不健康的上游连续成功多少次后恢复
+     */
+    private int healthyThreshold = 2;
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * 在后台定时探测UpstreamGroup中的每个上游，连续失败达到阈值的上游不再参与选择，直到连续成功达到阈值
+ */
+@Slf4j
+public class HealthChecker {
+
+    private final Upstream[] upstreams;
+
+    private final HealthCheckConf conf;
+
+    private final Function<URI, HttpClient> httpClientProvider;
+
+    private Disposable disposable;
+
+    /**
+     * @param httpClientProvider 根据探测地址获取HttpClient，以便与真实请求共用上游连接池
+     */
+    public HealthChecker(UpstreamGroup upstreamGroup, HealthCheckConf conf, Function<URI, HttpClient> httpClientProvider) {
+        this.upstreams = upstreamGroup.getUpstreams();
+        this.conf = conf;
+        this.httpClientProvider = httpClientProvider;
+    }
+
+    public synchronized void start() {
+        if (Objects.nonNull(disposable)) {
+            return;
+        }
+        Duration interval = Duration.ofSeconds(Math.max(1, conf.getIntervalSeconds()));
+        this.disposable = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromArray(upstreams).filter(upstream -> Objects.nonNull(upstream.getUri())).flatMap(this::probe))
+                .subscribe();
+    }
+
+    public synchronized void stop() {
+        if (Objects.nonNull(disposable)) {
+            disposable.dispose();
+            disposable = null;
+        }
+    }
+
+    private Mono<Void> probe(Upstream upstream) {
+        URI probeUri = upstream.getUri().resolve(conf.getPath());
+        return httpClientProvider.apply(probeUri)
+                .get()
+                .uri(probeUri)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code() < 400)))
+                .timeout(Duration.ofMillis(conf.getTimeoutMillis()))
+                .onErrorResume(throwable -> {
+                    log.debug("Health check of {} failed", probeUri, throwable);
+                    return Mono.just(false);
+                })
+                .doOnNext(success -> {
+                    boolean before = upstream.isHealthy();
+                    upstream.recordProbe(success, conf);
+                    if (before != upstream.isHealthy()) {
+                        log.warn("Upstream {} health changed to {}", upstream.getEndpoint(), upstream.isHealthy() ? "healthy" : "unhealthy");
+                    }
+                })
+                .then();
+    }
+
+}
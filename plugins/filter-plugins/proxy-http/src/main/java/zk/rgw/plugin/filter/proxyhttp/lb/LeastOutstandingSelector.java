@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import zk.rgw.plugin.api.Exchange;
+
+class LeastOutstandingSelector implements UpstreamSelector {
+
+    private final Upstream[] upstreams;
+
+    LeastOutstandingSelector(Upstream[] upstreams) {
+        this.upstreams = upstreams;
+    }
+
+    @Override
+    public Upstream select(Exchange exchange, long nowNanos, boolean ignoreAvailability) {
+        return leastLoaded(upstreams, nowNanos, ignoreAvailability);
+    }
+
+    /**
+     * 从随机位置开始遍历，负载相同时不会总是选中同一个上游
+     */
+    static Upstream leastLoaded(Upstream[] upstreams, long nowNanos, boolean ignoreAvailability) {
+        int start = ThreadLocalRandom.current().nextInt(upstreams.length);
+        Upstream best = null;
+        for (int i = 0; i < upstreams.length; ++i) {
+            Upstream upstream = upstreams[(start + i) % upstreams.length];
+            if (!ignoreAvailability && !upstream.isAvailable(nowNanos)) {
+                continue;
+            }
+            if (Objects.isNull(best) || lessLoaded(upstream, best)) {
+                best = upstream;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 比较outstanding / weight，交叉相乘避免除法
+     */
+    static boolean lessLoaded(Upstream a, Upstream b) {
+        return (long) a.getOutstanding() * b.getWeight() < (long) b.getOutstanding() * a.getWeight();
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+public enum LoadBalanceStrategy {
+
+    /**
+     * 平滑加权轮询
+     */
+    ROUND_ROBIN,
+
+    /**
+     * 选择(进行中的请求数 / 权重)最小的上游
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * 按权重随机选两个，取进行中的请求数较少的一个
+     */
+    POWER_OF_TWO_CHOICES,
+
+    /**
+     * 按请求头的值做一致性哈希，请求头不存在时退化为随机
+     */
+    CONSISTENT_HASH
+
+}
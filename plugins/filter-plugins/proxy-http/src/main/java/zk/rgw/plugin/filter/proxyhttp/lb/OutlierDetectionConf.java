@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 被动异常检测：根据真实请求的结果把连续出错或连续慢响应的上游暂时摘除
+ */
+@Getter
+@Setter
+public class OutlierDetectionConf {
+
+    /**
+     * 连续多少次5xx或连接异常后摘除，0表示不按错误摘除
+     */
+    private int consecutiveErrors = 5;
+
+    /**
+     * 响应头返回耗时超过此值算作一次慢调用，0表示不按耗时摘除
+     */
+    private long slowCallThresholdMillis = 0;
+
+    private int consecutiveSlowCalls = 5;
+
+    /**
+     * 第n次被摘除时，摘除时长为n * baseEjectionSeconds
+     */
+    private int baseEjectionSeconds = 30;
+
+    /**
+     * 同时被摘除的上游最多占总数的百分比，保证不会因为误判摘除所有上游
+     */
+    private int maxEjectionPercent = 50;
+
+}
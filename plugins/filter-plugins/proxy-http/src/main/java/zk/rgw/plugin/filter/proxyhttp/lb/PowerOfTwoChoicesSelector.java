@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import zk.rgw.plugin.api.Exchange;
+
+/**
+ * 按权重随机选出两个上游，取负载较低的一个。相比遍历所有上游开销固定，又能避免纯随机带来的负载不均
+ */
+class PowerOfTwoChoicesSelector implements UpstreamSelector {
+
+    private static final int MAX_ROUNDS = 3;
+
+    private final Upstream[] upstreams;
+
+    /**
+     * 权重的前缀和，用于按权重随机
+     */
+    private final int[] cumulativeWeights;
+
+    PowerOfTwoChoicesSelector(Upstream[] upstreams) {
+        this.upstreams = upstreams;
+        this.cumulativeWeights = new int[upstreams.length];
+        int sum = 0;
+        for (int i = 0; i < upstreams.length; ++i) {
+            sum += upstreams[i].getWeight();
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    @Override
+    public Upstream select(Exchange exchange, long nowNanos, boolean ignoreAvailability) {
+        if (upstreams.length == 1) {
+            Upstream only = upstreams[0];
+            return ignoreAvailability || only.isAvailable(nowNanos) ? only : null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 0; round < MAX_ROUNDS; ++round) {
+            Upstream first = pick(random);
+            Upstream second = pick(random);
+            if (first == second) {
+                second = pick(random);
+            }
+            boolean firstOk = ignoreAvailability || first.isAvailable(nowNanos);
+            boolean secondOk = ignoreAvailability || second.isAvailable(nowNanos);
+            if (firstOk && secondOk) {
+                return LeastOutstandingSelector.lessLoaded(second, first) ? second : first;
+            } else if (firstOk) {
+                return first;
+            } else if (secondOk) {
+                return second;
+            }
+        }
+        // 随机几轮都没有选中可用的，说明大部分上游不可用，退化为遍历
+        return LeastOutstandingSelector.leastLoaded(upstreams, nowNanos, ignoreAvailability);
+    }
+
+    private Upstream pick(ThreadLocalRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, value + 1);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return upstreams[index];
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import zk.rgw.plugin.api.Exchange;
+
+/**
+ * 平滑加权轮询。构造时按nginx的平滑加权算法预先算出一个完整周期的调度序列，请求时只需递增一个原子计数器
+ */
+class RoundRobinSelector implements UpstreamSelector {
+
+    private static final int MAX_SCHEDULE_LENGTH = 8192;
+
+    private final Upstream[] upstreams;
+
+    private final int[] schedule;
+
+    private final AtomicLong counter = new AtomicLong();
+
+    RoundRobinSelector(Upstream[] upstreams) {
+        this.upstreams = upstreams;
+        this.schedule = smoothSchedule(upstreams);
+    }
+
+    @Override
+    public Upstream select(Exchange exchange, long nowNanos, boolean ignoreAvailability) {
+        for (int i = 0; i < schedule.length; ++i) {
+            Upstream upstream = upstreams[schedule[(int) Math.floorMod(counter.getAndIncrement(), schedule.length)]];
+            if (ignoreAvailability || upstream.isAvailable(nowNanos)) {
+                return upstream;
+            }
+        }
+        return null;
+    }
+
+    static int[] smoothSchedule(Upstream[] upstreams) {
+        int[] weights = new int[upstreams.length];
+        int gcd = 0;
+        for (int i = 0; i < upstreams.length; ++i) {
+            weights[i] = upstreams[i].getWeight();
+            gcd = gcd(gcd, weights[i]);
+        }
+        long total = 0;
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] /= gcd;
+            total += weights[i];
+        }
+        if (total > MAX_SCHEDULE_LENGTH) {
+            // 权重差距过大时按比例缩小，精度损失可以接受
+            double scale = (double) MAX_SCHEDULE_LENGTH / total;
+            total = 0;
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i] = Math.max(1, (int) (weights[i] * scale));
+                total += weights[i];
+            }
+        }
+
+        int[] schedule = new int[(int) total];
+        long[] current = new long[weights.length];
+        for (int n = 0; n < schedule.length; ++n) {
+            int best = 0;
+            for (int i = 0; i < weights.length; ++i) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[n] = best;
+        }
+        return schedule;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+}
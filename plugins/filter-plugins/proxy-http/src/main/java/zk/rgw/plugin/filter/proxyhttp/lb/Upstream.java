@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+
+/**
+ * 一个上游及其运行时状态，所有状态都是原子变量，在请求线程和健康检查线程之间无锁共享
+ */
+public class Upstream {
+
+    /**
+     * 引用了环境变量的上游为null，需要在每个请求上用请求所在环境的变量解析endpoint
+     */
+    @Getter
+    private final URI uri;
+
+    @Getter
+    private final String endpoint;
+
+    @Getter
+    private final List<String> envNames;
+
+    @Getter
+    private final int weight;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicInteger consecutiveErrors = new AtomicInteger();
+
+    private final AtomicInteger consecutiveSlowCalls = new AtomicInteger();
+
+    private final AtomicInteger ejectionTimes = new AtomicInteger();
+
+    /**
+     * 摘除截止的System.nanoTime()，0表示没有被摘除
+     */
+    private volatile long ejectedUntilNanos;
+
+    /**
+     * 由主动健康检查维护
+     */
+    private volatile boolean healthy = true;
+
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    private final AtomicInteger probeFailures = new AtomicInteger();
+
+    public Upstream(URI uri, int weight) {
+        this.uri = uri;
+        this.endpoint = uri.toString();
+        this.envNames = List.of();
+        this.weight = Math.max(1, weight);
+    }
+
+    public Upstream(String endpoint, List<String> envNames, int weight) {
+        this.uri = envNames.isEmpty() ? URI.create(endpoint) : null;
+        this.endpoint = endpoint;
+        this.envNames = List.copyOf(envNames);
+        this.weight = Math.max(1, weight);
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public boolean isAvailable(long nowNanos) {
+        if (!healthy) {
+            return false;
+        }
+        long until = ejectedUntilNanos;
+        return until == 0 || nowNanos - until >= 0;
+    }
+
+    boolean isEjected(long nowNanos) {
+        long until = ejectedUntilNanos;
+        return until != 0 && nowNanos - until < 0;
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * @return 连续错误次数
+     */
+    int recordError() {
+        consecutiveSlowCalls.set(0);
+        return consecutiveErrors.incrementAndGet();
+    }
+
+    /**
+     * @return 连续慢调用次数，不是慢调用时返回0
+     */
+    int recordSuccess(boolean slow) {
+        consecutiveErrors.set(0);
+        if (slow) {
+            return consecutiveSlowCalls.incrementAndGet();
+        }
+        consecutiveSlowCalls.set(0);
+        return 0;
+    }
+
+    void eject(long nowNanos, long baseEjectionNanos) {
+        int times = ejectionTimes.incrementAndGet();
+        ejectedUntilNanos = nowNanos + baseEjectionNanos * times;
+        consecutiveErrors.set(0);
+        consecutiveSlowCalls.set(0);
+    }
+
+    /**
+     * 摘除时间结束后第一次成功响应时调用，之后再被摘除时又从基础时长开始计算
+     */
+    void resetEjection() {
+        if (ejectedUntilNanos != 0) {
+            ejectedUntilNanos = 0;
+            ejectionTimes.set(0);
+        }
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    void recordProbe(boolean success, HealthCheckConf conf) {
+        if (success) {
+            probeFailures.set(0);
+            if (!healthy && probeSuccesses.incrementAndGet() >= conf.getHealthyThreshold()) {
+                healthy = true;
+                probeSuccesses.set(0);
+            }
+        } else {
+            probeSuccesses.set(0);
+            if (healthy && probeFailures.incrementAndGet() >= conf.getUnhealthyThreshold()) {
+                healthy = false;
+                probeFailures.set(0);
+            }
+        }
+    }
+
+}
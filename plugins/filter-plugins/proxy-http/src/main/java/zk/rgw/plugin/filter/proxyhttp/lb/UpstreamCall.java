@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Getter;
+
+/**
+ * 一次对上游的调用，保证无论以响应、异常还是取消结束，都只向UpstreamGroup报告一次
+ */
+public class UpstreamCall {
+
+    private final UpstreamGroup upstreamGroup;
+
+    @Getter
+    private final Upstream upstream;
+
+    private final long startNanos;
+
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    UpstreamCall(UpstreamGroup upstreamGroup, Upstream upstream) {
+        this.upstreamGroup = upstreamGroup;
+        this.upstream = upstream;
+        this.startNanos = System.nanoTime();
+        upstream.acquire();
+    }
+
+    /**
+     * 收到上游的响应头时调用
+     */
+    public void onResponse(int statusCode) {
+        if (completed.compareAndSet(false, true)) {
+            upstreamGroup.onComplete(upstream, statusCode, System.nanoTime() - startNanos);
+        }
+    }
+
+    public void onError() {
+        if (completed.compareAndSet(false, true)) {
+            upstreamGroup.onComplete(upstream, -1, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 被取消的调用(比如整体超时)只释放进行中的请求数，不计入异常检测
+     */
+    public void onCancel() {
+        if (completed.compareAndSet(false, true)) {
+            upstream.release();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import zk.rgw.common.util.EnvNameExtractUtil;
+import zk.rgw.plugin.api.Exchange;
+
+/**
+ * 一组带权重的上游，负责选择上游以及根据请求结果做被动异常检测
+ */
+@Slf4j
+public class UpstreamGroup {
+
+    @Getter
+    private final Upstream[] upstreams;
+
+    private final UpstreamSelector selector;
+
+    private final OutlierDetectionConf outlierDetectionConf;
+
+    private final long baseEjectionNanos;
+
+    private final long slowCallThresholdNanos;
+
+    public UpstreamGroup(List<Upstream> upstreams, LoadBalanceConf loadBalanceConf, OutlierDetectionConf outlierDetectionConf) {
+        if (upstreams.isEmpty()) {
+            throw new IllegalArgumentException("upstreams must not be empty");
+        }
+        this.upstreams = upstreams.toArray(new Upstream[0]);
+        this.selector = UpstreamSelector.create(loadBalanceConf, this.upstreams);
+        this.outlierDetectionConf = outlierDetectionConf;
+        this.baseEjectionNanos = TimeUnit.SECONDS.toNanos(outlierDetectionConf.getBaseEjectionSeconds());
+        this.slowCallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(outlierDetectionConf.getSlowCallThresholdMillis());
+    }
+
+    /**
+     * 所有上游都不可用时忽略可用性再选一次，宁可尝试一个可能有问题的上游也不直接拒绝请求
+     */
+    public Upstream choose(Exchange exchange) {
+        long now = System.nanoTime();
+        Upstream upstream = selector.select(exchange, now, false);
+        if (Objects.isNull(upstream)) {
+            upstream = selector.select(exchange, now, true);
+        }
+        return upstream;
+    }
+
+    /**
+     * 开始一次对上游的调用，进行中的请求数加一，调用结束时由UpstreamCall负责报告结果
+     */
+    public UpstreamCall startCall(Upstream upstream) {
+        return new UpstreamCall(this, upstream);
+    }
+
+    /**
+     * @param statusCode 上游响应码，没有收到响应(连接失败、超时等)时传-1
+     * @param latencyNanos 从开始调用到收到响应头的耗时
+     */
+    void onComplete(Upstream upstream, int statusCode, long latencyNanos) {
+        upstream.release();
+        long now = System.nanoTime();
+        if (statusCode < 0 || statusCode >= 500) {
+            int errors = upstream.recordError();
+            int threshold = outlierDetectionConf.getConsecutiveErrors();
+            if (threshold > 0 && errors >= threshold) {
+                tryEject(upstream, now, errors + " consecutive errors");
+            }
+            return;
+        }
+
+        boolean slow = slowCallThresholdNanos > 0 && latencyNanos > slowCallThresholdNanos;
+        int slowCalls = upstream.recordSuccess(slow);
+        if (slow && slowCalls >= outlierDetectionConf.getConsecutiveSlowCalls()) {
+            tryEject(upstream, now, slowCalls + " consecutive slow calls");
+        } else if (!slow && !upstream.isEjected(now)) {
+            upstream.resetEjection();
+        }
+    }
+
+    private void tryEject(Upstream upstream, long now, String reason) {
+        if (upstream.isEjected(now)) {
+            return;
+        }
+        int ejected = 0;
+        for (Upstream one : upstreams) {
+            if (one.isEjected(now)) {
+                ++ejected;
+            }
+        }
+        if ((ejected + 1) * 100 > upstreams.length * outlierDetectionConf.getMaxEjectionPercent()) {
+            return;
+        }
+        upstream.eject(now, baseEjectionNanos);
+        log.warn("Upstream {} ejected because of {}", upstream.getEndpoint(), reason);
+    }
+
+    public static Upstream newUpstream(UpstreamConf conf) {
+        return new Upstream(conf.getEndpoint(), EnvNameExtractUtil.extract(conf.getEndpoint()), conf.getWeight());
+    }
+
+}
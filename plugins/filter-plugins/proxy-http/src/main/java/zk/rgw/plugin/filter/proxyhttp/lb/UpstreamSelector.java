@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import zk.rgw.plugin.api.Exchange;
+
+public interface UpstreamSelector {
+
+    /**
+     * @param ignoreAvailability 为true时忽略上游是否可用，用于所有上游都不可用时的兜底
+     * @return 没有可用的上游时返回null
+     */
+    Upstream select(Exchange exchange, long nowNanos, boolean ignoreAvailability);
+
+    static UpstreamSelector create(LoadBalanceConf conf, Upstream[] upstreams) {
+        return switch (conf.getStrategy()) {
+            case LEAST_OUTSTANDING -> new LeastOutstandingSelector(upstreams);
+            case POWER_OF_TWO_CHOICES -> new PowerOfTwoChoicesSelector(upstreams);
+            case CONSISTENT_HASH -> new ConsistentHashSelector(upstreams, conf.getHashHeader());
+            default -> new RoundRobinSelector(upstreams);
+        };
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp;
+
+import java.net.URI;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class UpstreamClientsTest {
+
+    @Test
+    void testIsolatedByUpstream() {
+        ConnectionConf conf = new ConnectionConf();
+        ConnectionConf sameConf = new ConnectionConf();
+        ConnectionConf anotherConf = new ConnectionConf();
+        anotherConf.setMaxConnections(10);
+
+        UpstreamClients.Lease a = UpstreamClients.acquire(URI.create("http://a.example.com/foo"), conf);
+        // 同一个上游，路径和默认端口的写法不同也共用一个连接池
+        UpstreamClients.Lease sameA = UpstreamClients.acquire(URI.create("http://a.example.com:80/bar"), sameConf);
+        UpstreamClients.Lease b = UpstreamClients.acquire(URI.create("http://b.example.com/foo"), conf);
+        UpstreamClients.Lease anotherA = UpstreamClients.acquire(URI.create("http://a.example.com/foo"), anotherConf);
+
+        Assertions.assertSame(a.getHttpClient(), sameA.getHttpClient());
+        Assertions.assertNotSame(a.getHttpClient(), b.getHttpClient());
+        Assertions.assertNotSame(a.getHttpClient(), anotherA.getHttpClient());
+
+        a.release();
+        sameA.release();
+        b.release();
+        anotherA.release();
+    }
+
+    @Test
+    void testReleasedWhenNoReference() {
+        ConnectionConf conf = new ConnectionConf();
+        conf.setMaxConnections(7);
+        URI uri = URI.create("http://release.example.com/foo");
+        int before = UpstreamClients.pooledClientCount();
+
+        UpstreamClients.Lease first = UpstreamClients.acquire(uri, conf);
+        UpstreamClients.Lease second = UpstreamClients.acquire(uri, conf);
+        // 创建连接池之后修改配置不影响已有连接池的查找和释放
+        conf.setMaxConnections(8);
+        Assertions.assertEquals(before + 1, UpstreamClients.pooledClientCount());
+
+        first.release();
+        first.release();
+        Assertions.assertEquals(before + 1, UpstreamClients.pooledClientCount());
+
+        second.release();
+        Assertions.assertEquals(before, UpstreamClients.pooledClientCount());
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.proxyhttp.lb;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class UpstreamGroupTest {
+
+    @Test
+    void testWeightedRoundRobin() {
+        Upstream a = new Upstream(URI.create("http://a"), 3);
+        Upstream b = new Upstream(URI.create("http://b"), 1);
+        UpstreamGroup group = new UpstreamGroup(List.of(a, b), new LoadBalanceConf(), new OutlierDetectionConf());
+
+        Map<Upstream, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 400; ++i) {
+            counts.merge(group.choose(null), 1, Integer::sum);
+        }
+        Assertions.assertEquals(300, counts.get(a));
+        Assertions.assertEquals(100, counts.get(b));
+
+        // 平滑加权轮询不会连续选中同一个上游太多次
+        Assertions.assertArrayEquals(new int[] { 0, 0, 1, 0 }, RoundRobinSelector.smoothSchedule(new Upstream[] { a, b }));
+    }
+
+    @Test
+    void testLeastOutstanding() {
+        Upstream a = new Upstream(URI.create("http://a"), 1);
+        Upstream b = new Upstream(URI.create("http://b"), 1);
+        LoadBalanceConf conf = new LoadBalanceConf();
+        conf.setStrategy(LoadBalanceStrategy.LEAST_OUTSTANDING);
+        UpstreamGroup group = new UpstreamGroup(List.of(a, b), conf, new OutlierDetectionConf());
+
+        UpstreamCall call = group.startCall(a);
+        Assertions.assertSame(b, group.choose(null));
+        call.onResponse(200);
+        Assertions.assertEquals(0, a.getOutstanding());
+    }
+
+    @Test
+    void testConsistentHashStable() {
+        Upstream[] upstreams = {
+                new Upstream(URI.create("http://a"), 1),
+                new Upstream(URI.create("http://b"), 1),
+                new Upstream(URI.create("http://c"), 1)
+        };
+        ConsistentHashSelector selector = new ConsistentHashSelector(upstreams, "X-User-Id");
+        long now = System.nanoTime();
+
+        Map<String, Upstream> before = new HashMap<>();
+        for (int i = 0; i < 1000; ++i) {
+            String key = "user-" + i;
+            before.put(key, selector.selectByKey(key, now, false));
+            Assertions.assertSame(before.get(key), selector.selectByKey(key, now, false));
+        }
+
+        // 摘除一个上游后，只有原本落在它上面的key会迁移
+        Upstream ejected = upstreams[0];
+        ejected.eject(now, 1_000_000_000_000L);
+        for (Map.Entry<String, Upstream> entry : before.entrySet()) {
+            Upstream after = selector.selectByKey(entry.getKey(), now, false);
+            if (entry.getValue() == ejected) {
+                Assertions.assertNotSame(ejected, after);
+            } else {
+                Assertions.assertSame(entry.getValue(), after);
+            }
+        }
+    }
+
+    @Test
+    void testOutlierEjection() {
+        Upstream a = new Upstream(URI.create("http://a"), 1);
+        Upstream b = new Upstream(URI.create("http://b"), 1);
+        OutlierDetectionConf outlierConf = new OutlierDetectionConf();
+        outlierConf.setConsecutiveErrors(3);
+        UpstreamGroup group = new UpstreamGroup(List.of(a, b), new LoadBalanceConf(), outlierConf);
+
+        for (int i = 0; i < 3; ++i) {
+            group.startCall(a).onResponse(503);
+        }
+        Assertions.assertFalse(a.isAvailable(System.nanoTime()));
+        for (int i = 0; i < 10; ++i) {
+            Assertions.assertSame(b, group.choose(null));
+        }
+
+        // 最多摘除50%，b不会再被摘除
+        for (int i = 0; i < 3; ++i) {
+            group.startCall(b).onError();
+        }
+        Assertions.assertTrue(b.isAvailable(System.nanoTime()));
+    }
+
+    @Test
+    void testCallReportedOnce() {
+        Upstream a = new Upstream(URI.create("http://a"), 1);
+        UpstreamGroup group = new UpstreamGroup(List.of(a), new LoadBalanceConf(), new OutlierDetectionConf());
+        UpstreamCall call = group.startCall(a);
+        call.onResponse(200);
+        call.onError();
+        call.onCancel();
+        Assertions.assertEquals(0, a.getOutstanding());
+    }
+
+    @Test
+    void testEndpointWithEnv() {
+        UpstreamConf conf = new UpstreamConf();
+        conf.setEndpoint("http://{ERP_DOMAIN}/foo/bar");
+        Upstream upstream = UpstreamGroup.newUpstream(conf);
+        Assertions.assertNull(upstream.getUri());
+        Assertions.assertEquals(List.of("ERP_DOMAIN"), upstream.getEnvNames());
+
+        conf.setEndpoint("http://a/foo/bar");
+        upstream = UpstreamGroup.newUpstream(conf);
+        Assertions.assertEquals(URI.create("http://a/foo/bar"), upstream.getUri());
+        Assertions.assertTrue(upstream.getEnvNames().isEmpty());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 16个线程同时争用同一个限流器，对比synchronized实现和CAS实现的单次调用开销，以及滑动窗口、自适应并发限制的单次调用开销。
+ * 限流参数足够宽松，使得大部分调用都会走到修改状态的路径。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(16)
+public class RateLimiterBenchmark {
+
+    private SynchronizedTokenBucketRateLimiter synchronizedRateLimiter;
+
+    private TokenBucketRateLimiter casRateLimiter;
+
+    private SlidingWindowRateLimiter slidingWindowRateLimiter;
+
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TokenBucketRateLimitConf conf = new TokenBucketRateLimitConf();
+        conf.setBurstCapacity(1_000_000);
+        conf.setReplenishRate(100_000_000);
+        synchronizedRateLimiter = new SynchronizedTokenBucketRateLimiter(conf);
+        casRateLimiter = new TokenBucketRateLimiter(conf);
+
+        RateLimitConf rateLimitConf = new RateLimitConf();
+        rateLimitConf.getSlidingWindow().setMaxRequests(SlidingWindowCounter.MAX_COUNT);
+        slidingWindowRateLimiter = new SlidingWindowRateLimiter(rateLimitConf);
+
+        AdaptiveConcurrencyLimitConf concurrencyLimitConf = new AdaptiveConcurrencyLimitConf();
+        concurrencyLimitConf.setInitialLimit(1000);
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(concurrencyLimitConf);
+        keys = new String[1024];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = "10.0.0." + i;
+        }
+    }
+
+    @Benchmark
+    public boolean synchronizedBucket() {
+        return synchronizedRateLimiter.isAllowed();
+    }
+
+    @Benchmark
+    public Object casBucket() {
+        return casRateLimiter.isAllowed("");
+    }
+
+    @Benchmark
+    public Object casKeyedBucket() {
+        return casRateLimiter.isAllowed(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    @Benchmark
+    public Object slidingWindow() {
+        return slidingWindowRateLimiter.isAllowed("");
+    }
+
+    @Benchmark
+    public boolean adaptiveConcurrency() {
+        boolean acquired = concurrencyLimiter.tryAcquire();
+        if (acquired) {
+            concurrencyLimiter.release(1_000_000L, true);
+        }
+        return acquired;
+    }
+
+}
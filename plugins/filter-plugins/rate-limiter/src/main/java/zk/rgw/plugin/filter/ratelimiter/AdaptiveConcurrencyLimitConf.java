@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import lombok.Data;
+
+@Data
+public class AdaptiveConcurrencyLimitConf {
+
+    private int initialLimit = 20;
+
+    private int minLimit = 1;
+
+    private int maxLimit = 1000;
+
+    /**
+     * 每次调整时新计算出的并发数所占的权重，取值(0, 1]
+     */
+    private double smoothing = 0.2;
+
+    /**
+     * 短期耗时超过长期平均耗时的多少倍以内不减小并发数
+     */
+    private double rttTolerance = 1.5;
+
+    /**
+     * 长期平均耗时按多少个样本做指数移动平均
+     */
+    private int longWindowSamples = 600;
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自适应并发限制，参考Gradient算法：用长期平均耗时与最近一次请求耗时的比值作为梯度，
+ * 耗时变长说明上游开始排队，按梯度收缩允许的并发数；耗时平稳时并发数以sqrt(limit)的幅度增长，试探上游的容量。
+ * <p>
+ * 所有状态都保存在原子变量中。长期平均耗时通过CAS重试更新；调整并发数时如果CAS失败，说明另一个线程刚刚用更新的样本完成了调整，直接放弃本次调整即可。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double smoothing;
+
+    private final double rttTolerance;
+
+    private final double longRttDecay;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+
+    /**
+     * double的二进制表示
+     */
+    private final AtomicLong limit;
+
+    private final AtomicLong longRttNanos = new AtomicLong(0);
+
+    public AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimitConf conf) {
+        this.minLimit = conf.getMinLimit();
+        this.maxLimit = conf.getMaxLimit();
+        this.smoothing = conf.getSmoothing();
+        this.rttTolerance = conf.getRttTolerance();
+        this.longRttDecay = 1.0 / conf.getLongWindowSamples();
+        this.limit = new AtomicLong(Double.doubleToRawLongBits(conf.getInitialLimit()));
+    }
+
+    /**
+     * @return 是否获得了许可，获得许可的请求结束后必须调用{@link #release(long, boolean)}
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > getLimit()) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param rttNanos 请求耗时
+     * @param success 失败的请求不作为耗时样本，避免快速失败的请求拉低平均耗时
+     */
+    public void release(long rttNanos, boolean success) {
+        int current = inFlight.getAndDecrement();
+        if (success && rttNanos > 0) {
+            onSample(rttNanos, current);
+        }
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void onSample(long rttNanos, int inFlightAtRelease) {
+        // 长期平均耗时的每个样本都要计入，CAS失败时重试，不能像调整并发数那样放弃
+        long newLongRtt = longRttNanos.updateAndGet(
+                longRtt -> longRtt == 0 ? rttNanos : (long) (longRtt + (rttNanos - longRtt) * longRttDecay)
+        );
+
+        long limitBits = limit.get();
+        double currentLimit = Double.longBitsToDouble(limitBits);
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * newLongRtt / rttNanos));
+        // 实际并发不到限制的一半时，耗时不能说明上游还有余量，只允许收缩不允许增长
+        double queueSize = inFlightAtRelease < currentLimit / 2 ? 0 : Math.sqrt(currentLimit);
+        double newLimit = currentLimit * gradient + queueSize;
+        newLimit = currentLimit * (1 - smoothing) + newLimit * smoothing;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit.compareAndSet(limitBits, Double.doubleToRawLongBits(newLimit));
+    }
+
+}
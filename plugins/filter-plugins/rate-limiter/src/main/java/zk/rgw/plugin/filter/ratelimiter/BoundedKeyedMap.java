@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * 按key保存限流状态，key的数量达到maxSize时只淘汰空闲的状态（丢弃后不影响限流结果），不会淘汰仍在限流中的状态，
+ * 否则不断使用新key的客户端可以把正在被限流的key挤出去，重新获得完整的配额。
+ * 淘汰空闲状态后仍然没有空位时，新的key共用overflow状态。
+ * 扫描空闲状态的间隔不小于{@link #SCAN_INTERVAL_NANOS}，同一时刻只有一个线程扫描，其他线程不等待。
+ */
+final class BoundedKeyedMap<V> {
+
+    static final long SCAN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentHashMap<String, V> map = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final Function<String, V> factory;
+
+    private final Predicate<V> idle;
+
+    private final V overflow;
+
+    private final LongSupplier nanoClock;
+
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    private final AtomicLong nextScanNanos;
+
+    BoundedKeyedMap(int maxSize, Function<String, V> factory, Predicate<V> idle, V overflow, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.idle = idle;
+        this.overflow = overflow;
+        this.nanoClock = nanoClock;
+        this.nextScanNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    V get(String key) {
+        V value = map.get(key);
+        if (Objects.nonNull(value)) {
+            return value;
+        }
+        if (map.size() >= maxSize) {
+            evictIdle();
+            if (map.size() >= maxSize) {
+                return overflow;
+            }
+        }
+        // 并发新增时可能短暂超出maxSize，超出的数量不超过并发线程数
+        return map.computeIfAbsent(key, factory);
+    }
+
+    int size() {
+        return map.size();
+    }
+
+    private void evictIdle() {
+        long now = nanoClock.getAsLong();
+        if (now - nextScanNanos.get() < 0 || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextScanNanos.set(now + SCAN_INTERVAL_NANOS);
+            map.values().removeIf(idle);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+}
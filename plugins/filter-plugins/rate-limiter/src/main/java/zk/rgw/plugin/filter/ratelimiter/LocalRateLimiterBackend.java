@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+public class LocalRateLimiterBackend implements RateLimiterBackend {
+
+    public static final String NAME = "local";
+
+    static final LocalRateLimiterBackend INSTANCE = new LocalRateLimiterBackend();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public RateLimiter create(TokenBucketRateLimitConf conf) {
+        return new TokenBucketRateLimiter(conf);
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+public enum RateLimitAlgorithm {
+    TOKEN_BUCKET,
+    /**
+     * 滑动窗口计数，用上一个窗口的计数按时间比例加权估算滑动窗口内的请求数，突发流量下比令牌桶更平滑
+     */
+    SLIDING_WINDOW,
+    /**
+     * 根据观察到的请求耗时自适应地调整允许的最大并发请求数
+     */
+    ADAPTIVE_CONCURRENCY
+}
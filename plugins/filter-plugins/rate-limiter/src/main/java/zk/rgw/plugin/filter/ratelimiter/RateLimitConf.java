@@ -0,0 +1,35 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 令牌桶的参数保留在顶层，兼容原有的配置；其他算法的参数放在各自的字段中。
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class RateLimitConf extends TokenBucketRateLimitConf {
+
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.TOKEN_BUCKET;
+
+    private SlidingWindowRateLimitConf slidingWindow = new SlidingWindowRateLimitConf();
+
+    private AdaptiveConcurrencyLimitConf adaptiveConcurrency = new AdaptiveConcurrencyLimitConf();
+
+}
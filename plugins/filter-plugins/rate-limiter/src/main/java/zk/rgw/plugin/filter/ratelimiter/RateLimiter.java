@@ -20,6 +20,9 @@ import reactor.core.publisher.Mono;
 
 public interface RateLimiter {
 
-    Mono<Boolean> isAllowed();
+    /**
+     * @param key 限流维度的取值，例如客户端IP；不区分维度时为空字符串
+     */
+    Mono<Boolean> isAllowed(String key);
 
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.ServiceLoader;
+
+import zk.rgw.plugin.exception.PluginConfException;
+
+/**
+ * 限流状态的存储后端。默认的local后端只在单个网关节点内维护状态；
+ * 需要集群范围内统一限流时，可以通过Java SPI（META-INF/services）提供基于共享存储的实现，并在配置中用backend指定其名称。
+ */
+public interface RateLimiterBackend {
+
+    String name();
+
+    RateLimiter create(TokenBucketRateLimitConf conf);
+
+    static RateLimiterBackend load(String name) throws PluginConfException {
+        if (LocalRateLimiterBackend.NAME.equals(name)) {
+            return LocalRateLimiterBackend.INSTANCE;
+        }
+        for (RateLimiterBackend backend : ServiceLoader.load(RateLimiterBackend.class, RateLimiterBackend.class.getClassLoader())) {
+            if (backend.name().equals(name)) {
+                return backend;
+            }
+        }
+        throw new PluginConfException("未找到名为" + name + "的限流后端");
+    }
+
+}
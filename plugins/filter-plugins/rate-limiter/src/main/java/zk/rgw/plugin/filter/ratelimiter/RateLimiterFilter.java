@@ -17,10 +17,14 @@
 package zk.rgw.plugin.filter.ratelimiter;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Objects;
 
 import io.netty.handler.codec.http.HttpResponseStatus;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import zk.rgw.common.util.ObjectUtil;
 import zk.rgw.plugin.api.Exchange;
 import zk.rgw.plugin.api.filter.FilterChain;
 import zk.rgw.plugin.api.filter.JsonConfFilterPlugin;
@@ -34,20 +38,59 @@ public class RateLimiterFilter implements JsonConfFilterPlugin {
 
     private RateLimiter rateLimiter;
 
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private RateLimitKeyType keyType;
+
+    private String keyHeader;
+
     @Override
     public void configure(String conf) throws PluginConfException {
-        TokenBucketRateLimitConf rateLimitConf = new TokenBucketRateLimitConf();
+        RateLimitConf rateLimitConf = new RateLimitConf();
         try {
             OM.readerForUpdating(rateLimitConf).readValue(conf);
         } catch (IOException ioException) {
             throw new PluginConfException(ioException.getMessage(), ioException);
         }
-        this.rateLimiter = new TokenBucketRateLimiter(rateLimitConf);
+        if (rateLimitConf.getKeyType() == RateLimitKeyType.HEADER && ObjectUtil.isEmpty(rateLimitConf.getKeyHeader())) {
+            throw new PluginConfException("按请求头限流时需要配置keyHeader");
+        }
+        this.keyType = rateLimitConf.getKeyType();
+        this.keyHeader = rateLimitConf.getKeyHeader();
+        switch (rateLimitConf.getAlgorithm()) {
+            case SLIDING_WINDOW -> {
+                checkLocalBackend(rateLimitConf);
+                if (rateLimitConf.getSlidingWindow().getMaxRequests() > SlidingWindowCounter.MAX_COUNT) {
+                    throw new PluginConfException("滑动窗口内最多允许的请求数不能超过" + SlidingWindowCounter.MAX_COUNT);
+                }
+                this.rateLimiter = new SlidingWindowRateLimiter(rateLimitConf);
+            }
+            case ADAPTIVE_CONCURRENCY -> {
+                checkLocalBackend(rateLimitConf);
+                if (rateLimitConf.getKeyType() != RateLimitKeyType.NONE) {
+                    throw new PluginConfException("自适应并发限制不支持按维度限流，keyType只能为NONE");
+                }
+                this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(rateLimitConf.getAdaptiveConcurrency());
+            }
+            default -> this.rateLimiter = RateLimiterBackend.load(rateLimitConf.getBackend()).create(rateLimitConf);
+        }
+    }
+
+    /**
+     * 限流后端只提供令牌桶的实现，其他算法只在单个网关节点内维护状态，不能静默地退化为单节点限流
+     */
+    private static void checkLocalBackend(RateLimitConf rateLimitConf) throws PluginConfException {
+        if (!LocalRateLimiterBackend.NAME.equals(rateLimitConf.getBackend())) {
+            throw new PluginConfException(rateLimitConf.getAlgorithm() + "算法只支持" + LocalRateLimiterBackend.NAME + "后端");
+        }
     }
 
     @Override
     public Mono<Void> filter(Exchange exchange, FilterChain chain) {
-        return rateLimiter.isAllowed().flatMap(isAllowed -> {
+        if (Objects.nonNull(concurrencyLimiter)) {
+            return filterWithConcurrencyLimit(exchange, chain);
+        }
+        return rateLimiter.isAllowed(resolveKey(exchange)).flatMap(isAllowed -> {
             if (Boolean.TRUE.equals(isAllowed)) {
                 return chain.filter(exchange);
             } else {
@@ -57,4 +100,33 @@ public class RateLimiterFilter implements JsonConfFilterPlugin {
         });
     }
 
+    private Mono<Void> filterWithConcurrencyLimit(Exchange exchange, FilterChain chain) {
+        return Mono.defer(() -> {
+            if (!concurrencyLimiter.tryAcquire()) {
+                ExchangeUtil.addAuditTag(exchange, TAG);
+                return ResponseUtil.sendStatus(exchange.getResponse(), HttpResponseStatus.TOO_MANY_REQUESTS);
+            }
+            long startNanos = System.nanoTime();
+            return chain.filter(exchange).doFinally(
+                    signalType -> concurrencyLimiter.release(System.nanoTime() - startNanos, signalType == SignalType.ON_COMPLETE)
+            );
+        });
+    }
+
+    /**
+     * 取不到限流维度的值时返回空字符串，这些请求共用一个限流状态
+     */
+    private String resolveKey(Exchange exchange) {
+        String key = switch (keyType) {
+            case NONE -> null;
+            case CLIENT_IP -> {
+                InetSocketAddress remoteAddress = exchange.getRequest().remoteAddress();
+                yield Objects.isNull(remoteAddress) ? null : remoteAddress.getAddress().getHostAddress();
+            }
+            case APP_ID -> ExchangeUtil.getClientId(exchange);
+            case HEADER -> exchange.getRequest().requestHeaders().get(keyHeader);
+        };
+        return Objects.isNull(key) ? "" : key;
+    }
+
 }
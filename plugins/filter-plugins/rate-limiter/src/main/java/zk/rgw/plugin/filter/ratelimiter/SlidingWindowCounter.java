@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的滑动窗口计数器。窗口序号、上一个窗口的计数、当前窗口的计数打包在一个AtomicLong中，通过CAS更新。
+ * 滑动窗口内的请求数估算为：上一个窗口的计数 * 上一个窗口仍在滑动窗口内的比例 + 当前窗口的计数。
+ */
+final class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 21;
+
+    private static final int INDEX_BITS = 64 - 2 * COUNT_BITS;
+
+    static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private final long windowNanos;
+
+    private final long maxRequests;
+
+    private final AtomicLong state;
+
+    SlidingWindowCounter(long windowNanos, long maxRequests, long nowNanos) {
+        this.windowNanos = windowNanos;
+        this.maxRequests = maxRequests;
+        this.state = new AtomicLong(pack(Math.floorDiv(nowNanos, windowNanos), 0, 0));
+    }
+
+    private static long pack(long index, long previous, long current) {
+        return (index & INDEX_MASK) << (2 * COUNT_BITS) | previous << COUNT_BITS | current;
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        long index = Math.floorDiv(nowNanos, windowNanos);
+        double previousWeight = (double) (windowNanos - Math.floorMod(nowNanos, windowNanos)) / windowNanos;
+        for (;;) {
+            long s = state.get();
+            long storedIndex = s >>> 2 * COUNT_BITS;
+            long lag = lag(index, storedIndex);
+            double weight = previousWeight;
+            if (lag < 0) {
+                // 其他线程读到的时间更晚，已经推进了窗口，按推进后的窗口计数，上一个窗口的计数全部计入
+                lag = 0;
+                weight = 1.0;
+            }
+            long previous;
+            long current;
+            if (lag == 0) {
+                previous = (s >>> COUNT_BITS) & MAX_COUNT;
+                current = s & MAX_COUNT;
+            } else if (lag == 1) {
+                previous = s & MAX_COUNT;
+                current = 0;
+            } else {
+                previous = 0;
+                current = 0;
+            }
+            if (previous * weight + current + 1 > maxRequests) {
+                return false;
+            }
+            if (state.compareAndSet(s, pack(storedIndex + lag, previous, current + 1))) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 上一个窗口和当前窗口都已经过去，计数器等同于新建的
+     */
+    boolean isIdle(long nowNanos) {
+        long index = Math.floorDiv(nowNanos, windowNanos);
+        return lag(index, state.get() >>> 2 * COUNT_BITS) >= 2;
+    }
+
+    /**
+     * 窗口序号只保存了低INDEX_BITS位，按有符号数还原两者的差值，小于0表示保存的窗口比index更晚
+     */
+    private static long lag(long index, long storedIndex) {
+        long lag = (index - storedIndex) & INDEX_MASK;
+        return lag > (INDEX_MASK >>> 1) ? lag - INDEX_MASK - 1 : lag;
+    }
+
+}
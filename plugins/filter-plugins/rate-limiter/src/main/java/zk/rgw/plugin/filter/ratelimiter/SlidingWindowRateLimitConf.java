@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import lombok.Data;
+
+@Data
+public class SlidingWindowRateLimitConf {
+
+    private long windowMillis = 1000;
+
+    /**
+     * 一个窗口内最多允许的请求数，不能超过SlidingWindowCounter.MAX_COUNT
+     */
+    private long maxRequests = 100;
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import reactor.core.publisher.Mono;
+
+import zk.rgw.common.util.ObjectUtil;
+
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    private final LongSupplier nanoClock;
+
+    private final SlidingWindowCounter defaultCounter;
+
+    private final BoundedKeyedMap<SlidingWindowCounter> keyedCounters;
+
+    public SlidingWindowRateLimiter(RateLimitConf rateLimitConf) {
+        this(rateLimitConf, System::nanoTime);
+    }
+
+    SlidingWindowRateLimiter(RateLimitConf rateLimitConf, LongSupplier nanoClock) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(rateLimitConf.getSlidingWindow().getWindowMillis());
+        long maxRequests = rateLimitConf.getSlidingWindow().getMaxRequests();
+        this.nanoClock = nanoClock;
+        this.defaultCounter = new SlidingWindowCounter(windowNanos, maxRequests, nanoClock.getAsLong());
+        this.keyedCounters = new BoundedKeyedMap<>(
+                rateLimitConf.getMaxKeys(),
+                key -> new SlidingWindowCounter(windowNanos, maxRequests, nanoClock.getAsLong()),
+                counter -> counter.isIdle(nanoClock.getAsLong()),
+                new SlidingWindowCounter(windowNanos, maxRequests, nanoClock.getAsLong()),
+                nanoClock
+        );
+    }
+
+    @Override
+    public Mono<Boolean> isAllowed(String key) {
+        SlidingWindowCounter counter = ObjectUtil.isEmpty(key) ? defaultCounter : keyedCounters.get(key);
+        return counter.tryAcquire(nanoClock.getAsLong()) ? TokenBucketRateLimiter.ALLOWED : TokenBucketRateLimiter.REJECTED;
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶，使用GCRA（Generic Cell Rate Algorithm）实现，与令牌桶算法等价。
+ * <p>
+ * 整个桶的状态只有一个纳秒精度的理论到达时间（TAT），存放在一个AtomicLong中：TAT与当前时间的差值表示已经消耗掉的令牌数折算成的时间。
+ * 请求通过时用CAS推进TAT，被拒绝时不写任何状态，因此拒绝路径上没有竞争。
+ */
+final class TokenBucket {
+
+    private final long costNanos;
+
+    private final long capacityNanos;
+
+    private final AtomicLong theoreticalArrivalTime;
+
+    TokenBucket(long burstCapacity, long replenishRate, long cost, long nowNanos) {
+        this.costNanos = TimeUnit.SECONDS.toNanos(cost) / replenishRate;
+        this.capacityNanos = TimeUnit.SECONDS.toNanos(burstCapacity) / replenishRate;
+        this.theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+
+    boolean tryAcquire(long nowNanos) {
+        for (;;) {
+            long tat = theoreticalArrivalTime.get();
+            long newTat = (tat - nowNanos < 0 ? nowNanos : tat) + costNanos;
+            if (newTat - nowNanos > capacityNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 桶已经恢复到满的状态，丢弃这个桶不会改变限流结果
+     */
+    boolean isFull(long nowNanos) {
+        return theoreticalArrivalTime.get() - nowNanos <= 0;
+    }
+
+}
@@ -27,4 +27,18 @@ public class TokenBucketRateLimitConf {
 
     private long cost = 1;
 
+    private RateLimitKeyType keyType = RateLimitKeyType.NONE;
+
+    /**
+     * keyType为HEADER时，作为限流维度的请求头名称
+     */
+    private String keyHeader;
+
+    /**
+     * 最多同时保存多少个key的限流状态
+     */
+    private int maxKeys = 10000;
+
+    private String backend = LocalRateLimiterBackend.NAME;
+
 }
@@ -16,43 +16,51 @@
 
 package zk.rgw.plugin.filter.ratelimiter;
 
+import java.util.function.LongSupplier;
+
 import reactor.core.publisher.Mono;
 
+import zk.rgw.common.util.ObjectUtil;
+
 public class TokenBucketRateLimiter implements RateLimiter {
 
-    private final long burstCapacity;
+    static final Mono<Boolean> ALLOWED = Mono.just(true);
 
-    private final long replenishRate;
+    static final Mono<Boolean> REJECTED = Mono.just(false);
 
-    private final long cost;
+    private final LongSupplier nanoClock;
 
-    private long leftCapacity;
+    private final TokenBucket defaultBucket;
 
-    private long updateTimeMs;
+    private final BoundedKeyedMap<TokenBucket> keyedBuckets;
 
     public TokenBucketRateLimiter(TokenBucketRateLimitConf rateLimiterConf) {
-        this.burstCapacity = rateLimiterConf.getBurstCapacity();
-        this.replenishRate = rateLimiterConf.getReplenishRate();
-        this.cost = rateLimiterConf.getCost();
-        this.leftCapacity = this.burstCapacity;
-        this.updateTimeMs = System.currentTimeMillis();
+        this(rateLimiterConf, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(TokenBucketRateLimitConf rateLimiterConf, LongSupplier nanoClock) {
+        long burstCapacity = rateLimiterConf.getBurstCapacity();
+        long replenishRate = rateLimiterConf.getReplenishRate();
+        long cost = rateLimiterConf.getCost();
+        this.nanoClock = nanoClock;
+        this.defaultBucket = new TokenBucket(burstCapacity, replenishRate, cost, nanoClock.getAsLong());
+        this.keyedBuckets = new BoundedKeyedMap<>(
+                rateLimiterConf.getMaxKeys(),
+                key -> new TokenBucket(burstCapacity, replenishRate, cost, nanoClock.getAsLong()),
+                bucket -> bucket.isFull(nanoClock.getAsLong()),
+                new TokenBucket(burstCapacity, replenishRate, cost, nanoClock.getAsLong()),
+                nanoClock
+        );
     }
 
     @Override
-    public Mono<Boolean> isAllowed() {
-        boolean result;
-        synchronized (this) {
-            long currentTimeMs = System.currentTimeMillis();
-            leftCapacity = Math.min(burstCapacity, leftCapacity + replenishRate * (currentTimeMs - updateTimeMs) / 1000);
-            updateTimeMs = currentTimeMs;
-            if (leftCapacity < cost) {
-                result = false;
-            } else {
-                leftCapacity -= cost;
-                result = true;
-            }
-        }
-        return Mono.just(result);
+    public Mono<Boolean> isAllowed(String key) {
+        TokenBucket bucket = ObjectUtil.isEmpty(key) ? defaultBucket : keyedBuckets.get(key);
+        return bucket.tryAcquire(nanoClock.getAsLong()) ? ALLOWED : REJECTED;
+    }
+
+    int keyCount() {
+        return keyedBuckets.size();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static AdaptiveConcurrencyLimiter newLimiter() {
+        AdaptiveConcurrencyLimitConf conf = new AdaptiveConcurrencyLimitConf();
+        conf.setInitialLimit(10);
+        conf.setMinLimit(2);
+        conf.setMaxLimit(100);
+        return new AdaptiveConcurrencyLimiter(conf);
+    }
+
+    /**
+     * 保持并发数等于当前限制，每个请求耗时rttMillis，重复rounds轮
+     */
+    private static void run(AdaptiveConcurrencyLimiter limiter, long rttMillis, int rounds) {
+        for (int round = 0; round < rounds; ++round) {
+            int permits = 0;
+            while (limiter.tryAcquire()) {
+                ++permits;
+            }
+            for (int i = 0; i < permits; ++i) {
+                limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis), true);
+            }
+        }
+    }
+
+    @Test
+    void testCapInFlight() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+        for (int i = 0; i < 10; ++i) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertEquals(10, limiter.getInFlight());
+        limiter.release(0, false);
+        Assertions.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void testAdaptToLatency() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter();
+        run(limiter, 10, 50);
+        int grownLimit = limiter.getLimit();
+        Assertions.assertTrue(grownLimit > 10);
+
+        // 上游变慢，耗时变为原来的5倍，并发数应该收缩
+        run(limiter, 50, 20);
+        Assertions.assertTrue(limiter.getLimit() < grownLimit);
+        Assertions.assertTrue(limiter.getLimit() >= 2);
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 集群限流后端的进程内替身：所有通过它创建的RateLimiter共享同一份令牌桶，模拟多个网关节点共享一个存储。
+ */
+public class InProcessClusterRateLimiterBackend implements RateLimiterBackend {
+
+    public static final String NAME = "in-process-cluster";
+
+    private static final Map<String, TokenBucket> SHARED_BUCKETS = new ConcurrentHashMap<>();
+
+    static void reset() {
+        SHARED_BUCKETS.clear();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public RateLimiter create(TokenBucketRateLimitConf conf) {
+        return key -> {
+            long now = System.nanoTime();
+            TokenBucket bucket = SHARED_BUCKETS.computeIfAbsent(
+                    key, ignore -> new TokenBucket(conf.getBurstCapacity(), conf.getReplenishRate(), conf.getCost(), now)
+            );
+            return Mono.just(bucket.tryAcquire(now));
+        };
+    }
+
+}
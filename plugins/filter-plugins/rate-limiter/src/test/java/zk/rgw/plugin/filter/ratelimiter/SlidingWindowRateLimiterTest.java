@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowRateLimiterTest {
+
+    private static int countAllowed(RateLimiter rateLimiter, String key, int times) {
+        int allowed = 0;
+        for (int i = 0; i < times; ++i) {
+            if (Boolean.TRUE.equals(rateLimiter.isAllowed(key).block())) {
+                ++allowed;
+            }
+        }
+        return allowed;
+    }
+
+    @Test
+    void testSlidingWindow() {
+        RateLimitConf conf = new RateLimitConf();
+        conf.getSlidingWindow().setWindowMillis(1000);
+        conf.getSlidingWindow().setMaxRequests(10);
+        AtomicLong clock = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(900));
+        SlidingWindowRateLimiter rateLimiter = new SlidingWindowRateLimiter(conf, clock::get);
+
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "", 20));
+
+        // 进入下一个窗口的前20%，上一个窗口的10个请求按80%计入，只能再通过2个，固定窗口在这里会放过10个
+        clock.set(TimeUnit.MILLISECONDS.toNanos(1200));
+        Assertions.assertEquals(2, countAllowed(rateLimiter, "", 20));
+
+        // 其他key不受影响
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "a", 20));
+
+        clock.set(TimeUnit.MILLISECONDS.toNanos(3000));
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "", 20));
+    }
+
+    @Test
+    void testStaleClock() {
+        RateLimitConf conf = new RateLimitConf();
+        conf.getSlidingWindow().setWindowMillis(1000);
+        conf.getSlidingWindow().setMaxRequests(10);
+        AtomicLong clock = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(1500));
+        SlidingWindowRateLimiter rateLimiter = new SlidingWindowRateLimiter(conf, clock::get);
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "", 20));
+
+        // 其他线程读到的时间更晚、已经推进了窗口时，读到较早时间的线程不能把计数清零
+        clock.set(TimeUnit.MILLISECONDS.toNanos(900));
+        Assertions.assertEquals(0, countAllowed(rateLimiter, "", 20));
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 zoukang, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zk.rgw.plugin.filter.ratelimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import zk.rgw.plugin.exception.PluginConfException;
+
+class TokenBucketRateLimiterTest {
+
+    private static TokenBucketRateLimitConf conf(long burstCapacity, long replenishRate) {
+        TokenBucketRateLimitConf conf = new TokenBucketRateLimitConf();
+        conf.setBurstCapacity(burstCapacity);
+        conf.setReplenishRate(replenishRate);
+        return conf;
+    }
+
+    private static int countAllowed(RateLimiter rateLimiter, String key, int times) {
+        int allowed = 0;
+        for (int i = 0; i < times; ++i) {
+            if (Boolean.TRUE.equals(rateLimiter.isAllowed(key).block())) {
+                ++allowed;
+            }
+        }
+        return allowed;
+    }
+
+    @Test
+    void testBurstAndReplenish() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(conf(10, 3), clock::get);
+
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "", 20));
+
+        // 3个/秒，每200毫秒恢复0.6个令牌，不足1个的部分不会因为整数除法丢掉
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        Assertions.assertEquals(0, countAllowed(rateLimiter, "", 5));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        Assertions.assertEquals(1, countAllowed(rateLimiter, "", 5));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(100));
+        Assertions.assertEquals(10, countAllowed(rateLimiter, "", 20));
+    }
+
+    @Test
+    void testKeyed() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(conf(2, 1), clock::get);
+        Assertions.assertEquals(2, countAllowed(rateLimiter, "a", 5));
+        Assertions.assertEquals(2, countAllowed(rateLimiter, "b", 5));
+        Assertions.assertEquals(2, countAllowed(rateLimiter, "", 5));
+    }
+
+    @Test
+    void testBoundedKeys() {
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucketRateLimitConf conf = conf(2, 1);
+        conf.setMaxKeys(100);
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(conf, clock::get);
+        for (int i = 0; i < 1000; ++i) {
+            rateLimiter.isAllowed("key-" + i).block();
+        }
+        Assertions.assertTrue(rateLimiter.keyCount() <= 100);
+
+        // 仍在限流中的key不会被新key挤出去
+        Assertions.assertEquals(1, countAllowed(rateLimiter, "key-0", 5));
+        // 超出上限的新key共用一个令牌桶
+        Assertions.assertEquals(0, countAllowed(rateLimiter, "key-1000", 5) + countAllowed(rateLimiter, "key-1001", 5));
+
+        // 令牌桶恢复满以后可以被无损淘汰
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        Assertions.assertEquals(2, countAllowed(rateLimiter, "another", 5));
+        Assertions.assertEquals(1, rateLimiter.keyCount());
+    }
+
+    @Test
+    void testClusterBackend() throws PluginConfException {
+        InProcessClusterRateLimiterBackend.reset();
+        RateLimiterBackend backend = RateLimiterBackend.load(InProcessClusterRateLimiterBackend.NAME);
+        TokenBucketRateLimitConf conf = conf(10, 1);
+        RateLimiter node1 = backend.create(conf);
+        RateLimiter node2 = backend.create(conf);
+        Assertions.assertEquals(10, countAllowed(node1, "a", 6) + countAllowed(node2, "a", 6));
+
+        Assertions.assertThrows(PluginConfException.class, () -> RateLimiterBackend.load("unknown"));
+    }
+
+}